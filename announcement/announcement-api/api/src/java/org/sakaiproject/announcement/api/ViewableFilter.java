@@ -21,11 +21,16 @@
 
 package org.sakaiproject.announcement.api;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import org.sakaiproject.entity.api.ResourceProperties;
 import org.sakaiproject.javax.Filter;
+import org.sakaiproject.javax.RestrictedFilter;
+import org.sakaiproject.javax.Restriction;
 import org.sakaiproject.time.api.Time;
 
 /**
@@ -36,7 +41,7 @@ import org.sakaiproject.time.api.Time;
  *
  */
 @Slf4j
-public class ViewableFilter implements Filter {
+public class ViewableFilter implements RestrictedFilter {
 
     @Setter
     private Filter filter = null;
@@ -60,6 +65,21 @@ public class ViewableFilter implements Filter {
         this.announcementService = announcementService;
     }
 
+    /**
+     * Drafts are never viewable, so storage can leave them out along with whatever the other filter restricts. The
+     * release date, viewability and the limit are still checked in accept().
+     */
+    @Override
+    public List<Restriction> getRestrictions() {
+
+        List<Restriction> restrictions = new ArrayList<>();
+        if (filter instanceof RestrictedFilter) {
+            restrictions.addAll(((RestrictedFilter) filter).getRestrictions());
+        }
+        restrictions.add(new Restriction("DRAFT", "0"));
+        return restrictions;
+    }
+
     /**
      * Does this object satisfy the criteria of the filter?
      * @param o The object
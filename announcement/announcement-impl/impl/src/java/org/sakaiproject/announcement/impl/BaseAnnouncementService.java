@@ -86,6 +86,8 @@ import org.sakaiproject.exception.IdUsedException;
 import org.sakaiproject.exception.InUseException;
 import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.javax.Filter;
+import org.sakaiproject.javax.RestrictedFilter;
+import org.sakaiproject.javax.Restriction;
 import org.sakaiproject.message.api.Message;
 import org.sakaiproject.message.api.MessageChannel;
 import org.sakaiproject.message.api.MessageEdit;
@@ -1837,7 +1839,7 @@ public abstract class BaseAnnouncementService extends BaseMessage implements Ann
 	/**
 	 * A filter that will reject announcement message drafts not from the current user, and otherwise use another filter, if defined, for acceptance.
 	 */
-	protected class PrivacyFilter implements Filter
+	protected class PrivacyFilter implements RestrictedFilter
 	{
 		/** The other filter to check with. May be null. */
 		protected Filter m_filter = null;
@@ -1854,6 +1856,15 @@ public abstract class BaseAnnouncementService extends BaseMessage implements Ann
 
 		} // PrivacyFilter
 
+		/**
+		 * The restrictions of the other filter, the drafts of other users are only rejected in accept() so this is never exact.
+		 */
+		public List<Restriction> getRestrictions()
+		{
+			if (m_filter instanceof RestrictedFilter) return ((RestrictedFilter) m_filter).getRestrictions();
+			return Collections.emptyList();
+		}
+
 		/**
 		 * Does this object satisfy the criteria of the filter?
 		 * 
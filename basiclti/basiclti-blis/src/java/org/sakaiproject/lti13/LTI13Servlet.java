@@ -48,6 +48,7 @@ import java.security.KeyPairGenerator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.MalformedJwtException;
@@ -55,10 +56,8 @@ import io.jsonwebtoken.UnsupportedJwtException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeMap;
 
 import lombok.extern.slf4j.Slf4j;
 import org.json.simple.JSONArray;
@@ -77,6 +76,7 @@ import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.lti.api.LTIService;
 import org.sakaiproject.lti13.LineItemUtil;
+import org.sakaiproject.memory.api.MemoryService;
 
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
@@ -140,6 +140,11 @@ public class LTI13Servlet extends HttpServlet {
 
 	private static final String PLUS_NRPS_PAGING = "plus:nrps_paging";
 
+	private static final String NRPS_CACHE_NAME = LTI13Servlet.class.getName() + ".namesAndRolesCache";
+	private static final ObjectMapper NRPS_MAPPER = new ObjectMapper();
+
+	private org.sakaiproject.memory.api.Cache<String, NamesAndRolesSnapshot> nrpsCache;
+
 	@Override
 	public void init(ServletConfig config) throws ServletException {
 		super.init(config);
@@ -150,6 +155,8 @@ public class LTI13Servlet extends HttpServlet {
         cacheManager = (CacheManager) ComponentManager.get("org.sakaiproject.ignite.SakaiCacheManager");
         cache = cacheManager.getCache(CACHE_NAME);
 
+		nrpsCache = ComponentManager.get(MemoryService.class).getCache(NRPS_CACHE_NAME);
+
 		// Lets try to load from properties
 		if (tokenKeyPair == null) {
 			// lti.advantage.lti13servlet.public=MIIBIjANBgkqhkiG9w [snip] Yfu3RbCda/nq4lipjRQIDAQAB
@@ -1365,26 +1372,21 @@ public class LTI13Servlet extends HttpServlet {
 		}
 		*/
 
-		String maintainRole = site.getMaintainRole();
-
-		PrintWriter out = null;
+		// Pages after the first carry on after the last member of the page before
+		String cursor = request.getParameter("cursor");
+		String after = null;
+		if (cursor != null) {
+			after = NamesAndRolesSnapshot.decodeCursor(cursor);
+			if (after == null) {
+				LTI13Util.return400(response, "Invalid cursor");
+				log.error("Invalid cursor {}", cursor);
+				return;
+			}
+		}
 
 		SakaiBLTIUtil.pushAdvisor();
 		try {
-			boolean success = false;
-
-			List<Map<String, Object>> lm = new ArrayList<>();
-
-			// Get users for each of the members. UserDirectoryService.getUsers will skip any undefined users.
-			Set<Member> members = site.getMembers();
-			Map<String, Member> memberMap = new HashMap<>();
-			List<String> userIds = new ArrayList<>();
-			for (Member member : members) {
-				userIds.add(member.getUserId());
-				memberMap.put(member.getUserId(), member);
-			}
-
-			List<User> users = UserDirectoryService.getUsers(userIds);
+			NamesAndRolesSnapshot snapshot = getNamesAndRolesSnapshot(site);
 
 			String roleMapProp = (String) tool.get(LTIService.LTI_ROLEMAP);
 			Map<String, String> toolRoleMap = SakaiBLTIUtil.convertOutboundRoleMapPropToMap(roleMapProp);
@@ -1404,78 +1406,74 @@ public class LTI13Servlet extends HttpServlet {
 				SakaiBLTIUtil.LTI_LEGACY_ROLE_MAP_DEFAULT
 			);
 
+			int from = after != null ? snapshot.indexAfter(after) : Math.max(start, 0);
+			List<NamesAndRolesSnapshot.Entry> page = snapshot.page(from, limit);
+			int next = from + page.size();
+
 			// Do we need a Link header
 			// https://www.imsglobal.org/spec/lti-nrps/v2p0#limit-query-parameter
 			// https://www.w3.org/Protocols/9707-link-header.html
-			int user_count = users.size();
-			if ( start < 0 ) start = 0;
-			if ( limit < 0 ) limit = user_count;
-			int next = start+limit;
-
-			if ( next >= user_count) {
-				log.debug("No Link header start={} limit={} count={} next={}", start, limit, user_count, next);
+			if ( page.isEmpty() || next >= snapshot.size() ) {
+				log.debug("No Link header from={} limit={} count={} next={}", from, limit, snapshot.size(), next);
 			} else {
-				log.debug("Link header start={} limit={} count={} next={}", start, limit, user_count, next);
+				log.debug("Link header from={} limit={} count={} next={}", from, limit, snapshot.size(), next);
 				// /imsblis/lti13/namesandroles/context:6
-				String linkHeader = getOurServerUrl() + LTI13_PATH + "namesandroles/" + signed_placement + "?start=" + next;
+				String linkHeader = getOurServerUrl() + LTI13_PATH + "namesandroles/" + signed_placement
+					+ "?cursor=" + NamesAndRolesSnapshot.encodeCursor(page.get(page.size() - 1).getUserId());
 				if ( limit > 0 ) linkHeader += "&limit=" + limit;
 				linkHeader = "<" + linkHeader + ">; rel=\"next\"";
 				log.debug("Link: {}", linkHeader);
 			    response.addHeader("Link", linkHeader);
 			}
 
-			int current = 0;
-			for (User user : users) {
-				if ( current < start) {
-					current++;
-					continue;
-				}
-				if ( current == next) {
-					log.debug("Limit reached current={} next={} start={} limit={}", current, next, start, limit);
-					break;
-				}
-
-				JSONObject jo = new JSONObject();
-				jo.put("status", "Active");
-				String lti11_legacy_user_id = user.getId();
-				jo.put("lti11_legacy_user_id", lti11_legacy_user_id);
+			// Write each member out as it is made rather than building the page up first
+			response.setContentType(APPLICATION_JSON);
+			JsonGenerator json = NRPS_MAPPER.getFactory().createGenerator(response.getWriter());
+			json.useDefaultPrettyPrinter();
+			json.writeStartObject();
+			json.writeStringField("id", "http://TODO.wtf.com/we_eliminated_json_ld_but_forgot_to_remove_this");
+			json.writeObjectFieldStart("context");
+			json.writeStringField("id", site.getId());
+			json.writeStringField("title", site.getTitle());
+			json.writeEndObject();
+			json.writeArrayFieldStart("members");
+
+			for (NamesAndRolesSnapshot.Entry entry : page) {
+				json.writeStartObject();
+				json.writeStringField("status", "Active");
+				String lti11_legacy_user_id = entry.getUserId();
+				json.writeStringField("lti11_legacy_user_id", lti11_legacy_user_id);
 				String subject = SakaiBLTIUtil.getSubject(lti11_legacy_user_id, site.getId());
-				jo.put("user_id", subject);   // TODO: Should be subject - LTI13 Quirk
-				jo.put("lis_person_sourcedid", user.getEid());
+				json.writeStringField("user_id", subject);   // TODO: Should be subject - LTI13 Quirk
+				json.writeStringField("lis_person_sourcedid", entry.getEid());
 
 				if (releaseName != 0) {
-					jo.put("name", user.getDisplayName());
-					jo.put("given_name", user.getFirstName());
-					jo.put("family_name", user.getLastName());
+					json.writeStringField("name", entry.getDisplayName());
+					json.writeStringField("given_name", entry.getFirstName());
+					json.writeStringField("family_name", entry.getLastName());
 				}
 				if (releaseEmail != 0) {
-					jo.put("email", user.getEmail());
+					json.writeStringField("email", entry.getEmail());
 				}
 
-				Member member = memberMap.get(user.getId());
-				Map<String, Object> mm = new TreeMap<>();
-				Role role = member.getRole();
-				String ims_user_id = member.getUserId();
+				String ims_user_id = entry.getUserId();
 				String outboundRole = null;
-				String sakaiRole = role.getId();
+				String sakaiRole = entry.getRoleId();
 
 				if (StringUtils.isNotBlank(sakaiRole)) {
 					outboundRole = SakaiBLTIUtil.mapOutboundRole(sakaiRole, toolRoleMap, propRoleMap, defaultRoleMap, propLegacyMap, defaultLegacyMap);
 					log.debug("SakaiBLTIUtil.mapOutboundRole sakaiRole={} outboundRole={}", sakaiRole, outboundRole);
 				}
 
-				JSONArray roles = new JSONArray();
+				json.writeArrayFieldStart("roles");
 				if ( StringUtils.isNotBlank(outboundRole) ) {
-					roles.add(outboundRole);
+					json.writeString(outboundRole);
 				} else if (ComponentManager.get(AuthzGroupService.class).isAllowed(ims_user_id, SiteService.SECURE_UPDATE_SITE, "/site/" + site.getId())) {
-					roles.add(LTI13ConstantsUtil.ROLE_INSTRUCTOR);
+					json.writeString(LTI13ConstantsUtil.ROLE_INSTRUCTOR);
 				} else {
-					roles.add(LTI13ConstantsUtil.ROLE_LEARNER);
+					json.writeString(LTI13ConstantsUtil.ROLE_LEARNER);
 				}
-
-				jo.put("roles", roles);
-
-				JSONObject sakai_ext = new JSONObject();
+				json.writeEndArray();
 
 				/* SAK-47261 - Scope NRPS to Context, not Resource Link
 				if ( sat.hasScope(SakaiAccessToken.SCOPE_BASICOUTCOME)  && assignment_name != null ) {
@@ -1485,55 +1483,60 @@ public class LTI13Servlet extends HttpServlet {
 					if ( result_sourcedid != null ) sakai_ext.put("lis_result_sourcedid",result_sourcedid);
 				}
 				*/
-				sakai_ext.put("sakai_role", sakaiRole);
+				json.writeObjectFieldStart("sakai_ext");
+				json.writeStringField("sakai_role", sakaiRole);
 
-				Collection groups = site.getGroupsWithMember(ims_user_id);
+				Collection<Group> groups = site.getGroupsWithMember(ims_user_id);
 
 				if (groups.size() > 0) {
-					JSONArray lgm = new JSONArray();
-					for (Iterator i = groups.iterator();i.hasNext();) {
-						Group group = (Group) i.next();
-						JSONObject groupObj = new JSONObject();
-						groupObj.put("id", group.getId());
-						groupObj.put("title", group.getTitle());
-						lgm.add(groupObj);
+					json.writeArrayFieldStart("sakai_groups");
+					for (Group group : groups) {
+						json.writeStartObject();
+						json.writeStringField("id", group.getId());
+						json.writeStringField("title", group.getTitle());
+						json.writeEndObject();
 					}
-					sakai_ext.put("sakai_groups", lgm);
-				}
-
-				jo.put("sakai_ext", sakai_ext);
-
-				if (out == null) {
-						JSONObject context_obj = new JSONObject();
-						context_obj.put("id", site.getId());
-						context_obj.put("title", site.getTitle());
-
-						response.setContentType(APPLICATION_JSON);
-						out = response.getWriter();
-						out.println("{");
-						out.println(" \"id\" : \"http://TODO.wtf.com/we_eliminated_json_ld_but_forgot_to_remove_this\",");
-						out.println(" \"context\" : ");
-						out.print(JacksonUtil.prettyPrint(context_obj));
-						out.println(",");
-						out.println(" \"members\": [");
-				} else {
-						out.println(",");
+					json.writeEndArray();
 				}
+				json.writeEndObject();
 
-				out.print(JacksonUtil.prettyPrint(jo));
-				current++;
-
-			}
-			if ( out != null ) {
-				out.println("");
-				out.println(" ] }");
+				json.writeEndObject();
 			}
+
+			json.writeEndArray();
+			json.writeEndObject();
+			json.flush();
 		} finally {
 			SakaiBLTIUtil.popAdvisor();
 		}
 
 	}
 
+	/**
+	 * The members of a site with their users looked up, kept while the members of the site are unchanged so a tool
+	 * paging through a large site only looks its users up once.
+	 */
+	protected NamesAndRolesSnapshot getNamesAndRolesSnapshot(Site site) {
+		Set<Member> members = site.getMembers();
+		String version = NamesAndRolesSnapshot.version(members);
+		NamesAndRolesSnapshot snapshot = nrpsCache.get(site.getId());
+		if (snapshot != null && snapshot.getVersion().equals(version)) {
+			return snapshot;
+		}
+
+		// Get users for each of the members. UserDirectoryService.getUsers will skip any undefined users.
+		List<String> userIds = new ArrayList<>();
+		for (Member member : members) {
+			userIds.add(member.getUserId());
+		}
+		List<User> users = UserDirectoryService.getUsers(userIds);
+
+		snapshot = new NamesAndRolesSnapshot(version, members, users);
+		nrpsCache.put(site.getId(), snapshot);
+		log.debug("Names and roles snapshot of site {} version {} has {} members", site.getId(), version, snapshot.size());
+		return snapshot;
+	}
+
 	protected SakaiAccessToken getSakaiAccessToken(Key publicKey, HttpServletRequest request, HttpServletResponse response) {
 		String authorization = request.getHeader("authorization");
 
@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.lti13;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.authz.api.Member;
+import org.sakaiproject.user.api.User;
+
+import lombok.Getter;
+
+/**
+ * The members of a site as the LTI Names and Role Provisioning service pages through them, with the user details it
+ * sends already looked up. Members are kept in order of their user ids so a page can be found from the last user of
+ * the page before it, which stays right when members are added or removed between pages.
+ *
+ * A snapshot is kept for as long as its version, a fingerprint of the user ids and roles of the site members, matches
+ * the members of the site.
+ */
+public class NamesAndRolesSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String CURSOR_PREFIX = "after:";
+
+	@Getter
+	private final String version;
+	private final List<Entry> entries;
+
+	/**
+	 * @param version the version of the members, from {@link #version(Collection)}
+	 * @param members the members of the site
+	 * @param users the users of the members, members without a user are left out
+	 */
+	public NamesAndRolesSnapshot(String version, Collection<Member> members, Collection<User> users) {
+		this.version = version;
+
+		Map<String, Member> memberMap = new HashMap<>();
+		for (Member member : members) {
+			memberMap.put(member.getUserId(), member);
+		}
+		List<Entry> list = new ArrayList<>(users.size());
+		for (User user : users) {
+			Member member = memberMap.get(user.getId());
+			if (member != null) {
+				list.add(new Entry(user, member.getRole() != null ? member.getRole().getId() : null));
+			}
+		}
+		list.sort(Comparator.comparing(Entry::getUserId));
+		this.entries = Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * @return a fingerprint of the user ids and roles of the members, the same whatever order they come in
+	 */
+	public static String version(Collection<Member> members) {
+		long sum = 0;
+		for (Member member : members) {
+			long hash = ((long) member.getUserId().hashCode() << 32)
+					^ (member.getRole() != null ? member.getRole().getId().hashCode() & 0xffffffffL : 0L);
+			// spread the bits so that members swapping roles don't cancel out
+			hash ^= hash >>> 33;
+			hash *= 0xff51afd7ed558ccdL;
+			hash ^= hash >>> 33;
+			sum += hash;
+		}
+		return members.size() + "-" + Long.toHexString(sum);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the index of the first member after a user, in user id order
+	 */
+	public int indexAfter(String userId) {
+		int low = 0;
+		int high = entries.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (entries.get(mid).getUserId().compareTo(userId) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param from the index of the first member
+	 * @param limit the most members to return, zero or less for all of them
+	 */
+	public List<Entry> page(int from, int limit) {
+		from = Math.max(0, Math.min(from, entries.size()));
+		int to = limit > 0 ? (int) Math.min((long) from + limit, entries.size()) : entries.size();
+		return entries.subList(from, to);
+	}
+
+	/**
+	 * @return an opaque cursor for the page after the one ending with a user
+	 */
+	public static String encodeCursor(String userId) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString((CURSOR_PREFIX + userId).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the user id a cursor continues after, or null if it isn't a cursor
+	 */
+	public static String decodeCursor(String cursor) {
+		try {
+			String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			return decoded.startsWith(CURSOR_PREFIX) ? decoded.substring(CURSOR_PREFIX.length()) : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * A member with the details of their user that are sent
+	 */
+	@Getter
+	public static class Entry implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String userId;
+		private final String eid;
+		private final String displayName;
+		private final String firstName;
+		private final String lastName;
+		private final String email;
+		private final String roleId;
+
+		public Entry(User user, String roleId) {
+			this.userId = user.getId();
+			this.eid = user.getEid();
+			this.displayName = user.getDisplayName();
+			this.firstName = user.getFirstName();
+			this.lastName = user.getLastName();
+			this.email = user.getEmail();
+			this.roleId = roleId;
+		}
+	}
+}
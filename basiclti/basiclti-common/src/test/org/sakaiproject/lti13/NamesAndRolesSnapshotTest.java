@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.lti13;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.sakaiproject.authz.api.Member;
+import org.sakaiproject.authz.api.Role;
+import org.sakaiproject.user.api.User;
+
+public class NamesAndRolesSnapshotTest {
+
+	private static Member member(String userId, String roleId) {
+		Role role = mock(Role.class);
+		when(role.getId()).thenReturn(roleId);
+		Member member = mock(Member.class);
+		when(member.getUserId()).thenReturn(userId);
+		when(member.getRole()).thenReturn(role);
+		return member;
+	}
+
+	private static User user(String userId) {
+		User user = mock(User.class);
+		when(user.getId()).thenReturn(userId);
+		when(user.getEid()).thenReturn("eid-" + userId);
+		return user;
+	}
+
+	private static NamesAndRolesSnapshot snapshot(int count) {
+		List<Member> members = new ArrayList<>();
+		List<User> users = new ArrayList<>();
+		for (int i = count - 1; i >= 0; i--) {
+			String userId = String.format("user-%03d", i);
+			members.add(member(userId, "access"));
+			users.add(user(userId));
+		}
+		return new NamesAndRolesSnapshot(NamesAndRolesSnapshot.version(members), members, users);
+	}
+
+	@Test
+	public void testCursorPaging() {
+		NamesAndRolesSnapshot snapshot = snapshot(25);
+		assertEquals(25, snapshot.size());
+
+		List<String> seen = new ArrayList<>();
+		int from = 0;
+		while (true) {
+			List<NamesAndRolesSnapshot.Entry> page = snapshot.page(from, 10);
+			page.forEach(e -> seen.add(e.getUserId()));
+			if (page.isEmpty() || from + page.size() >= snapshot.size()) break;
+			String cursor = NamesAndRolesSnapshot.encodeCursor(page.get(page.size() - 1).getUserId());
+			from = snapshot.indexAfter(NamesAndRolesSnapshot.decodeCursor(cursor));
+		}
+		assertEquals(25, seen.size());
+		assertEquals("user-000", seen.get(0));
+		assertEquals("user-024", seen.get(24));
+		assertEquals("eid-user-000", snapshot.page(0, 1).get(0).getEid());
+		assertEquals("access", snapshot.page(0, 1).get(0).getRoleId());
+
+		// a cursor still lands after its user when that user has since left
+		assertEquals(6, snapshot.indexAfter("user-005a"));
+		assertEquals(25, snapshot.page(0, 0).size());
+		assertTrue(snapshot.page(30, 10).isEmpty());
+	}
+
+	@Test
+	public void testInvalidCursor() {
+		assertNull(NamesAndRolesSnapshot.decodeCursor("not a cursor!"));
+		assertNull(NamesAndRolesSnapshot.decodeCursor("dXNlci0wMDE"));
+		assertEquals("user-001", NamesAndRolesSnapshot.decodeCursor(NamesAndRolesSnapshot.encodeCursor("user-001")));
+	}
+
+	@Test
+	public void testVersion() {
+		Member a = member("a", "access");
+		Member b = member("b", "maintain");
+		String version = NamesAndRolesSnapshot.version(Arrays.asList(a, b));
+		assertEquals(version, NamesAndRolesSnapshot.version(Arrays.asList(b, a)));
+		assertNotEquals(version, NamesAndRolesSnapshot.version(Arrays.asList(member("a", "maintain"), member("b", "access"))));
+		assertNotEquals(version, NamesAndRolesSnapshot.version(Collections.singletonList(a)));
+	}
+
+	@Test
+	public void testMembersWithoutUsersAreLeftOut() {
+		List<Member> members = Arrays.asList(member("a", "access"), member("b", "access"));
+		NamesAndRolesSnapshot snapshot = new NamesAndRolesSnapshot(NamesAndRolesSnapshot.version(members), members,
+				Collections.singletonList(user("b")));
+		assertEquals(1, snapshot.size());
+		assertEquals("b", snapshot.page(0, 0).get(0).getUserId());
+	}
+}
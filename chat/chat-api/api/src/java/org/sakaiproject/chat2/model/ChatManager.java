@@ -24,6 +24,7 @@ package org.sakaiproject.chat2.model;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.sakaiproject.entity.api.EntitySummary;
 import org.sakaiproject.exception.PermissionException;
@@ -278,6 +279,35 @@ public interface ChatManager extends EntitySummary {
     * @return
     */
    public int getPollInterval();
+
+   /**
+    * Whether clients may keep a stream open to be told of channel updates instead of polling for them
+    * @return
+    */
+   public boolean isPushEnabled();
+
+   /**
+    * Get how often (in milliseconds) clients with a stream open still call handleChatData to keep their presence
+    * @return
+    */
+   public int getPushPollInterval();
+
+   /**
+    * Register a listener for the messages and removals posted to a channel, on this server or received from
+    * the cluster. Listeners are called on the posting thread so they must not block.
+    *
+    * @param channelId
+    * @param listener
+    */
+   public void addChannelListener(String channelId, Consumer<TransferableChatMessage> listener);
+
+   /**
+    * Remove a listener added with addChannelListener
+    *
+    * @param channelId
+    * @param listener
+    */
+   public void removeChannelListener(String channelId, Consumer<TransferableChatMessage> listener);
    
    /**
     * Get session key (ussage_session_id:session_user_id) from current session
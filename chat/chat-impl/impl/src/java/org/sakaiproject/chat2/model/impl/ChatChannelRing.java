@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.chat2.model.impl;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.sakaiproject.chat2.model.TransferableChatMessage;
+
+/**
+ * Ring of the latest messages and removals posted to a chat channel. Every message gets a sequence number
+ * and readers keep the sequence they have read up to, so posting a message doesn't depend on how many
+ * sessions are in the channel and neither posting nor reading takes a lock.
+ *
+ * Readers that fall more than a ring behind lose the oldest messages, as they did when the undelivered
+ * messages of a session expired.
+ */
+class ChatChannelRing {
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * @param capacity the number of messages kept, rounded up to a power of two
+     */
+    ChatChannelRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return the sequence given to the message
+     */
+    long publish(TransferableChatMessage message) {
+        long sequence = next.getAndIncrement();
+        slots.set((int) (sequence & mask), new Entry(sequence, message));
+        return sequence;
+    }
+
+    /**
+     * @return the sequence the next message will get, where a new reader starts from
+     */
+    long head() {
+        return next.get();
+    }
+
+    /**
+     * Add the messages from a sequence on to a list
+     *
+     * @param from the first sequence to read
+     * @param messages where to add the messages
+     * @return the sequence to read from next time
+     */
+    long read(long from, List<TransferableChatMessage> messages) {
+        long head = next.get();
+        for (long sequence = Math.max(from, head - slots.length()); sequence < head; sequence++) {
+            Entry entry = slots.get((int) (sequence & mask));
+            if (entry == null || entry.sequence < sequence) {
+                // the sequence is taken but the message isn't in yet, pick it up on the next read
+                return sequence;
+            }
+            if (entry.sequence == sequence) {
+                messages.add(entry.message);
+            }
+        }
+        return head;
+    }
+
+    private static class Entry {
+
+        private final long sequence;
+        private final TransferableChatMessage message;
+
+        private Entry(long sequence, TransferableChatMessage message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+}
@@ -44,7 +44,10 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -125,8 +128,14 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
     @Setter private SiteService siteService;
     @Setter private EventTrackingService eventTrackingService;
 
-    /** MAP[SESSION_KEY][CHANNEL_ID] -> List<TransferableChatMessage> */
-    private Cache<String, Map<String, List<TransferableChatMessage>>> messageMap;
+    /** MAP[CHANNEL_ID] -> ChatChannelRing of the latest messages and removals posted to the channel */
+    private Cache<String, ChatChannelRing> channelRings;
+
+    /** MAP[SESSION_KEY][CHANNEL_ID] -> sequence of the next message to deliver from the channel ring */
+    private Cache<String, Map<String, Long>> cursorMap;
+
+    /** MAP[CHANNEL_ID] -> listeners pushing channel updates to open streams */
+    private final Map<String, Set<Consumer<TransferableChatMessage>>> channelListeners = new ConcurrentHashMap<>();
 
     /** MAP[CHANNEL_ID][SESSION_ID] -> TransferableChatMessage */
     /** We store the session_id to allow login multiple times with different browsers */
@@ -139,6 +148,11 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
 
     @Getter private int pollInterval = 5000; //5 sec
 
+    @Getter private boolean pushEnabled = false;
+    @Getter private int pushPollInterval = 30000; //30 sec
+    private int ringSize = 256;
+    private int concurrencyLevel = 16;
+
     /* JGroups channel for keeping the above maps in sync across nodes in a Sakai cluster */
     private JChannel clusterChannel = null;
     private boolean clustered = false;
@@ -187,13 +201,23 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
             }
 
             pollInterval = serverConfigurationService.getInt("chat.pollInterval", 5000);
-
-            messageMap = CacheBuilder.newBuilder()
+            pushEnabled = serverConfigurationService.getBoolean("chat.push.enabled", false);
+            pushPollInterval = serverConfigurationService.getInt("chat.push.pollInterval", 30000);
+            ringSize = serverConfigurationService.getInt("chat.ring.size", 256);
+            concurrencyLevel = serverConfigurationService.getInt("chat.concurrencyLevel", 16);
+
+            channelRings = CacheBuilder.newBuilder()
+                    .concurrencyLevel(concurrencyLevel)
+                    .expireAfterAccess(1, TimeUnit.HOURS)
+                    .build();
+            cursorMap = CacheBuilder.newBuilder()
                     //.recordStats()
+                    .concurrencyLevel(concurrencyLevel)
                     .expireAfterAccess(5, TimeUnit.MINUTES)
                     .build();
             heartbeatMap = CacheBuilder.newBuilder()
             		//.recordStats()
+            		.concurrencyLevel(concurrencyLevel)
             		.expireAfterWrite(1, TimeUnit.HOURS)
             		.build();
             
@@ -847,7 +871,7 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
             if (event != null)
                 eventTrackingService.post(event);
 
-            addMessageToMap(new TransferableChatMessage(TransferableChatMessage.MessageType.REMOVE, message.getId(), message.getChatChannel().getId()));
+            addMessageToRing(new TransferableChatMessage(TransferableChatMessage.MessageType.REMOVE, message.getId(), message.getChatChannel().getId()));
         }
     }
 
@@ -871,7 +895,7 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
             if (event != null)
                 eventTrackingService.post(event);
             
-            addMessageToMap(new TransferableChatMessage(message));
+            addMessageToRing(new TransferableChatMessage(message));
 
         }
     }
@@ -918,7 +942,7 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
             if (event != null)
                 eventTrackingService.post(event);
 
-            addMessageToMap(new TransferableChatMessage(TransferableChatMessage.MessageType.REMOVE, "*", channel.getId()));
+            addMessageToRing(new TransferableChatMessage(TransferableChatMessage.MessageType.REMOVE, "*", channel.getId()));
         }
     }
 
@@ -1145,28 +1169,24 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
 
             List<ChatMessage> messages = new ArrayList<ChatMessage>();
             List<DeleteMessage> delete = new ArrayList<DeleteMessage>();
-            //as guava cache is synchronized, maybe this is not necessary
-            synchronized (messageMap){
-                if (messageMap.getIfPresent(sessionKey) != null) {
-                    try {
-                        if(messageMap.getIfPresent(sessionKey).get(channelId) != null) {
-                            for(TransferableChatMessage tcm : messageMap.getIfPresent(sessionKey).get(channelId)){
-                                switch(tcm.getType()){
-                                    case CHAT:
-                                        messages.add(tcm.toChatMessage(channel));
-                                        break;
-                                    case REMOVE:
-                                        delete.add(new DeleteMessage(tcm.getId(), tcm.getChannelId()));
-                                        break;
-                                }
-                            }
-                        }
-                    } catch(Exception e){
-                        log.error("Error getting messages in channel "+channelId+" for session_key "+sessionKey, e);
-    }
-
-                    //clear all messages for this user
-                    messageMap.invalidate(sessionKey);
+            List<TransferableChatMessage> delivered = new ArrayList<TransferableChatMessage>();
+            try {
+                ChatChannelRing ring = getChannelRing(channelId);
+                Map<String, Long> cursors = cursorMap.get(sessionKey, ConcurrentHashMap::new);
+                //a session is sent the messages posted since its first request in the channel
+                Long cursor = cursors.get(channelId);
+                cursors.put(channelId, ring.read(cursor != null ? cursor : ring.head(), delivered));
+            } catch(Exception e){
+                log.error("Error getting messages in channel "+channelId+" for session_key "+sessionKey, e);
+            }
+            for(TransferableChatMessage tcm : delivered){
+                switch(tcm.getType()){
+                    case CHAT:
+                        messages.add(tcm.toChatMessage(channel));
+                        break;
+                    case REMOVE:
+                        delete.add(new DeleteMessage(tcm.getId(), tcm.getChannelId()));
+                        break;
                 }
             }
             //sort messages by date
@@ -1189,6 +1209,23 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
     public int getPollInterval(){
         return pollInterval;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addChannelListener(String channelId, Consumer<TransferableChatMessage> listener) {
+        channelListeners.computeIfAbsent(channelId, k -> ConcurrentHashMap.newKeySet()).add(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeChannelListener(String channelId, Consumer<TransferableChatMessage> listener) {
+        channelListeners.computeIfPresent(channelId, (k, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
     
 
     /**
@@ -1279,7 +1316,7 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
             switch(message.getType()){
             case CHAT : 
                 log.debug("Received message {} from cluster ...", id);
-                addMessageToMap(message);
+                addMessageToRing(message);
                 break;
             case HEARTBEAT :
                 log.debug("Received heartbeat {} - {} from cluster ...", id, channelId);
@@ -1287,14 +1324,12 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
                 break;
             case CLEAR :
                 log.debug("Received clear message {} from cluster ...", id);
-                //as guava cache is synchronized, maybe this is not necessary
-                synchronized (messageMap){
-                    messageMap.invalidate(id);
-                }
+                //the session read its messages on another server
+                cursorMap.invalidate(id);
                 break;
             case REMOVE :
                 log.debug("Received remove message {} from cluster ...", id);
-                addMessageToMap(message); 
+                addMessageToRing(message);
                 break;
             }
         }
@@ -1304,36 +1339,32 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
     // private utility functions
     
     /**
-     * Implements a threadsafe addition to the message map
+     * Adds a message to the ring of its channel and tells the channel listeners
      */
-    private void addMessageToMap(TransferableChatMessage msg) {
+    private void addMessageToRing(TransferableChatMessage msg) {
         String channelId = msg.getChannelId();
-        //as guava cache is synchronized, maybe this is not necessary
-        synchronized (messageMap){
-            //get all users (sessions) present in the channel where the message goes to
-            Cache<String, TransferableChatMessage> sessionsInChannel = heartbeatMap.getIfPresent(channelId);
-            if(sessionsInChannel != null) {
-                for(String sessionId : sessionsInChannel.asMap().keySet()) {
-                    TransferableChatMessage tcm = sessionsInChannel.getIfPresent(sessionId);
-                    String sessionKey = tcm.getId();
-                    try {
-                        Map<String, List<TransferableChatMessage>> channelMap = messageMap.get(sessionKey, () -> {
-                            return new HashMap<String, List<TransferableChatMessage>>();
-                        });
-    
-                        if(channelMap.get(channelId) == null) {
-                            channelMap.put(channelId, new ArrayList<TransferableChatMessage>());
-                        }
-                        channelMap.get(channelId).add(msg);
-    
-                        log.debug("Added chat message to channel={}, sessionKey={}", channelId, sessionKey);
-                    } catch(Exception e){
-                        log.warn("Failed to add chat message to channel={}, sessionKey={}", channelId, sessionKey);
-                    }
+        try {
+            long sequence = getChannelRing(channelId).publish(msg);
+            log.debug("Added chat message to channel={}, sequence={}", channelId, sequence);
+        } catch(Exception e){
+            log.warn("Failed to add chat message to channel={}", channelId, e);
+        }
+
+        Set<Consumer<TransferableChatMessage>> listeners = channelListeners.get(channelId);
+        if (listeners != null) {
+            for (Consumer<TransferableChatMessage> listener : listeners) {
+                try {
+                    listener.accept(msg);
+                } catch(Exception e){
+                    log.warn("Chat listener failed for channel={}", channelId, e);
                 }
             }
         }
     }
+
+    private ChatChannelRing getChannelRing(String channelId) throws ExecutionException {
+        return channelRings.get(channelId, () -> new ChatChannelRing(ringSize));
+    }
     
     /**
      * Set/Update the heartbeat for given sessionKey (indexed by channelId and sessionId)
@@ -1350,6 +1381,7 @@ public class ChatManagerImpl extends HibernateDaoSupport implements ChatManager,
             ret = TransferableChatMessage.HeartBeat(channelId, sessionKey);
             heartbeatMap.get(channelId, () -> {
                 return CacheBuilder.newBuilder()
+                        .concurrencyLevel(concurrencyLevel)
                         .expireAfterWrite(1, TimeUnit.HOURS)
                         .build();
             }).put(sessionId, ret);
@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.chat2.tool;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.chat2.model.ChatChannel;
+import org.sakaiproject.chat2.model.ChatManager;
+import org.sakaiproject.chat2.model.TransferableChatMessage;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.component.cover.ComponentManager;
+import org.sakaiproject.tool.api.SessionManager;
+
+/**
+ * Server-sent events stream telling the chat room of a browser when its channel has new or removed messages,
+ * so it can fetch them from chatData straight away rather than on its next poll. The stream only carries the
+ * notification, the messages still come from chatData so its permission checks, date formatting and presence
+ * all stay where they are. Streams are held asynchronously, they don't tie up a request thread while open, and
+ * written without blocking, so a browser that stops reading can't hold up the threads writing to the others. A
+ * browser that takes nothing for chat.push.writeTimeout is dropped, it reconnects once it is reading again.
+ *
+ * Enabled with chat.push.enabled, browsers fall back to polling if the stream can't be opened.
+ */
+@Slf4j
+public class ChatStreamServlet extends HttpServlet {
+
+   private ChatManager chatManager;
+   private SessionManager sessionManager;
+   private ScheduledExecutorService executor;
+   private long timeout;
+   private long keepAlive;
+   private long writeTimeout;
+
+   @Override
+   public void init() throws ServletException {
+      super.init();
+      chatManager = ComponentManager.get(ChatManager.class);
+      sessionManager = ComponentManager.get(SessionManager.class);
+      ServerConfigurationService serverConfigurationService = ComponentManager.get(ServerConfigurationService.class);
+      timeout = serverConfigurationService.getInt("chat.push.timeout", 300000);
+      keepAlive = serverConfigurationService.getInt("chat.push.keepAlive", 20000);
+      writeTimeout = serverConfigurationService.getInt("chat.push.writeTimeout", 30000);
+      executor = Executors.newScheduledThreadPool(serverConfigurationService.getInt("chat.push.threads", 2), r -> {
+         Thread thread = new Thread(r, "chat-stream");
+         thread.setDaemon(true);
+         return thread;
+      });
+   }
+
+   @Override
+   public void destroy() {
+      executor.shutdownNow();
+      super.destroy();
+   }
+
+   @Override
+   protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+      if (!chatManager.isPushEnabled()) {
+         resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+         return;
+      }
+      if (sessionManager.getCurrentSessionUserId() == null) {
+         resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+         return;
+      }
+
+      String channelId = req.getParameter("channelId");
+      ChatChannel channel = StringUtils.isBlank(channelId) ? null : chatManager.getChatChannel(channelId);
+      if (channel == null) {
+         resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+         return;
+      }
+      if (!chatManager.getCanReadMessage(channel)) {
+         resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+         return;
+      }
+
+      resp.setContentType("text/event-stream");
+      resp.setCharacterEncoding("UTF-8");
+      resp.setHeader("Cache-Control", "no-cache");
+      // stop nginx from buffering the stream
+      resp.setHeader("X-Accel-Buffering", "no");
+
+      AsyncContext async = req.startAsync();
+      async.setTimeout(timeout);
+      Stream stream = new Stream(async, channelId);
+      async.addListener(stream);
+      chatManager.addChannelListener(channelId, stream);
+      stream.open();
+   }
+
+   /**
+    * An open stream, updates of its channel are written on the executor so posting a message never waits on a browser.
+    * Events the browser can't take yet wait in unsent until the container calls onWritePossible.
+    */
+   private class Stream implements Consumer<TransferableChatMessage>, AsyncListener, WriteListener {
+
+      private final AsyncContext async;
+      private final String channelId;
+      private final AtomicBoolean pending = new AtomicBoolean();
+      private final AtomicBoolean closed = new AtomicBoolean();
+      private final StringBuilder unsent = new StringBuilder();
+      private ServletOutputStream out;
+      /** When the browser stopped taking what is written, 0 while it keeps up */
+      private long blockedSince;
+      private volatile ScheduledFuture<?> keepAliveTask;
+
+      private Stream(AsyncContext async, String channelId) {
+         this.async = async;
+         this.channelId = channelId;
+      }
+
+      private synchronized void open() throws IOException {
+         // browsers wait this long before reconnecting when the stream times out, it is written once the container
+         // says the stream is ready
+         unsent.append("retry: ").append(chatManager.getPollInterval()).append("\n\n");
+         out = async.getResponse().getOutputStream();
+         out.setWriteListener(this);
+         keepAliveTask = executor.scheduleWithFixedDelay(this::keepAlive, keepAlive, keepAlive, TimeUnit.MILLISECONDS);
+         if (closed.get()) {
+            keepAliveTask.cancel(false);
+         }
+      }
+
+      @Override
+      public void accept(TransferableChatMessage message) {
+         // updates that come while one is waiting to be written go out with it
+         if (pending.compareAndSet(false, true)) {
+            executor.execute(() -> {
+               pending.set(false);
+               write("event: update\ndata: " + channelId + "\n\n");
+            });
+         }
+      }
+
+      private synchronized void keepAlive() {
+         if (blockedSince > 0 && System.currentTimeMillis() - blockedSince >= writeTimeout) {
+            log.debug("Closing chat stream for channel {}, the browser has not read it for {} ms", channelId, writeTimeout);
+            close();
+            return;
+         }
+         write(": keepalive\n\n");
+      }
+
+      private synchronized void write(String event) {
+         if (closed.get()) {
+            return;
+         }
+         // the same event still waiting to go out covers this one
+         if (unsent.indexOf(event) < 0) {
+            unsent.append(event);
+         }
+         onWritePossible();
+      }
+
+      /**
+       * Write what is waiting for as long as the browser can take it without blocking
+       */
+      @Override
+      public synchronized void onWritePossible() {
+         if (closed.get() || out == null) {
+            return;
+         }
+         try {
+            while (out.isReady()) {
+               if (unsent.length() == 0) {
+                  out.flush();
+                  blockedSince = 0;
+                  return;
+               }
+               out.write(unsent.toString().getBytes(StandardCharsets.UTF_8));
+               unsent.setLength(0);
+            }
+            // the container calls onWritePossible again once the browser has taken what it has
+            if (blockedSince == 0) {
+               blockedSince = System.currentTimeMillis();
+            }
+         } catch (IOException | IllegalStateException e) {
+            log.debug("Closing chat stream for channel {}: {}", channelId, e.toString());
+            close();
+         }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+         log.debug("Closing chat stream for channel {}: {}", channelId, t.toString());
+         close();
+      }
+
+      private void close() {
+         if (release()) {
+            try {
+               async.complete();
+            } catch (IllegalStateException e) {
+               // already completed by the container
+            }
+         }
+      }
+
+      private boolean release() {
+         if (!closed.compareAndSet(false, true)) {
+            return false;
+         }
+         chatManager.removeChannelListener(channelId, this);
+         if (keepAliveTask != null) {
+            keepAliveTask.cancel(false);
+         }
+         return true;
+      }
+
+      @Override
+      public void onComplete(AsyncEvent event) {
+         release();
+      }
+
+      @Override
+      public void onTimeout(AsyncEvent event) {
+         close();
+      }
+
+      @Override
+      public void onError(AsyncEvent event) {
+         close();
+      }
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {
+      }
+   }
+}
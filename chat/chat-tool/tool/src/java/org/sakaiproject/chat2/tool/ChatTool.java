@@ -218,6 +218,14 @@ public class ChatTool {
    public int getPollInterval() {
 	   return getChatManager().getPollInterval();
    }
+
+   public boolean isPushEnabled() {
+	   return getChatManager().isPushEnabled();
+   }
+
+   public int getPushPollInterval() {
+	   return getChatManager().getPushPollInterval();
+   }
    
    //********************************************************************
    // Tool Process Actions
@@ -30,6 +30,10 @@ var chatscript = {
 	url_submit : "/direct/chat-message/",
 	keycode_enter : 13,
 	pollInterval : 5000,
+	url_stream : "/sakai-chat-tool/stream",
+	pushEnabled : false,
+	pushPollInterval : 30000,
+	eventSource : null,
 	currentChatChannelId : null,
 	timeoutVar : null,
 	pageVisibility : 'visible',
@@ -39,6 +43,7 @@ var chatscript = {
 		
 		me.updateShownText();
 		me.scrollChat();
+		me.openEventSource();
 		me.updateChatData();
 		
 		var textarea = $("#topForm\\:controlPanel\\:message");
@@ -114,9 +119,44 @@ var chatscript = {
   changePageVisibility : function(newVisibility) {
     this.pageVisibility = newVisibility;
     if (newVisibility == 'visible') {
+      this.openEventSource();
       this.updateChatData();
+    } else {
+      this.closeEventSource();
     }
   },
+	openEventSource : function() {
+		var me = this;
+		if (!this.pushEnabled || !window.EventSource || !this.currentChatChannelId || this.eventSource) {
+			return;
+		}
+		var params = $.param({
+			"siteId": portal.siteId,
+			"channelId": this.currentChatChannelId
+		});
+		this.eventSource = new EventSource(me.url_stream + "?" + params);
+		// fetch what was posted while the stream was being (re)opened
+		this.eventSource.onopen = function() {
+			me.doUpdateChatData();
+		};
+		this.eventSource.addEventListener("update", function() {
+			me.doUpdateChatData();
+		});
+		this.eventSource.onerror = function() {
+			// the browser reconnects by itself unless the stream was refused, then go back to polling
+			if (me.eventSource && me.eventSource.readyState == EventSource.CLOSED) {
+				me.closeEventSource();
+				me.pushEnabled = false;
+				me.updateChatData();
+			}
+		};
+	},
+	closeEventSource : function() {
+		if (this.eventSource != null) {
+			this.eventSource.close();
+			this.eventSource = null;
+		}
+	},
 	onAjaxError: function (xhr) {
 
 		var textarea = $("#topForm\\:controlPanel\\:message");
@@ -176,9 +216,10 @@ var chatscript = {
 		}
 		// If the tab is hidden, no use in firing AJAX requests for new chat data
 		if(this.pageVisibility != 'hidden') {
+			// with a stream open we only poll to keep our presence
 			this.timeoutVar = setTimeout(function() {
 				me.updateChatData();
-			}, this.pollInterval);
+			}, this.eventSource != null ? this.pushPollInterval : this.pollInterval);
 		}
 	},
 	doUpdateChatData : function() {
@@ -158,6 +158,8 @@
         <script type="text/javascript">
             chatscript.currentChatChannelId = "<h:outputText value="#{ChatTool.currentChatChannelId}" />";
             chatscript.pollInterval = "<h:outputText value="#{ChatTool.pollInterval}" />";
+            chatscript.pushEnabled = <h:outputText value="#{ChatTool.pushEnabled}" />;
+            chatscript.pushPollInterval = "<h:outputText value="#{ChatTool.pushPollInterval}" />";
             chatscript.init();
         </script>
 
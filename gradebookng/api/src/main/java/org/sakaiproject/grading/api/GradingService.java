@@ -812,6 +812,17 @@ public interface GradingService extends EntityProducer {
      */
     Map<String, CourseGradeTransferBean> getCourseGradeForStudents(String gradebookUid, List<String> userUuids, Map<String, Double> schema);
 
+    /**
+     * Get a number that changes whenever a score, comment, item, category or setting of the gradebook is saved
+     * on any server of the cluster. Changes made on another server arrive with its events, so they can take as
+     * long as those events to be seen here. Callers can use it to tell whether data they have kept about the
+     * gradebook is still current.
+     *
+     * @param gradebookUid
+     * @return the current version of the gradebook on this server
+     */
+    long getGradebookVersion(String gradebookUid);
+
     /**
      * Get a list of CourseSections that the current user has access to in the given gradebook. This is a combination of sections and groups
      * and is permission filtered.
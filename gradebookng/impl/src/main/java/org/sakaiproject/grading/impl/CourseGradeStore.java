@@ -0,0 +1,485 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.grading.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.grading.api.GradeMappingDefinition;
+import org.sakaiproject.grading.api.model.CourseGradeRecord;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the computed course grades of each gradebook by student, so that reading the course grades of a
+ * class doesn't recalculate every student's points, drop scores and category weights each time.
+ *
+ * GradingPersistenceManagerImpl invalidates the students whose scores change, or the whole gradebook when
+ * its assignments, categories or settings change. Invalidation happens straight away and again once the
+ * transaction completes, as readers in other transactions can still see the old rows until then. The
+ * students invalidated by a score change are then recalculated on a background thread.
+ *
+ * Score changes made on other nodes arrive as gradebook.updateItemScore events. Once a transaction that
+ * invalidated a whole gradebook, or touched it, commits, a gradebook.changed or gradebook.touched event is
+ * posted so the other nodes do the same. Changes that bypass the grading service are picked up once the
+ * cached grades are older than gradebook.coursegrade.cache.ttl.
+ *
+ * Every invalidation also bumps a version number per gradebook, which lets callers of
+ * {@link org.sakaiproject.grading.api.GradingService#getGradebookVersion(String)} keep their own data.
+ */
+@Slf4j
+public class CourseGradeStore implements Observer {
+
+    public static final String PROP_ENABLED = "gradebook.coursegrade.cache.enabled";
+    public static final String PROP_TTL = "gradebook.coursegrade.cache.ttl";
+
+    public static final String EVENT_UPDATE_ITEM_SCORE = "gradebook.updateItemScore";
+    public static final String EVENT_GRADEBOOK_CHANGED = "gradebook.changed";
+    public static final String EVENT_GRADEBOOK_TOUCHED = "gradebook.touched";
+    private static final String GRADEBOOK_RESOURCE_PREFIX = "/gradebook/";
+
+    @Autowired private EventTrackingService eventTrackingService;
+    @Autowired private ServerConfigurationService serverConfigurationService;
+
+    @Setter private PlatformTransactionManager transactionManager;
+
+    @Getter @Setter private boolean enabled = true;
+    /** How long, in seconds, a computed course grade is used for. 0 or less keeps it until it is invalidated */
+    @Getter @Setter private int ttl = 600;
+
+    /** Called with a gradebook uid and students to recalculate and put the course grades of those students */
+    @Setter private BiConsumer<String, Collection<String>> recalculator;
+
+    private final Map<String, GradebookGrades> gradebooks = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> pendingRecalculations = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private ScheduledExecutorService executor;
+    private TransactionTemplate transactionTemplate;
+
+    public void init() {
+
+        enabled = serverConfigurationService.getBoolean(PROP_ENABLED, enabled);
+        ttl = serverConfigurationService.getInt(PROP_TTL, ttl);
+        log.info("Course grade cache enabled: {}, ttl: {}s", enabled, ttl);
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "gradebook-course-grades");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(ttl, 60);
+        executor.scheduleWithFixedDelay(this::removeExpired, period, period, TimeUnit.SECONDS);
+
+        eventTrackingService.addObserver(this);
+    }
+
+    public void destroy() {
+
+        eventTrackingService.deleteObserver(this);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        gradebooks.clear();
+    }
+
+    /**
+     * Get the course grades of some students, calling the loader for those that aren't cached.
+     *
+     * @param gradebookUid the gradebook
+     * @param studentIds the students wanted
+     * @param loader computes the course grades of the students it's given, keyed by student
+     * @return the course grades of the students, keyed by student
+     */
+    public Map<String, CachedCourseGrade> getCourseGrades(String gradebookUid, Collection<String> studentIds,
+            Function<Collection<String>, Map<String, CachedCourseGrade>> loader) {
+
+        if (!enabled) {
+            return loader.apply(studentIds);
+        }
+
+        // the ticket and the entry have to be taken before the loader reads anything
+        long ticket = clock.get();
+        GradebookGrades grades = gradebookGrades(gradebookUid);
+
+        Map<String, CachedCourseGrade> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String studentId : studentIds) {
+            Slot slot = grades.students.get(studentId);
+            if (slot != null && slot.grade != null && !isExpired(slot.grade.computed, now)) {
+                found.put(studentId, slot.grade);
+            } else {
+                missing.add(studentId);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, CachedCourseGrade> loaded = loader.apply(missing);
+            loaded.forEach((studentId, grade) -> {
+                // don't keep a grade if the student has been invalidated since the ticket was taken
+                grades.students.compute(studentId, (k, slot) -> slot != null && slot.stamp > ticket ? slot : new Slot(slot != null ? slot.stamp : 0L, grade));
+            });
+            found.putAll(loaded);
+        }
+        log.debug("Course grades for {}: {} cached, {} computed", gradebookUid, found.size() - missing.size(), missing.size());
+        return found;
+    }
+
+    /**
+     * Whether the gradebook has any counted assignments, calling the loader if that isn't cached.
+     */
+    public boolean hasCountedAssignments(String gradebookUid, BooleanSupplier loader) {
+
+        if (!enabled) {
+            return loader.getAsBoolean();
+        }
+
+        GradebookGrades grades = gradebookGrades(gradebookUid);
+        Boolean counted = grades.hasCountedAssignments;
+        if (counted == null) {
+            counted = loader.getAsBoolean();
+            grades.hasCountedAssignments = counted;
+        }
+        return counted;
+    }
+
+    /**
+     * The grade map sorted for {@link org.sakaiproject.grading.api.model.GradeMapping#getMappedGrade(Map, Double)},
+     * sorted again only when the grade map given differs from the last one for the gradebook.
+     */
+    public Map<String, Double> getSortedGradeMap(String gradebookUid, Map<String, Double> gradeMap) {
+
+        if (!enabled) {
+            return GradeMappingDefinition.sortGradeMapping(gradeMap);
+        }
+
+        GradebookGrades grades = gradebookGrades(gradebookUid);
+        SortedGradeMap sorted = grades.sortedGradeMap;
+        if (sorted == null || !sorted.gradeMap.equals(gradeMap)) {
+            sorted = new SortedGradeMap(new HashMap<>(gradeMap),
+                    Collections.unmodifiableMap(GradeMappingDefinition.sortGradeMapping(gradeMap)));
+            grades.sortedGradeMap = sorted;
+        }
+        return sorted.sorted;
+    }
+
+    /**
+     * A number that changes each time something in the gradebook is invalidated, kept even when the cache is disabled.
+     */
+    public long getVersion(String gradebookUid) {
+        return versions.computeIfAbsent(gradebookUid, k -> new AtomicLong()).get();
+    }
+
+    /**
+     * Forget the course grades of some students and, once the current transaction commits, recalculate them.
+     */
+    public void invalidateStudents(String gradebookUid, Collection<String> studentIds) {
+
+        if (gradebookUid == null || studentIds.isEmpty()) {
+            return;
+        }
+
+        removeStudents(gradebookUid, studentIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingInvalidations().students.computeIfAbsent(gradebookUid, k -> new HashSet<>()).addAll(studentIds);
+        }
+    }
+
+    /**
+     * Forget all the course grades of a gradebook, here and, once the current transaction commits, on the other nodes.
+     */
+    public void invalidateGradebook(String gradebookUid) {
+
+        if (gradebookUid == null) {
+            return;
+        }
+
+        removeGradebook(gradebookUid);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingInvalidations().gradebooks.add(gradebookUid);
+        } else {
+            postEvent(EVENT_GRADEBOOK_CHANGED, gradebookUid);
+        }
+    }
+
+    /**
+     * Change the version of a gradebook for something that is shown with its grades but is not part of any course grade,
+     * such as a comment, so the course grades are kept. The version changes again once the current transaction completes.
+     */
+    public void touchGradebook(String gradebookUid) {
+
+        if (gradebookUid == null) {
+            return;
+        }
+
+        changed(gradebookUid);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingInvalidations().touched.add(gradebookUid);
+        } else {
+            postEvent(EVENT_GRADEBOOK_TOUCHED, gradebookUid);
+        }
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+
+        if (!(arg instanceof Event)) {
+            return;
+        }
+
+        Event event = (Event) arg;
+        // the grading service's events, gradebookng posts the same event with resources under /gradebookng/
+        if (EVENT_UPDATE_ITEM_SCORE.equals(event.getEvent())
+                && event.getResource() != null && event.getResource().startsWith(GRADEBOOK_RESOURCE_PREFIX)) {
+            // /gradebook/{uid}/{assignment name}/{student}/{points}/student, the assignment name may contain a /
+            String[] parts = event.getResource().split("/");
+            if (parts.length >= 7) {
+                removeStudents(parts[2], Collections.singleton(parts[parts.length - 3]));
+            }
+        } else if (event.getResource() != null && event.getResource().startsWith(GRADEBOOK_RESOURCE_PREFIX)) {
+            // /gradebook/{uid}, this node's own events come back too and just change the version once more
+            String gradebookUid = event.getResource().substring(GRADEBOOK_RESOURCE_PREFIX.length());
+            if (EVENT_GRADEBOOK_CHANGED.equals(event.getEvent())) {
+                removeGradebook(gradebookUid);
+            } else if (EVENT_GRADEBOOK_TOUCHED.equals(event.getEvent())) {
+                changed(gradebookUid);
+            }
+        }
+    }
+
+    private void postEvent(String event, String gradebookUid) {
+
+        try {
+            eventTrackingService.post(eventTrackingService.newEvent(event, GRADEBOOK_RESOURCE_PREFIX + gradebookUid, true));
+        } catch (Exception e) {
+            log.warn("Could not post {} for {}: {}", event, gradebookUid, e.toString());
+        }
+    }
+
+    private void removeStudents(String gradebookUid, Collection<String> studentIds) {
+
+        changed(gradebookUid);
+        GradebookGrades grades = gradebooks.get(gradebookUid);
+        if (grades != null) {
+            for (String studentId : studentIds) {
+                grades.students.compute(studentId, (k, slot) -> new Slot(clock.incrementAndGet(), null));
+            }
+        }
+    }
+
+    private void removeGradebook(String gradebookUid) {
+
+        changed(gradebookUid);
+        gradebooks.remove(gradebookUid);
+    }
+
+    private void changed(String gradebookUid) {
+        versions.computeIfAbsent(gradebookUid, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    private GradebookGrades gradebookGrades(String gradebookUid) {
+
+        GradebookGrades grades = gradebooks.computeIfAbsent(gradebookUid, k -> new GradebookGrades());
+        grades.lastAccessed = System.currentTimeMillis();
+        return grades;
+    }
+
+    private PendingInvalidations pendingInvalidations() {
+
+        PendingInvalidations pending = (PendingInvalidations) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingInvalidations();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        return pending;
+    }
+
+    private void recalculateLater(String gradebookUid, Collection<String> studentIds) {
+
+        if (recalculator == null || !gradebooks.containsKey(gradebookUid)) {
+            return;
+        }
+
+        // a single task picks up all the students of a gradebook queued before it runs
+        boolean[] queued = new boolean[1];
+        pendingRecalculations.compute(gradebookUid, (k, pending) -> {
+            if (pending == null) {
+                pending = ConcurrentHashMap.newKeySet();
+                queued[0] = true;
+            }
+            pending.addAll(studentIds);
+            return pending;
+        });
+        if (queued[0]) {
+            try {
+                executor.execute(() -> recalculate(gradebookUid));
+            } catch (Exception e) {
+                pendingRecalculations.remove(gradebookUid);
+                log.warn("Could not queue the recalculation of course grades for {}: {}", gradebookUid, e.toString());
+            }
+        }
+    }
+
+    private void recalculate(String gradebookUid) {
+
+        Set<String> studentIds = pendingRecalculations.remove(gradebookUid);
+        if (studentIds == null || studentIds.isEmpty() || !gradebooks.containsKey(gradebookUid)) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> recalculator.accept(gradebookUid, new ArrayList<>(studentIds)));
+            log.debug("Recalculated {} course grades for {}", studentIds.size(), gradebookUid);
+        } catch (Exception e) {
+            log.warn("Could not recalculate course grades for {}: {}", gradebookUid, e.toString());
+        }
+    }
+
+    private void removeExpired() {
+
+        if (ttl <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        gradebooks.entrySet().removeIf(e -> isExpired(e.getValue().lastAccessed, now));
+    }
+
+    private boolean isExpired(long time, long now) {
+        return ttl > 0 && now - time > ttl * 1000L;
+    }
+
+    /**
+     * A student's course grade, without the grade mapping which is applied when it is read.
+     */
+    @Getter
+    public static class CachedCourseGrade {
+
+        private final Long courseGradeId;
+        private final String enteredGrade;
+        private final Date dateRecorded;
+        private final Double enteredPoints;
+        private final Double autoCalculatedGrade;
+        private final Double pointsEarned;
+        private final Double totalPointsPossible;
+        private final long computed = System.currentTimeMillis();
+
+        public CachedCourseGrade(CourseGradeRecord record) {
+
+            courseGradeId = record.getCourseGrade().getId();
+            enteredGrade = record.getEnteredGrade();
+            dateRecorded = record.getDateRecorded();
+            enteredPoints = record.getEnteredPoints();
+            autoCalculatedGrade = record.getAutoCalculatedGrade();
+            pointsEarned = record.getPointsEarned();
+            totalPointsPossible = record.getTotalPointsPossible();
+        }
+    }
+
+    private static class GradebookGrades {
+
+        private final Map<String, Slot> students = new ConcurrentHashMap<>();
+        private volatile Boolean hasCountedAssignments;
+        private volatile SortedGradeMap sortedGradeMap;
+        private volatile long lastAccessed;
+    }
+
+    /**
+     * A student's course grade, null once invalidated, and the clock value of the student's last invalidation.
+     */
+    private static class Slot {
+
+        private final long stamp;
+        private final CachedCourseGrade grade;
+
+        private Slot(long stamp, CachedCourseGrade grade) {
+            this.stamp = stamp;
+            this.grade = grade;
+        }
+    }
+
+    private static class SortedGradeMap {
+
+        private final Map<String, Double> gradeMap;
+        private final Map<String, Double> sorted;
+
+        private SortedGradeMap(Map<String, Double> gradeMap, Map<String, Double> sorted) {
+            this.gradeMap = gradeMap;
+            this.sorted = sorted;
+        }
+    }
+
+    /**
+     * The invalidations made in a transaction, made again when it completes.
+     */
+    private class PendingInvalidations implements TransactionSynchronization {
+
+        private final Map<String, Set<String>> students = new HashMap<>();
+        private final Set<String> gradebooks = new HashSet<>();
+        private final Set<String> touched = new HashSet<>();
+
+        @Override
+        public void afterCompletion(int status) {
+
+            TransactionSynchronizationManager.unbindResourceIfPossible(CourseGradeStore.this);
+            touched.forEach(CourseGradeStore.this::changed);
+            gradebooks.forEach(CourseGradeStore.this::removeGradebook);
+            students.forEach(CourseGradeStore.this::removeStudents);
+            if (status == STATUS_COMMITTED) {
+                students.forEach((gradebookUid, studentIds) -> {
+                    if (!gradebooks.contains(gradebookUid)) {
+                        recalculateLater(gradebookUid, studentIds);
+                    }
+                });
+                // the other nodes learn of score changes from the score events, and of the rest from these
+                gradebooks.forEach(gradebookUid -> postEvent(EVENT_GRADEBOOK_CHANGED, gradebookUid));
+                touched.stream().filter(gradebookUid -> !gradebooks.contains(gradebookUid))
+                        .forEach(gradebookUid -> postEvent(EVENT_GRADEBOOK_TOUCHED, gradebookUid));
+            }
+        }
+    }
+}
@@ -16,17 +16,20 @@
 package org.sakaiproject.grading.impl;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
 import org.sakaiproject.grading.api.GradingPersistenceManager;
+import org.sakaiproject.grading.api.model.AbstractGradeRecord;
 import org.sakaiproject.grading.api.model.AssignmentGradeRecord;
 import org.sakaiproject.grading.api.model.Category;
 import org.sakaiproject.grading.api.model.Comment;
 import org.sakaiproject.grading.api.model.CourseGrade;
 import org.sakaiproject.grading.api.model.CourseGradeRecord;
+import org.sakaiproject.grading.api.model.GradableObject;
 import org.sakaiproject.grading.api.model.Gradebook;
 import org.sakaiproject.grading.api.model.GradebookAssignment;
 import org.sakaiproject.grading.api.model.GradebookProperty;
@@ -69,7 +72,11 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     @Autowired protected LetterGradePercentMappingRepository letterGradePercentMappingRepository;
     @Autowired protected PermissionRepository permissionRepository;
 
+    @Autowired protected CourseGradeStore courseGradeStore;
+
     public Gradebook saveGradebook(Gradebook gradebook) {
+
+        courseGradeStore.invalidateGradebook(gradebook.getUid());
         return gradebookRepository.save(gradebook);
     }
 
@@ -97,6 +104,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
         gradeMappingRepository.deleteAll(gradeMappingRepository.findByGradebook_Uid(gradebookUid));
 
         gradebookRepository.delete(gradebook);
+
+        courseGradeStore.invalidateGradebook(gradebookUid);
     }
 
     public Optional<Gradebook> getGradebook(String gradebookUid) {
@@ -108,6 +117,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public CourseGrade saveCourseGrade(CourseGrade courseGrade) {
+
+        invalidateGradebook(courseGrade);
         return courseGradeRepository.save(courseGrade);
     }
 
@@ -152,6 +163,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public GradebookAssignment saveAssignment(GradebookAssignment assignment) {
+
+        invalidateGradebook(assignment);
         return gradebookAssignmentRepository.save(assignment);
     }
 
@@ -198,6 +211,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public void deleteAssignment(GradebookAssignment assignment) {
+
+        invalidateGradebook(assignment);
         gradebookAssignmentRepository.delete(assignment);
     }
 
@@ -206,6 +221,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public GradebookAssignment saveGradebookAssignment(GradebookAssignment assignment) {
+
+        invalidateGradebook(assignment);
         return gradebookAssignmentRepository.save(assignment);
     }
 
@@ -217,10 +234,18 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
 
     public void deleteInternalComment(String studentUid, String gradebookUid, Long assignmentId) {
 
-        getInternalComment(studentUid, gradebookUid, assignmentId).ifPresent(commentRepository::delete);
+        getInternalComment(studentUid, gradebookUid, assignmentId).ifPresent(comment -> {
+            courseGradeStore.touchGradebook(gradebookUid);
+            commentRepository.delete(comment);
+        });
     }
 
     public Comment saveComment(Comment comment) {
+
+        GradableObject gradableObject = comment.getGradableObject();
+        if (gradableObject != null && gradableObject.getGradebook() != null) {
+            courseGradeStore.touchGradebook(gradableObject.getGradebook().getUid());
+        }
         return commentRepository.save(comment);
     }
 
@@ -249,6 +274,10 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public Category saveCategory(Category category) {
+
+        if (category.getGradebook() != null) {
+            courseGradeStore.invalidateGradebook(category.getGradebook().getUid());
+        }
         return categoryRepository.save(category);
     }
 
@@ -305,6 +334,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public CourseGradeRecord saveCourseGradeRecord(CourseGradeRecord record) {
+
+        invalidateStudent(record);
         return courseGradeRecordRepository.save(record);
     }
 
@@ -349,6 +380,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public AssignmentGradeRecord saveAssignmentGradeRecord(AssignmentGradeRecord record) {
+
+        invalidateStudent(record);
         return assignmentGradeRecordRepository.save(record);
     }
 
@@ -359,6 +392,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     } 
 
     public int deleteGradeRecordsForAssignment(GradebookAssignment assignment) {
+
+        invalidateGradebook(assignment);
         return assignmentGradeRecordRepository.deleteByGradableObject(assignment);
     }
 
@@ -385,4 +420,19 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     public GradebookProperty saveGradebookProperty(GradebookProperty property) {
         return gradebookPropertyRepository.save(property);
     }
+
+    private void invalidateGradebook(GradableObject gradableObject) {
+
+        if (gradableObject.getGradebook() != null) {
+            courseGradeStore.invalidateGradebook(gradableObject.getGradebook().getUid());
+        }
+    }
+
+    private void invalidateStudent(AbstractGradeRecord record) {
+
+        GradableObject gradableObject = record.getGradableObject();
+        if (gradableObject != null && gradableObject.getGradebook() != null) {
+            courseGradeStore.invalidateStudents(gradableObject.getGradebook().getUid(), Collections.singleton(record.getStudentId()));
+        }
+    }
 }
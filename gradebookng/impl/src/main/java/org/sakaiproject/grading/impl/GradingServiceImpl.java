@@ -102,6 +102,7 @@ import org.sakaiproject.grading.api.model.LetterGradeMapping;
 import org.sakaiproject.grading.api.model.LetterGradePercentMapping;
 import org.sakaiproject.grading.api.model.LetterGradePlusMinusMapping;
 import org.sakaiproject.grading.api.model.PassNotPassMapping;
+import org.sakaiproject.grading.impl.CourseGradeStore.CachedCourseGrade;
 import org.sakaiproject.section.api.SectionAwareness;
 import org.sakaiproject.section.api.coursemanagement.CourseSection;
 import org.sakaiproject.section.api.coursemanagement.EnrollmentRecord;
@@ -142,6 +143,7 @@ public class GradingServiceImpl implements GradingService {
     public static final String PROP_ASSIGNMENT_STATS_DISPLAYED = "gradebook.stats.assignments.displayed";
     public static final String PROP_COURSE_GRADE_STATS_DISPLAYED = "gradebook.stats.coursegrade.displayed";
 
+    @Autowired private CourseGradeStore courseGradeStore;
     @Autowired private EventTrackingService eventTrackingService;
     @Autowired private EntityManager entityManager;
     @Autowired private GradingAuthz gradingAuthz;
@@ -3273,20 +3275,21 @@ public class GradingServiceImpl implements GradingService {
                 return rval;
             }
 
-            final List<GradebookAssignment> assignments = getAssignmentsCounted(gradebook.getId());
+            final boolean hasCountedAssignments = courseGradeStore.hasCountedAssignments(gradebookUid,
+                    () -> !getAssignmentsCounted(gradebook.getId()).isEmpty());
 
             // this takes care of drop/keep scores
-            final List<CourseGradeRecord> gradeRecords = getPointsEarnedCourseGradeRecords(getCourseGrade(gradebook.getId()), userUuids);
+            final Map<String, CachedCourseGrade> courseGrades = getCachedCourseGrades(gradebook, userUuids);
 
             // gradeMap MUST be sorted for the grade mapping to apply correctly
-            final Map<String, Double> sortedGradeMap = GradeMappingDefinition.sortGradeMapping(gradeMap);
+            final Map<String, Double> sortedGradeMap = courseGradeStore.getSortedGradeMap(gradebookUid, gradeMap);
 
-            gradeRecords.forEach(gr -> {
+            courseGrades.forEach((studentUuid, gr) -> {
 
                 final CourseGradeTransferBean cg = new CourseGradeTransferBean();
 
                 // ID of the course grade item
-                cg.setId(gr.getCourseGrade().getId());
+                cg.setId(gr.getCourseGradeId());
 
                 // set entered grade
                 cg.setEnteredGrade(gr.getEnteredGrade());
@@ -3297,7 +3300,7 @@ public class GradingServiceImpl implements GradingService {
                 // set entered points
                 cg.setEnteredPoints(gr.getEnteredPoints());
 
-                if (!assignments.isEmpty()) {
+                if (hasCountedAssignments) {
 
                     boolean showCalculatedGrade = serverConfigurationService.getBoolean("gradebook.coursegrade.showCalculatedGrade", true);
 
@@ -3329,7 +3332,7 @@ public class GradingServiceImpl implements GradingService {
                     cg.setPointsEarned(gr.getPointsEarned()); // synonymous with gradeRecord.getCalculatedPointsEarned()
                     cg.setTotalPointsPossible(gr.getTotalPointsPossible());
                 }
-                rval.put(gr.getStudentId(), cg);
+                rval.put(studentUuid, cg);
             });
         } catch (final Exception e) {
             log.error("Error in getCourseGradeForStudents: {}", e.toString());
@@ -3337,6 +3340,26 @@ public class GradingServiceImpl implements GradingService {
         return rval;
     }
 
+    @Override
+    public long getGradebookVersion(final String gradebookUid) {
+        return courseGradeStore.getVersion(gradebookUid);
+    }
+
+    /**
+     * Get the course grades of the students from the course grade store, calculating the ones it doesn't have.
+     * No permission checks are made, callers have to make them.
+     */
+    private Map<String, CachedCourseGrade> getCachedCourseGrades(final Gradebook gradebook, final Collection<String> studentUuids) {
+
+        return courseGradeStore.getCourseGrades(gradebook.getUid(), studentUuids,
+                missing -> getPointsEarnedCourseGradeRecords(getCourseGrade(gradebook.getId()), missing).stream()
+                        .collect(Collectors.toMap(CourseGradeRecord::getStudentId, CachedCourseGrade::new, (a, b) -> a)));
+    }
+
+    private void recalculateCourseGrades(final String gradebookUid, final Collection<String> studentUuids) {
+        getCachedCourseGrades(getGradebook(gradebookUid), studentUuids);
+    }
+
     @Override
     public List<CourseSection> getViewableSections(final String gradebookUid) {
 
@@ -3874,6 +3897,7 @@ public class GradingServiceImpl implements GradingService {
 
     public void init() {
         log.debug("INIT");
+        courseGradeStore.setRecalculator(this::recalculateCourseGrades);
     }
 
     public void destroy() {
@@ -30,6 +30,7 @@ import java.time.temporal.ChronoUnit;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.event.api.Event;
 import org.sakaiproject.grading.api.Assignment;
 import org.sakaiproject.grading.api.AssessmentNotFoundException;
 import org.sakaiproject.grading.api.CategoryDefinition;
@@ -47,6 +48,7 @@ import org.sakaiproject.grading.api.model.GradingEvent;
 import org.sakaiproject.grading.api.model.LetterGradePercentMapping;
 import org.sakaiproject.grading.api.repository.CourseGradeRepository;
 import org.sakaiproject.grading.api.repository.LetterGradePercentMappingRepository;
+import org.sakaiproject.grading.impl.CourseGradeStore;
 import org.sakaiproject.grading.impl.GradingServiceImpl;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
@@ -79,6 +81,7 @@ import org.junit.runner.RunWith;
 public class GradingServiceTests extends AbstractTransactionalJUnit4SpringContextTests {
 
     @Autowired private CourseGradeRepository courseGradeRepository;
+    @Autowired private CourseGradeStore courseGradeStore;
     @Autowired private EntityManager entityManager;
     @Autowired private GradingService gradingService;
     @Autowired private LetterGradePercentMappingRepository letterGradePercentMappingRepository;
@@ -428,6 +431,51 @@ public class GradingServiceTests extends AbstractTransactionalJUnit4SpringContex
         assertNull(commentDefinition);
     }
 
+    @Test
+    public void assignmentScoreCommentChangesGradebookVersion() {
+
+        Gradebook gradebook = createGradebook();
+        Long ass1Id = createAssignment1(gradebook);
+
+        // the grades view reuses the grades it has read while the version is unchanged
+        long version = gradingService.getGradebookVersion(gradebook.getUid());
+        gradingService.setAssignmentScoreComment(gradebook.getUid(), ass1Id, user1, "Great!");
+        assertNotEquals(version, gradingService.getGradebookVersion(gradebook.getUid()));
+
+        assertEquals("Great!", gradingService.getAssignmentScoreComment(gradebook.getUid(), ass1Id, user1).getCommentText());
+
+        version = gradingService.getGradebookVersion(gradebook.getUid());
+        gradingService.setAssignmentScoreComment(gradebook.getUid(), ass1Id, user1, "Good");
+        assertNotEquals(version, gradingService.getGradebookVersion(gradebook.getUid()));
+        assertEquals("Good", gradingService.getAssignmentScoreComment(gradebook.getUid(), ass1Id, user1).getCommentText());
+
+        version = gradingService.getGradebookVersion(gradebook.getUid());
+        gradingService.deleteAssignmentScoreComment(gradebook.getUid(), ass1Id, user1);
+        assertNotEquals(version, gradingService.getGradebookVersion(gradebook.getUid()));
+        assertNull(gradingService.getAssignmentScoreComment(gradebook.getUid(), ass1Id, user1));
+    }
+
+    @Test
+    public void otherServersChangesChangeGradebookVersion() {
+
+        Gradebook gradebook = createGradebook();
+
+        // a category, item or setting change made on another server
+        long version = gradingService.getGradebookVersion(gradebook.getUid());
+        courseGradeStore.update(null, gradebookEvent(CourseGradeStore.EVENT_GRADEBOOK_CHANGED, "/gradebook/" + gradebook.getUid()));
+        assertNotEquals(version, gradingService.getGradebookVersion(gradebook.getUid()));
+
+        // a comment saved on another server
+        version = gradingService.getGradebookVersion(gradebook.getUid());
+        courseGradeStore.update(null, gradebookEvent(CourseGradeStore.EVENT_GRADEBOOK_TOUCHED, "/gradebook/" + gradebook.getUid()));
+        assertNotEquals(version, gradingService.getGradebookVersion(gradebook.getUid()));
+
+        // another gradebook's change
+        version = gradingService.getGradebookVersion(gradebook.getUid());
+        courseGradeStore.update(null, gradebookEvent(CourseGradeStore.EVENT_GRADEBOOK_CHANGED, "/gradebook/" + gradebook.getUid() + "-other"));
+        assertEquals(version, gradingService.getGradebookVersion(gradebook.getUid()));
+    }
+
     @Test
     public void courseGradeComment() {
         Gradebook gradebook = createGradebook();
@@ -591,6 +639,42 @@ public class GradingServiceTests extends AbstractTransactionalJUnit4SpringContex
         assertEquals("20.0", grades.get(user1).getCalculatedGrade());
     }
 
+    @Test
+    public void getCachedCourseGradeForStudents() {
+
+        courseGradeStore.setEnabled(true);
+        courseGradeStore.setTtl(600);
+        try {
+            Gradebook gradebook = createGradebook();
+            Long assId = createAssignment1(gradebook);
+
+            Map<String, Double> gradeMapping = new HashMap<>();
+            gradeMapping.put(user1, 3.0D);
+
+            Map<String, CourseGradeTransferBean> grades = gradingService.getCourseGradeForStudents(gradebook.getUid(), Arrays.asList(user1), gradeMapping);
+            assertNull(grades.get(user1).getCalculatedGrade());
+
+            // A score change invalidates the student
+            gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), assId, user1, "3.0", null);
+            grades = gradingService.getCourseGradeForStudents(gradebook.getUid(), Arrays.asList(user1), gradeMapping);
+            assertEquals("20.0", grades.get(user1).getCalculatedGrade());
+
+            gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), assId, user1, "6.0", null);
+            grades = gradingService.getCourseGradeForStudents(gradebook.getUid(), Arrays.asList(user1), gradeMapping);
+            assertEquals("40.0", grades.get(user1).getCalculatedGrade());
+
+            // A change to the assignment invalidates the whole gradebook
+            Assignment updated = gradingService.getAssignment(gradebook.getUid(), assId);
+            updated.setPoints(30D);
+            gradingService.updateAssignment(gradebook.getUid(), assId, updated);
+            grades = gradingService.getCourseGradeForStudents(gradebook.getUid(), Arrays.asList(user1, user2), gradeMapping);
+            assertEquals("20.0", grades.get(user1).getCalculatedGrade());
+            assertNull(grades.get(user2).getCalculatedGrade());
+        } finally {
+            courseGradeStore.setEnabled(false);
+        }
+    }
+
     @Test
     public void getGradesWithoutCommentsForStudentsForItems() {
 
@@ -723,6 +807,14 @@ public class GradingServiceTests extends AbstractTransactionalJUnit4SpringContex
         return gradingService.addGradebook(siteId);
     }
 
+    private Event gradebookEvent(String name, String resource) {
+
+        Event event = mock(Event.class);
+        when(event.getEvent()).thenReturn(name);
+        when(event.getResource()).thenReturn(resource);
+        return event;
+    }
+
     private void switchToInstructor() {
 
         when(sessionManager.getCurrentSessionUserId()).thenReturn(instructor);
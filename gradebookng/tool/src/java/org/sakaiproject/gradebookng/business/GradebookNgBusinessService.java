@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -107,6 +108,9 @@ import org.sakaiproject.grading.api.PermissionDefinition;
 import org.sakaiproject.grading.api.SortType;
 import org.sakaiproject.grading.api.model.Gradebook;
 import org.sakaiproject.grading.api.model.GradingEvent;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.SimpleConfiguration;
 import org.sakaiproject.site.api.Group;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
@@ -191,6 +195,9 @@ public class GradebookNgBusinessService {
 	
 	@Setter
 	private TaskService taskService;
+
+	@Setter
+	private MemoryService memoryService;
 	
 
 	public static final String GB_PREF_KEY = "GBNG-";
@@ -201,6 +208,18 @@ public class GradebookNgBusinessService {
 	private static final String SAK_PROP_ALLOW_STUDENTS_TO_COMPARE_GRADES = "gradebookng.allowStudentsToCompareGradesWithClassmates";
 	private static final Boolean SAK_PROP_ALLOW_STUDENTS_TO_COMPARE_GRADES_DEFAULT = false;
 
+	private static final String SAK_PROP_GRADE_MATRIX_CACHE = "gradebookng.gradeMatrix.cache.enabled";
+	private static final String GRADE_MATRIX_CACHE = "org.sakaiproject.gradebookng.business.GradebookNgBusinessService.gradeMatrixCache";
+
+	// grade matrices of instructors by gradebook uid, null if disabled
+	private Cache<String, GbGradeMatrix> gradeMatrixCache;
+
+	public void init() {
+		if (serverConfigService.getBoolean(SAK_PROP_GRADE_MATRIX_CACHE, true)) {
+			gradeMatrixCache = memoryService.createCache(GRADE_MATRIX_CACHE, new SimpleConfiguration<>(500, 300, 0));
+		}
+	}
+
 	/**
 	 * Get a list of all users in the current site that can have grades
 	 *
@@ -1048,11 +1067,11 @@ public class GradebookNgBusinessService {
 		stopwatch.timeWithContext("buildGradeMatrix", "putCourseGradesInMatrix", stopwatch.getTime());
 
 		// get assignments and categories
-		putAssignmentsAndCategoryItemsInMatrix(matrix, gbStudents, studentUuids, assignments, gradebook, currentUserUuid, role, settings);
+		final GbGradeMatrix gradeMatrix = putAssignmentsAndCategoryItemsInMatrix(matrix, gbStudents, studentUuids, assignments, gradebook, currentUserUuid, role, settings);
 		stopwatch.timeWithContext("buildGradeMatrix", "putAssignmentsAndCategoryItemsInMatrix", stopwatch.getTime());
 
 		// sorting
-		List<GbStudentGradeInfo> items = sortGradeMatrix(matrix, settings);
+		List<GbStudentGradeInfo> items = sortGradeMatrix(matrix, gradeMatrix, settings);
 		stopwatch.timeWithContext("buildGradeMatrix", "sortGradeMatrix", stopwatch.getTime());
 
 		return items;
@@ -1101,11 +1120,11 @@ public class GradebookNgBusinessService {
 		stopwatch.timeWithContext("buildGradeMatrixForImportExport", "putCourseGradesInMatrix", stopwatch.getTime());
 
 		// ------------- Assignments -------------
-		putAssignmentsAndCategoryItemsInMatrix(matrix, gbStudents, studentUUIDs, assignments, gradebook, currentUserUuid, role, settings);
+		final GbGradeMatrix gradeMatrix = putAssignmentsAndCategoryItemsInMatrix(matrix, gbStudents, studentUUIDs, assignments, gradebook, currentUserUuid, role, settings);
 		stopwatch.timeWithContext("buildGradeMatrixForImportExport", "putAssignmentsAndCategoryItemsInMatrix", stopwatch.getTime());
 
 		// ------------- Sorting -------------
-		List<GbStudentGradeInfo> items = sortGradeMatrix(matrix, settings);
+		List<GbStudentGradeInfo> items = sortGradeMatrix(matrix, gradeMatrix, settings);
 		stopwatch.timeWithContext("buildGradeMatrixForImportExport", "sortGradeMatrix", stopwatch.getTime());
 
 		return items;
@@ -1331,8 +1350,9 @@ public class GradebookNgBusinessService {
 	 * @param currentUserUuid
 	 * @param role the current user's role
 	 * @param settings the GradebookUiSettings instance associated with the user's session; used to determine whether the context is anonymous. If null, all grading data will be retrieved without any anonymous aware filtering
+	 * @return the columnar grade matrix the grades were read from, which can be used to sort the students
 	 */
-	public void putAssignmentsAndCategoryItemsInMatrix(Map<String, GbStudentGradeInfo> matrix, List<GbUser> gbStudents, List<String> studentUuids, List<Assignment> assignments,
+	public GbGradeMatrix putAssignmentsAndCategoryItemsInMatrix(Map<String, GbStudentGradeInfo> matrix, List<GbUser> gbStudents, List<String> studentUuids, List<Assignment> assignments,
 														Gradebook gradebook, String currentUserUuid, GbRole role, GradebookUiSettings settings) {
 
 		// Ensure the matrix is populated with GbStudentGradeInfo instances for each student
@@ -1363,6 +1383,10 @@ public class GradebookNgBusinessService {
 		// building the category list
 		final Map<Long, Set<Long>> categoryAssignments = new TreeMap<>();
 
+		// the grades come from the columnar matrix, which may already have some of the columns
+		final GbGradeMatrix gradeMatrix = getGradeMatrix(gradebook, studentUuids, role);
+		final List<Long> assignmentIds = new ArrayList<>();
+
 		// iterate over assignments and get the grades for each
 		// note, the returned list only includes entries where there is a grade
 		// for the user
@@ -1380,94 +1404,63 @@ public class GradebookNgBusinessService {
 				if (!categoryIds.isEmpty() && categoryId != null && !categoryIds.contains(categoryId)) {
 					continue;
 				}
-
-				// TA stub out. So that we can support 'per grade' permissions for a
-				// TA, we need a stub record for every student
-				// This is because getGradesForStudentsForItem only returns records
-				// where there is a grade (even if blank)
-				// So this iteration for TAs allows the matrix to be fully
-				// populated.
-				// This is later updated to be a real grade enry if there is one.
-				for (final GbUser student : gbStudents) {
-					final GbStudentGradeInfo sg = matrix.get(student.getUserUuid());
-					sg.addGrade(assignment.getId(), new GbGradeInfo(null));
-				}
 			}
+			assignmentIds.add(assignmentId);
 
 			// build the category map (if assignment is categorised)
 			if (categoryId != null) {
-				Set<Long> values;
-				if (categoryAssignments.containsKey(categoryId)) {
-					values = categoryAssignments.get(categoryId);
-					values.add(assignmentId);
-				} else {
-					values = new HashSet<>();
-					values.add(assignmentId);
-				}
-				categoryAssignments.put(categoryId, values);
+				categoryAssignments.computeIfAbsent(categoryId, id -> new HashSet<>()).add(assignmentId);
 			}
 
-			// get grades
-			final List<GradeDefinition> defs = this.gradingService.getGradesForStudentsForItem(gradebook.getUid(), assignment.getId(), studentUuids);
+			if (gradeMatrix.hasAssignment(assignmentId)) {
+				continue;
+			}
 
-			// iterate the definitions returned and update the record for each
-			// student with the grades
-			for (final GradeDefinition def : defs) {
-				final GbStudentGradeInfo sg = matrix.get(def.getStudentUid());
+			// get grades
+			final List<GradeDefinition> defs = this.gradingService.getGradesForStudentsForItem(gradebook.getUid(), assignmentId, gradeMatrix.getStudentUuids());
 
-				if (sg == null) {
-					log.warn("No matrix entry seeded for: {}. This user may have been removed from the site", def.getStudentUid());
-				} else {
-					// this will overwrite the stub entry for the TA matrix if
-					// need be
-					sg.addGrade(assignment.getId(), new GbGradeInfo(def));
-				}
+			// TA stub out. So that we can support 'per grade' permissions for a
+			// TA, we need a stub record for every student
+			// This is because getGradesForStudentsForItem only returns records
+			// where there is a grade (even if blank)
+			final int skipped = gradeMatrix.putGrades(assignmentId, defs, role == GbRole.TA);
+			if (skipped > 0) {
+				log.warn("No matrix entry seeded for {} students with grades in {}. These users may have been removed from the site", skipped, assignmentId);
 			}
 		}
 
 		// build category columns
+		final boolean includeNonReleasedItems = (role == GbRole.TA || role == GbRole.INSTRUCTOR);
 		for (final CategoryDefinition category : categories) {
 
-			Long categoryId = category.getId();
+			final Long categoryId = category.getId();
 
 			// use the category mappings for faster lookup of the assignmentIds
 			// and grades in the category
 			final Set<Long> categoryAssignmentIds = categoryAssignments.get(categoryId);
 
 			// if there are no assignments in the category (ie its a new category) this will be null, so skip
-			if (categoryAssignmentIds != null) {
-				for (final GbUser student : gbStudents) {
-					final GbStudentGradeInfo sg = matrix.get(student.getUserUuid());
-
-					// get grades
-					final Map<Long, GbGradeInfo> grades = sg.getGrades();
+			if (categoryAssignmentIds != null && !gradeMatrix.hasCategory(categoryId, categoryAssignmentIds)) {
+				final GbGradeMatrix.CategoryColumn column = gradeMatrix.newCategoryColumn(categoryAssignmentIds);
+				for (int student = 0; student < gradeMatrix.getStudentCount(); student++) {
 
 					// build map of just the grades we want
-					final Map<Long, String> gradeMap = new HashMap<>();
-					for (final Long assignmentId : categoryAssignmentIds) {
-						final GbGradeInfo gradeInfo = grades.get(assignmentId);
-						if (gradeInfo != null && !gradeInfo.isExcused()) {
-								gradeMap.put(assignmentId, gradeInfo.getGrade());
-						}
-					}
-
-					final Optional<CategoryScoreData> categoryScore = gradingService.calculateCategoryScore(gradebook,
-							student.getUserUuid(), category, category.getAssignmentList(), gradeMap, (role == GbRole.TA || role == GbRole.INSTRUCTOR));
-					categoryScore.ifPresent(data -> {
-						for (Long item : gradeMap.keySet())	{
-							if (data.droppedItems.contains(item)) {
-								grades.get(item).setDroppedFromCategoryScore(true);
-							}
-						}
-						// add to GbStudentGradeInfo
-						sg.addCategoryAverage(category.getId(), data.score);
-					});
+					final Map<Long, String> gradeMap = gradeMatrix.getGrades(categoryAssignmentIds, student);
 
-					// TODO the TA permission check could reuse this iteration... check performance.
+					final int index = student;
+					gradingService.calculateCategoryScore(gradebook, gradeMatrix.getStudentUuid(student), category,
+							category.getAssignmentList(), gradeMap, includeNonReleasedItems)
+						.ifPresent(data -> column.setScore(index, data.score, data.droppedItems));
 				}
+				gradeMatrix.putCategory(categoryId, column);
 			}
 		}
 
+		// copy the grades into the per student objects the UI works with
+		for (final GbUser student : gbStudents) {
+			gradeMatrix.fill(matrix.get(student.getUserUuid()), assignmentIds, categoryAssignments.keySet());
+		}
+
 		// for a TA, apply the permissions to each grade item to see if we can render it
 		// the list of students, assignments and grades is already filtered to those that can be viewed
 		// so we are only concerned with the gradeable permission
@@ -1568,6 +1561,8 @@ public class GradebookNgBusinessService {
 				}
 			}
 		}
+
+		return gradeMatrix;
 	}
 
 	/**
@@ -1717,43 +1712,75 @@ public class GradebookNgBusinessService {
 		}
 	}
 
+	/**
+	 * Get the columnar grade matrix for the students. Instructors all see the same grades so theirs is kept
+	 * between requests until the gradebook changes, for anyone else a new one is started.
+	 *
+	 * @param gradebook the gradebook
+	 * @param studentUuids the students that have to be in the matrix
+	 * @param role the current user's role
+	 * @return a matrix with the students, which may already have some of the columns
+	 */
+	private GbGradeMatrix getGradeMatrix(final Gradebook gradebook, final List<String> studentUuids, final GbRole role) {
+
+		final long version = this.gradingService.getGradebookVersion(gradebook.getUid());
+		if (role != GbRole.INSTRUCTOR || this.gradeMatrixCache == null) {
+			return new GbGradeMatrix(studentUuids, version);
+		}
+
+		GbGradeMatrix gradeMatrix = this.gradeMatrixCache.get(gradebook.getUid());
+		if (gradeMatrix != null && gradeMatrix.getVersion() == version) {
+			if (gradeMatrix.hasStudents(studentUuids)) {
+				return gradeMatrix;
+			}
+			// another group or new students, keep the ones we have so switching between groups doesn't start over each time
+			final Set<String> students = new LinkedHashSet<>(gradeMatrix.getStudentUuids());
+			students.addAll(studentUuids);
+			gradeMatrix = new GbGradeMatrix(students, version);
+		} else {
+			gradeMatrix = new GbGradeMatrix(studentUuids, version);
+		}
+		this.gradeMatrixCache.put(gradebook.getUid(), gradeMatrix);
+		return gradeMatrix;
+	}
+
 	/**
 	 * Takes the value set of the matrix (a map<studentUuid, GbStudentGradeInfo>), and sorts the value set appropriately wrt the GradebookUiSettings
 	 * @param matrix
+	 * @param gradeMatrix the columnar matrix the grades were read from, assignment and category sorts run on it
 	 * @param settings
 	 * @return the valueSet of the matrix as an appropriately sorted List
 	 */
-	public List<GbStudentGradeInfo> sortGradeMatrix(Map<String, GbStudentGradeInfo> matrix, GradebookUiSettings settings) {
+	public List<GbStudentGradeInfo> sortGradeMatrix(Map<String, GbStudentGradeInfo> matrix, GbGradeMatrix gradeMatrix, GradebookUiSettings settings) {
 
 		// get the matrix as a list of GbStudentGradeInfo
-		final List<GbStudentGradeInfo> items = new ArrayList<>(matrix.values());
+		List<GbStudentGradeInfo> items = new ArrayList<>(matrix.values());
 
-		// sort the matrix based on the supplied assignment sort order (if any)
-		if (settings.getAssignmentSortOrder() != null) {
-			Comparator<GbStudentGradeInfo> comparator = new AssignmentGradeComparator(settings.getAssignmentSortOrder().getAssignmentId());
-			final SortDirection direction = settings.getAssignmentSortOrder().getDirection();
+		if (settings.getAssignmentSortOrder() != null || settings.getCategorySortOrder() != null) {
+			// sort the indexes of the students in the grade matrix, then put the list in that order
+			int[] students = items.stream().mapToInt(item -> gradeMatrix.getStudentIndex(item.getStudentUuid())).toArray();
 
-			// reverse if required
-			if (direction == SortDirection.DESCENDING) {
-				comparator = Collections.reverseOrder(comparator);
+			// sort the matrix based on the supplied assignment sort order (if any)
+			if (settings.getAssignmentSortOrder() != null) {
+				students = gradeMatrix.sortByAssignment(students, settings.getAssignmentSortOrder().getAssignmentId(),
+						settings.getAssignmentSortOrder().getDirection() == SortDirection.DESCENDING);
 			}
 
-			// sort
-			Collections.sort(items, comparator);
-		}
-
-		// sort the matrix based on the supplied category sort order (if any)
-		if (settings.getCategorySortOrder() != null) {
-			Comparator comparator = new CategorySubtotalComparator(settings.getCategorySortOrder().getCategoryId());
-			final SortDirection direction = settings.getCategorySortOrder().getDirection();
-
-			// reverse if required
-			if (direction == SortDirection.DESCENDING) {
-				comparator = Collections.reverseOrder(comparator);
+			// sort the matrix based on the supplied category sort order (if any)
+			if (settings.getCategorySortOrder() != null) {
+				students = gradeMatrix.sortByCategory(students, settings.getCategorySortOrder().getCategoryId(),
+						settings.getCategorySortOrder().getDirection() == SortDirection.DESCENDING);
 			}
 
-			// sort
-			Collections.sort(items, comparator);
+			final List<GbStudentGradeInfo> sorted = new ArrayList<>(items.size());
+			for (final int student : students) {
+				if (student >= 0) {
+					sorted.add(matrix.get(gradeMatrix.getStudentUuid(student)));
+				}
+			}
+			// anyone missing from the grade matrix can't be sorted, keep them at the end
+			items.stream().filter(item -> gradeMatrix.getStudentIndex(item.getStudentUuid()) < 0).forEach(sorted::add);
+			items = sorted;
 		}
 
 		if (settings.getCourseGradeSortOrder() != null) {
@@ -78,6 +78,20 @@ public class GbGradeInfo implements Serializable, Comparable<GbGradeInfo> {
 		}
 	}
 
+	/**
+	 * Constructor for a grade read from a {@link GbGradeMatrix}
+	 *
+	 * @param grade the grade, null for a stub
+	 * @param gradeComment the comment
+	 * @param excused whether the grade is excused
+	 */
+	public GbGradeInfo(final String grade, final String gradeComment, final boolean excused) {
+		this.grade = grade;
+		this.gradeComment = gradeComment;
+		this.gradeable = false;
+		this.excused = excused;
+	}
+
 	@Override
 	public String toString() {
 		return ToStringBuilder.reflectionToString(this);
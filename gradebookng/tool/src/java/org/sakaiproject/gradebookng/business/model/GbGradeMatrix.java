@@ -0,0 +1,287 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.gradebookng.business.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.sakaiproject.grading.api.GradeDefinition;
+
+import lombok.Getter;
+
+/**
+ * Column oriented store of the grades of a set of students. Each student has a fixed index and every
+ * assignment and category is a column of arrays indexed by it, so sorting and category scores work on
+ * primitives rather than on a map of grades per student.
+ *
+ * A matrix is built at a gradebook version (see GradingService.getGradebookVersion) and columns are added
+ * as they are needed, so one can be kept between requests until the gradebook changes.
+ */
+public class GbGradeMatrix implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Getter
+	private final long version;
+
+	private final String[] studentUuids;
+	private final Map<String, Integer> studentIndexes;
+	private final Map<Long, AssignmentColumn> assignmentColumns = new ConcurrentHashMap<>();
+	private final Map<Long, CategoryColumn> categoryColumns = new ConcurrentHashMap<>();
+
+	/**
+	 * @param studentUuids the students of the matrix, duplicates are ignored
+	 * @param version the gradebook version the grades are read at
+	 */
+	public GbGradeMatrix(final Collection<String> studentUuids, final long version) {
+		this.version = version;
+		this.studentUuids = new LinkedHashSet<>(studentUuids).toArray(new String[0]);
+		this.studentIndexes = new HashMap<>(this.studentUuids.length * 2);
+		for (int i = 0; i < this.studentUuids.length; i++) {
+			this.studentIndexes.put(this.studentUuids[i], i);
+		}
+	}
+
+	public int getStudentCount() {
+		return this.studentUuids.length;
+	}
+
+	/**
+	 * @return the index of the student in the matrix, or -1 if they aren't in it
+	 */
+	public int getStudentIndex(final String studentUuid) {
+		final Integer index = this.studentIndexes.get(studentUuid);
+		return index != null ? index : -1;
+	}
+
+	public String getStudentUuid(final int index) {
+		return this.studentUuids[index];
+	}
+
+	public List<String> getStudentUuids() {
+		return Collections.unmodifiableList(Arrays.asList(this.studentUuids));
+	}
+
+	public boolean hasStudents(final Collection<String> studentUuids) {
+		return this.studentIndexes.keySet().containsAll(studentUuids);
+	}
+
+	public boolean hasAssignment(final Long assignmentId) {
+		return this.assignmentColumns.containsKey(assignmentId);
+	}
+
+	/**
+	 * Add the column of an assignment.
+	 *
+	 * @param assignmentId the assignment
+	 * @param grades the grades of the assignment
+	 * @param stubs whether every student gets an entry even if they have no grade, as TAs need
+	 * @return the number of grades for students that aren't in the matrix, which are skipped
+	 */
+	public int putGrades(final Long assignmentId, final Collection<GradeDefinition> grades, final boolean stubs) {
+		final AssignmentColumn column = new AssignmentColumn(this.studentUuids.length);
+		if (stubs) {
+			column.graded.set(0, this.studentUuids.length);
+		}
+		int skipped = 0;
+		for (final GradeDefinition grade : grades) {
+			final int index = getStudentIndex(grade.getStudentUid());
+			if (index < 0) {
+				skipped++;
+				continue;
+			}
+			column.graded.set(index);
+			column.excused.set(index, grade.isExcused());
+			// non numeric grades sort as 0, as they always have
+			column.points[index] = NumberUtils.toDouble(grade.getGrade());
+			column.grades[index] = grade.getGrade();
+			column.comments[index] = grade.getGradeComment();
+		}
+		this.assignmentColumns.put(assignmentId, column);
+		return skipped;
+	}
+
+	/**
+	 * The grades a student has in a set of assignments, leaving out the excused ones
+	 *
+	 * @return a map of assignment id to grade, the grade may be null for a TA stub
+	 */
+	public Map<Long, String> getGrades(final Collection<Long> assignmentIds, final int student) {
+		final Map<Long, String> grades = new HashMap<>();
+		for (final Long assignmentId : assignmentIds) {
+			final AssignmentColumn column = this.assignmentColumns.get(assignmentId);
+			if (column != null && column.graded.get(student) && !column.excused.get(student)) {
+				grades.put(assignmentId, column.grades[student]);
+			}
+		}
+		return grades;
+	}
+
+	/**
+	 * Whether the scores of a category have been worked out from the same set of assignments
+	 */
+	public boolean hasCategory(final Long categoryId, final Set<Long> assignmentIds) {
+		final CategoryColumn column = this.categoryColumns.get(categoryId);
+		return column != null && column.assignmentIds.equals(assignmentIds);
+	}
+
+	/**
+	 * Start the column of a category, add it with {@link #putCategory(Long, CategoryColumn)} once its scores are set
+	 */
+	public CategoryColumn newCategoryColumn(final Set<Long> assignmentIds) {
+		return new CategoryColumn(new HashSet<>(assignmentIds), this.studentUuids.length);
+	}
+
+	public void putCategory(final Long categoryId, final CategoryColumn column) {
+		this.categoryColumns.put(categoryId, column);
+	}
+
+	/**
+	 * Copy the grades and category scores of a student into their GbStudentGradeInfo
+	 *
+	 * @param info the student's grade info
+	 * @param assignmentIds the assignments wanted
+	 * @param categoryIds the categories wanted
+	 */
+	public void fill(final GbStudentGradeInfo info, final Collection<Long> assignmentIds, final Collection<Long> categoryIds) {
+		final int student = getStudentIndex(info.getStudentUuid());
+		if (student < 0) {
+			return;
+		}
+
+		for (final Long assignmentId : assignmentIds) {
+			final AssignmentColumn column = this.assignmentColumns.get(assignmentId);
+			if (column != null && column.graded.get(student)) {
+				info.addGrade(assignmentId, new GbGradeInfo(column.grades[student], column.comments[student], column.excused.get(student)));
+			}
+		}
+
+		for (final Long categoryId : categoryIds) {
+			final CategoryColumn column = this.categoryColumns.get(categoryId);
+			if (column == null || !column.scored.get(student)) {
+				continue;
+			}
+			info.addCategoryAverage(categoryId, column.scores[student]);
+			column.dropped.forEach((assignmentId, dropped) -> {
+				final GbGradeInfo grade = info.getGrades().get(assignmentId);
+				if (grade != null && dropped.get(student)) {
+					grade.setDroppedFromCategoryScore(true);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Sort students by their grade in an assignment, students without a grade first. The sort is stable.
+	 *
+	 * @param students indexes of the students to sort
+	 * @return the indexes sorted
+	 */
+	public int[] sortByAssignment(final int[] students, final Long assignmentId, final boolean descending) {
+		final AssignmentColumn column = this.assignmentColumns.get(assignmentId);
+		if (column == null) {
+			return students;
+		}
+		return sort(students, column.graded, column.points, descending);
+	}
+
+	/**
+	 * Sort students by their score in a category, students without a score first. The sort is stable.
+	 *
+	 * @param students indexes of the students to sort
+	 * @return the indexes sorted
+	 */
+	public int[] sortByCategory(final int[] students, final Long categoryId, final boolean descending) {
+		final CategoryColumn column = this.categoryColumns.get(categoryId);
+		if (column == null) {
+			return students;
+		}
+		return sort(students, column.scored, column.scores, descending);
+	}
+
+	private int[] sort(final int[] students, final BitSet present, final double[] values, final boolean descending) {
+		Comparator<Integer> comparator = (s1, s2) -> {
+			final boolean has1 = s1 >= 0 && present.get(s1);
+			final boolean has2 = s2 >= 0 && present.get(s2);
+			if (!has1 || !has2) {
+				return Boolean.compare(has1, has2);
+			}
+			return Double.compare(values[s1], values[s2]);
+		};
+		if (descending) {
+			comparator = comparator.reversed();
+		}
+		return Arrays.stream(students).boxed().sorted(comparator).mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * The grades of an assignment, graded is set for every student with an entry
+	 */
+	private static class AssignmentColumn implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] points;
+		private final String[] grades;
+		private final String[] comments;
+		private final BitSet graded = new BitSet();
+		private final BitSet excused = new BitSet();
+
+		private AssignmentColumn(final int size) {
+			this.points = new double[size];
+			this.grades = new String[size];
+			this.comments = new String[size];
+		}
+	}
+
+	/**
+	 * The scores of a category and the grades dropped from them
+	 */
+	public static class CategoryColumn implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Set<Long> assignmentIds;
+		private final double[] scores;
+		private final BitSet scored = new BitSet();
+		private final Map<Long, BitSet> dropped = new HashMap<>();
+
+		private CategoryColumn(final Set<Long> assignmentIds, final int size) {
+			this.assignmentIds = assignmentIds;
+			this.scores = new double[size];
+		}
+
+		public void setScore(final int student, final double score, final Collection<Long> droppedItems) {
+			this.scores[student] = score;
+			this.scored.set(student);
+			for (final Long assignmentId : droppedItems) {
+				this.dropped.computeIfAbsent(assignmentId, id -> new BitSet()).set(student);
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.gradebookng.business.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.sakaiproject.grading.api.GradeDefinition;
+import org.sakaiproject.user.api.User;
+
+public class TestGbGradeMatrix {
+
+	private GbGradeMatrix matrix;
+
+	@Before
+	public void init() {
+		matrix = new GbGradeMatrix(Arrays.asList("s1", "s2", "s3", "s2"), 7L);
+		matrix.putGrades(1L, Arrays.asList(grade("s1", "8", false), grade("s3", "4.5", false), grade("gone", "1", false)), false);
+		matrix.putGrades(2L, Arrays.asList(grade("s1", "3", true), grade("s2", "5", false)), false);
+	}
+
+	@Test
+	public void testStudents() {
+		Assert.assertEquals(3, matrix.getStudentCount());
+		Assert.assertEquals(1, matrix.getStudentIndex("s2"));
+		Assert.assertEquals(-1, matrix.getStudentIndex("s4"));
+		Assert.assertTrue(matrix.hasStudents(Arrays.asList("s3", "s1")));
+		Assert.assertFalse(matrix.hasStudents(Arrays.asList("s1", "s4")));
+		Assert.assertEquals(7L, matrix.getVersion());
+	}
+
+	@Test
+	public void testPutGrades() {
+		Assert.assertEquals(1, matrix.putGrades(3L, Collections.singletonList(grade("gone", "1", false)), false));
+
+		// excused grades are left out of category grades
+		Map<Long, String> grades = matrix.getGrades(Arrays.asList(1L, 2L), 0);
+		Assert.assertEquals(Collections.singletonMap(1L, "8"), grades);
+
+		// stubs give every student an entry
+		matrix.putGrades(4L, Collections.emptyList(), true);
+		Assert.assertTrue(matrix.getGrades(Collections.singletonList(4L), 1).containsKey(4L));
+		Assert.assertNull(matrix.getGrades(Collections.singletonList(4L), 1).get(4L));
+	}
+
+	@Test
+	public void testFill() {
+		Set<Long> assignments = new HashSet<>(Arrays.asList(1L, 2L));
+		GbGradeMatrix.CategoryColumn column = matrix.newCategoryColumn(assignments);
+		column.setScore(0, 80D, Collections.singletonList(1L));
+		matrix.putCategory(10L, column);
+		Assert.assertTrue(matrix.hasCategory(10L, assignments));
+		Assert.assertFalse(matrix.hasCategory(10L, Collections.singleton(1L)));
+
+		GbStudentGradeInfo info = info("s1");
+		matrix.fill(info, Arrays.asList(1L, 2L), Collections.singletonList(10L));
+		Assert.assertEquals("8", info.getGrades().get(1L).getGrade());
+		Assert.assertTrue(info.getGrades().get(1L).isDroppedFromCategoryScore());
+		Assert.assertTrue(info.getGrades().get(2L).isExcused());
+		Assert.assertEquals(Double.valueOf(80D), info.getCategoryAverages().get(10L));
+
+		info = info("s2");
+		matrix.fill(info, Arrays.asList(1L, 2L), Collections.singletonList(10L));
+		Assert.assertNull(info.getGrades().get(1L));
+		Assert.assertFalse(info.getGrades().get(2L).isDroppedFromCategoryScore());
+		Assert.assertNull(info.getCategoryAverages().get(10L));
+	}
+
+	@Test
+	public void testSort() {
+		int[] students = {0, 1, 2};
+
+		// students without a grade come first
+		Assert.assertArrayEquals(new int[] {1, 2, 0}, matrix.sortByAssignment(students, 1L, false));
+		Assert.assertArrayEquals(new int[] {0, 2, 1}, matrix.sortByAssignment(students, 1L, true));
+
+		// excused grades sort by their value too
+		Assert.assertArrayEquals(new int[] {2, 0, 1}, matrix.sortByAssignment(students, 2L, false));
+
+		// unknown columns leave the order alone
+		Assert.assertArrayEquals(students, matrix.sortByAssignment(students, 99L, false));
+		Assert.assertArrayEquals(students, matrix.sortByCategory(students, 99L, false));
+	}
+
+	private GradeDefinition grade(String studentUid, String grade, boolean excused) {
+		GradeDefinition def = new GradeDefinition();
+		def.setStudentUid(studentUid);
+		def.setGrade(grade);
+		def.setExcused(excused);
+		return def;
+	}
+
+	private GbStudentGradeInfo info(String studentUuid) {
+		User user = Mockito.mock(User.class);
+		Mockito.when(user.getId()).thenReturn(studentUuid);
+		return new GbStudentGradeInfo(user);
+	}
+}
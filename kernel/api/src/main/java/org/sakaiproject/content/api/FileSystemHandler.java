@@ -18,6 +18,7 @@ package org.sakaiproject.content.api;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Path;
 
 /**
  * This is the api for reading and writing files to some file system.
@@ -67,4 +68,16 @@ public interface FileSystemHandler {
      * @return If the path was deleted.
      */
     public boolean delete(String id, String root, String filePath);
+
+    /**
+     * Retrieve the local file the content is stored in, so it can be sent without copying it through the JVM.
+     * 
+     * @param id The id of the resource. Will not be null or empty.
+     * @param root The root of the storage. Could be null or empty.
+     * @param filePath The path to the file. Will not be null or empty.
+     * @return The path of the file, or null if the content is not stored on the local file system.
+     */
+    default Path getLocalPath(String id, String root, String filePath) {
+        return null;
+    }
 }
@@ -26,6 +26,8 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.sakaiproject.exception.ServerOverloadException;
 
@@ -121,6 +123,62 @@ public interface SqlService
 	 */
 	<T> List<T> dbRead(Connection conn, String sql, Object[] fields, SqlReader<T> reader);
 
+	/**
+	 * Process a query, filling in with fields, and return the records as a Stream which reads them from the database as it is consumed, rather than
+	 * holding them all in memory. If a reader is provided, it will be called for each record to prepare the Object placed into the Stream, records
+	 * it returns null for are skipped. Otherwise, the first field of each record, as a String, will be placed in the Stream.
+	 * <p>
+	 * The records are read with a read only, forward only cursor, the configured number at a time. The Stream holds a database connection until the
+	 * last record is read or it is closed, so callers that may stop early must close it, for example with try-with-resources. Inside a transaction
+	 * the records are read from the transaction's connection in one go.
+	 * </p>
+	 * 
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @param <T>
+	 *        The type of objects being returned by the SqlReader.
+	 * @return The Stream of things read, one per record.
+	 */
+	<T> Stream<T> dbStream(String sql, Object[] fields, SqlReader<T> reader);
+
+	/**
+	 * Like {@link #dbStream(String, Object[], SqlReader)}, fetching the given number of records from the database at a time.
+	 * 
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param fetchSize
+	 *        The number of records to fetch at a time.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @param <T>
+	 *        The type of objects being returned by the SqlReader.
+	 * @return The Stream of things read, one per record.
+	 */
+	<T> Stream<T> dbStream(String sql, Object[] fields, int fetchSize, SqlReader<T> reader);
+
+	/**
+	 * Process a query, filling in with fields, and pass each record to the consumer as it is read from the database. The records are read as by
+	 * {@link #dbStream(String, Object[], SqlReader)} and the connection is always returned before this returns.
+	 * 
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @param consumer
+	 *        Called with the thing read from each record.
+	 * @param <T>
+	 *        The type of objects being returned by the SqlReader.
+	 */
+	<T> void dbForEach(String sql, Object[] fields, SqlReader<T> reader, Consumer<? super T> consumer);
+
 	/**
 	 * Read a single field from the db, from multiple record - concatenating the binary values into value.
 	 * 
@@ -270,6 +328,22 @@ public interface SqlService
 	 */
 	boolean dbWriteBatch(Connection connection, String sql, List<Object[]> fieldsList);
 
+	/**
+	 * Execute the "insert" sql in a batch, returning the auto-update field Long value of each row, using an array of fields in a List and a given connection.
+	 * Where the database driver cannot report the generated keys of a batch, the rows are inserted one at a time on the connection.
+	 *
+	 * @param connection
+	 *        The connection to use.
+	 * @param sql
+	 *        The sql statement.
+	 * @param fieldsList
+	 *        The List of array of fields for parameters.
+	 * @param autoColumn
+	 *        The name of the db column that will have auto-update - we will return the values used.
+	 * @return The auto-update values in the same order as the fieldsList (an entry is null if its value could not be read), or null if the insert failed.
+	 */
+	List<Long> dbInsertBatch(Connection connection, String sql, List<Object[]> fieldsList, String autoColumn);
+
 	/**
 	 * Execute the "write" sql - no response, using a set of fields from an array and a given connection logging no errors on failure.
 	 * 
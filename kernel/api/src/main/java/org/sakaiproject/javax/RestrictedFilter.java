@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.javax;
+
+import java.util.List;
+
+/**
+ * <p>
+ * RestrictedFilter is a Filter which also describes what it accepts as {@link Restriction}s on the stored fields of the objects being
+ * filtered. Storage that understands the restrictions may select with them in the database, so only the matching records are read and
+ * presented to accept(). Storage that does not, or restrictions on fields the storage does not know, are simply left to accept(), which
+ * must therefore still apply every restriction itself.
+ * </p>
+ * <p>
+ * All the restrictions must hold. The property of each restriction is the name of a stored field (a table column) and EQUALS with an
+ * array or Collection value matches any of the values. LIKE values are used as the pattern, so a prefix match is "prefix%".
+ * </p>
+ */
+public interface RestrictedFilter extends Filter
+{
+	/**
+	 * @return the restrictions every accepted object meets, never null.
+	 */
+	List<Restriction> getRestrictions();
+
+	/**
+	 * @return true if accept() accepts exactly the objects that meet the restrictions, so storage that does all of them in the database
+	 *         may count and page there without calling accept(). False unless a filter says otherwise.
+	 */
+	default boolean isExact()
+	{
+		return false;
+	}
+}
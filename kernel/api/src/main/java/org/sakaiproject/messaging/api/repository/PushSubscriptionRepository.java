@@ -15,6 +15,7 @@
  */
 package org.sakaiproject.messaging.api.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,5 +26,6 @@ import org.sakaiproject.springframework.data.SpringCrudRepository;
 public interface PushSubscriptionRepository extends SpringCrudRepository<PushSubscription, Long> {
 
     List<PushSubscription> findByUser(String user);
+    List<PushSubscription> findByUsers(Collection<String> users);
     int deleteByFingerprint(String browserFingerprint);
 }
@@ -27,4 +27,10 @@ public interface UserNotificationRepository extends SpringCrudRepository<UserNot
     int deleteByToUserAndDeferred(String userId, boolean deferred);
     int setAllNotificationsViewed(String userId);
     int setDeferredBySiteId(String siteId, boolean deferred);
+
+    /**
+     * Insert a set of new notifications in one transaction, sending the inserts to the database in JDBC
+     * batches of the given size
+     */
+    List<UserNotification> insertAll(List<UserNotification> notifications, int batchSize);
 }
@@ -21,7 +21,10 @@
 
 package org.sakaiproject.user.api;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import org.sakaiproject.entity.api.EntityProducer;
 import org.sakaiproject.exception.IdUnusedException;
@@ -75,6 +78,24 @@ public interface PreferencesService extends EntityProducer
 	 */
 	Preferences getPreferences(String id);
 
+	/**
+	 * Access the preferences of many users at once. Implementations read the ones they don't have cached together rather than one
+	 * at a time.
+	 * 
+	 * @param ids
+	 *        The preferences ids.
+	 * @return The Preferences objects, keyed by id.
+	 */
+	default Map<String, Preferences> getPreferencesForUsers(Collection<String> ids)
+	{
+		Map<String, Preferences> preferences = new LinkedHashMap<>();
+		for (String id : ids)
+		{
+			preferences.computeIfAbsent(id, this::getPreferences);
+		}
+		return preferences;
+	}
+
 	/**
 	 * Check to see if the current user can add or modify permissions with this id.
 	 * 
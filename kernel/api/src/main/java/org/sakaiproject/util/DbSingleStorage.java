@@ -23,6 +23,7 @@ package org.sakaiproject.util;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.sakaiproject.entity.api.Edit;
 import org.sakaiproject.entity.api.Entity;
@@ -104,6 +105,16 @@ public interface DbSingleStorage
 	 */
 	List getSelectedResources(final Filter filter);
 
+	/**
+	 * Pass selected Resources to the consumer as they are read, without holding them all in memory
+	 * 
+	 * @param filter
+	 *        A filter on the id field to select what gets passed, or null for all Resources.
+	 * @param consumer
+	 *        Called with each selected Resource.
+	 */
+	void forEachSelectedResource(final Filter filter, Consumer<Entity> consumer);
+
 	/**
 	 * Get selected Resources, using a supplied where clause
 	 * 
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A small, lock free, log-linear histogram for recording latencies (or any other non negative long values).
+ * <p>
+ * Every power of two range is split into {@value #SUB_BUCKETS} linear sub buckets, so a recorded value is
+ * reported with a relative error of at most 12.5% while the whole histogram is a fixed array of a few hundred
+ * longs. Recording is safe from any number of threads and never allocates, which makes it suitable for
+ * always-on instrumentation of hot paths.
+ * </p>
+ */
+public class LatencyHistogram
+{
+	/** Number of linear sub buckets in each power of two range, must be a power of two. */
+	private static final int SUB_BUCKETS = 8;
+
+	private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+	/** Enough buckets to hold any positive long. */
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder total = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a single value, negative values are recorded as zero.
+	 *
+	 * @param value
+	 *        The value to record, typically a duration.
+	 */
+	public void record(long value)
+	{
+		if (value < 0) value = 0;
+		counts.incrementAndGet(bucketIndex(value));
+		count.increment();
+		total.add(value);
+		if (value > max.get())
+		{
+			max.accumulateAndGet(value, Math::max);
+		}
+	}
+
+	/**
+	 * @return The number of values recorded since creation or the last reset.
+	 */
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	/**
+	 * @return The sum of the values recorded.
+	 */
+	public long getTotal()
+	{
+		return total.sum();
+	}
+
+	/**
+	 * @return The largest value recorded, or 0 if nothing was recorded.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * @return The mean of the values recorded, or 0 if nothing was recorded.
+	 */
+	public double getMean()
+	{
+		long n = getCount();
+		return n == 0 ? 0d : (double) getTotal() / n;
+	}
+
+	/**
+	 * Find the value below which the given percentage of the recorded values fall.
+	 *
+	 * @param percentile
+	 *        The percentile, between 0 and 100.
+	 * @return The upper bound of the bucket holding the percentile (never more than the max recorded), or 0 if nothing was recorded.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long[] snapshot = new long[BUCKET_COUNT];
+		long n = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			snapshot[i] = counts.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) return 0;
+
+		double pct = Math.min(100d, Math.max(0d, percentile));
+		long rank = Math.max(1, (long) Math.ceil(pct / 100d * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= rank)
+			{
+				return Math.min(bucketUpperBound(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clear all the recorded values.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			counts.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		max.set(0);
+	}
+
+	static int bucketIndex(long value)
+	{
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long bucketLowerBound(int index)
+	{
+		if (index < SUB_BUCKETS) return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = index % SUB_BUCKETS;
+		return (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	static long bucketUpperBound(int index)
+	{
+		return index + 1 >= BUCKET_COUNT ? Long.MAX_VALUE : bucketLowerBound(index + 1) - 1;
+	}
+}
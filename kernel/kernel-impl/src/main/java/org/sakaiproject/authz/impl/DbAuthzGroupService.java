@@ -135,6 +135,18 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
     private Cache realmLocksCache;
 
+	/** Answer isAllowed and getUsersIsAllowed from cached realm permissions instead of the database. */
+	public static final String PERMISSION_EVALUATOR_PROPKEY = "authz.permissionEvaluator.enabled";
+	/** Run the database queries as well, log any difference and return the database answer. */
+	public static final String PERMISSION_EVALUATOR_VERIFY_PROPKEY = "authz.permissionEvaluator.verify";
+
+	private Cache<String, RealmPermissions> realmPermissionsCache;
+
+	/** Null unless the in memory permission evaluator is enabled */
+	private RealmPermissionEvaluator permissionEvaluator;
+
+	private boolean verifyPermissionEvaluator = false;
+
 	/** KNL-1325 provide a more efficent refreshAuthzGroup */
     public static final String REFRESH_MAX_TIME_PROPKEY = "authzgroup.refresh.max.time";
     public static final String REFRESH_INTERVAL_PROPKEY = "authzgroup.refresh.interval";
@@ -284,6 +296,13 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
             //get the set of maintain roles and cache them on startup
             getMaintainRoles();
 
+            if (serverConfigurationService().getBoolean(PERMISSION_EVALUATOR_PROPKEY, false)) {
+                realmPermissionsCache = m_memoryService.getCache("org.sakaiproject.authz.impl.DbAuthzGroupService.realmPermissionsCache");
+                permissionEvaluator = new RealmPermissionEvaluator(this::getRealmPermissions);
+                verifyPermissionEvaluator = serverConfigurationService().getBoolean(PERMISSION_EVALUATOR_VERIFY_PROPKEY, false);
+                log.info("In memory permission evaluator enabled, verify against the database: {}", verifyPermissionEvaluator);
+            }
+
             refreshTaskInterval = initConfig(REFRESH_INTERVAL_PROPKEY, serverConfigurationService().getString(REFRESH_INTERVAL_PROPKEY), refreshTaskInterval);
             refreshMaxTime = initConfig(REFRESH_MAX_TIME_PROPKEY, serverConfigurationService().getString(REFRESH_MAX_TIME_PROPKEY), refreshMaxTime);
 
@@ -333,6 +352,7 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 		authzUserGroupIdsCache.close();
 		maintainRolesCache.close();
 		realmLocksCache.close();
+		if (realmPermissionsCache != null) realmPermissionsCache.close();
 
 		log.info(this +".destroy()");
 	}
@@ -655,6 +675,7 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 				m_realmRoleGRCache.remove(realmId);
 				realmLocksCache.remove(realmId);
+				if (realmPermissionsCache != null) realmPermissionsCache.remove(realmId);
 			} else {
 				// This should never happen as the events we generate should always have
 				// a /realm/ prefix on the resource.
@@ -662,6 +683,21 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			}
 		}
 	}
+
+	/**
+	 * The permissions of a realm for the in memory evaluator, these are invalidated by the same events as the realmRoleGRCache.
+	 *
+	 * @param realmId the realm id
+	 * @return the realm's permissions, empty if there is no such realm
+	 */
+	private RealmPermissions getRealmPermissions(String realmId) {
+		RealmPermissions permissions = realmPermissionsCache.get(realmId);
+		if (permissions == null) {
+			permissions = ((DbStorage) m_storage).readRealmPermissions(realmId);
+			realmPermissionsCache.put(realmId, permissions);
+		}
+		return permissions;
+	}
 	
 	/**
 	 * based on value from RealmRoleGroupCache
@@ -826,6 +862,27 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			return rv;
 		}
 
+		/**
+		 * Read the permissions of a realm for the in memory evaluator, from the realmRoleGRCache when it has the realm.
+		 *
+		 * @param realmId
+		 *        The realm id.
+		 * @return The realm's permissions, empty if there is no such realm.
+		 */
+		protected RealmPermissions readRealmPermissions(String realmId)
+		{
+			Map<String, Map> realmRoleGRCache = (Map<String, Map>) m_realmRoleGRCache.get(realmId);
+			if (realmRoleGRCache != null)
+			{
+				return RealmPermissions.of((Map<String, SimpleRole>) realmRoleGRCache.get(REALM_ROLES_CACHE),
+						(Map<String, MemberWithRoleId>) realmRoleGRCache.get(REALM_USER_GRANTS_CACHE));
+			}
+
+			// reading the realm also fills the realmRoleGRCache
+			AuthzGroup realm = get(realmId);
+			return realm == null ? RealmPermissions.EMPTY : RealmPermissions.of(realm);
+		}
+
 		/**
 		 * Complete the read process once the basic realm info has been read
 		 *
@@ -2228,6 +2285,13 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 			// Regular lookup (not roleswap)
 
+			boolean evaluated = false;
+			if (permissionEvaluator != null)
+			{
+				evaluated = permissionEvaluator.isAllowed(userId, lock, realms, roles);
+				if (!verifyPermissionEvaluator) return evaluated;
+			}
+
 			results = m_sql.dbRead(statement, fields, new SqlReader()
 			{
 				public Object readSqlResultRecord(ResultSet result)
@@ -2252,6 +2316,12 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 				rv = count > 0;
 			}
 
+			if (permissionEvaluator != null && evaluated != rv)
+			{
+				log.warn("isAllowed: in memory evaluator returned {} but the database {} for userId={} lock={} realms={} roles={}",
+						evaluated, rv, userId, lock, realms, roles);
+			}
+
 			return rv;
 		}
 
@@ -2322,6 +2392,13 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 		{
 			if ((lock == null) || (realms == null) || (realms.isEmpty())) return new HashSet<String>();
 
+			Set<String> evaluated = null;
+			if (permissionEvaluator != null)
+			{
+				evaluated = permissionEvaluator.getUsersIsAllowed(lock, realms);
+				if (!verifyPermissionEvaluator) return evaluated;
+			}
+
 			String sql = dbAuthzGroupSql.getSelectRealmRoleUserIdSql(orInClause(realms.size(), "SR.REALM_ID"));
 			Object[] fields = new Object[1 + realms.size()];
 			int pos = 0;
@@ -2337,6 +2414,13 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			// prepare the return
 			Set<String> rv = new HashSet<String>();
 			rv.addAll(results);
+
+			if (evaluated != null && !evaluated.equals(rv))
+			{
+				log.warn("getUsersIsAllowed: in memory evaluator returned {} users but the database {} for lock={} realms={}",
+						evaluated.size(), rv.size(), lock, realms);
+			}
+
 			return rv;
 		}
 
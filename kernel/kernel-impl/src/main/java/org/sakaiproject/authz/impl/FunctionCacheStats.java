@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import lombok.Value;
+
+/**
+ * A point in time view of how the permission checks for one security function were answered, exported over JMX.
+ */
+@Value
+public class FunctionCacheStats {
+
+    String function;
+
+    /** Checks answered by the per request cache. */
+    long requestHits;
+
+    /** Checks answered by the shared security cache. */
+    long cacheHits;
+
+    /** Checks that had to ask the AuthzGroupService. */
+    long misses;
+
+    /** The fraction of the checks answered by either cache. */
+    double hitRatio;
+}
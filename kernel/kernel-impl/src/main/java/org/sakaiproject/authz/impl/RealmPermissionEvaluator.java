@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Answers the realm permission questions of {@link DbAuthzGroupService} from {@link RealmPermissions} instead of
+ * counting rows in SAKAI_REALM_RL_FN.
+ * <p>
+ * The answers match the SQL: a user is allowed a function in a set of realms if one of those realms grants the
+ * function to either a role the user has an active grant for in any of the realms, or to one of the roles every
+ * such user has (.anon, .auth, provided roles).
+ * </p>
+ */
+class RealmPermissionEvaluator {
+
+    private final Function<String, RealmPermissions> permissions;
+
+    /**
+     * @param permissions
+     *        Gives the permissions of a realm by realm id, never null.
+     */
+    RealmPermissionEvaluator(Function<String, RealmPermissions> permissions) {
+        this.permissions = permissions;
+    }
+
+    /**
+     * @param userId
+     *        The user id, may be null for anonymous checks.
+     * @param function
+     *        The function (lock) to check.
+     * @param realmIds
+     *        The realms to check in.
+     * @param roles
+     *        The roles the user has in every realm, whether or not they have a grant there.
+     * @return true if the user is allowed the function in one of the realms.
+     */
+    boolean isAllowed(String userId, String function, Collection<String> realmIds, Set<String> roles) {
+        List<RealmPermissions> realms = new ArrayList<>(realmIds.size());
+        Set<String> userRoles = new HashSet<>(roles);
+        for (String realmId : realmIds) {
+            RealmPermissions realm = permissions.apply(realmId);
+            realms.add(realm);
+            if (userId != null) {
+                String role = realm.activeRole(userId);
+                if (role != null) userRoles.add(role);
+            }
+        }
+
+        for (RealmPermissions realm : realms) {
+            int index = realm.function(function);
+            if (index < 0) continue;
+            for (String role : userRoles) {
+                if (realm.isGranted(role, index)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the users with an active grant in one of the realms whose role there is granted the function.
+     */
+    Set<String> getUsersIsAllowed(String function, Collection<String> realmIds) {
+        Set<String> users = new HashSet<>();
+        for (String realmId : realmIds) {
+            RealmPermissions realm = permissions.apply(realmId);
+            int index = realm.function(function);
+            if (index >= 0) realm.addUsersGranted(index, users);
+        }
+        return users;
+    }
+}
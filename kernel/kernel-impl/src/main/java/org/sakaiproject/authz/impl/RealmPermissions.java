@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.sakaiproject.authz.api.AuthzGroup;
+import org.sakaiproject.authz.api.Member;
+import org.sakaiproject.authz.api.MemberWithRoleId;
+import org.sakaiproject.authz.api.Role;
+import org.sakaiproject.authz.api.SimpleRole;
+
+/**
+ * The permissions of a single realm in a form that can be checked without going to the database.
+ * <p>
+ * Functions are numbered within the realm and each role holds a {@link BitSet} of the functions it is granted, so
+ * checking a role for a function is a map lookup and a bit test. Only active user grants are kept as those are the
+ * only ones the permission queries consider.
+ * </p>
+ */
+final class RealmPermissions implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The permissions of a realm that does not exist. */
+    static final RealmPermissions EMPTY = new RealmPermissions(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+    private final Map<String, Integer> functions;
+    private final Map<String, BitSet> roleFunctions;
+    private final Map<String, String> activeUserRoles;
+
+    private RealmPermissions(Map<String, Integer> functions, Map<String, BitSet> roleFunctions, Map<String, String> activeUserRoles) {
+        this.functions = functions;
+        this.roleFunctions = roleFunctions;
+        this.activeUserRoles = activeUserRoles;
+    }
+
+    /**
+     * Build from the roles and grants held in the realm role group cache.
+     *
+     * @param roles
+     *        The realm's roles keyed by role id.
+     * @param grants
+     *        The realm's user grants keyed by user id.
+     */
+    static RealmPermissions of(Map<String, SimpleRole> roles, Map<String, MemberWithRoleId> grants) {
+        Builder builder = new Builder();
+        if (roles != null) {
+            for (Map.Entry<String, SimpleRole> role : roles.entrySet()) {
+                builder.role(role.getKey(), role.getValue().getLocks());
+            }
+        }
+        if (grants != null) {
+            for (Map.Entry<String, MemberWithRoleId> grant : grants.entrySet()) {
+                if (grant.getValue().isActive()) builder.grant(grant.getKey(), grant.getValue().getRoleId());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Build from a realm.
+     */
+    static RealmPermissions of(AuthzGroup realm) {
+        Builder builder = new Builder();
+        for (Role role : realm.getRoles()) {
+            builder.role(role.getId(), role.getAllowedFunctions());
+        }
+        for (Member member : realm.getMembers()) {
+            if (member.isActive() && member.getRole() != null) builder.grant(member.getUserId(), member.getRole().getId());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the realm's number for the function, or -1 if no role in the realm is granted it.
+     */
+    int function(String function) {
+        Integer index = functions.get(function);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return true if the role exists in the realm and is granted the function numbered {@code function}.
+     */
+    boolean isGranted(String role, int function) {
+        BitSet granted = roleFunctions.get(role);
+        return granted != null && granted.get(function);
+    }
+
+    /**
+     * @return the role of the user's active grant in the realm, or null if the user has none.
+     */
+    String activeRole(String userId) {
+        return activeUserRoles.get(userId);
+    }
+
+    /**
+     * Add the users with an active grant whose role is granted the function numbered {@code function}.
+     */
+    void addUsersGranted(int function, Collection<String> users) {
+        for (Map.Entry<String, String> grant : activeUserRoles.entrySet()) {
+            if (isGranted(grant.getValue(), function)) users.add(grant.getKey());
+        }
+    }
+
+    private static final class Builder {
+        private final Map<String, Integer> functions = new HashMap<>();
+        private final Map<String, BitSet> roleFunctions = new HashMap<>();
+        private final Map<String, String> activeUserRoles = new HashMap<>();
+
+        void role(String role, Set<String> locks) {
+            BitSet granted = new BitSet();
+            if (locks != null) {
+                for (String lock : locks) {
+                    granted.set(functions.computeIfAbsent(lock, l -> functions.size()));
+                }
+            }
+            roleFunctions.put(role, granted);
+        }
+
+        void grant(String userId, String role) {
+            if (userId != null && role != null) activeUserRoles.put(userId, role);
+        }
+
+        RealmPermissions build() {
+            if (functions.isEmpty() && activeUserRoles.isEmpty()) return EMPTY;
+            return new RealmPermissions(functions, roleFunctions, activeUserRoles);
+        }
+    }
+}
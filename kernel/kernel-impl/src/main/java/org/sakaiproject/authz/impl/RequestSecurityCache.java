@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The results of the permission checks made by one request, bound to the request thread so that repeated checks
+ * never reach the shared security caches.
+ * <p>
+ * The cache belongs to a single thread and so is not synchronized. It is only valid for the cache generation it was
+ * created in, any change to the shared caches moves the generation on and the next check starts a new one.
+ * </p>
+ */
+class RequestSecurityCache {
+
+    private final long generation;
+    private final long created;
+    private final int maxSize;
+    private final Map<SecurityCheckKey, Boolean> results;
+
+    RequestSecurityCache(long generation, int maxSize) {
+        this.generation = generation;
+        this.created = System.currentTimeMillis();
+        this.maxSize = maxSize;
+        this.results = new HashMap<>(Math.min(maxSize, 64));
+    }
+
+    /**
+     * @return true if this cache can still be used in the given generation, and is not older than maxAge ms.
+     */
+    boolean isValid(long currentGeneration, long maxAge) {
+        return generation == currentGeneration && System.currentTimeMillis() - created < maxAge;
+    }
+
+    Boolean get(SecurityCheckKey key) {
+        return results.get(key);
+    }
+
+    void put(SecurityCheckKey key, Boolean result) {
+        // a request making this many distinct checks gains little from keeping them all
+        if (results.size() >= maxSize) {
+            results.clear();
+        }
+        results.put(key, result);
+    }
+
+    int size() {
+        return results.size();
+    }
+}
@@ -21,9 +21,14 @@
 
 package org.sakaiproject.authz.impl;
 
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import lombok.extern.slf4j.Slf4j;
 
 import net.sf.ehcache.Ehcache;
@@ -80,6 +85,15 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 	
 	protected static final String ROLE_VIEW = "role.view";
 
+	/** ThreadLocalManager key for the per request cache of permission checks. */
+	protected final static String REQUEST_CACHE = "SakaiSecurity.request.cache";
+
+	/** The longest a per request cache is used, for threads that are not cleared at the end of a request. */
+	protected final static long REQUEST_CACHE_MAX_AGE_MS = 30000L;
+
+	/** The name the cache statistics are registered with in JMX. */
+	protected final static String STATS_MBEAN_NAME = "org.sakaiproject:name=SecurityServiceCache";
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Dependencies, configuration, and their setter methods
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -151,6 +165,40 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 		m_cacheMinutes = Integer.parseInt(time);
 	}
 
+	/** If true, permission checks are also cached for the length of the request that makes them. */
+	protected boolean m_requestCache = true;
+
+	/**
+	 * Configuration: cache permission checks for the length of a request, in front of the shared caches.
+	 *
+	 * @param value
+	 *        The request cache value.
+	 */
+	public void setRequestCache(String value)
+	{
+		m_requestCache = Boolean.valueOf(value).booleanValue();
+	}
+
+	/** The most permission checks to hold in the cache of one request. */
+	protected int m_requestCacheSize = 1000;
+
+	/**
+	 * Configuration: the most permission checks to hold in the cache of one request.
+	 *
+	 * @param value
+	 *        The request cache size (as an integer string).
+	 */
+	public void setRequestCacheSize(String value)
+	{
+		m_requestCacheSize = Integer.parseInt(value);
+	}
+
+	/** Moved on whenever cached permission checks are invalidated, which retires every per request cache. */
+	protected final AtomicLong m_cacheGeneration = new AtomicLong();
+
+	/** The function ids and hit counters for the permission checks. */
+	protected SecurityCacheStats m_cacheStats = new SecurityCacheStats(false);
+
     
 	// student view roles, i.e. those you can role swap to
 	HashSet<String> svRoles;
@@ -187,6 +235,19 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 			m_callCache = memoryService().getCache("org.sakaiproject.authz.api.SecurityService.cache");
 			m_superCache = memoryService().getCache("org.sakaiproject.authz.api.SecurityService.superCache");
 			m_contentCache = memoryService().getCache("org.sakaiproject.authz.api.SecurityService.contentCache");
+
+			m_cacheStats = new SecurityCacheStats(m_requestCache);
+			try {
+				MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+				ObjectName on = new ObjectName(STATS_MBEAN_NAME);
+				if (!mBeanServer.isRegistered(on)) {
+					mBeanServer.registerMBean(m_cacheStats, on);
+				}
+			} catch (Exception e) {
+				log.warn("Could not register the security cache statistics with JMX: {}", e.toString());
+			}
+		} else {
+			m_requestCache = false;
 		}
         eventTrackingService().addObserver(this);
 	}
@@ -287,6 +348,7 @@ public abstract class SakaiSecurity implements SecurityService, Observer
      */
     public boolean notifyRealmChanged(String azgReference, Set<String> roles, Set<String> permissions) {
         if (m_callCache == null) return false; // do nothing no cache in use
+        m_cacheGeneration.incrementAndGet(); // membership may have changed too, retire the request caches
         if (azgReference != null) {
             String ref = convertRealmRefToRef(azgReference); // strip off /realm/ from start
             if ("!site.helper".equals(ref)
@@ -334,6 +396,7 @@ public abstract class SakaiSecurity implements SecurityService, Observer
      */
     public boolean notifyRealmRemoved(String azgReference) {
         if (m_callCache == null ) return false; // do nothing no cache in use
+        m_cacheGeneration.incrementAndGet();
         if (azgReference != null) {
             String ref = convertRealmRefToRef(azgReference); // strip off /realm/ from start
             if (ref.startsWith("/content")) {
@@ -357,6 +420,7 @@ public abstract class SakaiSecurity implements SecurityService, Observer
      */
     protected void notifyMembersRemovedFromRealm(Set<String> userIds, String azgRef) {
 
+        m_cacheGeneration.incrementAndGet();
         m_callCache.removeAll(userIds.stream().map(
             uid -> makeCacheKey(uid, null, SiteService.SITE_VISIT, azgRef, false)).collect(Collectors.toSet()));
     }
@@ -394,6 +458,7 @@ public abstract class SakaiSecurity implements SecurityService, Observer
      */
     void cacheRealmPermsChanged(String realmRef, Set<String> roles, Set<String> permissions) {
         if (m_callCache == null) return; // do nothing if no cache in use
+        m_cacheGeneration.incrementAndGet();
         String azgRef = convertRealmRefToRef(realmRef);
         if (permissions == null || permissions.isEmpty()) {
             List<String> allPerms = functionManager().getRegisteredFunctions();
@@ -605,6 +670,15 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 	public void destroy()
 	{
 		log.info("destroy()");
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(STATS_MBEAN_NAME);
+            if (mBeanServer.isRegistered(on)) {
+                mBeanServer.unregisterMBean(on);
+            }
+        } catch (Exception e) {
+            log.warn("Could not unregister the security cache statistics from JMX: {}", e.toString());
+        }
         if (m_callCache != null) m_callCache.close();
         if (m_superCache != null) m_superCache.close();
         if (m_contentCache != null) m_contentCache.close();
@@ -750,6 +824,25 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 	 */
 	protected boolean checkAuthzGroups(String userId, String function, String entityRef, Collection<String> azgs)
 	{
+		// need to know whether role swap is in effect, since we can't share the cache entry between sessions
+		// that are swapped and not swapped
+		String roleswap = getUserEffectiveRole();
+
+		// a request usually asks the same questions many times, answer those before working out the realms
+		SecurityCacheStats.FunctionCounters counters = m_cacheStats.function(function);
+		RequestSecurityCache requestCache = requestCache();
+		SecurityCheckKey requestKey = null;
+		if (requestCache != null)
+		{
+			requestKey = new SecurityCheckKey(userId, roleswap, counters.id, entityRef);
+			Boolean value = requestCache.get(requestKey);
+			if (value != null)
+			{
+				counters.requestHits.increment();
+				return value.booleanValue();
+			}
+		}
+
 		// get this entity's AuthzGroups if needed
 		if (azgs == null)
 		{
@@ -759,11 +852,7 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 			azgs = ref.getAuthzGroups(userId);
 		}
 
-		// need to know whether role swap is in effect, since we can't share the cache entry between sessions
-		// that are swapped and not swapped
-
 		String siteRef = null;
-		String roleswap = getUserEffectiveRole();
 
 		// Actual code in DbAuthzGroupService will not roleswap if there's a user site ref in the list and
 		// it is acceptable. However we can't tell that without doing a database access, so be conservative
@@ -798,18 +887,44 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 		if (m_callCache != null)
 		{
 			final Boolean value = getFromCache(command, false);
-			if(value != null) return value.booleanValue();
+			if (value != null)
+			{
+				counters.cacheHits.increment();
+				if (requestCache != null) requestCache.put(requestKey, value);
+				return value.booleanValue();
+			}
 		}
 
 
 		boolean rv = authzGroupService().isAllowed(userId, function, azgs);
+		counters.misses.increment();
 
 		// cache
 		addToCache(command, rv, false);
+		if (requestCache != null) requestCache.put(requestKey, rv);
 
 		return rv;
 	}
 
+	/**
+	 * Get the permission check cache of the current request, starting a new one if the current one has been retired.
+	 *
+	 * @return the request cache, or null if request caching is disabled.
+	 */
+	protected RequestSecurityCache requestCache()
+	{
+		if (!m_requestCache) return null;
+
+		long generation = m_cacheGeneration.get();
+		RequestSecurityCache cache = (RequestSecurityCache) threadLocalManager().get(REQUEST_CACHE);
+		if (cache == null || !cache.isValid(generation, REQUEST_CACHE_MAX_AGE_MS))
+		{
+			cache = new RequestSecurityCache(generation, m_requestCacheSize);
+			threadLocalManager().set(REQUEST_CACHE, cache);
+		}
+		return cache;
+	}
+
 	/**
 	 * Access the List the Users who can unlock the lock for use with this resource.
 	 * 
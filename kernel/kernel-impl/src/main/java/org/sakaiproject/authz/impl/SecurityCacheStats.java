@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Assigns each security function a small integer id for the per request cache keys, and counts how the checks for
+ * each function are answered.
+ */
+public class SecurityCacheStats implements SecurityCacheStatsMXBean {
+
+    private final Map<String, FunctionCounters> functions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final boolean requestCacheEnabled;
+
+    public SecurityCacheStats(boolean requestCacheEnabled) {
+        this.requestCacheEnabled = requestCacheEnabled;
+    }
+
+    /**
+     * @param function
+     *        The security function.
+     * @return the id and counters of the function, registering it the first time it is seen.
+     */
+    FunctionCounters function(String function) {
+        FunctionCounters counters = functions.get(function);
+        if (counters == null) {
+            counters = functions.computeIfAbsent(function, f -> new FunctionCounters(nextId.getAndIncrement(), f));
+        }
+        return counters;
+    }
+
+    @Override
+    public boolean isRequestCacheEnabled() {
+        return requestCacheEnabled;
+    }
+
+    @Override
+    public long getRequestHits() {
+        return functions.values().stream().mapToLong(c -> c.requestHits.sum()).sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return functions.values().stream().mapToLong(c -> c.cacheHits.sum()).sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return functions.values().stream().mapToLong(c -> c.misses.sum()).sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return hitRatio(getRequestHits(), getCacheHits(), getMisses());
+    }
+
+    @Override
+    public List<FunctionCacheStats> getFunctionCacheStats() {
+        List<FunctionCacheStats> stats = new ArrayList<>(functions.size());
+        for (FunctionCounters c : functions.values()) {
+            long requestHits = c.requestHits.sum();
+            long cacheHits = c.cacheHits.sum();
+            long misses = c.misses.sum();
+            if (requestHits + cacheHits + misses > 0) {
+                stats.add(new FunctionCacheStats(c.name, requestHits, cacheHits, misses, hitRatio(requestHits, cacheHits, misses)));
+            }
+        }
+        stats.sort(Comparator.comparingLong((FunctionCacheStats s) -> s.getRequestHits() + s.getCacheHits() + s.getMisses()).reversed());
+        return stats;
+    }
+
+    @Override
+    public void resetStats() {
+        functions.values().forEach(c -> {
+            c.requestHits.reset();
+            c.cacheHits.reset();
+            c.misses.reset();
+        });
+    }
+
+    private static double hitRatio(long requestHits, long cacheHits, long misses) {
+        long total = requestHits + cacheHits + misses;
+        return total == 0 ? 0 : (double) (requestHits + cacheHits) / total;
+    }
+
+    /**
+     * The id and counters of one security function.
+     */
+    static final class FunctionCounters {
+        final int id;
+        final String name;
+        final LongAdder requestHits = new LongAdder();
+        final LongAdder cacheHits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+
+        FunctionCounters(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
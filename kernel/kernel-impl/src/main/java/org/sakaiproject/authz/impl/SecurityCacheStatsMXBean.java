@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.List;
+
+/**
+ * JMX view of how the SecurityService answers permission checks.
+ */
+public interface SecurityCacheStatsMXBean {
+
+    /**
+     * @return true if permission checks are cached for the length of a request.
+     */
+    boolean isRequestCacheEnabled();
+
+    /**
+     * @return the total number of checks answered by the per request cache.
+     */
+    long getRequestHits();
+
+    /**
+     * @return the total number of checks answered by the shared security cache.
+     */
+    long getCacheHits();
+
+    /**
+     * @return the total number of checks that had to ask the AuthzGroupService.
+     */
+    long getMisses();
+
+    /**
+     * @return the fraction of all checks answered by either cache.
+     */
+    double getHitRatio();
+
+    /**
+     * @return the statistics of each security function, busiest first.
+     */
+    List<FunctionCacheStats> getFunctionCacheStats();
+
+    /**
+     * Reset all the counters.
+     */
+    void resetStats();
+}
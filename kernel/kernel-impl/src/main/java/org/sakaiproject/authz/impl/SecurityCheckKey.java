@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.Objects;
+
+/**
+ * The key of a permission check in the per request security cache. The function is held as the small integer id
+ * assigned to it by {@link SecurityCacheStats}, and the hash is computed once, so repeated lookups neither build
+ * strings nor rehash them.
+ */
+final class SecurityCheckKey {
+
+    private final String userId;
+    private final String role;
+    private final int function;
+    private final String reference;
+    private final int hash;
+
+    /**
+     * @param userId
+     *        The user id (may be null).
+     * @param role
+     *        The swapped role in effect (may be null).
+     * @param function
+     *        The id of the security function.
+     * @param reference
+     *        The entity reference the check is for.
+     */
+    SecurityCheckKey(String userId, String role, int function, String reference) {
+        this.userId = userId;
+        this.role = role;
+        this.function = function;
+        this.reference = reference;
+        this.hash = 31 * (31 * (31 * Objects.hashCode(userId) + Objects.hashCode(role)) + function) + Objects.hashCode(reference);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SecurityCheckKey)) return false;
+        SecurityCheckKey other = (SecurityCheckKey) o;
+        return hash == other.hash
+                && function == other.function
+                && Objects.equals(userId, other.userId)
+                && Objects.equals(reference, other.reference)
+                && Objects.equals(role, other.role);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return userId + "@" + (role == null ? "" : role) + "@" + function + "@" + reference;
+    }
+}
@@ -36,6 +36,8 @@ import java.io.UnsupportedEncodingException;
 import java.net.SocketException;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -7011,8 +7013,20 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 					contentType = contentType + "; charset=" + encoding;
 				}
 
+				// the stored SHA-256 identifies the body, filtered content may change with the filter so it has no ETag
+				String eTag = (resource instanceof WrappedContentResource) ? null : ZeroCopyDelivery.eTag(resource.getContentSha256());
+				String ifNoneMatch = req.getHeader("If-None-Match");
+				if (eTag != null) {
+					res.setHeader("ETag", eTag);
+					if (ZeroCopyDelivery.noneMatch(ifNoneMatch, eTag)) {
+						res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+						return;
+					}
+				}
+
 				// KNL-1316 let's see if the user already has a cached copy. Code copied and modified from Tomcat DefaultServlet.java
-				long headerValue = req.getDateHeader("If-Modified-Since");
+				// If-None-Match takes precedence when the client sent both
+				long headerValue = (eTag != null && ifNoneMatch != null) ? -1 : req.getDateHeader("If-Modified-Since");
 				if (headerValue != -1 && (lastModTime < headerValue + 1000)) {
 					// The entity has not been modified since the date specified by the client. This is not an error case.
 					res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
@@ -7023,9 +7037,13 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 				// Send the asset directly to the load-balancer or to the client
 				URI directLinkUri = m_storage.getDirectLink(resource);
 
-				ArrayList<Range> ranges = parseRange(req, res, len);
+				// bodies on the local file system are sent without copying them through the JVM
+				Path localBody = (directLinkUri == null) ? getLocalBody(resource) : null;
+
+				// a stale If-Range means the whole body is sent
+				ArrayList<Range> ranges = ZeroCopyDelivery.ifRange(req.getHeader("If-Range"), eTag, lastModTime) ? parseRange(req, res, len) : null;
 				if (directLinkUri != null || req.getHeader("Range") == null || (ranges == null) || (ranges.isEmpty())) {
-					res.addHeader("Accept-Ranges", "none");
+					res.addHeader("Accept-Ranges", (directLinkUri == null) ? "bytes" : "none");
 					res.setContentType(contentType);
 					res.addHeader("Content-Disposition", disposition);
 					// http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4187336
@@ -7058,6 +7076,12 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 						}
 					}
 
+					if (localBody != null)
+					{
+						sendLocalBody(req, res, localBody, 0, len - 1);
+						return;
+					}
+
 					// stream the content using a small buffer to keep memory managed
 					InputStream content = null;
 					OutputStream out = null;
@@ -7141,6 +7165,12 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		                    res.setContentType(contentType);
 		                }
 
+						if (localBody != null)
+						{
+							sendLocalBody(req, res, localBody, range.start, range.end);
+							return;
+						}
+
 						// stream the content using a small buffer to keep memory managed
 						InputStream content = null;
 						OutputStream out = null;
@@ -7227,7 +7257,7 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		
 							out = res.getOutputStream();
 
-			            	copyRanges(resource, out, ranges.iterator(), contentType);
+			            	copyRanges(resource, localBody, out, ranges.iterator(), contentType);
 
 						}
 						catch (SocketException e)
@@ -13452,6 +13482,13 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		 */
 		public URI getDirectLink(ContentResource resource);
 
+		/**
+		 * Get the local file the body of the resource is stored in so it can be sent without streaming it through the JVM.
+		 * @param resource
+		 * @return the path or null if the body is not stored on the local file system
+		 */
+		public Path getLocalPath(ContentResource resource);
+
 		/**
 		 * Get a count of all members of a collection, where 'member' means the collection
 		 * is the immediate parent of the item.  The count is not recursive and it will 
@@ -14076,6 +14113,23 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
     protected void copyRanges(ContentResource content, OutputStream out,
                       Iterator ranges, String contentType)
         throws IOException {
+        copyRanges(content, null, out, ranges, contentType);
+    }
+
+    /**
+     * Copy the contents of the resource to the specified output stream in a set of chunks as per the specified ranges,
+     * transferring them straight from the local file when there is one.
+     *
+     * @param content The resource to read from
+     * @param localBody The local file the body is stored in, or null to stream the content
+     * @param out The output stream to write to
+     * @param ranges Enumeration of the ranges the client wanted to retrieve
+     * @param contentType Content type of the resource
+     * @exception IOException if an input/output error occurs
+     */
+    protected void copyRanges(ContentResource content, Path localBody, OutputStream out,
+                      Iterator ranges, String contentType)
+        throws IOException {
 
         IOException exception = null;
                         
@@ -14092,6 +14146,11 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
                            + currentRange.length + "\r\n", out);
             IOUtils.write("\r\n", out);
 
+            if (localBody != null) {
+                ZeroCopyDelivery.transfer(localBody, currentRange.start, currentRange.end, out);
+                continue;
+            }
+
             // Printing content
 			InputStream in = null;
 			try {
@@ -14121,6 +14180,53 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
         }
     }
 
+    /**
+     * Get the local file the body of the resource is stored in, if it can be sent from there.
+     *
+     * @param resource The resource being sent
+     * @return The path of the body or null if it has to be streamed
+     */
+    protected Path getLocalBody(ContentResource resource) {
+        if (!m_serverConfigurationService.getBoolean("content.download.zerocopy", true)) {
+            return null;
+        }
+        Path body = m_storage.getLocalPath(resource);
+        try {
+            // only send the file if it is what the headers promise
+            if (body != null && Files.size(body) == resource.getContentLength()) {
+                return body;
+            }
+        } catch (IOException e) {
+            log.debug("Could not check the body of {}: {}", resource.getId(), e.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Send a range of a body from the local file system, handing it to the container's sendfile when it is large
+     * enough and the container supports it, otherwise transferring it from the file channel.
+     *
+     * @param req The request being served
+     * @param res The response, with all the headers already set
+     * @param body The local file the body is stored in
+     * @param start The first byte to send
+     * @param end The last byte to send
+     */
+    protected void sendLocalBody(HttpServletRequest req, HttpServletResponse res, Path body, long start, long end) {
+        long length = end - start + 1;
+        if (length >= m_serverConfigurationService.getInt("content.download.sendfile.threshold", 49152)
+                && ZeroCopyDelivery.sendfile(req, body, start, end)) {
+            return;
+        }
+
+        try (OutputStream out = res.getOutputStream()) {
+            ZeroCopyDelivery.transfer(body, start, end, out);
+        } catch (IOException e) {
+            // usually the client aborted the connection
+            log.debug("Could not send {}: {}", body, e.toString());
+        }
+    }
+
 	/**
 	 * Establish a security advisor to allow the "embedded" azg work to occur with no need for additional security permissions.
 	 */
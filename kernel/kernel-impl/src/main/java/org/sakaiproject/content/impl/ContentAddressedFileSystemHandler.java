@@ -0,0 +1,417 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.sakaiproject.component.cover.ComponentManager;
+import org.sakaiproject.content.api.FileSystemHandler;
+import org.sakaiproject.db.api.SqlService;
+import org.sakaiproject.util.StorageUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A FileSystemHandler that stores each distinct body once, under a path derived from the SHA-256 of its bytes.
+ * <p>
+ * Bodies are written to a temporary file while they are hashed and then handed to the delegate handler (the default
+ * file system handler or one of the cloud-content handlers) at /sha256/ab/cd/abcd..., where a file system delegate
+ * simply renames the temporary file into place. A body that is already stored is not written again. The number of
+ * resources using each body is kept in CONTENT_BODY_REF; deleting a resource only decrements that count and bodies
+ * nobody uses any more are removed by a periodic sweep once the grace period has passed.
+ * </p>
+ * <p>
+ * Paths that were not written by this handler are passed to the delegate unchanged, so existing bodies stay readable
+ * until they are migrated.
+ * </p>
+ */
+@Slf4j
+public class ContentAddressedFileSystemHandler implements FileSystemHandler {
+
+    /** All content addressed paths start with this. */
+    public static final String PATH_PREFIX = "/sha256/";
+
+    /** Reference count of a body that is being removed by the sweep. */
+    private static final int REMOVING = -1;
+
+    /** How often to check again for a body that is being removed while it is stored again. */
+    private static final long REMOVING_WAIT_MS = 100;
+    private static final int REMOVING_ATTEMPTS = 50;
+
+    private SqlService sqlService;
+    private FileSystemHandler delegate;
+    private String delegateName = "org.sakaiproject.content.api.FileSystemHandler.file";
+    private String temporaryDirectory;
+    private boolean autoDdl = false;
+    private int sweepInterval = 3600;
+    private int sweepGracePeriod = 3600;
+
+    private final Object[] locks = new Object[64];
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong bytesDeduplicated = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+
+    private ScheduledExecutorService sweeper;
+
+    public ContentAddressedFileSystemHandler() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public void setSqlService(SqlService sqlService) {
+        this.sqlService = sqlService;
+    }
+
+    /**
+     * The handler that actually stores the bodies. When not set the handler named by delegateName is used.
+     */
+    public void setDelegate(FileSystemHandler delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * The bean name of the handler that actually stores the bodies, looked up the first time it is needed so that
+     * handlers from other components (e.g. cloud-content) can be used.
+     */
+    public void setDelegateName(String delegateName) {
+        this.delegateName = delegateName;
+    }
+
+    /**
+     * Where bodies are written while they are hashed when the delegate is not on the local file system.
+     * The default is the java temp dir.
+     */
+    public void setTemporaryDirectory(String temporaryDirectory) {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+
+    /**
+     * Whether to create the reference count table on init.
+     */
+    public void setAutoDdl(String value) {
+        autoDdl = Boolean.valueOf(value);
+    }
+
+    /**
+     * Seconds between sweeps for bodies that are no longer used, 0 to never sweep.
+     */
+    public void setSweepInterval(int sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    /**
+     * Seconds a body must have been unused before the sweep removes it.
+     */
+    public void setSweepGracePeriod(int sweepGracePeriod) {
+        this.sweepGracePeriod = sweepGracePeriod;
+    }
+
+    public void init() {
+        if (autoDdl) {
+            sqlService.ddl(this.getClass().getClassLoader(), "sakai_content_body_ref");
+        }
+
+        if (sweepInterval > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ContentAddressedFileSystemHandler-sweep");
+                t.setDaemon(true);
+                return t;
+            });
+            sweeper.scheduleWithFixedDelay(() -> {
+                try {
+                    sweep();
+                } catch (Exception e) {
+                    log.warn("Sweep of unused content bodies failed", e);
+                }
+            }, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+        }
+        log.info("init(): delegate: {} sweep interval: {}s grace period: {}s", delegate != null ? delegate : delegateName, sweepInterval, sweepGracePeriod);
+    }
+
+    public void destroy() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        log.info("destroy(): stored: {} deduplicated: {} ({} bytes) removed: {}", stored.get(), deduplicated.get(), bytesDeduplicated.get(), removed.get());
+    }
+
+    /**
+     * @param hash the hex SHA-256 of a body.
+     * @return the path the body is stored at, e.g. /sha256/ab/cd/abcd...
+     */
+    public static String contentPath(String hash) {
+        return PATH_PREFIX + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+    }
+
+    /**
+     * @param filePath a resource file path.
+     * @return true if the path was written by this handler.
+     */
+    public static boolean isContentPath(String filePath) {
+        return filePath != null && filePath.startsWith(PATH_PREFIX);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public URI getAssetDirectLink(String id, String root, String filePath) throws IOException {
+        if (isContentPath(filePath)) {
+            return getDelegate().getAssetDirectLink(filePath, root, filePath);
+        }
+        return getDelegate().getAssetDirectLink(id, root, filePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getInputStream(String id, String root, String filePath) throws IOException {
+        if (isContentPath(filePath)) {
+            return getDelegate().getInputStream(filePath, root, filePath);
+        }
+        return getDelegate().getInputStream(id, root, filePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Path getLocalPath(String id, String root, String filePath) {
+        if (isContentPath(filePath)) {
+            return getDelegate().getLocalPath(filePath, root, filePath);
+        }
+        return getDelegate().getLocalPath(id, root, filePath);
+    }
+
+    /**
+     * Store the body under its content path, the filePath is ignored. The caller is responsible for pointing the
+     * resource at {@link #contentPath(String)} of the hash of the same bytes.
+     */
+    @Override
+    public long saveInputStream(String id, String root, String filePath, InputStream stream) throws IOException {
+        if (stream == null) {
+            return 0L;
+        }
+
+        FileSystemHandler target = getDelegate();
+        File temporary = createTemporaryFile(target, root);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size;
+            try (InputStream in = new DigestInputStream(stream, digest); OutputStream out = new FileOutputStream(temporary)) {
+                size = IOUtils.copyLarge(in, out);
+            }
+            String hash = StorageUtils.bytesToHex(digest.digest());
+            store(target, root, hash, size, temporary);
+            return size;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Release one reference to a content addressed body, the body itself is removed by the sweep once it is no
+     * longer used. Other paths are deleted by the delegate straight away.
+     */
+    @Override
+    public boolean delete(String id, String root, String filePath) {
+        if (!isContentPath(filePath)) {
+            return getDelegate().delete(id, root, filePath);
+        }
+
+        String hash = filePath.substring(filePath.lastIndexOf('/') + 1);
+        String sql = "UPDATE CONTENT_BODY_REF SET REF_COUNT = REF_COUNT - 1, LAST_UPDATED = ? WHERE BODY_ROOT = ? AND BODY_HASH = ? AND REF_COUNT > 0";
+        int updated = sqlService.dbWriteCount(sql, new Object[] {System.currentTimeMillis(), root, hash}, null, null, false);
+        if (updated != 1) {
+            log.warn("No reference to release for body {} in {}", filePath, root);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remove the bodies that have not been used for the grace period.
+     *
+     * @return the number of bodies removed.
+     */
+    public int sweep() {
+        long now = System.currentTimeMillis();
+        long cutoff = now - TimeUnit.SECONDS.toMillis(sweepGracePeriod);
+
+        String sql = "SELECT BODY_ROOT, BODY_HASH FROM CONTENT_BODY_REF WHERE REF_COUNT <= 0 AND LAST_UPDATED < ?";
+        List<String[]> unused = sqlService.dbRead(sql, new Object[] {cutoff}, this::readRootAndHash);
+
+        int count = 0;
+        for (String[] body : unused) {
+            String root = body[0];
+            String hash = body[1];
+
+            // claim the body so that it is not stored again while it is removed, this also picks up removals
+            // that were interrupted before
+            String claim = "UPDATE CONTENT_BODY_REF SET REF_COUNT = ?, LAST_UPDATED = ? WHERE BODY_ROOT = ? AND BODY_HASH = ? AND REF_COUNT <= 0 AND LAST_UPDATED < ?";
+            if (sqlService.dbWriteCount(claim, new Object[] {REMOVING, now, root, hash, cutoff}, null, null, false) != 1) {
+                continue;
+            }
+
+            String path = contentPath(hash);
+            getDelegate().delete(path, root, path);
+            sqlService.dbWrite("DELETE FROM CONTENT_BODY_REF WHERE BODY_ROOT = ? AND BODY_HASH = ? AND REF_COUNT = ?", new Object[] {root, hash, REMOVING});
+            removed.incrementAndGet();
+            count++;
+        }
+
+        if (count > 0) {
+            log.info("Removed {} unused content bodies", count);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of bodies written to the delegate.
+     */
+    public long getStoredCount() {
+        return stored.get();
+    }
+
+    /**
+     * @return the number of bodies that were already stored and so were not written again.
+     */
+    public long getDeduplicatedCount() {
+        return deduplicated.get();
+    }
+
+    /**
+     * @return the number of bytes that were not written again.
+     */
+    public long getDeduplicatedBytes() {
+        return bytesDeduplicated.get();
+    }
+
+    /**
+     * Add a reference to the body, writing it to the delegate when it is not stored yet.
+     */
+    private void store(FileSystemHandler target, String root, String hash, long size, File temporary) throws IOException {
+        String path = contentPath(hash);
+        Object lock = locks[Math.floorMod(hash.hashCode(), locks.length)];
+
+        for (int attempt = 0; attempt < REMOVING_ATTEMPTS; attempt++) {
+            synchronized (lock) {
+                long now = System.currentTimeMillis();
+                String increment = "UPDATE CONTENT_BODY_REF SET REF_COUNT = REF_COUNT + 1, LAST_UPDATED = ? WHERE BODY_ROOT = ? AND BODY_HASH = ? AND REF_COUNT >= 0";
+                if (sqlService.dbWriteCount(increment, new Object[] {now, root, hash}, null, null, false) == 1) {
+                    deduplicated.incrementAndGet();
+                    bytesDeduplicated.addAndGet(size);
+                    log.debug("Body {} is already stored in {}", path, root);
+                    return;
+                }
+
+                // only write the body once the sweep has finished with it, if it is being removed
+                List<String> removing = sqlService.dbRead("SELECT BODY_HASH FROM CONTENT_BODY_REF WHERE BODY_ROOT = ? AND BODY_HASH = ?", new Object[] {root, hash}, null);
+                if (removing.isEmpty()) {
+                    if (target instanceof DefaultFileSystemHandler) {
+                        ((DefaultFileSystemHandler) target).saveFile(path, root, path, temporary);
+                    } else {
+                        try (InputStream in = new FileInputStream(temporary)) {
+                            target.saveInputStream(path, root, path, in);
+                        }
+                    }
+
+                    // only a duplicate key comes back as -1, any other failure is thrown rather than writing the body again
+                    String insert = "INSERT INTO CONTENT_BODY_REF (BODY_ROOT, BODY_HASH, FILE_SIZE, REF_COUNT, LAST_UPDATED) VALUES (?, ?, ?, 1, ?)";
+                    int inserted;
+                    try {
+                        inserted = sqlService.dbWriteCount(insert, new Object[] {root, hash, size, now}, null, null, 0);
+                    } catch (RuntimeException e) {
+                        throw new IOException("Could not record body " + path + " in " + root, e);
+                    }
+                    if (inserted == 1) {
+                        stored.incrementAndGet();
+                        return;
+                    }
+                    // another server stored it at the same time, count this one as a reference to it
+                    continue;
+                }
+            }
+
+            try {
+                Thread.sleep(REMOVING_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw new IOException("Could not store body " + path + " in " + root + " as it is being removed");
+    }
+
+    /**
+     * Temporary files for the default handler are created next to the bodies so they can be renamed into place.
+     */
+    private File createTemporaryFile(FileSystemHandler target, String root) throws IOException {
+        File directory;
+        if (target instanceof DefaultFileSystemHandler) {
+            directory = new File(root, PATH_PREFIX + "tmp");
+        } else if (temporaryDirectory != null) {
+            directory = new File(temporaryDirectory);
+        } else {
+            directory = new File(System.getProperty("java.io.tmpdir"));
+        }
+        directory.mkdirs();
+        return File.createTempFile("body", ".tmp", directory);
+    }
+
+    private FileSystemHandler getDelegate() {
+        if (delegate == null) {
+            delegate = (FileSystemHandler) ComponentManager.get(delegateName);
+            if (delegate == null) {
+                throw new IllegalStateException("No FileSystemHandler named " + delegateName);
+            }
+        }
+        return delegate;
+    }
+
+    private String[] readRootAndHash(ResultSet result) {
+        try {
+            return new String[] {result.getString(1), result.getString(2)};
+        } catch (SQLException e) {
+            log.warn("Could not read body reference: {}", e.toString());
+            return null;
+        }
+    }
+}
@@ -86,6 +86,11 @@ public interface ContentServiceSql
 	 */
 	String getResourceIdXmlSql();
 
+	/**
+	 * returns the sql statement which retrieves the resource id and xml fields from the content_resource table for bodies not stored by content address.
+	 */
+	String getResourceIdXmlNotContentAddressedSql();
+
 	/**
 	 * returns the sql statement which retrieves all id's and file paths where the file path is not null.
 	 * This is used for converting storage from one FileSystemHandler to another.
@@ -112,6 +117,11 @@ public interface ContentServiceSql
 	 */
 	String getUpdateContentResource3Sql();
 
+	/**
+	 * returns the sql statement which updates the file path and xml fields in the content_resource table for a given resource id and current file path.
+	 */
+	String getUpdateContentResourceFilePathSql();
+
 	/**
 	 * returns the sql statement which retrieves pairs of individual-dropbox-id and last-update fields from the content_dropbox_changes table for a given site-level dropbox-id.
 	 */
@@ -142,6 +152,42 @@ public interface ContentServiceSql
 	 * KNL-1084, SAK-22169
 	 */
 	String getDropBoxRootQuotaQuerySql();
+
+	/**
+	 * returns the sql statement which retrieves the context and file size of a resource in the CONTENT_RESOURCE table.
+	 */
+	String getResourceContextSizeSql();
+
+	/**
+	 * returns the sql statement which retrieves the maintained total number of bytes within a context.
+	 */
+	String getContextUsageSql();
+
+	/**
+	 * returns the sql statement which counts the maintained totals, used to check the table exists.
+	 */
+	String getContextUsageCountSql();
+
+	/**
+	 * returns the sql statement which inserts the total number of bytes within a context.
+	 */
+	String getInsertContextUsageSql();
+
+	/**
+	 * returns the sql statement which adds to the total number of bytes within a context.
+	 */
+	String getUpdateContextUsageSql();
+
+	/**
+	 * returns the sql statement which retrieves up to a number of the contexts whose totals were last recomputed before a given time, oldest first.
+	 */
+	String getContextUsageToReconcileSql();
+
+	/**
+	 * returns the sql statement which replaces the total of a context with a recomputed one, if it has not changed since it was read.
+	 */
+	String getReconcileContextUsageSql();
+
 	/**
 	 * returns the sql statement which retrieves the RESOURCE_ID and XML values for all entries in the specified table where file-size is null.
 	 */
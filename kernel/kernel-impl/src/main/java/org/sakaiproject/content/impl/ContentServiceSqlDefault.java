@@ -123,6 +123,14 @@ public class ContentServiceSqlDefault implements ContentServiceSql
 		return "select RESOURCE_ID, XML, BINARY_ENTITY from CONTENT_RESOURCE where FILE_PATH IS NULL";
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getResourceIdXmlNotContentAddressedSql()
+	{
+		return "select RESOURCE_ID, XML, BINARY_ENTITY from CONTENT_RESOURCE where FILE_PATH IS NOT NULL and FILE_PATH NOT LIKE '" + ContentAddressedFileSystemHandler.PATH_PREFIX + "%'";
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -163,6 +171,14 @@ public class ContentServiceSqlDefault implements ContentServiceSql
 		return "update CONTENT_RESOURCE set FILE_PATH = ?, XML = NULL, BINARY_ENTITY = ?, CONTEXT = ?, FILE_SIZE = ?, RESOURCE_TYPE_ID = ? where RESOURCE_ID = ?";
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getUpdateContentResourceFilePathSql()
+	{
+		return "update CONTENT_RESOURCE set FILE_PATH = ?, XML = NULL, BINARY_ENTITY = ?, RESOURCE_SHA256 = ? where RESOURCE_ID = ? and FILE_PATH = ?";
+	}
+
 	/**
 	 * returns the sql statement which retrieves pairs of individual-dropbox-id and last-update fields from the content_dropbox_changes table for a given site-level dropbox-id.
 	 */
@@ -254,4 +270,60 @@ public class ContentServiceSqlDefault implements ContentServiceSql
 	    return "select SUM(FILE_SIZE) from CONTENT_RESOURCE where IN_COLLECTION LIKE ? and not exists (select 1 from SAKAI_USER_ID_MAP where USER_ID = substr(in_collection,length(?)+1,instr(substr(in_collection,length(?)+1),'/')-1))";
 	}
 
+	/**
+	 * returns the sql statement which retrieves the context and file size of a resource in the CONTENT_RESOURCE table.
+	 */
+	public String getResourceContextSizeSql()
+	{
+		return "select CONTEXT, FILE_SIZE from CONTENT_RESOURCE where RESOURCE_ID = ?";
+	}
+
+	/**
+	 * returns the sql statement which retrieves the maintained total number of bytes within a context.
+	 */
+	public String getContextUsageSql()
+	{
+		return "select FILE_SIZE from CONTENT_CONTEXT_USAGE where CONTEXT = ?";
+	}
+
+	/**
+	 * returns the sql statement which counts the maintained totals, used to check the table exists.
+	 */
+	public String getContextUsageCountSql()
+	{
+		return "select count(*) from CONTENT_CONTEXT_USAGE";
+	}
+
+	/**
+	 * returns the sql statement which inserts the total number of bytes within a context.
+	 */
+	public String getInsertContextUsageSql()
+	{
+		return "insert into CONTENT_CONTEXT_USAGE (CONTEXT, FILE_SIZE, LAST_RECONCILED) values (?, ?, ?)";
+	}
+
+	/**
+	 * returns the sql statement which adds to the total number of bytes within a context.
+	 */
+	public String getUpdateContextUsageSql()
+	{
+		return "update CONTENT_CONTEXT_USAGE set FILE_SIZE = FILE_SIZE + ? where CONTEXT = ?";
+	}
+
+	/**
+	 * returns the sql statement which retrieves up to a number of the contexts whose totals were last recomputed before a given time, oldest first.
+	 */
+	public String getContextUsageToReconcileSql()
+	{
+		return "select CONTEXT, FILE_SIZE from CONTENT_CONTEXT_USAGE where LAST_RECONCILED < ? order by LAST_RECONCILED limit ?";
+	}
+
+	/**
+	 * returns the sql statement which replaces the total of a context with a recomputed one, if it has not changed since it was read.
+	 */
+	public String getReconcileContextUsageSql()
+	{
+		return "update CONTENT_CONTEXT_USAGE set FILE_SIZE = ?, LAST_RECONCILED = ? where CONTEXT = ? and FILE_SIZE = ? and LAST_RECONCILED < ?";
+	}
+
 }
@@ -51,4 +51,12 @@ public class ContentServiceSqlOracle extends ContentServiceSqlDefault
 		return "select count(IN_COLLECTION) from CONTENT_COLLECTION where IN_COLLECTION like ? ESCAPE '\\'";
 	}
 
+	/**
+	 * returns the sql statement which retrieves up to a number of the contexts whose totals were last recomputed before a given time, oldest first.
+	 */
+	public String getContextUsageToReconcileSql()
+	{
+		return "select CONTEXT, FILE_SIZE from (select CONTEXT, FILE_SIZE from CONTENT_CONTEXT_USAGE where LAST_RECONCILED < ? order by LAST_RECONCILED) where rownum <= ?";
+	}
+
 }
@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sakaiproject.db.api.SqlService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the total FILE_SIZE of the resources in each context (a site or a user's workspace) in CONTENT_CONTEXT_USAGE,
+ * so that quota checks and the storage shown in site info read one row instead of adding up every resource in the site.
+ * <p>
+ * The total for a context is seeded from the SUM query the first time it is read and is then adjusted by the storage
+ * as resources are committed and removed. The adjustment is written straight after the resource row rather than in
+ * the same transaction, so a background reconciliation recomputes the totals that have not been checked for a while
+ * and corrects the ones that drifted (after a failed write, a bulk conversion or a direct change to the database).
+ * </p>
+ */
+@Slf4j
+class ContextUsageCounters {
+
+    /** The context and size stored for a resource. */
+    static final class Usage {
+        final String context;
+        final long size;
+
+        Usage(String context, long size) {
+            this.context = context;
+            this.size = size;
+        }
+    }
+
+    private final SqlService sqlService;
+    private final ContentServiceSql contentServiceSql;
+
+    private final AtomicLong seeded = new AtomicLong();
+    private final AtomicLong adjusted = new AtomicLong();
+    private final AtomicLong reconciled = new AtomicLong();
+    private final AtomicLong drifted = new AtomicLong();
+
+    private ScheduledExecutorService reconciler;
+
+    ContextUsageCounters(SqlService sqlService, ContentServiceSql contentServiceSql) {
+        this.sqlService = sqlService;
+        this.contentServiceSql = contentServiceSql;
+    }
+
+    /**
+     * @return true if the usage table can be read.
+     */
+    boolean available() {
+        return !sqlService.dbRead(contentServiceSql.getContextUsageCountSql(), null, null).isEmpty();
+    }
+
+    /**
+     * Recompute totals in the background.
+     *
+     * @param interval Seconds between runs, also how long a total is trusted before it is recomputed. 0 to never run.
+     * @param batch The most totals to recompute in one run.
+     */
+    void start(int interval, int batch) {
+        if (interval <= 0) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ContextUsageCounters-reconcile");
+            t.setDaemon(true);
+            return t;
+        });
+        reconciler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile(TimeUnit.SECONDS.toMillis(interval), batch);
+            } catch (Exception e) {
+                log.warn("Reconciliation of the context usage totals failed", e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    void stop() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+        }
+        log.info("stop(): seeded: {} adjusted: {} reconciled: {} drifted: {}", seeded.get(), adjusted.get(), reconciled.get(), drifted.get());
+    }
+
+    /**
+     * @param context The context.
+     * @return The total size in bytes of the resources in the context.
+     */
+    long getUsage(String context) {
+        List<String> rows = sqlService.dbRead(contentServiceSql.getContextUsageSql(), new Object[] {context}, null);
+        if (!rows.isEmpty()) {
+            return parse(rows.get(0));
+        }
+
+        // first use of the context, start from the resources already there
+        long size = sum(context);
+        if (sqlService.dbWriteCount(contentServiceSql.getInsertContextUsageSql(), new Object[] {context, size, System.currentTimeMillis()}, null, null, 2) == 1) {
+            seeded.incrementAndGet();
+            return size;
+        }
+
+        // another request seeded it first
+        rows = sqlService.dbRead(contentServiceSql.getContextUsageSql(), new Object[] {context}, null);
+        return rows.isEmpty() ? size : parse(rows.get(0));
+    }
+
+    /**
+     * @param resourceId The resource id.
+     * @return The context and size currently stored for the resource, or null if it is not stored.
+     */
+    Usage getStored(String resourceId) {
+        List<Usage> rows = sqlService.dbRead(contentServiceSql.getResourceContextSizeSql(), new Object[] {resourceId}, this::readUsage);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Move the totals from what was stored for a resource to what is stored now.
+     *
+     * @param before What was stored for the resource before the change, null if it was not stored.
+     * @param context The context the resource is now stored in, null if it has been removed or has no context.
+     * @param size The size now stored for the resource.
+     */
+    void changed(Usage before, String context, long size) {
+        if (before != null && Objects.equals(before.context, context)) {
+            adjust(context, size - before.size);
+            return;
+        }
+        if (before != null) {
+            adjust(before.context, -before.size);
+        }
+        adjust(context, size);
+    }
+
+    /**
+     * Recompute the totals that have not been recomputed for a while. A total that changes while it is being
+     * recomputed is left for the next run.
+     *
+     * @param age How long in ms a total is trusted for.
+     * @param batch The most totals to recompute.
+     * @return The number of totals that had drifted.
+     */
+    int reconcile(long age, int batch) {
+        long now = System.currentTimeMillis();
+        long cutoff = now - age;
+        List<Usage> stale = sqlService.dbRead(contentServiceSql.getContextUsageToReconcileSql(), new Object[] {cutoff, batch}, this::readUsage);
+
+        int corrected = 0;
+        for (Usage usage : stale) {
+            long size = sum(usage.context);
+            if (sqlService.dbWriteCount(contentServiceSql.getReconcileContextUsageSql(), new Object[] {size, now, usage.context, usage.size, cutoff}, null, null, false) == 1) {
+                reconciled.incrementAndGet();
+                if (size != usage.size) {
+                    log.debug("Context {} usage drifted from {} to {}", usage.context, usage.size, size);
+                    drifted.incrementAndGet();
+                    corrected++;
+                }
+            }
+        }
+
+        if (corrected > 0) {
+            log.info("Corrected the usage totals of {} of {} contexts", corrected, stale.size());
+        }
+        return corrected;
+    }
+
+    private void adjust(String context, long delta) {
+        if (context == null || delta == 0) {
+            return;
+        }
+        // contexts without a total are seeded from the resources when they are first read
+        if (sqlService.dbWriteCount(contentServiceSql.getUpdateContextUsageSql(), new Object[] {delta, context}, null, null, false) == 1) {
+            adjusted.incrementAndGet();
+        }
+    }
+
+    private long sum(String context) {
+        List<String> rows = sqlService.dbRead(contentServiceSql.getQuotaQuerySql(), new Object[] {context}, null);
+        return rows.isEmpty() ? 0 : parse(rows.get(0));
+    }
+
+    private Usage readUsage(ResultSet result) {
+        try {
+            return new Usage(result.getString(1), result.getLong(2));
+        } catch (SQLException e) {
+            log.warn("readUsage: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static long parse(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            // some databases return the SUM as a decimal
+            return new BigDecimal(value.trim()).longValue();
+        } catch (NumberFormatException e) {
+            log.warn("Unable to parse a size from \"{}\"", value);
+            return 0;
+        }
+    }
+
+    /**
+     * @return The number of contexts whose totals have been seeded from their resources.
+     */
+    long getSeededCount() {
+        return seeded.get();
+    }
+
+    /**
+     * @return The number of totals that were found to have drifted by the reconciliation.
+     */
+    long getDriftedCount() {
+        return drifted.get();
+    }
+}
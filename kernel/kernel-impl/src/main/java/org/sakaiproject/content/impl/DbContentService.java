@@ -27,6 +27,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Path;
 import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -315,6 +316,66 @@ public class DbContentService extends BaseContentService
         m_convertToFile = Boolean.valueOf(value).booleanValue();
     }
 
+    /** Set if we are to move existing bodies to their content address. */
+    protected boolean m_migrateToContentAddressed = false;
+
+    /**
+     * Configuration: move existing bodies to their content address, only used with the ContentAddressedFileSystemHandler.
+     * 
+     * @param value
+     *        The migration desired value.
+     */
+    public void setMigrateToContentAddressed(String value)
+    {
+        m_migrateToContentAddressed = Boolean.valueOf(value).booleanValue();
+    }
+
+    /** Set if we are to maintain the total size of the resources in each context. */
+    protected boolean m_contextUsage = true;
+
+    /**
+     * Configuration: maintain the total size of the resources in each context in CONTENT_CONTEXT_USAGE instead of adding
+     * them up for every quota check.
+     * 
+     * @param value
+     *        The context usage desired value.
+     */
+    public void setContextUsage(String value)
+    {
+        m_contextUsage = Boolean.valueOf(value).booleanValue();
+    }
+
+    /** Seconds between recomputing the context usage totals, 0 to never recompute them. */
+    protected int m_contextUsageReconcileInterval = 3600;
+
+    /**
+     * Configuration: seconds between recomputing the context usage totals, also how long a total is trusted for.
+     * 
+     * @param value
+     *        The interval in seconds.
+     */
+    public void setContextUsageReconcileInterval(String value)
+    {
+        m_contextUsageReconcileInterval = Integer.parseInt(value.trim());
+    }
+
+    /** The most context usage totals to recompute in one run. */
+    protected int m_contextUsageReconcileBatch = 1000;
+
+    /**
+     * Configuration: the most context usage totals to recompute in one run.
+     * 
+     * @param value
+     *        The batch size.
+     */
+    public void setContextUsageReconcileBatch(String value)
+    {
+        m_contextUsageReconcileBatch = Integer.parseInt(value.trim());
+    }
+
+    /** The maintained context usage totals, null if they are not used. */
+    protected ContextUsageCounters m_contextUsageCounters = null;
+
     /** Configuration: to run the ddl on init or not. */
     protected boolean m_autoDdl = false;
 
@@ -402,6 +463,25 @@ public class DbContentService extends BaseContentService
 
                 // add the delete table
                 m_sqlService.ddl(this.getClass().getClassLoader(), "sakai_content_delete");
+
+                if (m_contextUsage)
+                {
+                    m_sqlService.ddl(this.getClass().getClassLoader(), "sakai_content_context_usage");
+                }
+            }
+
+            if (m_contextUsage)
+            {
+                ContextUsageCounters counters = new ContextUsageCounters(m_sqlService, contentServiceSql);
+                if (counters.available())
+                {
+                    counters.start(m_contextUsageReconcileInterval, m_contextUsageReconcileBatch);
+                    m_contextUsageCounters = counters;
+                }
+                else
+                {
+                    log.warn("init(): CONTENT_CONTEXT_USAGE could not be read, quota checks will add up the resources in each context");
+                }
             }
 
             try
@@ -451,6 +531,15 @@ public class DbContentService extends BaseContentService
                 convertToFile();
             }
 
+            // move existing bodies to their content address, in the background as it reads every body
+            if (m_migrateToContentAddressed && m_bodyPath != null && fileSystemHandler instanceof ContentAddressedFileSystemHandler)
+            {
+                m_migrateToContentAddressed = false;
+                Thread migration = new Thread(this::migrateToContentAddressed, "DbContentService-migrateToContentAddressed");
+                migration.setDaemon(true);
+                migration.start();
+            }
+
             //Check that there is a valid file system handler
             if (m_bodyPath != null && fileSystemHandler == null)
             {
@@ -469,6 +558,20 @@ public class DbContentService extends BaseContentService
         //testResourceByTypePaging();
     }
 
+    /**
+     * Returns to uninitialized state.
+     */
+    public void destroy()
+    {
+        if (m_contextUsageCounters != null)
+        {
+            m_contextUsageCounters.stop();
+            m_contextUsageCounters = null;
+        }
+
+        super.destroy();
+    }
+
     /**
      * Runs tests of the getResourcesOfType() method. Steps are:<br/>
      * 1) Add 26 site-level resource collections ("/group/site_A/" through "/group/site_Z/")
@@ -1719,6 +1822,9 @@ public class DbContentService extends BaseContentService
                 {
                     BaseResourceEdit redit = (BaseResourceEdit) edit;
                     boolean ok = true;
+                    // a content addressed body written here and the one it replaces, only one of them is released below
+                    boolean stored = false;
+                    String previousPath = redit.m_filePath;
 
                     /**
                      * https://jira.sakaiproject.org/browse/KNL-817
@@ -1773,6 +1879,7 @@ public class DbContentService extends BaseContentService
                                 {
                                     message += "to file";
                                     ok = putResourceBodyFilesystem(edit, redit.m_contentStream, m_bodyPath);
+                                    stored = ok;
                                 }
 
                                 // otherwise use the database
@@ -1798,6 +1905,7 @@ public class DbContentService extends BaseContentService
                                 {
                                     message += "to file";
                                     ok = putResourceBodyFilesystem(edit, new ByteArrayInputStream(body), m_bodyPath);
+                                    stored = ok;
                                 }
 
                                 // otherwise use the database
@@ -1810,19 +1918,37 @@ public class DbContentService extends BaseContentService
                         }
                     }
 
-                    if (!ok)
+                    boolean committed = false;
+                    try
                     {
-                        cancelResource(edit);
-                        ServerOverloadException e = new ServerOverloadException(message);
-                        // may be overkill, but let's make sure stack trace gets to log
-                        log.error(message, e);
-                        throw e;
+                        if (!ok)
+                        {
+                            cancelResource(edit);
+                            ServerOverloadException e = new ServerOverloadException(message);
+                            // may be overkill, but let's make sure stack trace gets to log
+                            log.error(message, e);
+                            throw e;
+                        }
+                        if(isInsideIndividualDropbox(edit.getId()))
+                        {
+                            insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
+                        }
+                        ContextUsageCounters.Usage before = (m_contextUsageCounters != null) ? m_contextUsageCounters.getStored(edit.getId()) : null;
+                        m_resourceStore.commitResource(edit);
+                        committed = true;
+                        if (m_contextUsageCounters != null)
+                        {
+                            m_contextUsageCounters.changed(before, redit.getContext(), redit.getContentLength());
+                        }
                     }
-                    if(isInsideIndividualDropbox(edit.getId()))
+                    finally
                     {
-                        insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
+                        if (stored)
+                        {
+                            // the stored resource points at the old body until the commit succeeds, so keep that one until then
+                            releaseContentAddressedBody(edit.getId(), committed ? previousPath : redit.m_filePath);
+                        }
                     }
-                    m_resourceStore.commitResource(edit);
                 }
 
             }
@@ -2088,10 +2214,15 @@ public class DbContentService extends BaseContentService
 
 							String statement = "SELECT COUNT(FILE_PATH) FROM "+m_resourceTableName+" WHERE FILE_PATH = ?;";
 							int references = -1;
-							try {
-								references = countQuery(statement, filePath);
-							} catch ( IdUnusedException e ) {
-								log.warn("Unexpected error {}", e.getMessage());
+							if (fileSystemHandler instanceof ContentAddressedFileSystemHandler && ContentAddressedFileSystemHandler.isContentPath(filePath)) {
+								// the handler counts the references to content addressed bodies itself
+								references = 1;
+							} else {
+								try {
+									references = countQuery(statement, filePath);
+								} catch ( IdUnusedException e ) {
+									log.warn("Unexpected error {}", e.getMessage());
+								}
 							}
 
 							if ( references > 1 ) {
@@ -2122,7 +2253,12 @@ public class DbContentService extends BaseContentService
 				   {
 					   insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
 				   }
+				   ContextUsageCounters.Usage before = (m_contextUsageCounters != null) ? m_contextUsageCounters.getStored(edit.getId()) : null;
 				   m_resourceStore.removeResource(edit);
+				   if (m_contextUsageCounters != null)
+				   {
+					   m_contextUsageCounters.changed(before, null, 0);
+				   }
 
 			   }
 		   }
@@ -2313,6 +2449,25 @@ public class DbContentService extends BaseContentService
         	return null;
         }
 
+        /**
+         * Return the local file the body is stored in.
+         *
+         * @param resource
+         * @return the path of the body or null if it is not stored on the local file system
+         */
+        public Path getLocalPath(ContentResource resource)
+        {
+            // virtual, filtered and database bodies can only be streamed
+            if (m_bodyPath == null || resolver != null || resource instanceof WrappedContentResource || !(resource instanceof BaseResourceEdit)) {
+                return null;
+            }
+            BaseResourceEdit edit = (BaseResourceEdit) resource;
+            if (edit.m_contentLength == 0 || edit.m_filePath == null) {
+                return null;
+            }
+            return fileSystemHandler.getLocalPath(edit.m_id, m_bodyPath, edit.m_filePath);
+        }
+
         /**
          * Return an input stream.
          * 
@@ -2511,6 +2666,12 @@ public class DbContentService extends BaseContentService
                     props.addProperty(ResourceProperties.PROP_CONTENT_TYPE, resource.getContentType());
                 }
 
+                if (fileSystemHandler instanceof ContentAddressedFileSystemHandler) {
+                    // the body was stored under its hash, the caller releases the body it replaces once the resource is committed
+                    ((BaseResourceEdit) resource).m_filePath = ContentAddressedFileSystemHandler.contentPath(hex);
+                    return true;
+                }
+
                 // Check if there already is an identical file (most recent if there is > 1)
                 boolean singleInstanceStore = m_serverConfigurationService.getBoolean(PROP_SINGLE_INSTANCE, PROP_SINGLE_INSTANCE_DEFAULT);
                 if ( singleInstanceStore && m_bodyPath != null && m_bodyPath.equals(rootFolder)) {
@@ -2540,6 +2701,22 @@ public class DbContentService extends BaseContentService
             }
         }
 
+        /**
+         * Drop a reference to a content addressed body, it is removed once nothing refers to it.
+         *
+         * @param id
+         *        The resource that referred to the body.
+         * @param filePath
+         *        The body's path, nothing is done unless it is a content addressed path.
+         */
+        private void releaseContentAddressedBody(String id, String filePath)
+        {
+            if (fileSystemHandler instanceof ContentAddressedFileSystemHandler && ContentAddressedFileSystemHandler.isContentPath(filePath))
+            {
+                fileSystemHandler.delete(id, m_bodyPath, filePath);
+            }
+        }
+
         /**
          * Write the resource body to the external file system. The file name is the m_bodyPath with the resource id appended.
          * 
@@ -2862,6 +3039,77 @@ public class DbContentService extends BaseContentService
     }
 
 
+    /**
+     * Read a resource from a record of RESOURCE_ID, XML and BINARY_ENTITY.
+     *
+     * @param result
+     *        The record.
+     * @param caller
+     *        The name of the calling method, for logging.
+     * @return The resource or null if it could not be read.
+     */
+    protected BaseResourceEdit readResourceEdit(ResultSet result, String caller)
+    {
+        BaseResourceEdit edit = null;
+
+        try
+        {
+            Object clob = result.getObject(3);
+            if(clob != null && clob instanceof byte[])
+            {
+                edit = new BaseResourceEdit();
+                resourceSerializer.parse(edit, (byte[]) clob);
+            }
+        }
+        catch(SQLException e)
+        {
+            // ignore?
+            log.debug(caller + "(): SqlException unable to read entity");
+            edit = null;
+        }
+        catch(EntityParseException e)
+        {
+            log.warn(caller + "(): EntityParseException unable to parse entity");
+            edit = null;
+        }
+        if(edit == null)
+        {
+            try
+            {
+                String xml = result.getString(2);
+                if (xml == null)
+                {
+                    log.warn(caller + "(): null xml : " );
+                    return null;
+                }
+
+                // read the xml
+                Document doc = Xml.readDocumentFromString(xml);
+                if (doc == null)
+                {
+                    log.warn(caller + "(): null xml doc : " );
+                    return null;
+                }
+
+                // verify the root element
+                Element root = doc.getDocumentElement();
+                if (!root.getTagName().equals("resource"))
+                {
+                    log.warn(caller + "(): XML root element not resource: " + root.getTagName());
+                    return null;
+                }
+                edit = new BaseResourceEdit(root);
+
+            }
+            catch(SQLException e)
+            {
+                log.debug(caller + "(): SqlException problem with results");
+            }
+        }
+
+        return edit;
+    }
+
     /**
      * Create a file system body binary for any content_resource record that has a null file_path.
      */
@@ -2883,69 +3131,14 @@ public class DbContentService extends BaseContentService
 
             final Counter count = new Counter();
 
-            // read content_resource records that have null file path
+            // read content_resource records that have null file path, streamed as there can be millions
             String sql = contentServiceSql.getResourceIdXmlSql();
-            m_sqlService.dbRead(sql, null, new SqlReader()
+            m_sqlService.dbForEach(sql, null, new SqlReader()
             {
                 public Object readSqlResultRecord(ResultSet result)
                 {
                     String id = null;
-                    BaseResourceEdit edit = null;
-
-                    try
-                    {
-                        Object clob = result.getObject(3);
-                        if(clob != null && clob instanceof byte[])
-                        {
-                            edit = new BaseResourceEdit();
-                            resourceSerializer.parse(edit, (byte[]) clob);
-                        }
-                    }
-                    catch(SQLException e)
-                    {
-                        // ignore?
-                        log.debug("convertToFile(): SqlException unable to read entity");
-                        edit = null;
-                    }
-                    catch(EntityParseException e)
-                    {
-                        log.warn("convertToFile(): EntityParseException unable to parse entity");
-                        edit = null;
-                    }
-                    if(edit == null)
-                    {
-                        try
-                        {
-                            String xml = result.getString(2);
-                            if (xml == null)
-                            {
-                                log.warn("convertToFile(): null xml : " );
-                                return null;
-                            }
-
-                            // read the xml
-                            Document doc = Xml.readDocumentFromString(xml);
-                            if (doc == null)
-                            {
-                                log.warn("convertToFile(): null xml doc : " );
-                                return null;
-                            }
-
-                            // verify the root element
-                            Element root = doc.getDocumentElement();
-                            if (!root.getTagName().equals("resource"))
-                            {
-                                log.warn("convertToFile(): XML root element not resource: " + root.getTagName());
-                                return null;
-                            }
-                            edit = new BaseResourceEdit(root);
-
-                        }
-                        catch(SQLException e)
-                        {
-                            log.debug("convertToFile(): SqlException problem with results");
-                        }
-                    }
+                    BaseResourceEdit edit = readResourceEdit(result, "convertToFile");
 
                     if(edit == null)
                     {
@@ -3072,7 +3265,7 @@ public class DbContentService extends BaseContentService
                         return null;
                     }
                 }
-            });
+            }, converted -> {});
 
             connection.commit();
 
@@ -3091,6 +3284,99 @@ public class DbContentService extends BaseContentService
         log.info("convertToFile: done");
     }
 
+    /**
+     * Move the bodies of all resources that are not stored by content address yet to their content address, removing
+     * the old body once no resource uses it any more. Bodies of deleted resources are left where they are.
+     */
+    protected void migrateToContentAddressed()
+    {
+        log.info("migrateToContentAddressed");
+
+        final Counter count = new Counter();
+        final Counter failed = new Counter();
+
+        // streamed as there can be millions, the bodies are moved on other connections
+        m_sqlService.dbForEach(contentServiceSql.getResourceIdXmlNotContentAddressedSql(), null,
+                result -> readResourceEdit(result, "migrateToContentAddressed"),
+                edit -> {
+                    if (migrateToContentAddressed(edit))
+                    {
+                        count.value++;
+                        if ((count.value % 1000) == 0)
+                        {
+                            log.info(" ** migrated: " + count.value);
+                        }
+                    }
+                    else
+                    {
+                        failed.value++;
+                    }
+                });
+
+        log.info("migrateToContentAddressed: migrated resources: {} not migrated: {}", count.value, failed.value);
+    }
+
+    /**
+     * Move the body of one resource to its content address.
+     *
+     * @param edit
+     *        The resource, as read from the database.
+     * @return true if the resource now uses a content addressed body.
+     */
+    protected boolean migrateToContentAddressed(BaseResourceEdit edit)
+    {
+        String id = edit.getId();
+        String previousPath = edit.m_filePath;
+        if (id == null || previousPath == null) return false;
+
+        try (InputStream stream = fileSystemHandler.getInputStream(id, m_bodyPath, previousPath))
+        {
+            if (!((DbStorage) m_storage).putResourceBodyFilesystem(edit, stream, m_bodyPath))
+            {
+                log.warn("migrateToContentAddressed(): body file failure : " + id + " file: " + previousPath);
+                return false;
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("migrateToContentAddressed(): unable to read body : " + id + " file: " + previousPath + " : " + e);
+            return false;
+        }
+
+        try
+        {
+            // only point the resource at the new body if it was not changed in the meantime
+            Object[] fields = new Object[] {edit.m_filePath, resourceSerializer.serialize(edit), edit.getContentSha256(), id, previousPath};
+            if (m_sqlService.dbWriteCount(contentServiceSql.getUpdateContentResourceFilePathSql(), fields, null, null, false) != 1)
+            {
+                log.info("migrateToContentAddressed(): resource changed while migrating : " + id);
+                fileSystemHandler.delete(id, m_bodyPath, edit.m_filePath);
+                return false;
+            }
+        }
+        catch (EntityParseException e)
+        {
+            log.warn("migrateToContentAddressed(): EntityParseException for " + id);
+            fileSystemHandler.delete(id, m_bodyPath, edit.m_filePath);
+            return false;
+        }
+
+        // the old body may still be shared with resources that are not migrated yet
+        try
+        {
+            String statement = "SELECT COUNT(FILE_PATH) FROM " + m_resourceTableName + " WHERE FILE_PATH = ?";
+            if (countQuery(statement, previousPath) == 0)
+            {
+                fileSystemHandler.delete(id, m_bodyPath, previousPath);
+            }
+        }
+        catch (IdUnusedException e)
+        {
+            log.warn("migrateToContentAddressed(): unable to count references to " + previousPath + " : " + e.getMessage());
+        }
+        return true;
+    }
+
     /**
      * <p>
      * Counter is is a counter that can be marked final.
@@ -3222,6 +3508,12 @@ public class DbContentService extends BaseContentService
     {
         long size = 0L;
 
+        // the maintained total, dropbox folders are not contexts so they are still added up
+        if (m_contextUsageCounters != null && !context.startsWith(COLLECTION_DROPBOX))
+        {
+            return m_contextUsageCounters.getUsage(context);
+        }
+
 	String sql = contentServiceSql.getQuotaQuerySql();
 	Object[] fields = new Object[] { context.startsWith(COLLECTION_DROPBOX) ? StorageUtils.escapeSqlLike(context) + "%" : context };
 	if (context.startsWith(COLLECTION_DROPBOX)) {
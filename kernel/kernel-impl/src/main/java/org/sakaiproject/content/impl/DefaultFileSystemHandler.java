@@ -23,6 +23,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 import org.apache.commons.io.IOUtils;
 
@@ -96,6 +100,34 @@ public class DefaultFileSystemHandler implements FileSystemHandler {
         return IOUtils.copyLarge(stream, new FileOutputStream(file));
     }
 
+    /**
+     * Move a file that is already on disk into place, renaming it when it is on the same file system
+     * as the root and copying it otherwise. The source file no longer exists afterwards.
+     *
+     * @param id The id of the resource.
+     * @param root The root of the storage.
+     * @param filePath The path to save the file to.
+     * @param source The file to move.
+     * @return The number of bytes in the file.
+     * @throws IOException if the file could not be moved.
+     */
+    public long saveFile(String id, String root, String filePath, File source) throws IOException {
+        File file = getFile(id, root, filePath);
+
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        long length = source.length();
+        try {
+            Files.move(source.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return length;
+    }
+
     @Override
     public boolean delete(String id, String root, String filePath){
         File file = getFile(id, root, filePath);
@@ -107,6 +139,12 @@ public class DefaultFileSystemHandler implements FileSystemHandler {
         return false;
     }
 
+    @Override
+    public Path getLocalPath(String id, String root, String filePath) {
+        File file = getFile(id, root, filePath);
+        return file.isFile() ? file.toPath() : null;
+    }
+
 	@Override
 	public URI getAssetDirectLink(String id, String root, String filePath) throws IOException {
 		return null;
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sends resource bodies that are stored on the local file system without pumping them through heap buffers, either by
+ * handing the file to the container (Tomcat's sendfile) or with {@link FileChannel#transferTo}. Also holds the ETag
+ * handling, the ETag of a body is built from its stored SHA-256.
+ */
+@Slf4j
+final class ZeroCopyDelivery {
+
+    /** Request attributes Tomcat uses for sendfile, see org.apache.catalina.Globals. */
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private ZeroCopyDelivery() {
+    }
+
+    /**
+     * Ask the container to send a range of the file once the request returns, the servlet must not write any body.
+     *
+     * @param req The request being served.
+     * @param file The file to send.
+     * @param start The first byte to send.
+     * @param end The last byte to send.
+     * @return true if the container will send the file, false if it does not support sendfile.
+     */
+    static boolean sendfile(HttpServletRequest req, Path file, long start, long end) {
+        if (!Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORTED))) {
+            return false;
+        }
+        try {
+            // Tomcat only accepts the canonical path of the file
+            req.setAttribute(SENDFILE_FILENAME, file.toRealPath().toString());
+            req.setAttribute(SENDFILE_START, start);
+            req.setAttribute(SENDFILE_END, end + 1);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Could not use sendfile for {}: {}", file, e.toString());
+            req.removeAttribute(SENDFILE_FILENAME);
+            return false;
+        }
+    }
+
+    /**
+     * Copy a range of the file to the output stream with {@link FileChannel#transferTo}.
+     *
+     * @param file The file to send.
+     * @param start The first byte to send.
+     * @param end The last byte to send.
+     * @param out The stream to write to.
+     * @return The number of bytes sent.
+     * @throws IOException if the file could not be read or the client went away.
+     */
+    static long transfer(Path file, long start, long end, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = start;
+        long remaining = end - start + 1;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    // the file is shorter than expected
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+        return position - start;
+    }
+
+    /**
+     * @param sha256 The hex SHA-256 of a body, may be null.
+     * @return The strong ETag for the body, or null if there is no hash.
+     */
+    static String eTag(String sha256) {
+        if (sha256 == null || sha256.isEmpty()) {
+            return null;
+        }
+        return "\"" + sha256 + "\"";
+    }
+
+    /**
+     * Check an If-None-Match header, which uses the weak comparison.
+     *
+     * @param header The If-None-Match header.
+     * @param eTag The ETag of the body.
+     * @return true if the client already has the body.
+     */
+    static boolean noneMatch(String header, String eTag) {
+        if (header == null || eTag == null) {
+            return false;
+        }
+        if ("*".equals(header.trim())) {
+            return true;
+        }
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check an If-Range header, which holds either an ETag (using the strong comparison) or a date.
+     *
+     * @param header The If-Range header, may be null.
+     * @param eTag The ETag of the body, may be null.
+     * @param lastModified When the body was last modified in ms, 0 if not known.
+     * @return true if the requested ranges may be sent, false if the whole body must be sent instead.
+     */
+    static boolean ifRange(String header, String eTag, long lastModified) {
+        if (header == null) {
+            return true;
+        }
+        header = header.trim();
+        if (header.startsWith("\"") || header.startsWith("W/")) {
+            return header.equals(eTag);
+        }
+        try {
+            long date = ZonedDateTime.parse(header, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            // dates only have second precision
+            return lastModified > 0 && lastModified < date + 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.sql.Clob;
@@ -40,6 +41,7 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -47,7 +49,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.sql.DataSource;
 
 import lombok.extern.slf4j.Slf4j;
@@ -173,6 +181,54 @@ public abstract class BasicSqlService implements SqlService
 		m_deadlockRetries = Integer.parseInt(value);
 	}
 
+	/** Configuration: the number of records fetched at a time by dbStream and dbForEach. */
+	protected int m_streamFetchSize = 500;
+
+	/**
+	 * Configuration: the number of records fetched at a time by dbStream and dbForEach.
+	 * 
+	 * @param value
+	 *        the fetch size.
+	 */
+	public void setStreamFetchSize(String value)
+	{
+		m_streamFetchSize = Integer.parseInt(value);
+	}
+
+	/** Configuration: executions taking at least this many milliseconds are logged, 0 to log none. */
+	protected long m_slowQueryThreshold = 1000;
+
+	/**
+	 * Configuration: executions taking at least this many milliseconds are logged as slow, 0 to log none.
+	 * 
+	 * @param value
+	 *        the threshold in milliseconds.
+	 */
+	public void setSlowQueryThreshold(String value)
+	{
+		m_slowQueryThreshold = Long.parseLong(value);
+	}
+
+	/** Configuration: the number of distinct statements statistics are kept for. */
+	protected int m_maxStatementStats = 2000;
+
+	/**
+	 * Configuration: the number of distinct statements statistics are kept for.
+	 * 
+	 * @param value
+	 *        the number of statements.
+	 */
+	public void setMaxStatementStats(String value)
+	{
+		m_maxStatementStats = Integer.parseInt(value);
+	}
+
+	/** The name the SQL statistics are registered with in JMX. */
+	protected static final String STATS_MBEAN_NAME = "org.sakaiproject:name=SqlService";
+
+	/** Statistics of the statements executed, always kept. */
+	protected SqlStats m_sqlStats = new SqlStats(m_maxStatementStats, m_slowQueryThreshold);
+
 	/** Configuration: to run the ddl on init or not. */
 	protected boolean m_autoDdl = false;
 
@@ -225,6 +281,21 @@ public abstract class BasicSqlService implements SqlService
 	{
 		setSqlServiceSql(getVendor());
 
+		m_sqlStats = new SqlStats(m_maxStatementStats, m_slowQueryThreshold);
+		try
+		{
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName on = new ObjectName(STATS_MBEAN_NAME);
+			if (!mBeanServer.isRegistered(on))
+			{
+				mBeanServer.registerMBean(m_sqlStats, on);
+			}
+		}
+		catch (Exception e)
+		{
+			log.warn("Could not register the SQL statistics with JMX: {}", e.toString());
+		}
+
 		// if we are auto-creating our schema, check and create
 		if (m_autoDdl)
 		{
@@ -239,9 +310,50 @@ public abstract class BasicSqlService implements SqlService
 	 */
 	public void destroy()
 	{
+		try
+		{
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName on = new ObjectName(STATS_MBEAN_NAME);
+			if (mBeanServer.isRegistered(on))
+			{
+				mBeanServer.unregisterMBean(on);
+			}
+		}
+		catch (Exception e)
+		{
+			log.warn("Could not unregister the SQL statistics from JMX: {}", e.toString());
+		}
+
 		log.info("destroy()");
 	}
 
+	/**
+	 * @return the statistics of the statements executed.
+	 */
+	public SqlStatsMXBean getSqlStats()
+	{
+		return m_sqlStats;
+	}
+
+	/**
+	 * Count an execution in the statistics of its statement.
+	 * 
+	 * @param sql
+	 *        The sql statement.
+	 * @param begin
+	 *        When the execution began, from System.nanoTime().
+	 * @param waitNanos
+	 *        The time taken to borrow a connection, or -1 if one was provided.
+	 * @param rows
+	 *        The rows read, written or batched.
+	 * @param failed
+	 *        true if the execution failed.
+	 */
+	protected void recordSql(String sql, long begin, long waitNanos, long rows, boolean failed)
+	{
+		m_sqlStats.record(sql, waitNanos, System.nanoTime() - begin, rows, failed);
+	}
+
 	/*************************************************************************************************************************************************
 	 * Work interface methods: org.sakaiproject.sql.SqlService
 	 ************************************************************************************************************************************************/
@@ -320,9 +432,13 @@ public abstract class BasicSqlService implements SqlService
 
 			Connection connection = null;
 			boolean wasCommit = true;
+			boolean committed = false;
+			long begin = System.nanoTime();
+			long waitNanos = -1;
 			try
 			{
 				connection = borrowConnection();
+				waitNanos = System.nanoTime() - begin;
 				wasCommit = connection.getAutoCommit();
 				connection.setAutoCommit(false);
 
@@ -332,6 +448,7 @@ public abstract class BasicSqlService implements SqlService
 				callback.run();
 
 				connection.commit();
+				committed = true;
 
 				return true;
 			}
@@ -397,6 +514,8 @@ public abstract class BasicSqlService implements SqlService
 
 			finally
 			{
+				m_sqlStats.recordTransaction(tag, waitNanos, System.nanoTime() - begin, !committed);
+
 				if (connection != null)
 				{
 					// clear the connection from the thread
@@ -525,6 +644,9 @@ public abstract class BasicSqlService implements SqlService
 		ResultSet result = null;
 		ResultSetMetaData meta = null;
 		List rv = new Vector();
+		long begin = System.nanoTime();
+		long waitNanos = -1;
+		boolean failed = false;
 
         try {
             if (m_showSql) {
@@ -536,6 +658,7 @@ public abstract class BasicSqlService implements SqlService
                 conn = callerConn;
             } else {
                 conn = borrowConnection();
+                waitNanos = System.nanoTime() - begin;
                 threadLocalManager().set(TRANSACTION_CONNECTION, conn);
             }
             if (m_showSql) {
@@ -559,9 +682,7 @@ public abstract class BasicSqlService implements SqlService
             }
 
             while (result.next()) {
-                if (m_showSql) {
-                    count++;
-                }
+                count++;
 
                 // without a reader, we read the first String from each record
                 if (reader == null) {
@@ -590,8 +711,10 @@ public abstract class BasicSqlService implements SqlService
 
             }
         } catch (SQLException e) {
+            failed = true;
             log.warn("Sql.dbRead: sql: " + sql + debugFields(fields), e);
         } catch (UnsupportedEncodingException e) {
+            failed = true;
             log.warn("Sql.dbRead: sql: " + sql + debugFields(fields), e);
         } finally {
             if (m_showSql) {
@@ -628,6 +751,7 @@ public abstract class BasicSqlService implements SqlService
                 }
             }
 
+            recordSql(sql, begin, waitNanos, count, failed);
         }
 
 		if (m_showSql) debug("Sql.dbRead: time: " + connectionTime + " / " + stmtTime + " / " + resultsTime + " #: " + count, sql, fields);
@@ -635,6 +759,146 @@ public abstract class BasicSqlService implements SqlService
 		return rv;
 	}
 
+	/** Reads the first field of each record as a String, what dbRead does without a reader. */
+	protected static final SqlReader<String> FIRST_FIELD_READER = result ->
+	{
+		try
+		{
+			ResultSetMetaData metadataResult = result.getMetaData();
+			if (metadataResult != null && Types.CLOB == metadataResult.getColumnType(1))
+			{
+				Clob clobResult = result.getClob(1);
+				return clobResult.getSubString(1, (int) clobResult.length());
+			}
+			return result.getString(1);
+		}
+		catch (SQLException e)
+		{
+			log.warn("Sql.dbStream: could not read the first field", e);
+			return null;
+		}
+	};
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> Stream<T> dbStream(String sql, Object[] fields, SqlReader<T> reader)
+	{
+		return dbStream(sql, fields, m_streamFetchSize, reader);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> Stream<T> dbStream(String sql, Object[] fields, int fetchSize, SqlReader<T> reader)
+	{
+		if (log.isDebugEnabled())
+		{
+			log.debug("dbStream(String " + sql + ", Object[] " + Arrays.toString(fields) + ", int " + fetchSize + ", SqlReader " + reader + ")");
+		}
+
+		SqlReader<T> recordReader = (reader != null) ? reader : (SqlReader<T>) FIRST_FIELD_READER;
+
+		// inside a transaction the records have to come from the transaction's connection, and the caller may need that
+		// connection for other statements before the stream is finished, so the records are read up front
+		Connection transactionConn = (Connection) threadLocalManager().get(TRANSACTION_CONNECTION);
+		if (transactionConn != null)
+		{
+			List<T> rv = dbRead(transactionConn, sql, fields, recordReader);
+			return rv.stream();
+		}
+
+		final long start = System.currentTimeMillis();
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+		ResultSet result = null;
+
+		try
+		{
+			// a connection of our own which is not put in the thread local, so the records can be read while the
+			// caller runs other statements
+			conn = borrowConnection();
+			pstmt = sqlServiceSql.prepareStreamingStatement(conn, sql, fetchSize);
+			prepareStatement(pstmt, fields);
+			result = pstmt.executeQuery();
+		}
+		catch (SQLException | UnsupportedEncodingException e)
+		{
+			log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+			closeStream(sql, fields, conn, pstmt, result, start);
+			return Stream.empty();
+		}
+
+		final Connection streamConn = conn;
+		final PreparedStatement streamStmt = pstmt;
+		final ResultSet streamResult = result;
+		final AtomicBoolean closed = new AtomicBoolean(false);
+		Runnable close = () ->
+		{
+			if (closed.compareAndSet(false, true)) closeStream(sql, fields, streamConn, streamStmt, streamResult, start);
+		};
+
+		return StreamSupport.stream(new SqlResultSpliterator<>(result, recordReader, close, sql), false).onClose(close);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> void dbForEach(String sql, Object[] fields, SqlReader<T> reader, Consumer<? super T> consumer)
+	{
+		try (Stream<T> records = dbStream(sql, fields, reader))
+		{
+			records.forEach(consumer);
+		}
+	}
+
+	/**
+	 * Release everything a streamed read holds, any of which may be null.
+	 */
+	protected void closeStream(String sql, Object[] fields, Connection conn, PreparedStatement pstmt, ResultSet result, long start)
+	{
+		if (null != result)
+		{
+			try
+			{
+				result.close();
+			}
+			catch (SQLException e)
+			{
+				log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+			}
+		}
+		if (null != pstmt)
+		{
+			try
+			{
+				pstmt.close();
+			}
+			catch (SQLException e)
+			{
+				log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+			}
+		}
+		if (null != conn)
+		{
+			// if we commit on read
+			if (m_commitAfterRead)
+			{
+				try
+				{
+					conn.commit();
+				}
+				catch (SQLException e)
+				{
+					log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+				}
+			}
+			returnConnection(conn);
+		}
+
+		if (m_showSql) debug("Sql.dbStream: time: " + (System.currentTimeMillis() - start), sql, fields);
+	}
+
 	/**
 	 * Read a single field from the db, from multiple record - concatenating the binary values into value.
 	 * 
@@ -1145,6 +1409,72 @@ public abstract class BasicSqlService implements SqlService
  		return ( dbWriteCount(sql, fields, lastField, callerConnection, failQuiet) >= 0 ) ;
 	}
 
+	/**
+	 * @see org.sakaiproject.db.api.SqlService#dbInsertBatch(Connection, String, List<Object[]>, String)
+	 */
+	public List<Long> dbInsertBatch(Connection callerConnection, String sql, List<Object[]> fieldsList, String autoColumn)
+	{
+		// without batch key support, insert each row to get its key
+		if (!sqlServiceSql.canReturnBatchGeneratedKeys())
+		{
+			List<Long> rv = new ArrayList<>(fieldsList.size());
+			for (Object[] fields : fieldsList)
+			{
+				rv.add(dbInsert(callerConnection, sql, fields, autoColumn));
+			}
+			return rv;
+		}
+
+		List<Long> rv = null;
+		PreparedStatement pstmt = null;
+		long begin = System.nanoTime();
+
+		try
+		{
+			pstmt = sqlServiceSql.prepareAutoColumn(callerConnection, sql, autoColumn);
+			for (Object[] fields : fieldsList)
+			{
+				prepareStatement(pstmt, fields);
+				pstmt.addBatch();
+			}
+			pstmt.executeBatch();
+
+			rv = sqlServiceSql.getGeneratedKeys(pstmt, sql);
+			if (rv.size() != fieldsList.size())
+			{
+				log.warn("Sql.dbInsertBatch(): expected " + fieldsList.size() + " generated keys but got " + rv.size() + " sql: " + sql);
+				while (rv.size() < fieldsList.size())
+				{
+					rv.add(null);
+				}
+			}
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			log.warn("Sql.dbInsertBatch()", e);
+		}
+		catch (SQLException e)
+		{
+			log.warn("Sql.dbInsertBatch(): error code: " + e.getErrorCode() + " sql: " + sql + " " + e);
+		}
+		finally
+		{
+			recordSql(sql, begin, -1, fieldsList.size(), rv == null);
+
+			try
+			{
+				if (null != pstmt) pstmt.close();
+			}
+			catch (Exception e)
+			{
+				log.warn("Sql.dbInsertBatch(): " + e);
+				throw new RuntimeException("SqlService.dbInsertBatch failure", e);
+			}
+		}
+
+		return rv;
+	}
+
 	/**
 	 * @see org.sakaiproject.db.api.SqlService#dbWriteCount(String, Object[], String, Connection, int)
 	 */
@@ -1167,6 +1497,7 @@ public abstract class BasicSqlService implements SqlService
 	{
 		boolean success = false;
 		PreparedStatement pstmt = null;
+		long begin = System.nanoTime();
 
 		try
 		{
@@ -1189,6 +1520,8 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			recordSql(sql, begin, -1, fieldsList.size(), !success);
+
 			try
 			{
 				pstmt.close();
@@ -1256,6 +1589,8 @@ public abstract class BasicSqlService implements SqlService
 		boolean resetAutoCommit = false;
 
 		boolean success = false;
+		long begin = System.nanoTime();
+		long waitNanos = -1;
 
 		try
 		{
@@ -1267,6 +1602,7 @@ public abstract class BasicSqlService implements SqlService
 			{
 				if (m_showSql) start = System.currentTimeMillis();
 				conn = borrowConnection();
+				waitNanos = System.nanoTime() - begin;
 				if (m_showSql) connectionTime = System.currentTimeMillis() - start;
 
 				// make sure we have do not have auto commit - will change and reset if needed
@@ -1350,6 +1686,8 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			recordSql(sql, begin, waitNanos, Math.max(retval, 0), !success);
+
 			try
 			{
 				if (null != pstmt) pstmt.close();
@@ -1456,6 +1794,9 @@ public abstract class BasicSqlService implements SqlService
 
 		boolean success = false;
 		Long rv = null;
+		int rows = 0;
+		long begin = System.nanoTime();
+		long waitNanos = -1;
 
 		try
 		{
@@ -1467,6 +1808,7 @@ public abstract class BasicSqlService implements SqlService
 			{
 				if (m_showSql) start = System.currentTimeMillis();
 				conn = borrowConnection();
+				waitNanos = System.nanoTime() - begin;
 				if (m_showSql) connectionTime = System.currentTimeMillis() - start;
 
 				// make sure we have do not have auto commit - will change and reset if needed
@@ -1491,7 +1833,7 @@ public abstract class BasicSqlService implements SqlService
 				pstmt.setBinaryStream(pos, last, lastLength);
 			}
 
-			int result = pstmt.executeUpdate();
+			rows = pstmt.executeUpdate();
 
 			rv = sqlServiceSql.getGeneratedKey(pstmt, sql);
 
@@ -1547,6 +1889,8 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			recordSql(sql, begin, waitNanos, rows, !success);
+
 			try
 			{
 				if (null != pstmt) pstmt.close();
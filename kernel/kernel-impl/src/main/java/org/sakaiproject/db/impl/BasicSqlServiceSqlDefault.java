@@ -27,7 +27,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 /**
  * methods for accessing sql service methods in a database.
@@ -158,4 +160,44 @@ public class BasicSqlServiceSqlDefault implements SqlServiceSql
 		return null;
 	}
 
+	/**
+	 * Not all drivers report a key for every row of a batch, so by default batch inserts are done a row at a time
+	 *
+	 * {@inheritDoc}
+	 */
+	public boolean canReturnBatchGeneratedKeys()
+	{
+		return false;
+	}
+
+	/**
+	 * Extract the generated keys for JDBC drivers that support getGeneratedKeys() after executeBatch()
+	 *
+	 * {@inheritDoc}
+	 */
+	public List<Long> getGeneratedKeys(PreparedStatement pstmt, String sql) throws SQLException
+	{
+		List<Long> rv = new ArrayList<>();
+		try (ResultSet keys = pstmt.getGeneratedKeys())
+		{
+			while (keys.next())
+			{
+				rv.add(Long.valueOf(keys.getLong(1)));
+			}
+		}
+		return rv;
+	}
+
+	/**
+	 * Drivers honour the fetch size on a forward only cursor
+	 *
+	 * {@inheritDoc}
+	 */
+	public PreparedStatement prepareStreamingStatement(Connection conn, String sql, int fetchSize) throws SQLException
+	{
+		PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		pstmt.setFetchSize(fetchSize);
+		return pstmt;
+	}
+
 }
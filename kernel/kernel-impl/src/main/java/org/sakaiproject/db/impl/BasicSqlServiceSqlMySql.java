@@ -22,7 +22,9 @@
 package org.sakaiproject.db.impl;
 
 import java.io.UnsupportedEncodingException;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /**
@@ -77,9 +79,35 @@ public class BasicSqlServiceSqlMySql extends BasicSqlServiceSqlDefault
 		return pstmt;
 	}
 
+	/**
+	 * Connector/J reports the generated key of every row of a batch insert
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean canReturnBatchGeneratedKeys()
+	{
+		return true;
+	}
+
 	@Override
     public boolean isDeadLockError(int errorCode){        
         // perhaps due to a mysql deadlock?
         return (errorCode == 1213);
     }
+
+	/**
+	 * Connector/J reads the whole result into memory unless the fetch size is Integer.MIN_VALUE, which streams the
+	 * records one at a time. The MariaDB driver honours the fetch size as it is.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	public PreparedStatement prepareStreamingStatement(Connection conn, String sql, int fetchSize) throws SQLException
+	{
+		PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		String driver = conn.getMetaData().getDriverName();
+		pstmt.setFetchSize(driver != null && driver.toLowerCase().contains("mariadb") ? fetchSize : Integer.MIN_VALUE);
+		return pstmt;
+	}
 }
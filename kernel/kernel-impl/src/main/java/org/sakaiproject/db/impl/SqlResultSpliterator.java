@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import org.sakaiproject.db.api.SqlReader;
+import org.sakaiproject.db.api.SqlReaderFinishedException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads the records of an open ResultSet one at a time as a stream consumes them.
+ * <p>
+ * Records the reader returns null for are skipped, as dbRead does. Once the records run out, the reader throws
+ * {@link SqlReaderFinishedException} or the database fails, the result set is closed and its connection returned.
+ * </p>
+ */
+@Slf4j
+class SqlResultSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private final ResultSet result;
+    private final SqlReader<T> reader;
+    private final Runnable close;
+    private final String sql;
+    private boolean finished;
+
+    /**
+     * @param result
+     *        The open result set, positioned before the first record.
+     * @param reader
+     *        Reads each record.
+     * @param close
+     *        Closes the result set, its statement and returns the connection, must be safe to call more than once.
+     * @param sql
+     *        The sql statement, for logging.
+     */
+    SqlResultSpliterator(ResultSet result, SqlReader<T> reader, Runnable close, String sql) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.result = result;
+        this.reader = reader;
+        this.close = close;
+        this.sql = sql;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (finished) return false;
+
+        try {
+            while (result.next()) {
+                T record;
+                try {
+                    record = reader.readSqlResultRecord(result);
+                } catch (SqlReaderFinishedException e) {
+                    break;
+                }
+                if (record != null) {
+                    action.accept(record);
+                    return true;
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Sql.dbStream: sql: {}", sql, e);
+        }
+
+        finished = true;
+        close.run();
+        return false;
+    }
+}
@@ -26,6 +26,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 /**
  * database methods.
@@ -131,4 +132,33 @@ public interface SqlServiceSql
 	 */
 	public Long getGeneratedKey(PreparedStatement pstmt, String sql) throws SQLException;
 
+	/**
+	 * returns whether the JDBC driver reports the generated keys of every row of a batch insert.
+	 */
+	public boolean canReturnBatchGeneratedKeys();
+
+	/**
+	 * Extract the generated keys from a just-executed batch insert
+	 *
+	 * @param pstmt
+	 *      The prepared statement just executed
+	 * @param sql
+	 *      The SQL statement used to prepare pstmt
+	 * @return
+	 *      The inserted keys, in the order the rows were added to the batch
+	 */
+	public List<Long> getGeneratedKeys(PreparedStatement pstmt, String sql) throws SQLException;
+
+	/**
+	 * Prepare a read only, forward only statement whose results are fetched from the database a few records at a time
+	 * rather than all at once.
+	 * @param conn
+	 *      The connection to use
+	 * @param sql
+	 *      The SQL statement to prepare
+	 * @param fetchSize
+	 *      The number of records to fetch at a time
+	 */
+	public PreparedStatement prepareStreamingStatement(Connection conn, String sql, int fetchSize) throws SQLException;
+
 }
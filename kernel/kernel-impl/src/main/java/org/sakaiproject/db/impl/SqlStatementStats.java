@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import lombok.Value;
+
+/**
+ * A point in time view of the executions of one SQL statement, exported over JMX. Statements are grouped once
+ * their literals and lists of bind markers are normalised away. Times are in milliseconds.
+ */
+@Value
+public class SqlStatementStats
+{
+	String statement;
+
+	/** Times the statement was executed. */
+	long count;
+
+	/** Executions that failed. */
+	long errors;
+
+	/** Executions that took longer than the slow query threshold. */
+	long slow;
+
+	/** Rows read, written or batched. */
+	long rows;
+
+	double totalTime;
+
+	double meanTime;
+
+	double medianTime;
+
+	double p95Time;
+
+	double p99Time;
+
+	double maxTime;
+
+	/** Time spent waiting for a connection from the pool before executing. */
+	double connectionWaitTime;
+}
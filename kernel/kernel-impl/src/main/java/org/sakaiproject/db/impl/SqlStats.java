@@ -0,0 +1,341 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.util.LatencyHistogram;
+
+/**
+ * Counts the executions, rows, errors and latencies of each SQL statement the SqlService executes, and logs those
+ * slower than a threshold. Statements that only differ in their literals or in how many bind markers are in a list
+ * are counted together, the normalised text of a statement is worked out the first time its SQL string is seen.
+ * <p>
+ * Recording is a map lookup and a few atomic adds, cheap next to a round trip to the database. The number of distinct
+ * statements is capped, once there are that many any new ones are all counted together.
+ * </p>
+ */
+@Slf4j
+public class SqlStats implements SqlStatsMXBean
+{
+	static final String OTHER_STATEMENTS = "(other statements)";
+
+	static final String TRANSACTION = "transaction: ";
+
+	private static final int MAX_STATEMENT_LENGTH = 1000;
+
+	private static final Pattern BIND_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+
+	/** Counters by the SQL string as executed, so the normalised text is only worked out once. */
+	private final Map<String, StatementCounters> bySql = new ConcurrentHashMap<>();
+
+	/** Counters by the normalised text. */
+	private final Map<String, StatementCounters> statements = new ConcurrentHashMap<>();
+
+	/** Microseconds taken to get a connection from the pool. */
+	private final LatencyHistogram connectionWait = new LatencyHistogram();
+
+	private final int maxStatements;
+
+	private volatile long slowQueryThreshold;
+
+	/**
+	 * @param maxStatements
+	 *        The number of distinct statements to track.
+	 * @param slowQueryThreshold
+	 *        Executions taking at least this many milliseconds are logged, 0 to log none.
+	 */
+	public SqlStats(int maxStatements, long slowQueryThreshold)
+	{
+		this.maxStatements = maxStatements;
+		this.slowQueryThreshold = slowQueryThreshold;
+	}
+
+	/**
+	 * Record an execution of a statement.
+	 *
+	 * @param sql
+	 *        The statement executed.
+	 * @param waitNanos
+	 *        The time taken to get a connection from the pool, or -1 if the caller gave one.
+	 * @param elapsedNanos
+	 *        The time the whole execution took, including getting the connection.
+	 * @param rows
+	 *        The rows read, written or batched.
+	 * @param failed
+	 *        true if the execution failed.
+	 */
+	void record(String sql, long waitNanos, long elapsedNanos, long rows, boolean failed)
+	{
+		if (sql == null) return;
+
+		StatementCounters counters = bySql.get(sql);
+		if (counters == null)
+		{
+			counters = statement(normalise(sql));
+			// bound the strings held on to, the odd statement built with its values inlined is normalised each time
+			if (bySql.size() < maxStatements * 4)
+			{
+				bySql.put(sql, counters);
+			}
+		}
+		record(counters, sql, waitNanos, elapsedNanos, rows, failed);
+	}
+
+	/**
+	 * Record a transaction run by SqlService.transact, counted by its tag.
+	 */
+	void recordTransaction(String tag, long waitNanos, long elapsedNanos, boolean failed)
+	{
+		record(statement(TRANSACTION + tag), TRANSACTION + tag, waitNanos, elapsedNanos, 0, failed);
+	}
+
+	private void record(StatementCounters counters, String sql, long waitNanos, long elapsedNanos, long rows, boolean failed)
+	{
+		counters.count.increment();
+		counters.rows.add(rows);
+		counters.totalNanos.add(elapsedNanos);
+		counters.histogram.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+		if (failed)
+		{
+			counters.errors.increment();
+		}
+		if (waitNanos >= 0)
+		{
+			counters.waitNanos.add(waitNanos);
+			connectionWait.record(TimeUnit.NANOSECONDS.toMicros(waitNanos));
+		}
+
+		long threshold = slowQueryThreshold;
+		if (threshold > 0 && elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(threshold))
+		{
+			counters.slow.increment();
+			log.warn("Slow SQL: {} ms ({} ms waiting for a connection), {} rows{}: {}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+					TimeUnit.NANOSECONDS.toMillis(Math.max(waitNanos, 0)), rows, failed ? ", failed" : "", sql);
+		}
+	}
+
+	private StatementCounters statement(String statement)
+	{
+		StatementCounters counters = statements.get(statement);
+		if (counters == null)
+		{
+			if (statements.size() >= maxStatements)
+			{
+				statement = OTHER_STATEMENTS;
+			}
+			counters = statements.computeIfAbsent(statement, StatementCounters::new);
+		}
+		return counters;
+	}
+
+	/**
+	 * @return The statement with its whitespace collapsed, its string and number literals replaced by bind markers
+	 *         and any list of bind markers, such as the values of an IN clause, replaced by a single one.
+	 */
+	static String normalise(String sql)
+	{
+		int length = sql.length();
+		StringBuilder normalised = new StringBuilder(Math.min(length, MAX_STATEMENT_LENGTH + 16));
+		boolean space = false;
+		for (int i = 0; i < length && normalised.length() < MAX_STATEMENT_LENGTH; i++)
+		{
+			char c = sql.charAt(i);
+			if (Character.isWhitespace(c))
+			{
+				space = true;
+				continue;
+			}
+			if (space && normalised.length() > 0)
+			{
+				normalised.append(' ');
+			}
+			space = false;
+
+			if (c == '\'')
+			{
+				// skip to the closing quote, two quotes are a quote within the literal
+				for (i++; i < length; i++)
+				{
+					if (sql.charAt(i) == '\'')
+					{
+						if (i + 1 < length && sql.charAt(i + 1) == '\'')
+						{
+							i++;
+						}
+						else
+						{
+							break;
+						}
+					}
+				}
+				normalised.append('?');
+			}
+			else if (Character.isDigit(c) && (normalised.length() == 0 || !isIdentifierPart(normalised.charAt(normalised.length() - 1))))
+			{
+				while (i + 1 < length && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.'))
+				{
+					i++;
+				}
+				normalised.append('?');
+			}
+			else
+			{
+				normalised.append(c);
+			}
+		}
+		String statement = BIND_LIST.matcher(normalised).replaceAll("?...");
+		return normalised.length() < MAX_STATEMENT_LENGTH ? statement : statement + " ...";
+	}
+
+	private static boolean isIdentifierPart(char c)
+	{
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	@Override
+	public long getExecutions()
+	{
+		return statements.values().stream().mapToLong(c -> c.count.sum()).sum();
+	}
+
+	@Override
+	public long getErrors()
+	{
+		return statements.values().stream().mapToLong(c -> c.errors.sum()).sum();
+	}
+
+	@Override
+	public long getSlowExecutions()
+	{
+		return statements.values().stream().mapToLong(c -> c.slow.sum()).sum();
+	}
+
+	@Override
+	public int getStatementCount()
+	{
+		return statements.size();
+	}
+
+	@Override
+	public long getSlowQueryThreshold()
+	{
+		return slowQueryThreshold;
+	}
+
+	@Override
+	public void setSlowQueryThreshold(long millis)
+	{
+		this.slowQueryThreshold = millis;
+	}
+
+	@Override
+	public double getConnectionWaitMeanTime()
+	{
+		return connectionWait.getMean() / 1_000d;
+	}
+
+	@Override
+	public double getConnectionWaitP99Time()
+	{
+		return microsToMillis(connectionWait.getValueAtPercentile(99));
+	}
+
+	@Override
+	public List<SqlStatementStats> getStatementStats()
+	{
+		List<SqlStatementStats> stats = new ArrayList<>(statements.size());
+		for (StatementCounters c : statements.values())
+		{
+			long count = c.count.sum();
+			if (count > 0)
+			{
+				double total = nanosToMillis(c.totalNanos.sum());
+				stats.add(new SqlStatementStats(c.statement, count, c.errors.sum(), c.slow.sum(), c.rows.sum(), total, total / count,
+						microsToMillis(c.histogram.getValueAtPercentile(50)), microsToMillis(c.histogram.getValueAtPercentile(95)),
+						microsToMillis(c.histogram.getValueAtPercentile(99)), microsToMillis(c.histogram.getMax()),
+						nanosToMillis(c.waitNanos.sum())));
+			}
+		}
+		stats.sort(Comparator.comparingDouble(SqlStatementStats::getTotalTime).reversed());
+		return stats;
+	}
+
+	@Override
+	public void resetStats()
+	{
+		statements.values().forEach(StatementCounters::reset);
+		connectionWait.reset();
+	}
+
+	private static double nanosToMillis(long nanos)
+	{
+		return nanos / 1_000_000d;
+	}
+
+	private static double microsToMillis(long micros)
+	{
+		return micros / 1_000d;
+	}
+
+	/**
+	 * The counters of one normalised statement.
+	 */
+	static final class StatementCounters
+	{
+		final String statement;
+
+		final LongAdder count = new LongAdder();
+
+		final LongAdder errors = new LongAdder();
+
+		final LongAdder slow = new LongAdder();
+
+		final LongAdder rows = new LongAdder();
+
+		final LongAdder totalNanos = new LongAdder();
+
+		final LongAdder waitNanos = new LongAdder();
+
+		/** Microseconds taken by each execution. */
+		final LatencyHistogram histogram = new LatencyHistogram();
+
+		StatementCounters(String statement)
+		{
+			this.statement = statement;
+		}
+
+		void reset()
+		{
+			count.reset();
+			errors.reset();
+			slow.reset();
+			rows.reset();
+			totalNanos.reset();
+			waitNanos.reset();
+			histogram.reset();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.List;
+
+/**
+ * JMX view of the SQL executed by the SqlService.
+ */
+public interface SqlStatsMXBean
+{
+	/**
+	 * @return the total number of statements and transactions executed.
+	 */
+	long getExecutions();
+
+	/**
+	 * @return the total number of executions that failed.
+	 */
+	long getErrors();
+
+	/**
+	 * @return the total number of executions slower than the slow query threshold.
+	 */
+	long getSlowExecutions();
+
+	/**
+	 * @return the number of distinct statements being tracked.
+	 */
+	int getStatementCount();
+
+	/**
+	 * @return executions taking at least this many milliseconds are logged, 0 if none are.
+	 */
+	long getSlowQueryThreshold();
+
+	/**
+	 * @param millis executions taking at least this many milliseconds are logged, 0 to log none.
+	 */
+	void setSlowQueryThreshold(long millis);
+
+	/**
+	 * @return the mean time in milliseconds to get a connection from the pool.
+	 */
+	double getConnectionWaitMeanTime();
+
+	/**
+	 * @return the time in milliseconds that 99% of the waits for a connection from the pool took at most.
+	 */
+	double getConnectionWaitP99Time();
+
+	/**
+	 * @return the statistics of each statement, those that took the most time in total first.
+	 */
+	List<SqlStatementStats> getStatementStats();
+
+	/**
+	 * Reset all the counters.
+	 */
+	void resetStats();
+}
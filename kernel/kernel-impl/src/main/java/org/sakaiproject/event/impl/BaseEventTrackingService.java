@@ -21,15 +21,26 @@
 
 package org.sakaiproject.event.impl;
 
+import java.lang.management.ManagementFactory;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import org.apache.commons.lang3.StringUtils;
+
 import org.sakaiproject.authz.api.SecurityAdvisor;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.entity.api.EntityManager;
@@ -56,17 +67,40 @@ import org.sakaiproject.user.api.User;
 @Slf4j
 public abstract class BaseEventTrackingService implements EventTrackingService
 {
+	/** The name the event dispatcher is registered with in JMX. */
+	protected static final String DISPATCHER_MBEAN_NAME = "org.sakaiproject:name=EventDispatcher";
+
 	/** An observable object helper. */
-	protected MyObservable m_observableHelper = new MyObservable();
+	protected MyObservable m_observableHelper = new MyObservable(true);
 
-	/** An observable object helper for see-it-first priority observers. */
-	protected MyObservable m_priorityObservableHelper = new MyObservable();
+	/** An observable object helper for see-it-first priority observers, these are always notified synchronously. */
+	protected MyObservable m_priorityObservableHelper = new MyObservable(false);
 
 	/** An observable object helper for see-only-local-events observers. */
-	protected MyObservable m_localObservableHelper = new MyObservable();
+	protected MyObservable m_localObservableHelper = new MyObservable(true);
 
 	protected EventDelayHandler delayHandler;
 
+	/** Configuration: if true, normal and local observers are notified on their own worker threads. */
+	protected boolean m_asyncDispatch = false;
+
+	/** Configuration: the maximum number of events queued for each asynchronous observer. */
+	protected int m_dispatchQueueSize = 10000;
+
+	/** Configuration: what to do when the queue of an asynchronous observer is full. */
+	protected EventDispatcher.OverflowPolicy m_dispatchOverflowPolicy = EventDispatcher.OverflowPolicy.BLOCK;
+
+	/** Configuration: class names of observers that must stay synchronous when async dispatch is enabled, by default the kernel security, user and site cache invalidators. */
+	protected Set<String> m_syncObservers = Set.of(
+			"org.sakaiproject.authz.impl.SakaiSecurity",
+			"org.sakaiproject.user.impl.AuthnCacheWatcher",
+			"org.sakaiproject.user.impl.BaseUserDirectoryService$UserCacheObserver",
+			"org.sakaiproject.site.impl.SiteCacheSafe$CacheObserver",
+			"org.sakaiproject.site.impl.BaseSiteService");
+
+	/** The asynchronous event dispatcher, null unless async dispatch is enabled. */
+	protected EventDispatcher m_dispatcher = null;
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Observable implementation
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -93,7 +127,7 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	protected void notifyObservers(Event event, boolean local)
 	{
-		// %%% inline like this, or on a new thread?
+		// priority observers are always notified inline, normal and local observers go through the dispatcher if async dispatch is enabled
 
 		if (log.isDebugEnabled()) log.debug(this + " Notification - Event: " + event);
 
@@ -151,12 +185,87 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	protected abstract TimeService timeService();
 
+	/**
+	 * Configuration: notify normal and local observers asynchronously, each through its own bounded queue.
+	 *
+	 * @param value
+	 *        The async dispatch value.
+	 */
+	public void setAsyncDispatch(String value)
+	{
+		m_asyncDispatch = Boolean.valueOf(value).booleanValue();
+	}
+
+	/**
+	 * Configuration: set the maximum number of events queued for each asynchronous observer.
+	 *
+	 * @param value
+	 *        The queue size.
+	 */
+	public void setDispatchQueueSize(String value)
+	{
+		m_dispatchQueueSize = Integer.parseInt(value);
+	}
+
+	/**
+	 * Configuration: set what to do when the queue of an asynchronous observer is full, one of BLOCK, DROP_OLDEST or CALLER_RUNS.
+	 *
+	 * @param value
+	 *        The overflow policy name.
+	 */
+	public void setDispatchOverflowPolicy(String value)
+	{
+		try
+		{
+			m_dispatchOverflowPolicy = EventDispatcher.OverflowPolicy.valueOf(StringUtils.upperCase(StringUtils.trim(value)));
+		}
+		catch (Exception e)
+		{
+			log.warn("Unknown event dispatch overflow policy [{}], using {}", value, m_dispatchOverflowPolicy);
+		}
+	}
+
+	/**
+	 * Configuration: set the class names (comma separated) of observers that are always notified synchronously, replacing the defaults.
+	 *
+	 * @param value
+	 *        The observer class names.
+	 */
+	public void setSyncObservers(String value)
+	{
+		m_syncObservers = Arrays.stream(StringUtils.split(StringUtils.defaultString(value), ","))
+				.map(String::trim)
+				.filter(StringUtils::isNotEmpty)
+				.collect(Collectors.toSet());
+	}
+
 	/**
 	 * Final initialization, once all dependencies are set.
 	 */
 	public void init()
 	{
 		log.info(this + ".init()");
+
+		if (m_asyncDispatch)
+		{
+			m_dispatcher = new EventDispatcher(m_dispatchQueueSize, m_dispatchOverflowPolicy, m_syncObservers);
+			log.info("Asynchronous event dispatch enabled, queue size: {}, overflow policy: {}, synchronous observers: {}",
+					m_dispatchQueueSize, m_dispatchOverflowPolicy, m_syncObservers);
+
+			try
+			{
+				MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+				ObjectName on = new ObjectName(DISPATCHER_MBEAN_NAME);
+				if (!mBeanServer.isRegistered(on))
+				{
+					mBeanServer.registerMBean(m_dispatcher, on);
+				}
+			}
+			catch (Exception e)
+			{
+				log.warn("Could not register the event dispatcher with JMX: {}", e.toString());
+			}
+		}
 	}
 
 	/**********************************************************************************************************************************************************************************************************************************************************
@@ -169,6 +278,26 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	public void destroy()
 	{
 		log.info(this + ".destroy()");
+
+		if (m_dispatcher != null)
+		{
+			try
+			{
+				MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+				ObjectName on = new ObjectName(DISPATCHER_MBEAN_NAME);
+				if (mBeanServer.isRegistered(on))
+				{
+					mBeanServer.unregisterMBean(on);
+				}
+			}
+			catch (Exception e)
+			{
+				log.warn("Could not unregister the event dispatcher from JMX: {}", e.toString());
+			}
+
+			m_dispatcher.shutdown();
+			m_dispatcher = null;
+		}
 	}
 
 	/**********************************************************************************************************************************************************************************************************************************************************
@@ -454,6 +583,8 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 		m_localObservableHelper.deleteObserver(observer);
 
 		m_observableHelper.addObserver(observer);
+
+		registerWithDispatcher(observer);
 	}
 
 	/**
@@ -469,6 +600,8 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 		m_localObservableHelper.deleteObserver(observer);
 
 		m_priorityObservableHelper.addObserver(observer);
+
+		registerWithDispatcher(observer);
 	}
 
 	/**
@@ -484,6 +617,20 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 		m_priorityObservableHelper.deleteObserver(observer);
 
 		m_localObservableHelper.addObserver(observer);
+
+		registerWithDispatcher(observer);
+	}
+
+	/**
+	 * Let the dispatcher deliver to an observer again, in case it was deleted before.
+	 */
+	protected void registerWithDispatcher(Observer observer)
+	{
+		EventDispatcher dispatcher = m_dispatcher;
+		if (dispatcher != null)
+		{
+			dispatcher.register(observer);
+		}
 	}
 
 	/**
@@ -497,17 +644,90 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 		m_observableHelper.deleteObserver(observer);
 		m_priorityObservableHelper.deleteObserver(observer);
 		m_localObservableHelper.deleteObserver(observer);
+
+		EventDispatcher dispatcher = m_dispatcher;
+		if (dispatcher != null)
+		{
+			dispatcher.remove(observer);
+		}
 	}
 
 	/**
 	 * Extend Observable to "public"ize setChanges, so we can set it. Why a helper object? Cause the service (which is observable) already 'extends' TurbineBaseService, and cannot also 'extend' Observable.
+	 * <p>
+	 * When async dispatch is enabled, a dispatchable helper hands each observer's notification to the event dispatcher instead of calling it inline.
+	 * </p>
 	 */
 	protected class MyObservable extends Observable
 	{
+		/** Our own copy of the observers, as Observable does not expose them. */
+		private final List<Observer> m_observers = new CopyOnWriteArrayList<>();
+
+		/** If false, observers of this helper are always notified synchronously. */
+		private final boolean m_dispatchable;
+
+		public MyObservable()
+		{
+			this(false);
+		}
+
+		public MyObservable(boolean dispatchable)
+		{
+			m_dispatchable = dispatchable;
+		}
+
 		public void setChanged()
 		{
 			super.setChanged();
 		}
+
+		@Override
+		public synchronized void addObserver(Observer o)
+		{
+			super.addObserver(o);
+			if (!m_observers.contains(o))
+			{
+				m_observers.add(o);
+			}
+		}
+
+		@Override
+		public synchronized void deleteObserver(Observer o)
+		{
+			super.deleteObserver(o);
+			m_observers.remove(o);
+		}
+
+		@Override
+		public synchronized void deleteObservers()
+		{
+			super.deleteObservers();
+			m_observers.clear();
+		}
+
+		@Override
+		public void notifyObservers(Object arg)
+		{
+			EventDispatcher dispatcher = m_dispatcher;
+			if (!m_dispatchable || dispatcher == null)
+			{
+				super.notifyObservers(arg);
+				return;
+			}
+
+			synchronized (this)
+			{
+				if (!hasChanged()) return;
+				clearChanged();
+			}
+
+			// same order as Observable, the most recently added observer first
+			Object[] observers = m_observers.toArray();
+			for (int i = observers.length - 1; i >= 0; i--)
+			{
+				dispatcher.dispatch(this, (Observer) observers[i], arg);
+			}
+		}
 	}
 
 	/**********************************************************************************************************************************************************************************************************************************************************
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteMessaging;
+import org.apache.ignite.cluster.ClusterGroupEmptyException;
+import org.apache.ignite.lang.IgniteBiPredicate;
+import org.sakaiproject.event.api.SimpleEvent;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pushes events posted on this server to the other servers of the cluster over an Ignite topic, and hands the events
+ * posted on the other servers to a receiver.
+ * <p>
+ * Events from one server are delivered in the order they were posted there. The receiver is called on a single
+ * dedicated thread so slow observers never hold up Ignite's own message threads.
+ * </p>
+ */
+@Slf4j
+public class ClusterEventBus {
+
+    /** The Ignite topic events are published on. */
+    public static final String TOPIC = "org.sakaiproject.event.impl.ClusterEventTracking.events";
+
+    private final Ignite ignite;
+    private final Consumer<SimpleEvent> receiver;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+
+    private IgniteMessaging remotes;
+    private IgniteBiPredicate<UUID, Object> listener;
+    private ExecutorService delivery;
+
+    /**
+     * @param ignite
+     *        The local Ignite node.
+     * @param receiver
+     *        Called with each event posted on another server.
+     */
+    public ClusterEventBus(Ignite ignite, Consumer<SimpleEvent> receiver) {
+        this.ignite = ignite;
+        this.receiver = receiver;
+    }
+
+    /**
+     * Start listening for events from the other servers.
+     */
+    public void start() {
+        delivery = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ClusterEventBus-" + ignite.name());
+            t.setDaemon(true);
+            return t;
+        });
+
+        listener = (nodeId, message) -> {
+            if (message instanceof SimpleEvent) {
+                received.incrementAndGet();
+                delivery.execute(() -> deliver((SimpleEvent) message));
+            } else {
+                log.warn("Ignoring unexpected message from node {} on {}: {}", nodeId, TOPIC, message);
+            }
+            // keep listening
+            return true;
+        };
+        ignite.message().localListen(TOPIC, listener);
+
+        // events are only sent to the other nodes, local observers already saw them
+        remotes = ignite.message(ignite.cluster().forRemotes());
+        log.info("Cluster event bus started on node {}", ignite.cluster().localNode().id());
+    }
+
+    /**
+     * Stop listening, any events already received are still delivered.
+     */
+    public void stop() {
+        if (listener != null) {
+            ignite.message().stopLocalListen(TOPIC, listener);
+            listener = null;
+        }
+        if (delivery != null) {
+            delivery.shutdown();
+            try {
+                delivery.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        remotes = null;
+    }
+
+    /**
+     * Send an event to the other servers of the cluster.
+     *
+     * @param event
+     *        The event posted on this server.
+     */
+    public void publish(SimpleEvent event) {
+        IgniteMessaging messaging = remotes;
+        if (messaging == null) return;
+
+        try {
+            // ordered so the other servers see this server's events in the order they were posted, 0 is the default timeout
+            messaging.sendOrdered(TOPIC, event, 0);
+            published.incrementAndGet();
+        } catch (ClusterGroupEmptyException e) {
+            log.debug("No other servers to send event {} to", event.getEvent());
+        } catch (Exception e) {
+            log.warn("Could not publish event {} to the cluster: {}", event.getEvent(), e.toString());
+        }
+    }
+
+    /**
+     * @return the number of events sent to the other servers.
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * @return the number of events received from the other servers.
+     */
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    private void deliver(SimpleEvent event) {
+        try {
+            receiver.accept(event);
+        } catch (Exception e) {
+            log.warn("Failed to process cluster event {}", event.getEvent(), e);
+        }
+    }
+}
@@ -33,10 +33,12 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.ignite.Ignite;
 
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.component.cover.ComponentManager;
 import org.sakaiproject.db.api.SqlReader;
+import org.sakaiproject.db.api.SqlReaderFinishedException;
 import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.event.api.Event;
 import org.sakaiproject.event.api.NotificationService;
@@ -49,6 +51,10 @@ import org.sakaiproject.memory.api.MemoryService;
  * ClusterEventTracking is the implmentation for the EventTracking service for use in a clustered multi-app server configuration.<br />
  * Events are backed in the cluster database, and this database is polled to read and process locally events posted by the other cluster members.
  * </p>
+ * <p>
+ * When the cluster event bus is enabled the events are also pushed to the other cluster members over Ignite as they are posted, and the database
+ * is only polled every reconcile period to pick up the events the bus did not deliver, such as those posted before the bus was listening.
+ * </p>
  */
 @Slf4j
 public abstract class ClusterEventTracking extends BaseEventTrackingService implements Runnable
@@ -78,6 +84,19 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	protected boolean m_batchWrite = true;
 	/** Configuration: to run the ddl on init or not. */
 	protected boolean m_autoDdl = false;
+	/** If true, push events to the other cluster servers over Ignite rather than polling the db for them. */
+	protected boolean m_clusterEventBus = false;
+
+	/** The Ignite event bus, if enabled. */
+	protected ClusterEventBus m_eventBus = null;
+	/** Configuration: with the event bus, how long to wait in seconds between reads of the db for the events the bus missed. */
+	protected int m_reconcilePeriod = 60;
+	/** When the db is next read for the events the bus missed. */
+	protected long m_nextReconcile = 0;
+	/** The events read from the db by the last reconcile, delivered by the next one unless the bus has delivered them by then. */
+	protected List<Event> m_pendingDbEvents = new ArrayList<>();
+	/** The events received over the bus and not yet matched to their db row, by key, with when they were received. */
+	protected final Map<String, Deque<Long>> m_busEvents = new HashMap<>();
 
 	private String serverInstance;
 	private String serverId;
@@ -117,6 +136,11 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	 */
 	protected abstract MemoryService memoryService();
 
+	/**
+	 * @return the Ignite collaborator.
+	 */
+	protected abstract Ignite ignite();
+
 	/**
 	 * Configuration: set the check-db.
 	 *
@@ -162,6 +186,28 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		m_autoDdl = Boolean.valueOf(value).booleanValue();
 	}
 
+	/**
+	 * Configuration: push events to the other cluster servers over Ignite. All the servers of the cluster must use the same setting.
+	 *
+	 * @param value
+	 *        The cluster event bus value.
+	 */
+	public void setClusterEventBus(String value)
+	{
+		m_clusterEventBus = Boolean.valueOf(value).booleanValue();
+	}
+
+	/**
+	 * Configuration: with the event bus, the # seconds to wait between db checks for the events the bus missed.
+	 *
+	 * @param time
+	 *        The # seconds to wait between reconciles with the db.
+	 */
+	public void setReconcilePeriod(String time)
+	{
+		m_reconcilePeriod = Integer.parseInt(time);
+	}
+
 	/**
 	 * Set the # seconds to wait between db checks for new events.
 	 *
@@ -223,6 +269,12 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			// startup the event checking
 			if (m_checkDb)
 			{
+				// start listening before looking for the last event so no event falls between the two
+				if (m_clusterEventBus)
+				{
+					initEventBus();
+				}
+
 				initLastEvent();
 
 				scheduler = Executors.newSingleThreadScheduledExecutor();
@@ -252,7 +304,7 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
     			}
 			}
 
-			log.info("period: {}, batch: {}, checkDb: {}", m_period, m_batchWrite, m_checkDb);
+			log.info("period: {}, batch: {}, checkDb: {}, clusterEventBus: {}, reconcilePeriod: {}", m_period, m_batchWrite, m_checkDb, m_eventBus != null, m_reconcilePeriod);
 
             String sakaiVersion = serverConfigurationService().getString("version.sakai", "unknown") + "/" + serverConfigurationService().getString("version.service", "unknown");
             log.info("Server Start: serverId={}, serverInstance={}, serverIdInstance={}, version={}",
@@ -304,10 +356,39 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	 */
 	public void destroy()
 	{
-		scheduler.shutdown();
+		if (scheduler != null) scheduler.shutdown();
+		if (m_eventBus != null)
+		{
+			m_eventBus.stop();
+			m_eventBus = null;
+		}
 		super.destroy();
 	}
 
+	/**
+	 * Start the Ignite event bus, falling back to polling the db if Ignite is not available.
+	 */
+	protected void initEventBus()
+	{
+		Ignite ignite = ignite();
+		if (ignite == null)
+		{
+			log.warn("Cluster event bus is enabled but Ignite is not available, polling the db for events instead");
+			return;
+		}
+
+		try
+		{
+			ClusterEventBus bus = new ClusterEventBus(ignite, this::receiveClusterEvent);
+			bus.start();
+			m_eventBus = bus;
+		}
+		catch (Exception e)
+		{
+			log.warn("Could not start the cluster event bus, polling the db for events instead: {}", e.toString());
+		}
+	}
+
 	/*************************************************************************************************************************************************
 	 * Event post / flow
 	 ************************************************************************************************************************************************/
@@ -335,6 +416,15 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		}
 
 		if (!event.isTransient()) {
+			// push the event to the other servers right away, it is still written to the db below
+			if (m_eventBus != null)
+			{
+				SimpleEvent clusterEvent = new SimpleEvent(event, serverInstance);
+				// the other servers only notify observers, they never send on the lrs statement
+				clusterEvent.setLRSStatement(null);
+				m_eventBus.publish(clusterEvent);
+			}
+
 			// batch the event if we are batching
 			if (m_batchWrite)
 			{
@@ -407,29 +497,30 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			// common preparation for each insert
 			String statement = insertStatement();
 
-			// Setup a batch of events if not using a cluster
+			// Setup a batch of events
 			List<Object[]> eventList = new ArrayList<>();
-
-			// write all events
 			for (Event event : events)
 			{
 				Object fields[] = new Object[6];
 				bindValues(event, fields);
 				eventList.add(fields);
+			}
 
-				// For clustered setups with caching enabled, use legacy, individual inserts
-				// TODO: it might be possible to write the entire batch to database and still get return values. But this will need testing on MySQL and Oracle.
-				if (cachingEnabled) {
-					Long eventId = sqlService().dbInsert(conn, statement, fields, "EVENT_ID");
-					if (eventId != null) {
-						// write event to cache
-						writeEventToCluster(event, eventId);
+			Map<String, SimpleEvent> clusterEvents = null;
+			if (cachingEnabled) {
+				// For clustered setups with caching enabled, the generated ids are needed to populate the events cache
+				List<Long> eventIds = writeBatchEventsWithIds(conn, eventList);
+				if (eventIds != null) {
+					clusterEvents = new LinkedHashMap<>();
+					Iterator<Long> ids = eventIds.iterator();
+					for (Event event : events) {
+						Long eventId = ids.hasNext() ? ids.next() : null;
+						if (eventId != null) {
+							clusterEvents.put(String.valueOf(eventId), toClusterEvent(event));
+						}
 					}
 				}
-			}
-
-			// Write all of these events in a batch if not using clustering
-			if (!cachingEnabled) {
+			} else {
 				boolean ok = sqlService().dbWriteBatch(conn, statement, eventList);
 				if (!ok) {
 					log.warn("dbWriteBatch failed: event count: {}", eventList.size());
@@ -440,6 +531,11 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			if (!conn.isClosed()) {
 			    conn.commit();
 			}
+
+			// only publish the events to the cluster once they are in the db
+			if (clusterEvents != null) {
+				writeEventsToCluster(clusterEvents);
+			}
 		}
 		catch (Exception e)
 		{
@@ -476,6 +572,54 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		}
 	}
 
+	/**
+	 * Insert a batch of events, returning the generated EVENT_ID of each. The ids are either reserved from the event sequence up front and
+	 * written in a plain batch, or read back from the driver after a batch insert (falling back to single inserts if the driver can not).
+	 *
+	 * @param conn
+	 *        The connection to use.
+	 * @param eventList
+	 *        The bound values of each event, as from bindValues().
+	 * @return The event ids in the order of the eventList, or null if the insert failed.
+	 */
+	protected List<Long> writeBatchEventsWithIds(Connection conn, List<Object[]> eventList)
+	{
+		String reserveSql = clusterEventTrackingServiceSql.getReserveEventIdsSql();
+		if (reserveSql == null) {
+			List<Long> eventIds = sqlService().dbInsertBatch(conn, insertStatement(), eventList, "EVENT_ID");
+			if (eventIds == null) {
+				log.warn("dbInsertBatch failed: event count: {}", eventList.size());
+			}
+			return eventIds;
+		}
+
+		List<Long> eventIds = sqlService().dbRead(conn, reserveSql, new Object[] {eventList.size()}, new SqlReader<Long>() {
+			public Long readSqlResultRecord(ResultSet result) throws SqlReaderFinishedException {
+				try {
+					return result.getLong(1);
+				} catch (SQLException e) {
+					log.warn("Could not read reserved event id: {}", e.toString());
+					return null;
+				}
+			}
+		});
+		if (eventIds.size() != eventList.size() || eventIds.contains(null)) {
+			log.warn("Reserved {} event ids for {} events", eventIds.size(), eventList.size());
+			return null;
+		}
+
+		List<Object[]> idEventList = new ArrayList<>(eventList.size());
+		for (int i = 0; i < eventList.size(); i++) {
+			idEventList.add(ArrayUtils.insert(0, eventList.get(i), eventIds.get(i)));
+		}
+		boolean ok = sqlService().dbWriteBatch(conn, clusterEventTrackingServiceSql.getInsertEventWithIdSql(), idEventList);
+		if (!ok) {
+			log.warn("dbWriteBatch failed: event count: {}", idEventList.size());
+			return null;
+		}
+		return eventIds;
+	}
+
 	/**
 	 * Form the proper event insert statement for the database technology.
 	 * 
@@ -509,14 +653,11 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		}
 
 		fields[0] = ((BaseEvent) event).time;
-		fields[1] = event.getEvent() != null && event.getEvent().length() > 32 ?
-				event.getEvent().substring(0, 32) : event.getEvent();
-		fields[2] = event.getResource() != null && event.getResource().length() > 255 ? 
-				event.getResource().substring(0, 255) : event.getResource();
+		fields[1] = truncate(event.getEvent(), 32);
+		fields[2] = truncate(event.getResource(), 255);
 		fields[3] = reportId;
 		fields[4] = (event.getModify() ? "m" : "a");
-		fields[5] = event.getContext() != null && event.getContext().length() > 255 ? 
-				event.getContext().substring(0, 255) : event.getContext();
+		fields[5] = truncate(event.getContext(), 255);
 	}
 
 	/*************************************************************************************************************************************************
@@ -547,6 +688,15 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 				writeBatchEvents(batchEvents);
 			}
 
+			// with the event bus the db is only read every reconcile period, for the events the bus missed
+			final boolean reconciling = m_eventBus != null;
+			if (reconciling)
+			{
+				long now = System.currentTimeMillis();
+				if (now < m_nextReconcile) return;
+				m_nextReconcile = now + 1000L * m_reconcilePeriod;
+			}
+
 			log.debug("checking for events > {}", m_lastEventSeq);
 			// check the db for new events
 			// We do a left join which gets us records from non-sessions also (SESSION_SERVER may be null when non-session events are returned)
@@ -557,7 +707,7 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			fields[0] = Long.valueOf(m_lastEventSeq);
 
 			List<Event> events = new ArrayList<>();
-			if (cachingEnabled) { // KNL-1184
+			if (cachingEnabled && !reconciling) { // KNL-1184
 				// set to last event id processed + 1 since we've already processed the last event id
 				long beginEventId = m_lastEventSeq + 1;
 				// set m_lastEventSeq to latest key value in event cache
@@ -649,6 +799,10 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 					}
 				});
 			}
+			if (reconciling) {
+				events = reconcile(events);
+			}
+
 			// for each new event found, notify observers
 			for (Event event : events) {
 				notifyObservers(event, false);
@@ -660,6 +814,97 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		}
 	}
 
+	/**
+	 * Process an event posted on another cluster server, as pushed by the event bus.
+	 *
+	 * @param clusterEvent
+	 *        The event as published by the other server.
+	 */
+	protected void receiveClusterEvent(SimpleEvent clusterEvent)
+	{
+		// we already notified our own events when they were posted
+		if (serverInstance.equals(clusterEvent.getServerId())) return;
+
+		// Note: as for the events read from the db, no notification info is needed
+		BaseEvent event = new BaseEvent(0, clusterEvent.getEvent(), clusterEvent.getResource(), clusterEvent.getContext(),
+				clusterEvent.getModify(), NotificationService.NOTI_NONE, clusterEvent.getEventTime());
+		if (clusterEvent.getSessionId() != null) {
+			event.setSessionId(clusterEvent.getSessionId());
+		} else {
+			event.setUserId(clusterEvent.getUserId());
+		}
+
+		String key = eventKey(event.getEvent(), event.getResource(), event.getSessionId(), event.getUserId());
+		synchronized (m_busEvents)
+		{
+			m_busEvents.computeIfAbsent(key, k -> new ArrayDeque<>()).add(System.currentTimeMillis());
+		}
+
+		notifyObservers(event, false);
+	}
+
+	/**
+	 * Work out which of the events of the other servers read from the db the bus did not deliver. An event read is only given up on
+	 * at the reconcile after the one that read it, as its server publishes it before writing it to the db but the bus message may
+	 * still be on its way. Events are matched on what they are rather than when, as the servers' clocks may differ.
+	 *
+	 * @param read
+	 *        The events newly read from the db.
+	 * @return The events read by the last reconcile that the bus has not delivered.
+	 */
+	protected List<Event> reconcile(List<Event> read)
+	{
+		List<Event> missed = new ArrayList<>();
+		synchronized (m_busEvents)
+		{
+			for (Event event : m_pendingDbEvents)
+			{
+				Deque<Long> received = m_busEvents.get(eventKey(event.getEvent(), event.getResource(), event.getSessionId(), event.getUserId()));
+				if (received != null && received.poll() != null)
+				{
+					continue;
+				}
+				missed.add(event);
+			}
+
+			// the bus events that never matched a db row are of no more use, they are kept for a few reconciles
+			long expired = System.currentTimeMillis() - 3000L * m_reconcilePeriod;
+			for (Iterator<Deque<Long>> i = m_busEvents.values().iterator(); i.hasNext();)
+			{
+				Deque<Long> received = i.next();
+				while (!received.isEmpty() && received.peek() < expired)
+				{
+					received.poll();
+				}
+				if (received.isEmpty()) i.remove();
+			}
+		}
+		m_pendingDbEvents = read;
+
+		if (!missed.isEmpty())
+		{
+			log.info("Filled in {} events from the db that were not delivered by the cluster event bus, up to event {}", missed.size(), m_lastEventSeq);
+		}
+		return missed;
+	}
+
+	/**
+	 * @return What an event is, to match an event received over the bus with its db row. The function and resource are cut to their
+	 *         db column sizes, as they are in the row.
+	 */
+	protected static String eventKey(String function, String resource, String sessionId, String userId)
+	{
+		return truncate(function, 32) + "@" + truncate(resource, 255) + "#" + (sessionId != null ? sessionId : "~" + userId);
+	}
+
+	/**
+	 * @return The value cut to the length of its db column.
+	 */
+	protected static String truncate(String value, int length)
+	{
+		return value != null && value.length() > length ? value.substring(0, length) : value;
+	}
+
 	/**
 	 * Check the db for the largest event seq number, and set this as the one after which we will next get event.
 	 */
@@ -737,15 +982,24 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
      * @param eventId the id of the event object
      */
     private void writeEventToCluster(Event event, Long eventId) {
+        writeEventsToCluster(Collections.singletonMap(String.valueOf(eventId), toClusterEvent(event)));
+    }
+
+    /**
+     * Writes a batch of events to cache, if enabled. The events are stored before the last event id is moved on,
+     * so the other servers never look for an event that is not there yet.
+     *
+     * @param clusterEvents the events keyed by event id, in id order
+     */
+    private void writeEventsToCluster(Map<String, SimpleEvent> clusterEvents) {
         if (cachingEnabled) {
             if (eventCache != null) {
-                // store event as an element
-                BaseEvent baseEvent = ensureBaseEvent(event);
-                SimpleEvent simpleEvent = new SimpleEvent((Event) baseEvent, serverConfigurationService().getServerIdInstance());
-                // add item to cache store
-                eventCache.put(String.valueOf(eventId), simpleEvent);
-                // update the last event id each time
-                eventLastCache.put("lastEventId", eventId);
+                if (clusterEvents.isEmpty()) return;
+                // add items to cache store
+                eventCache.putAll(clusterEvents);
+                // update the last event id once for the batch
+                Long lastEventId = clusterEvents.keySet().stream().map(Long::valueOf).max(Long::compare).get();
+                eventLastCache.put("lastEventId", lastEventId);
             } else {
 				log.debug("Cannot store event to cache, event store not initialized.");
             }
@@ -754,4 +1008,14 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
         }
     }
 
+    /**
+     * @param event the event object
+     * @return the event as stored in the events cache
+     */
+    private SimpleEvent toClusterEvent(Event event) {
+        // store event as an element
+        BaseEvent baseEvent = ensureBaseEvent(event);
+        return new SimpleEvent((Event) baseEvent, serverConfigurationService().getServerIdInstance());
+    }
+
 }
@@ -31,6 +31,16 @@ public interface ClusterEventTrackingServiceSql
 	 */
 	String getInsertEventSql();
 
+	/**
+	 * returns the sql statement which inserts an event with an already reserved EVENT_ID into the sakai_event table.
+	 */
+	String getInsertEventWithIdSql();
+
+	/**
+	 * returns the sql statement which reserves a number of ids (the single parameter) from the event sequence, or null if the database can not pre-allocate ids.
+	 */
+	String getReserveEventIdsSql();
+
 	/**
 	 * returns the sql statement which retrieves an event from the sakai_event and sakai_session tables.
 	 */
@@ -40,6 +40,23 @@ public class ClusterEventTrackingServiceSqlDefault implements ClusterEventTracki
                           "? )";                                // code
    }
 
+   /**
+    * returns the sql statement which inserts an event with an already reserved EVENT_ID into the sakai_event table.
+    */
+   public String getInsertEventWithIdSql()
+   {
+      return "insert into SAKAI_EVENT (EVENT_ID,EVENT_DATE,EVENT,REF,SESSION_ID,EVENT_CODE,CONTEXT) " +
+             "values      (?, ?, ?, ?, ?, ?, ?)";
+   }
+
+   /**
+    * returns the sql statement which reserves a number of ids from the event sequence, by default ids are only generated on insert.
+    */
+   public String getReserveEventIdsSql()
+   {
+      return null;
+   }
+
    /**
 	 * returns the sql statement which retrieves an event from the sakai_event and sakai_session tables.
 	 */
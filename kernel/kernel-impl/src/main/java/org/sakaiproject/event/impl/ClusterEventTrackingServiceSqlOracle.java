@@ -40,6 +40,13 @@ public class ClusterEventTrackingServiceSqlOracle extends ClusterEventTrackingSe
                           "?) ";                       // context
    }
 
+   /**
+    * returns the sql statement which reserves a number of ids from the event sequence, one row per id.
+    */
+   public String getReserveEventIdsSql() {
+      return "select SAKAI_EVENT_SEQ.NEXTVAL from DUAL connect by level <= ?";
+   }
+
    /**
     * returns the sql statement which retrieves an event from the sakai_event and sakai_session tables.
     */
@@ -0,0 +1,342 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.util.LatencyHistogram;
+
+/**
+ * Fans events out to observers through one bounded queue and one worker thread per observer, so that slow observers
+ * no longer run on the thread that posted the event.
+ * <p>
+ * Each observer still sees its events in the order they were posted (except under the CALLER_RUNS policy, where an
+ * overflowing event is handled immediately on the posting thread). Observers that must see an event before
+ * {@code post()} returns, such as cache invalidators, are configured as synchronous and are called inline as before.
+ * </p>
+ * <p>
+ * Note that asynchronous observers are called on a worker thread, so they do not see the thread bound state
+ * (current session, security advisors) of the thread that posted the event; they must rely on the event itself.
+ * </p>
+ */
+@Slf4j
+public class EventDispatcher implements EventDispatcherMXBean {
+
+    /** What to do when the queue of an observer is full. */
+    public enum OverflowPolicy {
+        /** Make the posting thread wait for room in the queue. */
+        BLOCK,
+        /** Discard the oldest queued event to make room for the new one. */
+        DROP_OLDEST,
+        /** Deliver the event to the observer on the posting thread. */
+        CALLER_RUNS
+    }
+
+    /** How long to wait for the queues to drain on shutdown. */
+    private static final long SHUTDOWN_WAIT_MS = 5000;
+
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final Set<String> syncObserverClasses;
+
+    private final Map<Observer, ObserverChannel> channels = new ConcurrentHashMap<>();
+    /** Observers removed since they were last registered, a notification already under way must not bring their channel back. */
+    private final Set<Observer> removed = ConcurrentHashMap.newKeySet();
+    private final Map<Class<?>, Boolean> syncClassCache = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param queueCapacity
+     *        The maximum number of events queued for each observer.
+     * @param overflowPolicy
+     *        What to do with an event when the queue of an observer is full.
+     * @param syncObserverClasses
+     *        Class (or super class / interface) names of observers that must be notified synchronously.
+     */
+    public EventDispatcher(int queueCapacity, OverflowPolicy overflowPolicy, Set<String> syncObserverClasses) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.BLOCK;
+        this.syncObserverClasses = syncObserverClasses != null ? new HashSet<>(syncObserverClasses) : Collections.emptySet();
+    }
+
+    /**
+     * Deliver an event to an observer, either inline or through the observer's queue.
+     *
+     * @param source
+     *        The observable the observer is registered with.
+     * @param observer
+     *        The observer to notify.
+     * @param arg
+     *        The event.
+     */
+    public void dispatch(Observable source, Observer observer, Object arg) {
+        if (!running || isSynchronous(observer)) {
+            observer.update(source, arg);
+            return;
+        }
+
+        // the check is made inside computeIfAbsent so it cannot interleave with remove() for the same observer
+        ObserverChannel channel = channels.computeIfAbsent(observer, o -> removed.contains(o) ? null : new ObserverChannel(o));
+        if (channel == null) {
+            log.debug("Not dispatching event {} to removed observer {}", arg, observer.getClass().getName());
+            return;
+        }
+        channel.offer(new Delivery(source, arg, System.nanoTime()));
+    }
+
+    /**
+     * Allow asynchronous delivery to an observer again after it was removed.
+     *
+     * @param observer
+     *        The observer being registered.
+     */
+    public void register(Observer observer) {
+        removed.remove(observer);
+    }
+
+    /**
+     * Stop the asynchronous delivery to an observer: no more events are queued for it and its worker ends once the
+     * events already queued are delivered.
+     *
+     * @param observer
+     *        The observer that is no longer registered.
+     */
+    public void remove(Observer observer) {
+        removed.add(observer);
+        ObserverChannel channel = channels.remove(observer);
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Stop all the workers, giving them a chance to deliver what is already queued.
+     */
+    public void shutdown() {
+        running = false;
+        List<ObserverChannel> closing = new ArrayList<>(channels.values());
+        channels.clear();
+        closing.forEach(ObserverChannel::close);
+
+        long deadline = System.currentTimeMillis() + SHUTDOWN_WAIT_MS;
+        for (ObserverChannel channel : closing) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0 || !channel.await(wait)) {
+                log.warn("Gave up waiting for {} queued events for observer {}", channel.queue.size(), channel.name);
+                channel.worker.interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return true if the observer is configured to be called on the posting thread.
+     */
+    public boolean isSynchronous(Observer observer) {
+        if (syncObserverClasses.isEmpty()) return false;
+        return syncClassCache.computeIfAbsent(observer.getClass(), this::matchesSyncClass);
+    }
+
+    private boolean matchesSyncClass(Class<?> clazz) {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            if (syncObserverClasses.contains(c.getName())) return true;
+            for (Class<?> i : c.getInterfaces()) {
+                if (syncObserverClasses.contains(i.getName())) return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public String getOverflowPolicy() {
+        return overflowPolicy.name();
+    }
+
+    @Override
+    public int getAsyncObserverCount() {
+        return channels.size();
+    }
+
+    @Override
+    public long getTotalQueuedEvents() {
+        return channels.values().stream().mapToLong(c -> c.queue.size()).sum();
+    }
+
+    @Override
+    public List<ObserverDispatchStats> getObserverStats() {
+        List<ObserverDispatchStats> stats = new ArrayList<>();
+        for (ObserverChannel channel : channels.values()) {
+            stats.add(channel.stats());
+        }
+        return stats;
+    }
+
+    @Override
+    public void resetStats() {
+        channels.values().forEach(ObserverChannel::resetStats);
+    }
+
+    private static class Delivery {
+        final Observable source;
+        final Object arg;
+        final long queuedAt;
+
+        Delivery(Observable source, Object arg, long queuedAt) {
+            this.source = source;
+            this.arg = arg;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /**
+     * The queue, worker thread and statistics of one observer.
+     */
+    private class ObserverChannel implements Runnable {
+        final Observer observer;
+        final String name;
+        final BlockingQueue<Delivery> queue = new ArrayBlockingQueue<>(queueCapacity);
+        final Thread worker;
+
+        final LongAdder delivered = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder callerRuns = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final AtomicLong lastLag = new AtomicLong();
+        final AtomicLong maxLag = new AtomicLong();
+        final LatencyHistogram handlerTime = new LatencyHistogram();
+
+        volatile boolean closed = false;
+
+        ObserverChannel(Observer observer) {
+            this.observer = observer;
+            this.name = observer.getClass().getName();
+            this.worker = new Thread(this, "EventDispatch-" + observer.getClass().getSimpleName());
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        void offer(Delivery delivery) {
+            if (closed) {
+                // the worker may be gone, so nothing would take it off the queue
+                log.debug("Not queueing event {} for closed observer {}", delivery.arg, name);
+                return;
+            }
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    while (!queue.offer(delivery)) {
+                        if (queue.poll() != null) {
+                            dropped.increment();
+                        }
+                    }
+                    break;
+                case CALLER_RUNS:
+                    if (!queue.offer(delivery)) {
+                        callerRuns.increment();
+                        deliver(delivery);
+                    }
+                    break;
+                default:
+                    try {
+                        queue.put(delivery);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        log.warn("Interrupted while queueing event {} for observer {}, delivering it inline", delivery.arg, name);
+                        deliver(delivery);
+                    }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!closed || !queue.isEmpty()) {
+                try {
+                    Delivery delivery = queue.poll(1, TimeUnit.SECONDS);
+                    if (delivery != null) {
+                        deliver(delivery);
+                    }
+                } catch (InterruptedException ie) {
+                    log.debug("Event dispatch worker for {} interrupted", name);
+                    return;
+                }
+            }
+        }
+
+        void deliver(Delivery delivery) {
+            long start = System.nanoTime();
+            long lag = TimeUnit.NANOSECONDS.toMicros(start - delivery.queuedAt);
+            lastLag.set(lag);
+            maxLag.accumulateAndGet(lag, Math::max);
+            try {
+                observer.update(delivery.source, delivery.arg);
+                delivered.increment();
+            } catch (Exception e) {
+                failures.increment();
+                log.warn("Observer {} failed to handle event {}", name, delivery.arg, e);
+            } finally {
+                handlerTime.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
+        }
+
+        void close() {
+            closed = true;
+        }
+
+        boolean await(long millis) {
+            try {
+                worker.join(millis);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            return !worker.isAlive();
+        }
+
+        void resetStats() {
+            delivered.reset();
+            dropped.reset();
+            callerRuns.reset();
+            failures.reset();
+            lastLag.set(0);
+            maxLag.set(0);
+            handlerTime.reset();
+        }
+
+        ObserverDispatchStats stats() {
+            return new ObserverDispatchStats(name, queue.size(), delivered.sum(), dropped.sum(), callerRuns.sum(),
+                    failures.sum(), lastLag.get(), maxLag.get(), handlerTime.getValueAtPercentile(50),
+                    handlerTime.getValueAtPercentile(99), handlerTime.getMax());
+        }
+    }
+}
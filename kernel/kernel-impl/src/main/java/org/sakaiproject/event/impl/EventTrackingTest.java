@@ -21,6 +21,7 @@
 
 package org.sakaiproject.event.impl;
 
+import org.apache.ignite.Ignite;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.db.api.SqlService;
@@ -75,6 +76,11 @@ public class EventTrackingTest extends ClusterEventTracking
 		return null;
 	}
 
+	@Override
+	protected Ignite ignite() {
+		return null;
+	}
+
 	/**
 	 * @return the TimeService collaborator.
 	 */
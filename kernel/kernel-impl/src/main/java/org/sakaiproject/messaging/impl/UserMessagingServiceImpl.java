@@ -47,8 +47,11 @@ import java.util.Observable;
 import java.util.Observer;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.hibernate.SessionFactory;
@@ -104,7 +107,6 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
@@ -142,7 +144,10 @@ public class UserMessagingServiceImpl implements UserMessagingService, Observer
     private List<UserNotificationHandler> handlers = new ArrayList<>();
     private Map<String, UserNotificationHandler> handlerMap = new HashMap<>();
     private ExecutorService executor;
+    private ExecutorService pushExecutor;
     private PushService pushService;
+    private int batchSize;
+    private long slowFanOut;
     private String publicKey = "";
     private boolean pushEnabled = false;
 
@@ -167,6 +172,15 @@ public class UserMessagingServiceImpl implements UserMessagingService, Observer
 
         executor = Executors.newFixedThreadPool(20);
 
+        batchSize = Math.max(serverConfigurationService.getInt("portal.notifications.batch.size", 100), 1);
+        slowFanOut = serverConfigurationService.getInt("portal.notifications.fanout.slow", 5000);
+
+        // Pushes to a big site go out in parallel. When the queue is full the observer thread sends them itself,
+        // which slows the event down rather than queueing without bound
+        int pushThreads = Math.max(serverConfigurationService.getInt("portal.notifications.push.threads", 8), 1);
+        pushExecutor = new ThreadPoolExecutor(pushThreads, pushThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(pushThreads * 250), new ThreadPoolExecutor.CallerRunsPolicy());
+
         if (pushEnabled) {
             String home = serverConfigurationService.getSakaiHomePath();
             String publicKeyFileName = serverConfigurationService.getString(PUSH_PUBKEY_PROPERTY, "sakai_push.key.pub");
@@ -217,6 +231,7 @@ public class UserMessagingServiceImpl implements UserMessagingService, Observer
 
     public void destroy() {
         executor.shutdownNow();
+        pushExecutor.shutdownNow();
     }
 
     private class EmailSender {
@@ -343,10 +358,19 @@ public class UserMessagingServiceImpl implements UserMessagingService, Observer
             String tool = message.getTool();
             String type = message.getType();
 
+            Map<String, Preferences> allPrefs = preferencesService.getPreferencesForUsers(
+                    users.stream().map(User::getId).collect(Collectors.toList()));
+
+            // Most recipients share a locale, so each template only gets rendered a few times
+            Map<Locale, RenderedTemplate> templates = new HashMap<>();
+
             users.forEach(user -> {
 
+                Preferences prefs = allPrefs.get(user.getId());
+                if (prefs == null) {
+                    prefs = preferencesService.getPreferences(user.getId());
+                }
                 Locale locale = preferencesService.getLocale(user.getId());
-                Preferences prefs = preferencesService.getPreferences(user.getId());
                 ResourceProperties toolProps = prefs.getToolNotificationProperties(tool);
                 String noti = toolProps.getProperty("2") == null ? String.valueOf(NotificationService.PREF_IMMEDIATE) : toolProps.getProperty("2");
 
@@ -357,7 +381,7 @@ public class UserMessagingServiceImpl implements UserMessagingService, Observer
                 media.forEach(m -> {
 
                     final RenderedTemplate template = (m == EMAIL || m == DIGEST)
-                        ? emailTemplateService.getRenderedTemplate(tool + "." + type, locale, replacements)
+                        ? templates.computeIfAbsent(locale, l -> emailTemplateService.getRenderedTemplate(tool + "." + type, l, replacements))
                             : null;
 
                     switch (m) {
@@ -454,14 +478,7 @@ public class UserMessagingServiceImpl implements UserMessagingService, Observer
                     if (handler != null) {
                         Optional<List<UserNotificationData>> result = handler.handleEvent(e);
                         if (result.isPresent()) {
-                            result.get().forEach(bd -> {
-                                UserNotification un = doInsert(from, bd.getTo(), event, ref, bd.getTitle(),
-                                                bd.getSiteId(), e.getEventTime(), finalDeferred, bd.getUrl(), tool);
-                                if (!finalDeferred && this.pushEnabled) {
-                                    un.setTool(tool.orElse(""));
-                                    push(decorateNotification(un));
-                                }
-                            });
+                            fanOut(result.get(), from, event, ref, e.getEventTime(), finalDeferred, tool);
                         }
                     } else if (SiteService.EVENT_SITE_PUBLISH.equals(event)) {
                         final String siteId = pathParts[2];
@@ -482,29 +499,65 @@ public class UserMessagingServiceImpl implements UserMessagingService, Observer
         }
     }
 
-    private UserNotification doInsert(String from, String to, String event, String ref
-                            , String title, String siteId, Date eventDate, boolean deferred, String url, Optional<String> tool) {
+    /**
+     * Store the notifications of an event and push them to the recipients' browsers. The notifications are inserted
+     * in batches, a transaction per batch, and the pushes are sent from the push pool.
+     */
+    private void fanOut(List<UserNotificationData> data, String from, String event, String ref
+                            , Date eventDate, boolean deferred, Optional<String> tool) {
 
-        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long start = System.currentTimeMillis();
 
-        return transactionTemplate.execute(new TransactionCallback<UserNotification>() {
+        List<UserNotification> notifications = data.stream()
+            .map(bd -> newNotification(from, bd.getTo(), event, ref, bd.getTitle(), bd.getSiteId(), eventDate, deferred, bd.getUrl()))
+            .collect(Collectors.toList());
 
-            public UserNotification doInTransaction(TransactionStatus status) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
 
-                UserNotification ba = new UserNotification();
-                ba.setFromUser(from);
-                ba.setToUser(to);
-                ba.setEvent(event);
-                ba.setRef(ref);
-                ba.setTitle(title);
-                ba.setSiteId(siteId);
-                ba.setEventDate(eventDate.toInstant());
-                ba.setUrl(url);
-                ba.setDeferred(deferred);
+        for (int i = 0; i < notifications.size(); i += batchSize) {
+            List<UserNotification> batch = notifications.subList(i, Math.min(i + batchSize, notifications.size()));
+            transactionTemplate.execute(status -> userNotificationRepository.insertAll(batch, batchSize));
+        }
 
-                return userNotificationRepository.save(ba);
+        int pushed = 0;
+        if (!deferred && this.pushEnabled) {
+            Map<String, List<PushSubscription>> subscriptions = pushSubscriptionRepository
+                .findByUsers(notifications.stream().map(UserNotification::getToUser).collect(Collectors.toSet()))
+                .stream().collect(Collectors.groupingBy(PushSubscription::getUserId));
+
+            for (UserNotification un : notifications) {
+                List<PushSubscription> userSubscriptions = subscriptions.get(un.getToUser());
+                if (userSubscriptions != null) {
+                    un.setTool(tool.orElse(""));
+                    UserNotification decorated = decorateNotification(un);
+                    pushExecutor.execute(() -> push(decorated, userSubscriptions));
+                    pushed++;
+                }
             }
-        });
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        if (elapsed > slowFanOut) {
+            log.warn("Fan out of {} for {} took {}ms, {} notifications and {} pushes", event, ref, elapsed, notifications.size(), pushed);
+        } else {
+            log.debug("Fan out of {} for {} took {}ms, {} notifications and {} pushes", event, ref, elapsed, notifications.size(), pushed);
+        }
+    }
+
+    private UserNotification newNotification(String from, String to, String event, String ref
+                            , String title, String siteId, Date eventDate, boolean deferred, String url) {
+
+        UserNotification ba = new UserNotification();
+        ba.setFromUser(from);
+        ba.setToUser(to);
+        ba.setEvent(event);
+        ba.setRef(ref);
+        ba.setTitle(title);
+        ba.setSiteId(siteId);
+        ba.setEventDate(eventDate.toInstant());
+        ba.setUrl(url);
+        ba.setDeferred(deferred);
+        return ba;
     }
 
     @Transactional  
@@ -630,9 +683,9 @@ public class UserMessagingServiceImpl implements UserMessagingService, Observer
         pushSubscriptionRepository.save(ps);
     }
 
-    private void push(UserNotification un) {
+    private void push(UserNotification un, List<PushSubscription> subscriptions) {
 
-        pushSubscriptionRepository.findByUser(un.getToUser()).forEach(pushSubscription -> {
+        subscriptions.forEach(pushSubscription -> {
 
             String pushEndpoint = pushSubscription.getEndpoint();
             String pushUserKey = pushSubscription.getUserKey();
@@ -15,6 +15,8 @@
  */
 package org.sakaiproject.messaging.impl.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.hibernate.Session;
@@ -32,6 +34,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 public class PushSubscriptionRepositoryImpl extends SpringCrudRepositoryImpl<PushSubscription, Long> implements PushSubscriptionRepository {
 
+    // Oracle allows no more than 1000 values in an in clause
+    private static final int IN_CLAUSE_LIMIT = 1000;
+
     @Transactional(readOnly = true)
     public List<PushSubscription> findByUser(String userId) {
 
@@ -44,6 +49,23 @@ public class PushSubscriptionRepositoryImpl extends SpringCrudRepositoryImpl<Pus
         return session.createQuery(query).list();
     }
 
+    @Transactional(readOnly = true)
+    public List<PushSubscription> findByUsers(Collection<String> userIds) {
+
+        Session session = sessionFactory.getCurrentSession();
+
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        List<String> ids = new ArrayList<>(userIds);
+        List<PushSubscription> subscriptions = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += IN_CLAUSE_LIMIT) {
+            CriteriaQuery<PushSubscription> query = cb.createQuery(PushSubscription.class);
+            Root<PushSubscription> ps = query.from(PushSubscription.class);
+            query.where(ps.get("userId").in(ids.subList(i, Math.min(i + IN_CLAUSE_LIMIT, ids.size()))));
+            subscriptions.addAll(session.createQuery(query).list());
+        }
+        return subscriptions;
+    }
+
     @Transactional(readOnly = true)
     public int deleteByFingerprint(String browserFingerprint) {
 
@@ -80,4 +80,20 @@ public class UserNotificationRepositoryImpl extends SpringCrudRepositoryImpl<Use
         cu.set("deferred", deferred).where(cb.equal(un.get("siteId"), siteId));
         return session.createQuery(cu).executeUpdate();
     }
+
+    @Transactional
+    public List<UserNotification> insertAll(List<UserNotification> notifications, int batchSize) {
+
+        Session session = sessionFactory.getCurrentSession();
+
+        Integer previousBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(batchSize);
+        try {
+            notifications.forEach(session::persist);
+            session.flush();
+        } finally {
+            session.setJdbcBatchSize(previousBatchSize);
+        }
+        return notifications;
+    }
 }
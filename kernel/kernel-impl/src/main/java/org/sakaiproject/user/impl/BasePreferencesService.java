@@ -269,6 +269,43 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 		return prefs;
 	}
 
+	/**
+	 * @inheritDoc
+	 */
+	public Map<String, Preferences> getPreferencesForUsers(Collection<String> ids)
+	{
+		Map<String, Preferences> found = new LinkedHashMap<>();
+		List<String> missing = new ArrayList<>();
+		for (String id : ids)
+		{
+			if (id == null || found.containsKey(id)) continue;
+			BasePreferences prefs = m_cache.get(id);
+			found.put(id, prefs);
+			if (prefs == null) missing.add(id);
+		}
+
+		// read the ones not cached in one go
+		if (!missing.isEmpty())
+		{
+			for (Preferences prefs : m_storage.getAll(missing))
+			{
+				m_cache.put(prefs.getId(), (BasePreferences) prefs);
+				found.put(prefs.getId(), prefs);
+			}
+		}
+
+		for (String id : missing)
+		{
+			if (found.get(id) == null)
+			{
+				// throwaway empty preferences, as getPreferences()
+				found.put(id, new BasePreferences(id));
+			}
+		}
+
+		return found;
+	}
+
 	/**
 	 * @inheritDoc
 	 */
@@ -731,6 +768,24 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 		 */
 		public Preferences get(String id);
 
+		/**
+		 * Get the preferences with these ids, those not found are left out.
+		 *
+		 * @param ids
+		 *        The preferences ids.
+		 * @return The preferences found.
+		 */
+		public default List<Preferences> getAll(Collection<String> ids)
+		{
+			List<Preferences> all = new ArrayList<>();
+			for (String id : ids)
+			{
+				Preferences prefs = get(id);
+				if (prefs != null) all.add(prefs);
+			}
+			return all;
+		}
+
 		/**
 		 * Add a new preferences with this id.
 		 *
@@ -21,9 +21,18 @@
 
 package org.sakaiproject.user.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import lombok.extern.slf4j.Slf4j;
 
 import org.sakaiproject.db.api.SqlService;
+import org.sakaiproject.javax.RestrictedFilter;
+import org.sakaiproject.javax.Restriction;
 import org.sakaiproject.user.api.Preferences;
 import org.sakaiproject.user.api.PreferencesEdit;
 import org.sakaiproject.util.BaseDbSingleStorage;
@@ -43,6 +52,9 @@ public abstract class DbPreferencesService extends BasePreferencesService
 	/** If true, we do our locks in the remote database, otherwise we do them here. */
 	protected boolean m_locksInDb = true;
 
+	/** How many preferences getAll() reads per select. */
+	protected static final int GET_ALL_CHUNK = 500;
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Dependencies
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -163,6 +175,30 @@ public abstract class DbPreferencesService extends BasePreferencesService
 			return (Preferences) super.getResource(id);
 		}
 
+		public List<Preferences> getAll(Collection<String> ids)
+		{
+			List<Preferences> all = new ArrayList<>();
+			List<String> list = new ArrayList<>(ids);
+			for (int i = 0; i < list.size(); i += GET_ALL_CHUNK)
+			{
+				final Set<String> chunk = new HashSet<>(list.subList(i, Math.min(i + GET_ALL_CHUNK, list.size())));
+				List<Preferences> found = super.getSelectedResources(new RestrictedFilter()
+				{
+					public List<Restriction> getRestrictions()
+					{
+						return Collections.singletonList(new Restriction("PREFERENCES_ID", chunk));
+					}
+
+					public boolean accept(Object o)
+					{
+						return chunk.contains(o);
+					}
+				});
+				all.addAll(found);
+			}
+			return all;
+		}
+
 		public PreferencesEdit put(String id)
 		{
 			return (PreferencesEdit) super.putResource(id, null);
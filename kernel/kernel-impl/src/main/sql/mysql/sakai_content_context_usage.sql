@@ -0,0 +1,16 @@
+-----------------------------------------------------------------------------
+-- CONTENT_CONTEXT_USAGE
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_CONTEXT_USAGE
+(
+    CONTEXT VARCHAR (99) NOT NULL,
+    FILE_SIZE BIGINT NOT NULL,
+    LAST_RECONCILED BIGINT NOT NULL,
+    PRIMARY KEY (CONTEXT)
+);
+
+CREATE INDEX CONTENT_CONTEXT_USAGE_REC_I ON CONTENT_CONTEXT_USAGE
+(
+    LAST_RECONCILED
+);
@@ -0,0 +1,19 @@
+-----------------------------------------------------------------------------
+-- CONTENT_BODY_REF
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_BODY_REF
+(
+    BODY_ROOT VARCHAR2 (255) NOT NULL,
+    BODY_HASH VARCHAR2 (64) NOT NULL,
+    FILE_SIZE NUMBER(18),
+    REF_COUNT NUMBER(10) NOT NULL,
+    LAST_UPDATED NUMBER(18) NOT NULL,
+    PRIMARY KEY (BODY_ROOT, BODY_HASH)
+);
+
+CREATE INDEX CONTENT_BODY_REF_UNUSED_I ON CONTENT_BODY_REF
+(
+    REF_COUNT,
+    LAST_UPDATED
+);
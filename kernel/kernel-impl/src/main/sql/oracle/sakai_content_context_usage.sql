@@ -0,0 +1,16 @@
+-----------------------------------------------------------------------------
+-- CONTENT_CONTEXT_USAGE
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_CONTEXT_USAGE
+(
+    CONTEXT VARCHAR2 (99) NOT NULL,
+    FILE_SIZE NUMBER(18) NOT NULL,
+    LAST_RECONCILED NUMBER(18) NOT NULL,
+    PRIMARY KEY (CONTEXT)
+);
+
+CREATE INDEX CONTENT_CONTEXT_USAGE_REC_I ON CONTENT_CONTEXT_USAGE
+(
+    LAST_RECONCILED
+);
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.authz.api.MemberWithRoleId;
+import org.sakaiproject.authz.api.SimpleRole;
+
+public class RealmPermissionEvaluatorTest {
+
+    private static final String SITE = "/site/course";
+    private static final String GROUP = "/site/course/group/g1";
+    private static final String CONTENT = "/content/group/course/";
+
+    private final Map<String, RealmPermissions> realms = new HashMap<>();
+    private RealmPermissionEvaluator evaluator;
+
+    @Before
+    public void setUp() {
+        Map<String, SimpleRole> siteRoles = new HashMap<>();
+        siteRoles.put("maintain", role("maintain", "site.upd", "content.read", "content.new"));
+        siteRoles.put("access", role("access", "content.read"));
+        siteRoles.put(".auth", role(".auth", "site.visit"));
+        Map<String, MemberWithRoleId> siteGrants = new HashMap<>();
+        siteGrants.put("instructor", new MemberWithRoleId("maintain", true, false));
+        siteGrants.put("student", new MemberWithRoleId("access", true, true));
+        siteGrants.put("dropped", new MemberWithRoleId("access", false, true));
+        realms.put(SITE, RealmPermissions.of(siteRoles, siteGrants));
+
+        // the group grants a function to access without the student being a member of it
+        Map<String, SimpleRole> groupRoles = new HashMap<>();
+        groupRoles.put("access", role("access", "content.new"));
+        realms.put(GROUP, RealmPermissions.of(groupRoles, Collections.emptyMap()));
+
+        evaluator = new RealmPermissionEvaluator(realmId -> realms.getOrDefault(realmId, RealmPermissions.EMPTY));
+    }
+
+    @Test
+    public void activeGrantGivesTheRoleFunctions() {
+        Assert.assertTrue(evaluator.isAllowed("instructor", "site.upd", List.of(SITE), Collections.emptySet()));
+        Assert.assertTrue(evaluator.isAllowed("student", "content.read", List.of(SITE), Collections.emptySet()));
+        Assert.assertFalse(evaluator.isAllowed("student", "site.upd", List.of(SITE), Collections.emptySet()));
+    }
+
+    @Test
+    public void inactiveGrantGivesNothing() {
+        Assert.assertFalse(evaluator.isAllowed("dropped", "content.read", List.of(SITE), Collections.emptySet()));
+        Assert.assertTrue(evaluator.isAllowed("dropped", "site.visit", List.of(SITE), Set.of(".auth")));
+    }
+
+    @Test
+    public void roleFromOneRealmAppliesInTheOthers() {
+        // matches the SQL, the grant role is looked up across all the realms being checked
+        Assert.assertTrue(evaluator.isAllowed("student", "content.new", Arrays.asList(GROUP, SITE), Collections.emptySet()));
+        Assert.assertFalse(evaluator.isAllowed("student", "content.new", List.of(GROUP), Collections.emptySet()));
+    }
+
+    @Test
+    public void unknownRealmsAndFunctionsAreNotAllowed() {
+        Assert.assertFalse(evaluator.isAllowed("instructor", "site.upd", List.of(CONTENT), Collections.emptySet()));
+        Assert.assertFalse(evaluator.isAllowed("instructor", "no.such.function", List.of(SITE, CONTENT), Collections.emptySet()));
+        Assert.assertFalse(evaluator.isAllowed(null, "site.visit", List.of(SITE), Collections.emptySet()));
+        Assert.assertTrue(evaluator.isAllowed(null, "site.visit", List.of(SITE), Set.of(".auth")));
+    }
+
+    @Test
+    public void usersAllowedOnlyIncludesActiveGrants() {
+        Assert.assertEquals(new HashSet<>(Arrays.asList("instructor", "student")), evaluator.getUsersIsAllowed("content.read", List.of(SITE, GROUP)));
+        Assert.assertEquals(Collections.singleton("instructor"), evaluator.getUsersIsAllowed("content.new", List.of(SITE, GROUP)));
+        Assert.assertTrue(evaluator.getUsersIsAllowed("site.visit", List.of(SITE)).isEmpty());
+    }
+
+    private static SimpleRole role(String id, String... functions) {
+        SimpleRole role = new SimpleRole();
+        role.setId(id);
+        role.setLocks(new HashSet<>(Arrays.asList(functions)));
+        return role;
+    }
+}
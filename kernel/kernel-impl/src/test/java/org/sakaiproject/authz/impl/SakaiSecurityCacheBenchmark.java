@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares answering a repeated permission check through the string keys of the shared security cache with the
+ * compact keys of the per request cache.
+ * <p>
+ * This is not run as part of the build, run it with the test classpath:
+ * {@code java -cp <test classpath> org.sakaiproject.authz.impl.SakaiSecurityCacheBenchmark}
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SakaiSecurityCacheBenchmark {
+
+    private static final String[] FUNCTIONS = {"site.visit", "site.upd", "content.read", "annc.read", "asn.submit", "gradebook.viewOwnGrades"};
+
+    /** The number of distinct checks a page render repeats. */
+    @Param({"50", "500"})
+    public int checks;
+
+    private SakaiSecurityConcrete sakaiSecurity;
+    private ConcurrentHashMap<String, Boolean> sharedCache;
+    private RequestSecurityCache requestCache;
+    private String[] users;
+    private String[] references;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        sakaiSecurity = new SakaiSecurityConcrete();
+        sharedCache = new ConcurrentHashMap<>();
+        requestCache = new RequestSecurityCache(0, checks);
+        users = new String[checks];
+        references = new String[checks];
+
+        for (int i = 0; i < checks; i++) {
+            // build new strings each time, as a request would get them from the session and the url
+            users[i] = new String("8f1c2d3e-" + (i % 7));
+            references[i] = new String("/site/site-" + i);
+            String function = FUNCTIONS[i % FUNCTIONS.length];
+            sharedCache.put(sakaiSecurity.makeCacheKey(users[i], null, function, references[i], false), Boolean.TRUE);
+            SecurityCacheStats.FunctionCounters counters = sakaiSecurity.m_cacheStats.function(function);
+            requestCache.put(new SecurityCheckKey(users[i], null, counters.id, references[i]), Boolean.TRUE);
+        }
+    }
+
+    @Benchmark
+    public void stringKey(Blackhole bh) {
+        int i = next();
+        String key = sakaiSecurity.makeCacheKey(users[i], null, FUNCTIONS[i % FUNCTIONS.length], references[i], false);
+        bh.consume(sharedCache.get(key));
+    }
+
+    @Benchmark
+    public void compactKey(Blackhole bh) {
+        int i = next();
+        SecurityCacheStats.FunctionCounters counters = sakaiSecurity.m_cacheStats.function(FUNCTIONS[i % FUNCTIONS.length]);
+        bh.consume(requestCache.get(new SecurityCheckKey(users[i], null, counters.id, references[i])));
+    }
+
+    private int next() {
+        if (++next == checks) next = 0;
+        return next;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SakaiSecurityCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+}
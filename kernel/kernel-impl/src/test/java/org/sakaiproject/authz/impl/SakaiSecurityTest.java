@@ -32,14 +32,20 @@ import org.sakaiproject.entity.api.EntityManager;
 import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.thread_local.impl.ThreadLocalComponent;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
 import static java.util.Collections.singleton;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -57,6 +63,8 @@ public class SakaiSecurityTest {
     @Mock private MemoryService memoryService;
     @Mock private ServerConfigurationService serverConfigurationService;
     @Mock private EventTrackingService eventTrackingService;
+    @Mock private SessionManager sessionManager;
+    @Mock private Session session;
 
 
     private SakaiSecurity sakaiSecurity;
@@ -70,6 +78,9 @@ public class SakaiSecurityTest {
         sakaiSecurity.setMemoryService(memoryService);
         sakaiSecurity.setServerConfigurationService(serverConfigurationService);
         sakaiSecurity.setEventTrackingService(eventTrackingService);
+        sakaiSecurity.setSessionManager(sessionManager);
+        sakaiSecurity.setThreadLocalManager(new ThreadLocalComponent());
+        when(sessionManager.getCurrentSession()).thenReturn(session);
 
         // Always return default
         when(serverConfigurationService.getString(anyString(), anyString())).thenAnswer(invocation -> invocation.getArgument(1));
@@ -150,4 +161,64 @@ public class SakaiSecurityTest {
         assertThat(flushed, containsInAnyOrder("unlock@1@@function@/site/1", "unlock@2@@function@/site/1"));
     }
 
+    @Test
+    public void testRequestCacheAnswersRepeatedChecks() {
+
+        Cache cache = mockSecurityCaches();
+        sakaiSecurity.init();
+
+        Collection<String> azgs = singleton("/site/1");
+        when(authzGroupService.isAllowed("user1", "site.visit", azgs)).thenReturn(true);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(sakaiSecurity.unlock("user1", "site.visit", "/site/1", azgs));
+        }
+
+        // only the first check reaches the shared cache and the AuthzGroupService
+        verify(cache, times(1)).get("unlock@user1@@site.visit@/site/1");
+        verify(authzGroupService, times(1)).isAllowed("user1", "site.visit", azgs);
+        assertEquals(2, sakaiSecurity.m_cacheStats.getRequestHits());
+        assertEquals(1, sakaiSecurity.m_cacheStats.getMisses());
+        assertEquals(1, sakaiSecurity.m_cacheStats.getFunctionCacheStats().size());
+    }
+
+    @Test
+    public void testRequestCacheRetiredWhenRealmChanges() {
+
+        Cache cache = mockSecurityCaches();
+        sakaiSecurity.init();
+
+        Collection<String> azgs = singleton("/site/1");
+        when(authzGroupService.isAllowed("user1", "site.visit", azgs)).thenReturn(false, true);
+
+        assertEquals(false, sakaiSecurity.unlock("user1", "site.visit", "/site/1", azgs));
+        // a membership change saves the realm without changing any permissions
+        sakaiSecurity.notifyRealmChanged("/realm//site/1", null, null);
+        assertEquals(true, sakaiSecurity.unlock("user1", "site.visit", "/site/1", azgs));
+
+        verify(authzGroupService, times(2)).isAllowed("user1", "site.visit", azgs);
+    }
+
+    @Test
+    public void testRequestCacheKeepsRoleSwapsApart() {
+
+        mockSecurityCaches();
+        sakaiSecurity.init();
+
+        Collection<String> azgs = singleton("/site/1");
+        when(authzGroupService.isAllowed("user1", "site.upd", azgs)).thenReturn(true, false);
+
+        assertEquals(true, sakaiSecurity.unlock("user1", "site.upd", "/site/1", azgs));
+        when(session.getAttribute(SakaiSecurity.ROLE_VIEW)).thenReturn("student");
+        assertEquals(false, sakaiSecurity.unlock("user1", "site.upd", "/site/1", azgs));
+    }
+
+    private Cache mockSecurityCaches() {
+        Cache cache = mock(Cache.class);
+        when(memoryService.getCache("org.sakaiproject.authz.api.SecurityService.cache")).thenReturn(cache);
+        when(memoryService.getCache("org.sakaiproject.authz.api.SecurityService.superCache")).thenReturn(mock(Cache.class));
+        when(memoryService.getCache("org.sakaiproject.authz.api.SecurityService.contentCache")).thenReturn(mock(Cache.class));
+        return cache;
+    }
+
 }
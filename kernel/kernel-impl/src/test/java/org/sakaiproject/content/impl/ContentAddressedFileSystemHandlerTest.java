@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.sakaiproject.content.api.FileSystemHandler;
+import org.sakaiproject.db.impl.BasicSqlService;
+import org.sakaiproject.db.impl.HsqlSqlService;
+
+public class ContentAddressedFileSystemHandlerTest {
+
+    private static final byte[] LECTURE = "the same lecture notes in every site".getBytes(StandardCharsets.UTF_8);
+
+    private BasicSqlService sqlService;
+    private Connection setup;
+    private File root;
+    private ContentAddressedFileSystemHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        JDBCDataSource hsql = HsqlSqlService.dataSource("bodyreftest");
+
+        setup = hsql.getConnection();
+        try (Statement statement = setup.createStatement()) {
+            statement.execute("CREATE TABLE CONTENT_BODY_REF (BODY_ROOT VARCHAR (255) NOT NULL, BODY_HASH VARCHAR (64) NOT NULL, FILE_SIZE BIGINT,"
+                    + " REF_COUNT INTEGER NOT NULL, LAST_UPDATED BIGINT NOT NULL, PRIMARY KEY (BODY_ROOT, BODY_HASH))");
+        }
+
+        sqlService = new HsqlSqlService(hsql);
+        sqlService.init();
+
+        root = Files.createTempDirectory("bodies").toFile();
+        handler = handler(new DefaultFileSystemHandler());
+    }
+
+    @After
+    public void tearDown() throws SQLException, IOException {
+        handler.destroy();
+        try (Statement statement = setup.createStatement()) {
+            statement.execute("DROP TABLE CONTENT_BODY_REF");
+        }
+        setup.close();
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Test
+    public void identicalBodiesAreStoredOnce() throws IOException {
+        String hash = DigestUtils.sha256Hex(LECTURE);
+        String path = ContentAddressedFileSystemHandler.contentPath(hash);
+
+        Assert.assertEquals(LECTURE.length, handler.saveInputStream("/group/a/notes.pdf", root.getPath(), "/2026/291/10/a", new ByteArrayInputStream(LECTURE)));
+        Assert.assertEquals(LECTURE.length, handler.saveInputStream("/group/b/notes.pdf", root.getPath(), "/2026/291/10/b", new ByteArrayInputStream(LECTURE)));
+
+        Assert.assertEquals("/sha256/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash, path);
+        Assert.assertTrue(new File(root, path).isFile());
+        Assert.assertFalse(new File(root, "/2026").exists());
+        Assert.assertEquals(0, new File(root, "/sha256/tmp").list().length);
+        Assert.assertEquals(1, handler.getStoredCount());
+        Assert.assertEquals(1, handler.getDeduplicatedCount());
+        Assert.assertEquals(2, referenceCount(hash));
+
+        try (InputStream in = handler.getInputStream("/group/b/notes.pdf", root.getPath(), path)) {
+            Assert.assertArrayEquals(LECTURE, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void bodiesAreOnlyRemovedOnceUnused() throws Exception {
+        String hash = DigestUtils.sha256Hex(LECTURE);
+        String path = ContentAddressedFileSystemHandler.contentPath(hash);
+        handler.saveInputStream("/group/a/notes.pdf", root.getPath(), "/a", new ByteArrayInputStream(LECTURE));
+        handler.saveInputStream("/group/b/notes.pdf", root.getPath(), "/b", new ByteArrayInputStream(LECTURE));
+
+        Assert.assertTrue(handler.delete("/group/a/notes.pdf", root.getPath(), path));
+        Thread.sleep(5);
+        Assert.assertEquals(0, handler.sweep());
+        Assert.assertTrue(new File(root, path).isFile());
+
+        Assert.assertTrue(handler.delete("/group/b/notes.pdf", root.getPath(), path));
+        Assert.assertFalse(handler.delete("/group/b/notes.pdf", root.getPath(), path));
+        Thread.sleep(5);
+        Assert.assertEquals(1, handler.sweep());
+        Assert.assertFalse(new File(root, path).exists());
+        Assert.assertEquals(-1, referenceCount(hash));
+
+        // stored again after the sweep
+        handler.saveInputStream("/group/c/notes.pdf", root.getPath(), "/c", new ByteArrayInputStream(LECTURE));
+        Assert.assertTrue(new File(root, path).isFile());
+        Assert.assertEquals(1, referenceCount(hash));
+    }
+
+    @Test
+    public void otherPathsArePassedToTheDelegate() throws IOException {
+        File legacy = new File(root, "/2020/100/10/legacy");
+        legacy.getParentFile().mkdirs();
+        Files.write(legacy.toPath(), LECTURE);
+
+        try (InputStream in = handler.getInputStream("/group/a/old.pdf", root.getPath(), "/2020/100/10/legacy")) {
+            Assert.assertArrayEquals(LECTURE, IOUtils.toByteArray(in));
+        }
+        Assert.assertTrue(handler.delete("/group/a/old.pdf", root.getPath(), "/2020/100/10/legacy"));
+        Assert.assertFalse(legacy.exists());
+    }
+
+    @Test
+    public void otherDelegatesAreGivenTheContentPathAsId() throws IOException {
+        FileSystemHandler blobs = Mockito.mock(FileSystemHandler.class);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        Mockito.when(blobs.saveInputStream(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(InputStream.class)))
+                .thenAnswer(invocation -> (long) IOUtils.copy((InputStream) invocation.getArgument(3), written));
+        handler.destroy();
+        handler = handler(blobs);
+
+        handler.saveInputStream("/group/a/notes.pdf", "content/live", "/a", new ByteArrayInputStream(LECTURE));
+        handler.saveInputStream("/group/b/notes.pdf", "content/live", "/b", new ByteArrayInputStream(LECTURE));
+
+        String path = ContentAddressedFileSystemHandler.contentPath(DigestUtils.sha256Hex(LECTURE));
+        ArgumentCaptor<String> ids = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(blobs, Mockito.times(1)).saveInputStream(ids.capture(), Mockito.eq("content/live"), Mockito.eq(path), Mockito.any(InputStream.class));
+        Assert.assertEquals(path, ids.getValue());
+        Assert.assertArrayEquals(LECTURE, written.toByteArray());
+    }
+
+    @Test
+    public void failedReferencesAreNotRetried() throws Exception {
+        FileSystemHandler blobs = Mockito.mock(FileSystemHandler.class);
+        Mockito.when(blobs.saveInputStream(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(InputStream.class)))
+                .thenReturn((long) LECTURE.length);
+        handler.destroy();
+        handler = handler(blobs);
+        try (Statement statement = setup.createStatement()) {
+            statement.execute("ALTER TABLE CONTENT_BODY_REF ADD CONSTRAINT SMALL_BODIES CHECK (FILE_SIZE < 10)");
+        }
+
+        try {
+            handler.saveInputStream("/group/a/notes.pdf", "content/live", "/a", new ByteArrayInputStream(LECTURE));
+            Assert.fail("The reference could not be recorded");
+        } catch (IOException expected) {
+        }
+
+        Mockito.verify(blobs, Mockito.times(1)).saveInputStream(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(InputStream.class));
+        Assert.assertEquals(0, handler.getStoredCount());
+    }
+
+    private ContentAddressedFileSystemHandler handler(FileSystemHandler delegate) {
+        ContentAddressedFileSystemHandler handler = new ContentAddressedFileSystemHandler();
+        handler.setSqlService(sqlService);
+        handler.setDelegate(delegate);
+        handler.setTemporaryDirectory(root.getPath());
+        handler.setSweepInterval(0);
+        handler.setSweepGracePeriod(0);
+        handler.init();
+        return handler;
+    }
+
+    private int referenceCount(String hash) {
+        List<String> counts = sqlService.dbRead("SELECT REF_COUNT FROM CONTENT_BODY_REF WHERE BODY_HASH = ?", new Object[] {hash}, null);
+        return counts.isEmpty() ? -1 : Integer.parseInt(counts.get(0));
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.db.impl.BasicSqlService;
+import org.sakaiproject.db.impl.HsqlSqlService;
+
+public class ContextUsageCountersTest {
+
+    private BasicSqlService sqlService;
+    private Connection setup;
+    private ContextUsageCounters counters;
+
+    @Before
+    public void setUp() throws Exception {
+        JDBCDataSource hsql = HsqlSqlService.dataSource("contextusagetest");
+
+        setup = hsql.getConnection();
+        try (Statement statement = setup.createStatement()) {
+            statement.execute("CREATE TABLE CONTENT_RESOURCE (RESOURCE_ID VARCHAR (255) NOT NULL, CONTEXT VARCHAR (99), FILE_SIZE BIGINT, PRIMARY KEY (RESOURCE_ID))");
+            statement.execute("CREATE TABLE CONTENT_CONTEXT_USAGE (CONTEXT VARCHAR (99) NOT NULL, FILE_SIZE BIGINT NOT NULL, LAST_RECONCILED BIGINT NOT NULL, PRIMARY KEY (CONTEXT))");
+        }
+
+        sqlService = new HsqlSqlService(hsql);
+        sqlService.init();
+
+        counters = new ContextUsageCounters(sqlService, new ContentServiceSqlHSql());
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        counters.stop();
+        try (Statement statement = setup.createStatement()) {
+            statement.execute("DROP TABLE CONTENT_RESOURCE");
+            statement.execute("DROP TABLE CONTENT_CONTEXT_USAGE");
+        }
+        setup.close();
+    }
+
+    @Test
+    public void totalsAreSeededFromTheResources() {
+        store("/group/site/a.pdf", "site", 1000);
+        store("/group/site/b.pdf", "site", 2500);
+        store("/group/other/c.pdf", "other", 7);
+
+        Assert.assertTrue(counters.available());
+        Assert.assertEquals(3500, counters.getUsage("site"));
+        Assert.assertEquals(0, counters.getUsage("empty"));
+        Assert.assertEquals(2, counters.getSeededCount());
+
+        // read from the total from now on
+        store("/group/site/d.pdf", "site", 100000);
+        Assert.assertEquals(3500, counters.getUsage("site"));
+        Assert.assertEquals(2, counters.getSeededCount());
+    }
+
+    @Test
+    public void totalsFollowCommitsAndRemovals() {
+        store("/group/site/a.pdf", "site", 1000);
+        Assert.assertEquals(1000, counters.getUsage("site"));
+        Assert.assertEquals(0, counters.getUsage("other"));
+
+        // add
+        commit("/group/site/b.pdf", "site", 500);
+        Assert.assertEquals(1500, counters.getUsage("site"));
+
+        // revise
+        commit("/group/site/a.pdf", "site", 400);
+        Assert.assertEquals(900, counters.getUsage("site"));
+
+        // move to another site, which copies and then removes
+        commit("/group/other/b.pdf", "other", 500);
+        remove("/group/site/b.pdf");
+        Assert.assertEquals(400, counters.getUsage("site"));
+        Assert.assertEquals(500, counters.getUsage("other"));
+
+        // a resource without a context is not counted
+        commit("/attachment/x.pdf", null, 123);
+        remove("/attachment/x.pdf");
+
+        Assert.assertEquals(0, counters.reconcile(0, 100));
+    }
+
+    @Test
+    public void reconciliationCorrectsDriftedTotals() throws Exception {
+        store("/group/site/a.pdf", "site", 1000);
+        store("/group/other/b.pdf", "other", 10);
+        Assert.assertEquals(1000, counters.getUsage("site"));
+        Assert.assertEquals(10, counters.getUsage("other"));
+
+        // changed behind the counters' back
+        store("/group/site/c.pdf", "site", 50);
+        Thread.sleep(5);
+
+        // only totals not checked within the period are recomputed
+        Assert.assertEquals(0, counters.reconcile(60000, 100));
+        Assert.assertEquals(1000, counters.getUsage("site"));
+
+        Assert.assertEquals(1, counters.reconcile(0, 100));
+        Assert.assertEquals(1050, counters.getUsage("site"));
+        Assert.assertEquals(10, counters.getUsage("other"));
+        Assert.assertEquals(1, counters.getDriftedCount());
+    }
+
+    @Test
+    public void reconciliationReadsABatchAtATime() throws Exception {
+        store("/group/site/a.pdf", "site", 1000);
+        store("/group/other/b.pdf", "other", 10);
+        Assert.assertEquals(1000, counters.getUsage("site"));
+        Assert.assertEquals(10, counters.getUsage("other"));
+
+        store("/group/site/c.pdf", "site", 50);
+        store("/group/other/d.pdf", "other", 5);
+        Thread.sleep(5);
+
+        // the oldest total first, the other is left for the next run
+        Assert.assertEquals(1, counters.reconcile(0, 1));
+        Assert.assertEquals(1050, counters.getUsage("site"));
+        Assert.assertEquals(10, counters.getUsage("other"));
+
+        Assert.assertEquals(1, counters.reconcile(0, 1));
+        Assert.assertEquals(15, counters.getUsage("other"));
+        Assert.assertEquals(2, counters.getDriftedCount());
+    }
+
+    private void commit(String id, String context, long size) {
+        ContextUsageCounters.Usage before = counters.getStored(id);
+        store(id, context, size);
+        counters.changed(before, context, size);
+    }
+
+    private void remove(String id) {
+        ContextUsageCounters.Usage before = counters.getStored(id);
+        sqlService.dbWrite("DELETE FROM CONTENT_RESOURCE WHERE RESOURCE_ID = ?", new Object[] {id});
+        counters.changed(before, null, 0);
+    }
+
+    private void store(String id, String context, long size) {
+        sqlService.dbWrite("DELETE FROM CONTENT_RESOURCE WHERE RESOURCE_ID = ?", new Object[] {id});
+        sqlService.dbWrite("INSERT INTO CONTENT_RESOURCE (RESOURCE_ID, CONTEXT, FILE_SIZE) VALUES (?, ?, ?)", new Object[] {id, context, size});
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares serving whole bodies from the local file system concurrently by pumping the input stream through a heap
+ * buffer, as copyRange does, with transferring them from the file channel. The response is a stream that discards
+ * what it is given, so this measures the cost on the server side of the socket; run it with -prof gc to compare the
+ * allocation rates.
+ * <p>
+ * This is not run as part of the build, run it with the test classpath:
+ * {@code java -cp <test classpath> org.sakaiproject.content.impl.ZeroCopyDeliveryBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ZeroCopyDeliveryBenchmark {
+
+    /** Body sizes: a page, a lecture PDF and a lecture capture. */
+    @Param({"65536", "4194304", "67108864"})
+    public int size;
+
+    private Path body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        body = Files.createTempFile("body", ".bin");
+        Files.write(body, bytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(body);
+    }
+
+    @Benchmark
+    public long stream() throws IOException {
+        DiscardingOutputStream out = new DiscardingOutputStream();
+        try (InputStream in = Files.newInputStream(body)) {
+            byte[] buffer = new byte[BaseContentService.STREAM_BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+        }
+        return out.written;
+    }
+
+    @Benchmark
+    public long transfer() throws IOException {
+        DiscardingOutputStream out = new DiscardingOutputStream();
+        ZeroCopyDelivery.transfer(body, 0, size - 1, out);
+        return out.written;
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+        long written;
+
+        @Override
+        public void write(int b) {
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            written += len;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ZeroCopyDeliveryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
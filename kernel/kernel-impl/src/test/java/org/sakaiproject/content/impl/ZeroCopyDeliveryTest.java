@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ZeroCopyDeliveryTest {
+
+    private static final String SHA256 = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    private Path body;
+    private byte[] bytes;
+
+    @Before
+    public void setUp() throws IOException {
+        bytes = new byte[300000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        body = Files.createTempFile("body", ".bin");
+        Files.write(body, bytes);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(body);
+    }
+
+    @Test
+    public void transfersTheWholeBodyAndRanges() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(bytes.length, ZeroCopyDelivery.transfer(body, 0, bytes.length - 1, out));
+        Assert.assertArrayEquals(bytes, out.toByteArray());
+
+        out.reset();
+        Assert.assertEquals(1000, ZeroCopyDelivery.transfer(body, 123456, 124455, out));
+        Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 123456, 124456), out.toByteArray());
+
+        // a body shorter than expected stops at its end
+        out.reset();
+        Assert.assertEquals(100, ZeroCopyDelivery.transfer(body, bytes.length - 100, bytes.length + 100, out));
+    }
+
+    @Test
+    public void sendfileIsOnlyUsedWhenTheContainerSupportsIt() throws IOException {
+        HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+        Assert.assertFalse(ZeroCopyDelivery.sendfile(req, body, 0, 99));
+        Mockito.verify(req, Mockito.never()).setAttribute(Mockito.anyString(), Mockito.any());
+
+        Mockito.when(req.getAttribute(ZeroCopyDelivery.SENDFILE_SUPPORTED)).thenReturn(Boolean.TRUE);
+        Assert.assertTrue(ZeroCopyDelivery.sendfile(req, body, 100, 199));
+        Mockito.verify(req).setAttribute(ZeroCopyDelivery.SENDFILE_FILENAME, body.toRealPath().toString());
+        Mockito.verify(req).setAttribute(ZeroCopyDelivery.SENDFILE_START, 100L);
+        // the end is exclusive for the container
+        Mockito.verify(req).setAttribute(ZeroCopyDelivery.SENDFILE_END, 200L);
+    }
+
+    @Test
+    public void eTagsComeFromTheStoredHash() {
+        String eTag = ZeroCopyDelivery.eTag(SHA256);
+        Assert.assertEquals("\"" + SHA256 + "\"", eTag);
+        Assert.assertNull(ZeroCopyDelivery.eTag(null));
+
+        Assert.assertTrue(ZeroCopyDelivery.noneMatch(eTag, eTag));
+        Assert.assertTrue(ZeroCopyDelivery.noneMatch("\"other\", W/" + eTag, eTag));
+        Assert.assertTrue(ZeroCopyDelivery.noneMatch("*", eTag));
+        Assert.assertFalse(ZeroCopyDelivery.noneMatch("\"other\"", eTag));
+        Assert.assertFalse(ZeroCopyDelivery.noneMatch(null, eTag));
+        Assert.assertFalse(ZeroCopyDelivery.noneMatch("*", null));
+    }
+
+    @Test
+    public void staleIfRangeSendsTheWholeBody() {
+        String eTag = ZeroCopyDelivery.eTag(SHA256);
+        // Tue, 14 Oct 2025 10:00:00 GMT
+        long lastModified = 1760436000000L;
+
+        Assert.assertTrue(ZeroCopyDelivery.ifRange(null, eTag, lastModified));
+        Assert.assertTrue(ZeroCopyDelivery.ifRange(eTag, eTag, lastModified));
+        Assert.assertFalse(ZeroCopyDelivery.ifRange("\"other\"", eTag, lastModified));
+        // weak ETags never match for ranges
+        Assert.assertFalse(ZeroCopyDelivery.ifRange("W/" + eTag, eTag, lastModified));
+
+        Assert.assertTrue(ZeroCopyDelivery.ifRange("Tue, 14 Oct 2025 10:00:00 GMT", eTag, lastModified));
+        Assert.assertFalse(ZeroCopyDelivery.ifRange("Tue, 14 Oct 2025 09:59:59 GMT", eTag, lastModified));
+        Assert.assertFalse(ZeroCopyDelivery.ifRange("yesterday", eTag, lastModified));
+    }
+}
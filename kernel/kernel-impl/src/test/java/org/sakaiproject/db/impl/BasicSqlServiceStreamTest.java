@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class BasicSqlServiceStreamTest {
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private BasicSqlService sqlService;
+    private Connection setup;
+
+    @Before
+    public void setUp() throws SQLException {
+        JDBCDataSource hsql = HsqlSqlService.dataSource("streamtest");
+
+        setup = hsql.getConnection();
+        try (Statement statement = setup.createStatement()) {
+            statement.execute("CREATE TABLE STREAM_TEST (ID INTEGER, NAME VARCHAR(32))");
+            for (int i = 0; i < 1000; i++) {
+                statement.execute("INSERT INTO STREAM_TEST VALUES (" + i + ", 'row" + i + "')");
+            }
+        }
+
+        sqlService = new HsqlSqlService(countingDataSource(hsql));
+        sqlService.setStreamFetchSize("50");
+        sqlService.init();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement statement = setup.createStatement()) {
+            statement.execute("DROP TABLE STREAM_TEST");
+        }
+        setup.close();
+    }
+
+    @Test
+    public void streamReadsEveryRecordAndReturnsTheConnection() {
+        List<Integer> ids;
+        try (Stream<Integer> records = sqlService.dbStream("SELECT ID FROM STREAM_TEST ORDER BY ID", null, result -> {
+            try {
+                return result.getInt(1);
+            } catch (SQLException e) {
+                return null;
+            }
+        })) {
+            ids = records.collect(Collectors.toList());
+        }
+
+        Assert.assertEquals(1000, ids.size());
+        Assert.assertEquals(Integer.valueOf(999), ids.get(999));
+        Assert.assertEquals(0, openConnections.get());
+    }
+
+    @Test
+    public void connectionIsReturnedOnceTheLastRecordIsRead() {
+        Iterator<String> names = sqlService.<String>dbStream("SELECT NAME FROM STREAM_TEST WHERE ID < ?", new Object[] {3}, null).iterator();
+
+        List<String> read = new ArrayList<>();
+        Assert.assertEquals(1, openConnections.get());
+        names.forEachRemaining(read::add);
+
+        Assert.assertEquals(3, read.size());
+        Assert.assertEquals(0, openConnections.get());
+    }
+
+    @Test
+    public void closingEarlyReturnsTheConnection() {
+        try (Stream<String> names = sqlService.dbStream("SELECT NAME FROM STREAM_TEST", null, null)) {
+            Assert.assertEquals(10, names.limit(10).count());
+            Assert.assertEquals(1, openConnections.get());
+        }
+        Assert.assertEquals(0, openConnections.get());
+    }
+
+    @Test
+    public void forEachReturnsTheConnectionWhenTheConsumerFails() {
+        AtomicInteger seen = new AtomicInteger();
+        try {
+            sqlService.dbForEach("SELECT NAME FROM STREAM_TEST", null, null, name -> {
+                if (seen.incrementAndGet() == 5) throw new IllegalStateException("stop");
+            });
+            Assert.fail("the consumer's exception should be thrown");
+        } catch (IllegalStateException expected) {
+            Assert.assertEquals(5, seen.get());
+        }
+        Assert.assertEquals(0, openConnections.get());
+    }
+
+    @Test
+    public void badSqlGivesAnEmptyStream() {
+        try (Stream<String> names = sqlService.dbStream("SELECT NOPE FROM NO_TABLE", null, null)) {
+            Assert.assertEquals(0, names.count());
+        }
+        Assert.assertEquals(0, openConnections.get());
+    }
+
+    /** Counts the connections borrowed and not yet closed */
+    private DataSource countingDataSource(DataSource target) throws SQLException {
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> {
+            Connection connection = target.getConnection();
+            openConnections.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                if ("close".equals(method.getName())) openConnections.decrementAndGet();
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        });
+        return dataSource;
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.mockito.Mockito;
+import org.sakaiproject.event.api.UsageSessionService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+
+/**
+ * A SqlService over an in memory hsql database for tests that need real SQL without a component manager. Call
+ * {@link #init()} once any other settings are made.
+ */
+public class HsqlSqlService extends BasicSqlService {
+
+    private final ThreadLocalManager threadLocalManager = Mockito.mock(ThreadLocalManager.class);
+
+    public HsqlSqlService(DataSource dataSource) {
+        setDatabaseBeans(Map.of("default", new BasicSqlServiceSqlDefault(), "hsqldb", new BasicSqlServiceSqlHSql()));
+        setDefaultDataSource(dataSource);
+    }
+
+    /**
+     * @param name the name of the database, tests sharing a name share the database
+     * @return a data source for an in memory hsql database
+     */
+    public static JDBCDataSource dataSource(String name) {
+        JDBCDataSource hsql = new JDBCDataSource();
+        hsql.setUrl("jdbc:hsqldb:mem:" + name);
+        hsql.setUser("sa");
+        hsql.setPassword("");
+        return hsql;
+    }
+
+    @Override
+    protected UsageSessionService usageSessionService() {
+        return null;
+    }
+
+    @Override
+    protected ThreadLocalManager threadLocalManager() {
+        return threadLocalManager;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures what the SQL statistics add to each statement SqlService runs: timing alone against timing and recording
+ * a statement already seen, and the cost of normalising a statement the first time it is seen.
+ * <p>
+ * This is not run as part of the build, run it with the test classpath:
+ * {@code java -cp <test classpath> org.sakaiproject.db.impl.SqlStatsBenchmark}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SqlStatsBenchmark {
+
+    /** The number of distinct statements run. */
+    @Param({"50", "1000"})
+    public int statements;
+
+    private SqlStats sqlStats;
+    private String[] sql;
+
+    @Setup
+    public void setUp() {
+        sqlStats = new SqlStats(2000, 0);
+        sql = new String[statements];
+        for (int i = 0; i < statements; i++) {
+            sql[i] = "select SITE_ID, TITLE, TYPE from SAKAI_SITE_" + i + " where SITE_ID in (?, ?, ?) and PUBLISHED = 1";
+            sqlStats.record(sql[i], 0, 0, 0, false);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Benchmark
+    public void timingOnly(Cursor cursor, Blackhole bh) {
+        long begin = System.nanoTime();
+        bh.consume(sql[next(cursor)]);
+        bh.consume(System.nanoTime() - begin);
+    }
+
+    @Benchmark
+    public void timingAndRecording(Cursor cursor, Blackhole bh) {
+        long begin = System.nanoTime();
+        String statement = sql[next(cursor)];
+        bh.consume(statement);
+        sqlStats.record(statement, 0, System.nanoTime() - begin, 1, false);
+    }
+
+    @Benchmark
+    public void normalise(Cursor cursor, Blackhole bh) {
+        bh.consume(SqlStats.normalise(sql[next(cursor)]));
+    }
+
+    private int next(Cursor cursor) {
+        if (++cursor.next == statements) cursor.next = 0;
+        return cursor.next;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SqlStatsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
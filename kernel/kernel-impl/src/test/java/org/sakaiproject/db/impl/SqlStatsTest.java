@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlStatsTest {
+
+    @Test
+    public void normaliseGroupsStatementsByShape() {
+        Assert.assertEquals("SELECT A FROM T WHERE ID = ? AND NAME = ?",
+                SqlStats.normalise("SELECT A  FROM T\n\tWHERE ID = 12 AND NAME = 'o''brien'"));
+        Assert.assertEquals("SELECT A FROM T2 WHERE ID IN (?...)",
+                SqlStats.normalise("SELECT A FROM T2 WHERE ID IN (?, ?,?)"));
+        Assert.assertEquals(SqlStats.normalise("SELECT A FROM T2 WHERE ID IN ('a', 'b')"),
+                SqlStats.normalise("SELECT A FROM T2 WHERE ID IN (?,?,?,?)"));
+        Assert.assertEquals("UPDATE T SET A = ?, B = ? WHERE X_1 > ?",
+                SqlStats.normalise("UPDATE T SET A = ?, B = ? WHERE X_1 > 1.5"));
+    }
+
+    @Test
+    public void recordCountsEachStatement() {
+        SqlStats stats = new SqlStats(2, 1);
+        stats.record("SELECT A FROM T WHERE ID = 1", TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(3), 1, false);
+        stats.record("SELECT A FROM T WHERE ID = 2", -1, TimeUnit.MICROSECONDS.toNanos(500), 0, false);
+        stats.record("DELETE FROM T", -1, TimeUnit.MILLISECONDS.toNanos(20), 5, true);
+        stats.recordTransaction("tag", 0, TimeUnit.MILLISECONDS.toNanos(2), false);
+
+        Assert.assertEquals(4, stats.getExecutions());
+        Assert.assertEquals(1, stats.getErrors());
+        Assert.assertEquals(3, stats.getSlowExecutions());
+        Assert.assertEquals(0.5, stats.getConnectionWaitMeanTime(), 0.01);
+
+        List<SqlStatementStats> statements = stats.getStatementStats();
+        Assert.assertEquals(3, statements.size());
+
+        // busiest first, statements past the limit are counted together
+        SqlStatementStats delete = statements.get(0);
+        Assert.assertEquals("DELETE FROM T", delete.getStatement());
+        Assert.assertEquals(1, delete.getErrors());
+        Assert.assertEquals(5, delete.getRows());
+        Assert.assertEquals(20, delete.getTotalTime(), 0.01);
+
+        SqlStatementStats select = statements.get(1);
+        Assert.assertEquals("SELECT A FROM T WHERE ID = ?", select.getStatement());
+        Assert.assertEquals(2, select.getCount());
+        Assert.assertEquals(1, select.getRows());
+        Assert.assertEquals(3, select.getMaxTime(), 0.01);
+        Assert.assertEquals(1, select.getConnectionWaitTime(), 0.01);
+
+        Assert.assertEquals(SqlStats.OTHER_STATEMENTS, statements.get(2).getStatement());
+
+        stats.resetStats();
+        Assert.assertEquals(0, stats.getExecutions());
+        Assert.assertTrue(stats.getStatementStats().isEmpty());
+    }
+}
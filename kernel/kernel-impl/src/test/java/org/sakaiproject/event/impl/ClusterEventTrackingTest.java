@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.db.api.SqlService;
+import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.NotificationService;
+import org.sakaiproject.event.api.SimpleEvent;
+import org.sakaiproject.tool.api.SessionManager;
+import org.sakaiproject.tool.api.ToolManager;
+
+public class ClusterEventTrackingTest {
+
+    private final ServerConfigurationService serverConfigurationService = Mockito.mock(ServerConfigurationService.class);
+    private final SqlService sqlService = Mockito.mock(SqlService.class);
+    private final EntityManager entityManager = Mockito.mock(EntityManager.class);
+    private final SessionManager sessionManager = Mockito.mock(SessionManager.class);
+    private final ToolManager toolManager = Mockito.mock(ToolManager.class);
+    private ClusterEventTracking tracking;
+
+    @Before
+    public void setUp() {
+        Mockito.when(serverConfigurationService.getServerIdInstance()).thenReturn("server1");
+
+        tracking = new EventTrackingTest() {
+            @Override
+            protected ServerConfigurationService serverConfigurationService() {
+                return serverConfigurationService;
+            }
+
+            @Override
+            protected SqlService sqlService() {
+                return sqlService;
+            }
+
+            @Override
+            protected EntityManager entityManager() {
+                return entityManager;
+            }
+
+            @Override
+            protected SessionManager sessionManager() {
+                return sessionManager;
+            }
+
+            @Override
+            protected ToolManager toolManager() {
+                return toolManager;
+            }
+        };
+        tracking.setDatabaseBeans(Collections.emptyMap());
+        tracking.setCheckDb("false");
+        tracking.init();
+    }
+
+    @After
+    public void tearDown() {
+        tracking.destroy();
+    }
+
+    @Test
+    public void busEventsMatchTheirDbRows() {
+        tracking.receiveClusterEvent(clusterEvent("content.revise", "/content/group/site/a.txt"));
+
+        // the row is read at one reconcile and given up on at the next
+        Assert.assertTrue(tracking.reconcile(List.of(dbEvent("content.revise", "/content/group/site/a.txt"))).isEmpty());
+        Assert.assertTrue(tracking.reconcile(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void busEventsMatchTheirTruncatedDbRows() {
+        String function = "content.revise.with.a.long.event.name";
+        String resource = "/content/group/site/" + "folder/".repeat(40) + "a.txt";
+        Assert.assertTrue(resource.length() > 255);
+
+        tracking.receiveClusterEvent(clusterEvent(function, resource));
+
+        // the row holds the event and resource cut to their column sizes
+        Assert.assertTrue(tracking.reconcile(List.of(dbEvent(function.substring(0, 32), resource.substring(0, 255)))).isEmpty());
+        Assert.assertTrue(tracking.reconcile(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void dbRowsTheBusDidNotDeliverAreFilledIn() {
+        Assert.assertTrue(tracking.reconcile(List.of(dbEvent("content.revise", "/content/group/site/a.txt"))).isEmpty());
+
+        List<Event> missed = tracking.reconcile(Collections.emptyList());
+        Assert.assertEquals(1, missed.size());
+        Assert.assertEquals("/content/group/site/a.txt", missed.get(0).getResource());
+    }
+
+    private SimpleEvent clusterEvent(String function, String resource) {
+        return new SimpleEvent(dbEvent(function, resource), "server2");
+    }
+
+    private Event dbEvent(String function, String resource) {
+        BaseEventTrackingService.BaseEvent event = tracking.new BaseEvent(0, function, resource, "site", true, NotificationService.NOTI_NONE, new Date());
+        event.setUserId("admin");
+        return event;
+    }
+}
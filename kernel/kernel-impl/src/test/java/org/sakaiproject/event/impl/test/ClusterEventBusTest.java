@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl.test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.ignite.Ignite;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.SimpleEvent;
+import org.sakaiproject.event.impl.ClusterEventBus;
+
+public class ClusterEventBusTest {
+
+    private Ignite node1;
+    private Ignite node2;
+    private ClusterEventBus bus1;
+    private ClusterEventBus bus2;
+
+    private final List<SimpleEvent> received1 = new CopyOnWriteArrayList<>();
+    private final List<SimpleEvent> received2 = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        // both nodes share one ip finder so they find each other without multicast
+        TcpDiscoveryVmIpFinder finder = new TcpDiscoveryVmIpFinder(true);
+        finder.setAddresses(Collections.singletonList("127.0.0.1:47500..47509"));
+
+        node1 = Ignition.start(configuration("node1", finder));
+        node2 = Ignition.start(configuration("node2", finder));
+
+        bus1 = new ClusterEventBus(node1, received1::add);
+        bus2 = new ClusterEventBus(node2, received2::add);
+        bus1.start();
+        bus2.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (bus1 != null) bus1.stop();
+        if (bus2 != null) bus2.stop();
+        if (node1 != null) node1.close();
+        if (node2 != null) node2.close();
+    }
+
+    @Test
+    public void eventsReachTheOtherNodeInOrder() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            bus1.publish(event("content.revise", "/content/group/site/" + i, "server1"));
+        }
+
+        waitFor(received2, 50);
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals("/content/group/site/" + i, received2.get(i).getResource());
+            Assert.assertEquals("server1", received2.get(i).getServerId());
+        }
+        Assert.assertEquals(50, bus1.getPublishedCount());
+    }
+
+    @Test
+    public void eventsAreNotSentBackToThePublisher() throws Exception {
+        bus1.publish(event("site.upd", "/site/a", "server1"));
+        bus2.publish(event("site.upd", "/site/b", "server2"));
+
+        waitFor(received1, 1);
+        waitFor(received2, 1);
+        // give any stray message the chance to arrive
+        Thread.sleep(500);
+
+        Assert.assertEquals(1, received1.size());
+        Assert.assertEquals("/site/b", received1.get(0).getResource());
+        Assert.assertEquals(1, received2.size());
+        Assert.assertEquals("/site/a", received2.get(0).getResource());
+    }
+
+    @Test
+    public void publishingWithoutOtherNodesIsHarmless() {
+        bus2.stop();
+        node2.close();
+        node2 = null;
+        bus2 = null;
+
+        bus1.publish(event("site.upd", "/site/a", "server1"));
+
+        Assert.assertTrue(received1.isEmpty());
+    }
+
+    private static IgniteConfiguration configuration(String name, TcpDiscoveryVmIpFinder finder) {
+        TcpDiscoverySpi discovery = new TcpDiscoverySpi();
+        discovery.setIpFinder(finder);
+        discovery.setLocalAddress("127.0.0.1");
+
+        IgniteConfiguration configuration = new IgniteConfiguration();
+        configuration.setIgniteInstanceName(name);
+        configuration.setDiscoverySpi(discovery);
+        configuration.setLocalHost("127.0.0.1");
+        configuration.setMetricsLogFrequency(0);
+        return configuration;
+    }
+
+    private static SimpleEvent event(String function, String resource, String serverId) {
+        Event event = Mockito.mock(Event.class);
+        Mockito.when(event.getEvent()).thenReturn(function);
+        Mockito.when(event.getResource()).thenReturn(resource);
+        Mockito.when(event.getUserId()).thenReturn("admin");
+        Mockito.when(event.getEventTime()).thenReturn(new Date());
+        return new SimpleEvent(event, serverId);
+    }
+
+    private static void waitFor(List<SimpleEvent> received, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (received.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue("expected " + count + " events, got " + received.size(), received.size() >= count);
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl.test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sakaiproject.event.impl.EventDispatcher;
+import org.sakaiproject.event.impl.EventDispatcher.OverflowPolicy;
+import org.sakaiproject.event.impl.ObserverDispatchStats;
+
+public class EventDispatcherTest {
+
+    private final Observable source = new Observable();
+    private EventDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) dispatcher.shutdown();
+    }
+
+    @Test
+    public void asyncObserverRunsOffThePostingThreadInOrder() throws Exception {
+        dispatcher = new EventDispatcher(100, OverflowPolicy.BLOCK, Collections.emptySet());
+        RecordingObserver observer = new RecordingObserver(10);
+
+        for (int i = 0; i < 10; i++) {
+            dispatcher.dispatch(source, observer, i);
+        }
+
+        Assert.assertTrue(observer.done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i, observer.events.get(i));
+        }
+        Assert.assertFalse(observer.threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void syncObserverRunsOnThePostingThread() {
+        dispatcher = new EventDispatcher(100, OverflowPolicy.BLOCK, Collections.singleton(RecordingObserver.class.getName()));
+        RecordingObserver observer = new RecordingObserver(1);
+
+        dispatcher.dispatch(source, observer, "event");
+
+        Assert.assertEquals(1, observer.events.size());
+        Assert.assertTrue(observer.threads.contains(Thread.currentThread()));
+        Assert.assertEquals(0, dispatcher.getAsyncObserverCount());
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestEvents() throws Exception {
+        dispatcher = new EventDispatcher(2, OverflowPolicy.DROP_OLDEST, Collections.emptySet());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        RecordingObserver observer = new RecordingObserver(3) {
+            @Override
+            public void update(Observable o, Object arg) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                super.update(o, arg);
+            }
+        };
+
+        // the first event blocks the worker, the queue of 2 then overflows
+        dispatcher.dispatch(source, observer, 0);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) {
+            dispatcher.dispatch(source, observer, i);
+        }
+        release.countDown();
+
+        Assert.assertTrue(observer.done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(List.of(0, 3, 4), observer.events);
+
+        ObserverDispatchStats stats = dispatcher.getObserverStats().get(0);
+        Assert.assertEquals(2, stats.getDropped());
+    }
+
+    @Test
+    public void removedObserverStillGetsQueuedEvents() throws Exception {
+        dispatcher = new EventDispatcher(100, OverflowPolicy.BLOCK, Collections.emptySet());
+        RecordingObserver observer = new RecordingObserver(3);
+
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(source, observer, i);
+        }
+        dispatcher.remove(observer);
+
+        Assert.assertTrue(observer.done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, dispatcher.getAsyncObserverCount());
+    }
+
+    @Test
+    public void removedObserverIsNotDispatchedToAgainUntilRegistered() throws Exception {
+        dispatcher = new EventDispatcher(100, OverflowPolicy.BLOCK, Collections.emptySet());
+        RecordingObserver observer = new RecordingObserver(2);
+
+        dispatcher.dispatch(source, observer, 0);
+        dispatcher.remove(observer);
+        for (int i = 0; i < 50 && observer.events.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+
+        // a notification that was already under way when the observer was removed
+        dispatcher.dispatch(source, observer, 1);
+        Assert.assertEquals(0, dispatcher.getAsyncObserverCount());
+
+        dispatcher.register(observer);
+        dispatcher.dispatch(source, observer, 2);
+
+        Assert.assertTrue(observer.done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(List.of(0, 2), observer.events);
+        Assert.assertEquals(1, dispatcher.getAsyncObserverCount());
+    }
+
+    private static class RecordingObserver implements Observer {
+        final List<Object> events = new CopyOnWriteArrayList<>();
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+        final CountDownLatch done;
+
+        RecordingObserver(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void update(Observable o, Object arg) {
+            events.add(arg);
+            threads.add(Thread.currentThread());
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.db.impl.BasicSqlService;
+import org.sakaiproject.db.impl.HsqlSqlService;
+import org.sakaiproject.entity.api.Entity;
+import org.sakaiproject.javax.PagingPosition;
+import org.sakaiproject.javax.RestrictedFilter;
+import org.sakaiproject.javax.Restriction;
+import org.w3c.dom.Element;
+
+public class BaseDbDoubleStorageTest {
+
+    private static final int MESSAGES = 50000;
+    private static final String[] FIELDS = { "MESSAGE_DATE", "OWNER", "DRAFT", "PUBVIEW" };
+
+    private final DoubleStorageUser user = mock(DoubleStorageUser.class);
+    private final Entity channel = mock(Entity.class);
+    private BasicSqlService sqlService;
+    private Connection setup;
+    private BaseDbDoubleStorage storage;
+
+    @Before
+    public void setUp() throws SQLException {
+        JDBCDataSource hsql = HsqlSqlService.dataSource("doublestoragetest");
+
+        setup = hsql.getConnection();
+        try (Statement statement = setup.createStatement()) {
+            statement.execute("CREATE TABLE TEST_CHANNEL (CHANNEL_ID VARCHAR (99) NOT NULL, NEXT_ID INT, XML LONGVARCHAR, PRIMARY KEY (CHANNEL_ID))");
+            statement.execute("CREATE TABLE TEST_MESSAGE (CHANNEL_ID VARCHAR (99) NOT NULL, MESSAGE_ID VARCHAR (36) NOT NULL, MESSAGE_DATE TIMESTAMP NOT NULL,"
+                    + " OWNER VARCHAR (99), DRAFT CHAR (1), PUBVIEW CHAR (1), XML LONGVARCHAR, PRIMARY KEY (CHANNEL_ID, MESSAGE_ID))");
+        }
+        try (PreparedStatement insert = setup.prepareStatement("INSERT INTO TEST_MESSAGE VALUES ('/channel/c', ?, ?, 'owner', ?, ?, ?)")) {
+            for (int i = 0; i < MESSAGES; i++) {
+                insert.setString(1, "m" + i);
+                insert.setTimestamp(2, new java.sql.Timestamp(1000000L * i));
+                // every 10th a draft, every 100th public
+                insert.setString(3, i % 10 == 5 ? "1" : "0");
+                insert.setString(4, i % 100 == 0 ? "1" : "0");
+                insert.setString(5, "<message id=\"m" + i + "\"/>");
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+
+        sqlService = new HsqlSqlService(hsql);
+        sqlService.init();
+
+        when(channel.getReference()).thenReturn("/channel/c");
+        when(user.newResource(any(Entity.class), any(Element.class))).thenAnswer(invocation -> mock(Entity.class));
+
+        storage = new BaseDbDoubleStorage("TEST_CHANNEL", "CHANNEL_ID", "TEST_MESSAGE", "MESSAGE_ID", "CHANNEL_ID", "MESSAGE_DATE",
+                "OWNER", "DRAFT", "PUBVIEW", FIELDS, false, "channel", "message", user, sqlService);
+        storage.open();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        storage.close();
+        try (Statement statement = setup.createStatement()) {
+            statement.execute("DROP TABLE TEST_MESSAGE");
+            statement.execute("DROP TABLE TEST_CHANNEL");
+        }
+        setup.close();
+    }
+
+    @Test
+    public void exactFiltersAreCountedInTheDatabase() {
+        CountingFilter pubView = new CountingFilter(true, new Restriction("PUBVIEW", "1"));
+
+        Assert.assertEquals(MESSAGES / 100, storage.getCount(channel, pubView));
+        Assert.assertEquals(0, pubView.accepted.get());
+        verify(user, never()).newResource(any(Entity.class), any(Element.class));
+    }
+
+    @Test
+    public void exactFiltersArePagedInTheDatabase() {
+        CountingFilter notDraft = new CountingFilter(true, new Restriction("DRAFT", "0"));
+
+        List<?> page = storage.getAllResources(channel, notDraft, null, false, new PagingPosition(41, 60));
+
+        Assert.assertEquals(20, page.size());
+        Assert.assertEquals(0, notDraft.accepted.get());
+        // only the page is read from its xml
+        verify(user, times(20)).newResource(any(Entity.class), any(Element.class));
+    }
+
+    @Test
+    public void wrappedFiltersAreNarrowedInTheDatabase() {
+        // as a filter that adds its own checks to another's restrictions
+        CountingFilter wrapped = new CountingFilter(false, new Restriction("PUBVIEW", "1"), new Restriction("DRAFT", "0"));
+
+        Assert.assertEquals(MESSAGES / 100, storage.getCount(channel, wrapped));
+        // only the rows the restrictions select are read and accepted, not the whole channel
+        Assert.assertEquals(MESSAGES / 100, wrapped.accepted.get());
+        verify(user, times(MESSAGES / 100)).newResource(any(Entity.class), any(Element.class));
+
+        List<?> page = storage.getAllResources(channel, wrapped, null, true, new PagingPosition(1, 10));
+        Assert.assertEquals(10, page.size());
+    }
+
+    private static class CountingFilter implements RestrictedFilter {
+
+        private final boolean exact;
+        private final List<Restriction> restrictions;
+        private final AtomicInteger accepted = new AtomicInteger();
+
+        private CountingFilter(boolean exact, Restriction... restrictions) {
+            this.exact = exact;
+            this.restrictions = List.of(restrictions);
+        }
+
+        @Override
+        public List<Restriction> getRestrictions() {
+            return Collections.unmodifiableList(restrictions);
+        }
+
+        @Override
+        public boolean isExact() {
+            return exact;
+        }
+
+        @Override
+        public boolean accept(Object o) {
+            accepted.incrementAndGet();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sakaiproject.javax.Filter;
+import org.sakaiproject.javax.RestrictedFilter;
+import org.sakaiproject.javax.Restriction;
+
+public class FilterRestrictionSqlTest {
+
+    private static final String[] OTHER_FIELDS = {"EMAIL", "EMAIL_LC", "CREATEDON"};
+
+    @Test
+    public void plainFilterIsLeftToAccept() {
+        Filter filter = o -> true;
+        Assert.assertTrue(of(filter).isEmpty());
+        Assert.assertEquals(0, of(filter).getFields().length);
+    }
+
+    @Test
+    public void knownFieldsBecomeConditions() {
+        FilterRestrictionSql sql = of(filter(
+                new Restriction("email_lc", "ann@example.com"),
+                new Restriction("USER_ID", "Ann%", Restriction.LIKE),
+                new Restriction("CREATEDON", 20240101, Restriction.GREATER)));
+
+        Assert.assertEquals("EMAIL_LC = ? and USER_ID like ? and CREATEDON > ?", sql.getWhere());
+        // id values are cased the way the storage keeps ids
+        Assert.assertEquals(Arrays.asList("ann@example.com", "ann%", 20240101), Arrays.asList(sql.getFields()));
+    }
+
+    @Test
+    public void unknownFieldsAndUnsupportedValuesAreSkipped() {
+        FilterRestrictionSql sql = of(filter(
+                new Restriction("PASSWORD", "x"),
+                new Restriction("EMAIL", 42, Restriction.LIKE),
+                new Restriction("EMAIL", null, Restriction.NOT_NULL),
+                new Restriction("EMAIL", Arrays.asList("a", null))));
+
+        Assert.assertEquals("EMAIL is not null", sql.getWhere());
+        Assert.assertEquals(0, sql.getFields().length);
+    }
+
+    @Test
+    public void collectionsAndArraysBecomeInClauses() {
+        FilterRestrictionSql sql = of(filter(
+                new Restriction("EMAIL", List.of("a", "b")),
+                new Restriction("USER_ID", new String[] {"X"})));
+
+        Assert.assertEquals("EMAIL in (?, ?) and USER_ID in (?)", sql.getWhere());
+        Assert.assertEquals(Arrays.asList("a", "b", "x"), Arrays.asList(sql.getFields()));
+    }
+
+    @Test
+    public void exactOnlyWhenTheFilterSaysSoAndAllOfItIsDone() {
+        Assert.assertFalse(of(filter(new Restriction("EMAIL", "a"))).isExact());
+        Assert.assertTrue(of(exactFilter(new Restriction("EMAIL", "a"))).isExact());
+        Assert.assertFalse(of(exactFilter(new Restriction("EMAIL", "a"), new Restriction("PASSWORD", "x"))).isExact());
+        Assert.assertFalse(of(exactFilter(new Restriction("EMAIL", 42, Restriction.LIKE))).isExact());
+
+        // an exact filter without restrictions accepts everything
+        FilterRestrictionSql sql = of(exactFilter());
+        Assert.assertTrue(sql.isExact());
+        Assert.assertTrue(sql.isEmpty());
+    }
+
+    private static FilterRestrictionSql of(Filter filter) {
+        return FilterRestrictionSql.of(filter, "USER_ID", OTHER_FIELDS, String::toLowerCase);
+    }
+
+    private static RestrictedFilter filter(Restriction... restrictions) {
+        return new RestrictedFilter() {
+            @Override
+            public List<Restriction> getRestrictions() {
+                return Arrays.asList(restrictions);
+            }
+
+            @Override
+            public boolean accept(Object o) {
+                return true;
+            }
+        };
+    }
+
+    private static RestrictedFilter exactFilter(Restriction... restrictions) {
+        RestrictedFilter filter = filter(restrictions);
+        return new RestrictedFilter() {
+            @Override
+            public List<Restriction> getRestrictions() {
+                return filter.getRestrictions();
+            }
+
+            @Override
+            public boolean isExact() {
+                return true;
+            }
+
+            @Override
+            public boolean accept(Object o) {
+                return true;
+            }
+        };
+    }
+}
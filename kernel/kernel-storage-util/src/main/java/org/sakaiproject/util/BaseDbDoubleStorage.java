@@ -24,12 +24,16 @@ package org.sakaiproject.util;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -48,6 +52,7 @@ import org.sakaiproject.event.cover.UsageSessionService;
 import org.sakaiproject.javax.Filter;
 import org.sakaiproject.javax.Order;
 import org.sakaiproject.javax.PagingPosition;
+import org.sakaiproject.javax.RestrictedFilter;
 import org.sakaiproject.javax.Search;
 import org.sakaiproject.javax.SearchFilter;
 import org.sakaiproject.time.api.Time;
@@ -374,20 +379,23 @@ public class BaseDbDoubleStorage
 	{
 		List all = new Vector();
 
-		// read all users from the db
+		// read all containers from the db, parsing each as it is read so the xml of the whole table is never held
 		String sql = doubleStorageSql.getSelectXml1Sql(m_containerTableName);
 		// %%% order by...
-		List xml = m_sql.dbRead(sql);
-
-		// process all result xml into user objects
-		if (!xml.isEmpty())
+		m_sql.dbForEach(sql, null, new SqlReader<Entity>()
 		{
-			for (int i = 0; i < xml.size(); i++)
+			public Entity readSqlResultRecord(ResultSet result)
 			{
-				Entity entry = readContainer((String) xml.get(i));
-				if (entry != null) all.add(entry);
+				try
+				{
+					return readContainer(result.getString(1));
+				}
+				catch (SQLException ignore)
+				{
+					return null;
+				}
 			}
-		}
+		}, all::add);
 
 		return all;
 	}
@@ -814,10 +822,12 @@ public class BaseDbDoubleStorage
 	}
 
 	/**
-	 * Count all Resources - This takes two approaches depending 
-	 * on whether this table has search fields.  If searchfields 
-	 * are available we can do a SELECT COUNT WHERE.  Otherwise
-         * we retrieve the records and run the filter on each record.
+	 * Count all Resources - This takes several approaches depending 
+	 * on the filter and whether this table has search fields.  A
+	 * RestrictedFilter is selected in the database as far as the
+	 * other fields allow, and if it is exact counted there too.  If
+	 * searchfields are available we can do a SELECT COUNT WHERE.
+	 * Otherwise we retrieve the records and run the filter on each record.
 	 * @param container
 	 *        The container for this resource.
 	 * @param filter
@@ -829,42 +839,60 @@ public class BaseDbDoubleStorage
 	{
 		if ( filter == null ) return getCount(container);
 
+		FilterRestrictionSql restrictions = FilterRestrictionSql.of(filter, m_resourceTableIdField, m_resourceTableOtherFields, UnaryOperator.identity());
+		if ( restrictions.isExact() )
+		{
+			return getCountWhere(container, restrictions.getWhere(), restrictions.getFields());
+		}
+
 		// If we have search fields - do a quick select count with a where clause
-		if  ( m_resourceTableSearchFields != null && filter instanceof SearchFilter ) 
+		String searchString = ( filter instanceof SearchFilter ) ? ((SearchFilter) filter).getSearchString() : null;
+		if  ( m_resourceTableSearchFields != null && searchString != null && searchString.length() > 0 ) 
 		{
-			int searchFieldCount = 0;
-			String searchString = ((SearchFilter) filter).getSearchString();
-			if ( searchString != null && searchString.length() > 0 )
+			String searchWhere = doubleStorageSql.getSearchWhereClause(m_resourceTableSearchFields);
+			if ( searchWhere != null && searchWhere.length() > 0 ) 
 			{
-				String searchWhere = doubleStorageSql.getSearchWhereClause(m_resourceTableSearchFields);
-				if ( searchWhere != null && searchWhere.length() > 0 ) 
-				{
-					searchFieldCount = m_resourceTableSearchFields.length;
-					String sql = doubleStorageSql.getCountSqlWhere(m_resourceTableName, 
-						m_resourceTableContainerIdField, searchWhere);
-
-					Object[] fields = new Object[1+searchFieldCount];
-					fields[0] = container.getReference();
-					for ( int i=0; i < searchFieldCount; i++) fields[i+1] = "%" + searchString + "%";
-
-					List countList = m_sql.dbRead(sql, fields, null);
-		  
-					if ( countList.isEmpty() ) return 0;
-		
-					Object obj = countList.get(0);
-					String str = (String) obj;
-					return Integer.parseInt(str);
-				}
+				Object[] fields = new Object[m_resourceTableSearchFields.length];
+				for ( int i=0; i < fields.length; i++) fields[i] = "%" + searchString + "%";
+				return getCountWhere(container, searchWhere, fields);
 			}
 		}
 
-		// No search fields - retrieve, filter and count
-		String sql = doubleStorageSql.getSelectXml5Sql(m_resourceTableName, m_resourceTableContainerIdField, null, false);
-		Object[] fields = new Object[1];
-		fields[0] = container.getReference();
-		List all = m_sql.dbRead(sql, fields, new SearchFilterReader(container, filter,  null, true));
-		int count = all.size();
-		return count;
+		// Without a search string or restrictions the filter is never asked to accept a record, so there is no need to read them
+		if ( searchString == null && !(filter instanceof RestrictedFilter) ) return getCount(container);
+
+		// retrieve, filter and count, selecting what we can in the database
+		String sql = restrictions.isEmpty()
+				? doubleStorageSql.getSelectXml5Sql(m_resourceTableName, m_resourceTableContainerIdField, null, false)
+				: doubleStorageSql.getSelectXml5filterSql(m_resourceTableName, m_resourceTableContainerIdField, null, restrictions.getWhere());
+		Object[] fields = ArrayUtils.addAll(new Object[] { container.getReference() }, restrictions.getFields());
+		LongAdder count = new LongAdder();
+		m_sql.dbForEach(sql, fields, new SearchFilterReader(container, filter,  null, true, filter instanceof RestrictedFilter), record -> count.increment());
+		return count.intValue();
+	}
+
+	/**
+	 * Count the Resources of a container that meet some conditions, in the database.
+	 * @param container
+	 *        The container for this resource.
+	 * @param where
+	 *        The conditions, may be empty.
+	 * @param whereFields
+	 *        The bind values for the conditions.
+	 */
+	protected int getCountWhere(Entity container, String where, Object[] whereFields)
+	{
+		if ( where == null || where.length() == 0 ) return getCount(container);
+
+		String sql = doubleStorageSql.getCountSqlWhere(m_resourceTableName, m_resourceTableContainerIdField, where);
+		Object[] fields = ArrayUtils.addAll(new Object[] { container.getReference() }, whereFields);
+		List countList = m_sql.dbRead(sql, fields, null);
+
+		if ( countList.isEmpty() ) return 0;
+
+		Object obj = countList.get(0);
+		String str = (String) obj;
+		return Integer.parseInt(str);
 	}
 
 	/**
@@ -982,37 +1010,44 @@ public class BaseDbDoubleStorage
 		}
 		String orderString = doubleStorageSql.getOrderClause(orders,  m_resourceTableOrderField, asc);
 
+		// Conditions go in the order of their bind variables: the sql filter's, the search's then the restrictions'
+		List<Object> whereFields = new ArrayList<>();
+		if (bindVariables != null)
+		{
+			whereFields.addAll(bindVariables);
+		}
+
 		// Turn the search string into a WHERE clause if we can
-		int searchFieldCount = 0;
-		String searchString = null;
 		if  ( m_resourceTableSearchFields != null && softFilter instanceof SearchFilter ) 
 		{
-			searchString = ((SearchFilter) softFilter).getSearchString();
+			String searchString = ((SearchFilter) softFilter).getSearchString();
 			if ( searchString != null && searchString.length() > 0 )
 			{
 				String searchWhere = doubleStorageSql.getSearchWhereClause(m_resourceTableSearchFields);
 				if ( searchWhere != null && searchWhere.length() > 0 ) 
 				{
-					if (sqlFilter == null ) 
-					{
-						sqlFilter = searchWhere;
-					}
-					else
-					{
-						sqlFilter = sqlFilter + " and " + searchWhere ;
-					}
-					searchFieldCount = m_resourceTableSearchFields.length;
+					sqlFilter = (sqlFilter == null) ? searchWhere : sqlFilter + " and " + searchWhere;
+					for ( int i=0; i < m_resourceTableSearchFields.length; i++) whereFields.add("%" + searchString + "%");
 				}
 			}
 		}
 
+		// Select what we can of a RestrictedFilter in the database, unless it is exact the rest is left to accept() as the records are read
+		FilterRestrictionSql restrictions = FilterRestrictionSql.of(softFilter, m_resourceTableIdField, m_resourceTableOtherFields, UnaryOperator.identity());
+		if ( !restrictions.isEmpty() && restrictions.getWhere().length() > 0 )
+		{
+			sqlFilter = (sqlFilter == null) ? restrictions.getWhere() : sqlFilter + " and " + restrictions.getWhere();
+			whereFields.addAll(Arrays.asList(restrictions.getFields()));
+		}
+		boolean acceptInReader = softFilter instanceof RestrictedFilter && !restrictions.isExact();
+
 		String sql = doubleStorageSql.getSelectXml5filterSql(m_resourceTableName, 
 				m_resourceTableContainerIdField, orderString, sqlFilter);
 	
-		// Add Paging to the Search if requested
+		// Add Paging to the Search if requested, records the filter may still reject are paged as they are read
 		// TODO: Someday make this think Filter and emulate PagingPosition
 		boolean pagedInSql = false;
-		if ( pager != null )
+		if ( pager != null && !acceptInReader )
 		{
 			String limitedSql = doubleStorageSql.addLimitToQuery(sql, pager.getFirst()-1, pager.getLast()-1);
  
@@ -1030,17 +1065,12 @@ public class BaseDbDoubleStorage
 			}
 		}
 
-		Object[] fields = new Object[1+searchFieldCount];
-		fields[0] = container.getReference();
-		for ( int i=0; i < searchFieldCount; i++) fields[i+1] = "%" + searchString + "%";
-
-		if (bindVariables != null && bindVariables.size() > 0) {
-			// Add the bind variables to the fields to substitute in the prepared statement
-			fields = ArrayUtils.addAll(fields, bindVariables.toArray(new Object[fields.length]));
-		}
+		Object[] fields = ArrayUtils.addAll(new Object[] { container.getReference() }, whereFields.toArray());
 
 		// If we are paged in SQL - then do not pass in the pager
-		List all = m_sql.dbRead(sql, fields, new SearchFilterReader(container, softFilter,  pagedInSql ? null : pager, false));
+		// The records are parsed and filtered as they are read, so only the resources returned are held
+		List all = new Vector();
+		m_sql.dbForEach(sql, fields, new SearchFilterReader(container, softFilter,  pagedInSql ? null : pager, false, acceptInReader), all::add);
 		
 		return all;
 	}
@@ -1068,6 +1098,7 @@ public class BaseDbDoubleStorage
 		private PagingPosition m_pager;
 		private Entity m_container;
 		private boolean m_doCount = false;
+		private boolean m_accept = false;
     	
 		private int count = 0;
     	
@@ -1075,12 +1106,23 @@ public class BaseDbDoubleStorage
 		private final Integer intValue = 1;
     	
 		public SearchFilterReader(Entity container, Filter filter, PagingPosition pager, boolean doCount)
+		{
+			this(container, filter, pager, doCount, false);
+		}
+
+		/**
+		 * @param accept
+		 *        If true every record read is parsed and passed to the filter's accept(), as for a RestrictedFilter that could
+		 *        not all be done in the database.
+		 */
+		public SearchFilterReader(Entity container, Filter filter, PagingPosition pager, boolean doCount, boolean accept)
 		{
 			m_container = container;
 			m_filter = filter;
 			if ( filter instanceof SearchFilter ) m_search = ( (SearchFilter) filter).getSearchString();
 			m_pager = pager;
 			m_doCount = doCount;
+			m_accept = accept && filter != null;
 		}
     	
 		public Object readSqlResultRecord(ResultSet result)
@@ -1105,7 +1147,7 @@ public class BaseDbDoubleStorage
                 
 				// If it is a match and we are just counting - no parsing
 				// needed
-				if ( iTest == 1 && m_doCount ) return intValue;
+				if ( iTest == 1 && m_doCount && !m_accept ) return intValue;
                 
 				// If it is known to be accepted (1) or unsure (0), 
 				// parse the Xml and continue
@@ -1113,7 +1155,7 @@ public class BaseDbDoubleStorage
 				if ( entry == null ) return null;
                     
 				// If there is no indication from matchXml
-				if ( iTest == 0 && m_search != null)
+				if ( (iTest == 0 && m_search != null) || m_accept )
 				{
 					if ( ! m_filter.accept(entry) ) return null;
 				}
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.function.Consumer;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -75,6 +76,9 @@ public class BaseDbSingleStorage implements DbSingleStorage
 	/** The additional field names in the resource table that go between the two ids and the xml */
 	protected String[] m_resourceTableOtherFields = null;
 
+	/** Counts of the records read and returned by getSelectedResources(Filter) and forEachSelectedResource. */
+	protected final SelectionCounters m_selectionCounters = new SelectionCounters();
+
 	/** The xml tag name for the element holding each actual resource entry. */
 	protected String m_resourceEntryTagName = null;
 
@@ -322,23 +326,7 @@ public class BaseDbSingleStorage implements DbSingleStorage
 	public List getAllResources()
 	{
 		List all = new Vector();
-
-		// read all users from the db
-		String sql = singleStorageSql.getXmlSql(m_resourceTableName);
-		// %%% + "order by " + m_resourceTableOrderField + " asc";
-
-		List xml = m_sql.dbRead(sql);
-
-		// process all result xml into user objects
-		if (!xml.isEmpty())
-		{
-			for (int i = 0; i < xml.size(); i++)
-			{
-				Entity entry = readResource((String) xml.get(i));
-				if (entry != null) all.add(entry);
-			}
-		}
-
+		forEachSelectedResource(null, all::add);
 		return all;
 	}
 
@@ -500,45 +488,62 @@ public class BaseDbSingleStorage implements DbSingleStorage
 	public List getSelectedResources(final Filter filter)
 	{
 		List all = new Vector();
+		forEachSelectedResource(filter, all::add);
+		return all;
+	}
 
-		// read all users from the db
+	/**
+	 * Pass the selected Resources to the consumer as they are read, a few records at a time, so the whole table is never held in memory
+	 * 
+	 * @param filter
+	 *        A filter on the id field to select what gets passed, or null for all Resources.
+	 * @param consumer
+	 *        Called with each selected Resource.
+	 */
+	public void forEachSelectedResource(final Filter filter, Consumer<Entity> consumer)
+	{
+		// select in the db what we can, the filter still sees every record read
+		FilterRestrictionSql restrictions = FilterRestrictionSql.of(filter, m_resourceTableIdField, m_resourceTableOtherFields, this::caseId);
 		String sql = singleStorageSql.getXmlAndFieldSql(m_resourceTableIdField, m_resourceTableName);
+		if (!restrictions.isEmpty()) sql = sql + " where " + restrictions.getWhere();
 		// %%% + "order by " + m_resourceTableOrderField + " asc";
 
-		List xml = m_sql.dbRead(sql, null, new SqlReader()
+		m_selectionCounters.selection(!restrictions.isEmpty());
+		m_sql.dbForEach(sql, restrictions.getFields(), new SqlReader<Entity>()
 		{
-			public Object readSqlResultRecord(ResultSet result)
+			public Entity readSqlResultRecord(ResultSet result)
 			{
 				try
 				{
+					m_selectionCounters.scanned();
+
 					// read the id m_resourceTableIdField
 					String id = result.getString(1);
+					if (filter != null && !filter.accept(caseId(id))) return null;
 
 					// read the xml
-					String xml = result.getString(2);
-
-					if (!filter.accept(caseId(id))) return null;
-
-					return xml;
+					return readResource(result.getString(2));
 				}
 				catch (SQLException ignore)
 				{
 					return null;
 				}
 			}
+		}, entry ->
+		{
+			m_selectionCounters.returned();
+			consumer.accept(entry);
 		});
 
-		// process all result xml into user objects
-		if (!xml.isEmpty())
-		{
-			for (int i = 0; i < xml.size(); i++)
-			{
-				Entity entry = readResource((String) xml.get(i));
-				if (entry != null) all.add(entry);
-			}
-		}
+		if (log.isDebugEnabled()) log.debug("forEachSelectedResource: " + m_resourceTableName + " where: " + restrictions + " " + m_selectionCounters);
+	}
 
-		return all;
+	/**
+	 * @return The counts of records read and returned by the filtered selections of this storage.
+	 */
+	public SelectionCounters getSelectionCounters()
+	{
+		return m_selectionCounters;
 	}
 
 	/* (non-Javadoc)
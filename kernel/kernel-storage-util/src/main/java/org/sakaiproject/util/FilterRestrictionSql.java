@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+import org.sakaiproject.javax.Filter;
+import org.sakaiproject.javax.RestrictedFilter;
+import org.sakaiproject.javax.Restriction;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The part of a {@link RestrictedFilter} a single storage can select with in the database: a where clause and its bind values for the
+ * restrictions on the storage's id and other fields. Restrictions on anything else are left to the filter's accept().
+ */
+@Slf4j
+public class FilterRestrictionSql
+{
+	/** To avoid ORA-01795, in clauses longer than this are left to accept(). */
+	protected static final int MAX_IN_CLAUSE = 999;
+
+	private static final FilterRestrictionSql NONE = new FilterRestrictionSql("", new Object[0], false);
+
+	private final String where;
+	private final Object[] fields;
+	private final boolean exact;
+
+	private FilterRestrictionSql(String where, Object[] fields, boolean exact)
+	{
+		this.where = where;
+		this.fields = fields;
+		this.exact = exact;
+	}
+
+	/**
+	 * @param filter
+	 *        The filter, restrictions are only taken from a RestrictedFilter.
+	 * @param idField
+	 *        The storage's id column.
+	 * @param otherFields
+	 *        The storage's other columns, may be null.
+	 * @param caseId
+	 *        Applied to String values compared to the id column, so they match how ids are stored.
+	 * @return The where clause and bind values for the restrictions that can be done in the database.
+	 */
+	public static FilterRestrictionSql of(Filter filter, String idField, String[] otherFields, UnaryOperator<String> caseId)
+	{
+		if (!(filter instanceof RestrictedFilter)) return NONE;
+		List<Restriction> restrictions = ((RestrictedFilter) filter).getRestrictions();
+		boolean exact = ((RestrictedFilter) filter).isExact();
+		if (restrictions == null || restrictions.isEmpty()) return exact ? new FilterRestrictionSql("", new Object[0], true) : NONE;
+
+		StringBuilder where = new StringBuilder();
+		List<Object> fields = new ArrayList<>();
+		for (Restriction restriction : restrictions)
+		{
+			String column = column(restriction.property, idField, otherFields);
+			if (column == null)
+			{
+				log.debug("Restriction on unknown field left to the filter: {}", restriction);
+				exact = false;
+				continue;
+			}
+			UnaryOperator<String> valueCase = column.equals(idField) ? caseId : UnaryOperator.identity();
+
+			String condition = condition(column, restriction, valueCase, fields);
+			if (condition == null)
+			{
+				log.debug("Unsupported restriction left to the filter: {}", restriction);
+				exact = false;
+				continue;
+			}
+			if (where.length() > 0) where.append(" and ");
+			where.append(condition);
+		}
+
+		return (where.length() == 0 && !exact) ? NONE : new FilterRestrictionSql(where.toString(), fields.toArray(), exact);
+	}
+
+	/**
+	 * @return true if none of the filter can be done in the database.
+	 */
+	public boolean isEmpty()
+	{
+		return where.isEmpty();
+	}
+
+	/**
+	 * @return true if the filter is exact and all of it is done in the database, so its accept() need not be called.
+	 */
+	public boolean isExact()
+	{
+		return exact;
+	}
+
+	/**
+	 * @return The conditions to select with, without the leading "where", empty if there are none.
+	 */
+	public String getWhere()
+	{
+		return where;
+	}
+
+	/**
+	 * @return The bind values for the where clause, in order.
+	 */
+	public Object[] getFields()
+	{
+		return fields;
+	}
+
+	private static String column(String property, String idField, String[] otherFields)
+	{
+		if (property == null) return null;
+		if (property.equalsIgnoreCase(idField)) return idField;
+		if (otherFields != null)
+		{
+			for (String field : otherFields)
+			{
+				if (property.equalsIgnoreCase(field)) return field;
+			}
+		}
+		return null;
+	}
+
+	private static String condition(String column, Restriction restriction, UnaryOperator<String> valueCase, List<Object> fields)
+	{
+		Object value = restriction.value;
+		switch (restriction.comparison)
+		{
+			case Restriction.EQUALS:
+				if (value == null) return column + " is null";
+				Collection<?> values = values(value);
+				if (values == null)
+				{
+					fields.add(bind(value, valueCase));
+					return column + " = ?";
+				}
+				if (values.isEmpty() || values.size() > MAX_IN_CLAUSE || values.stream().anyMatch(Objects::isNull)) return null;
+				StringBuilder in = new StringBuilder();
+				for (Object v : values)
+				{
+					fields.add(bind(v, valueCase));
+					in.append(in.length() == 0 ? "?" : ", ?");
+				}
+				return column + " in (" + in + ")";
+			case Restriction.NOT_EQUALS:
+				if (value == null) return column + " is not null";
+				if (values(value) != null) return null;
+				fields.add(bind(value, valueCase));
+				return column + " <> ?";
+			case Restriction.GREATER:
+				if (value == null || values(value) != null) return null;
+				fields.add(bind(value, valueCase));
+				return column + " > ?";
+			case Restriction.LESS:
+				if (value == null || values(value) != null) return null;
+				fields.add(bind(value, valueCase));
+				return column + " < ?";
+			case Restriction.LIKE:
+				if (!(value instanceof String)) return null;
+				fields.add(bind(value, valueCase));
+				return column + " like ?";
+			case Restriction.NULL:
+				return column + " is null";
+			case Restriction.NOT_NULL:
+				return column + " is not null";
+			default:
+				return null;
+		}
+	}
+
+	private static Collection<?> values(Object value)
+	{
+		if (value instanceof Collection) return (Collection<?>) value;
+		if (value.getClass().isArray())
+		{
+			List<Object> values = new ArrayList<>();
+			for (int i = 0; i < Array.getLength(value); i++)
+			{
+				values.add(Array.get(value, i));
+			}
+			return values;
+		}
+		return null;
+	}
+
+	private static Object bind(Object value, UnaryOperator<String> valueCase)
+	{
+		return (value instanceof String) ? valueCase.apply((String) value) : value;
+	}
+
+	@Override
+	public String toString()
+	{
+		return where + " " + Arrays.toString(fields);
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the records a single storage's filtered selections read from the database and how many of them were returned, which shows how
+ * much of each selection was done in the database and how much was left to the filter.
+ */
+public class SelectionCounters
+{
+	private final LongAdder selections = new LongAdder();
+	private final LongAdder restrictedSelections = new LongAdder();
+	private final LongAdder rowsScanned = new LongAdder();
+	private final LongAdder rowsReturned = new LongAdder();
+
+	void selection(boolean restricted)
+	{
+		selections.increment();
+		if (restricted) restrictedSelections.increment();
+	}
+
+	void scanned()
+	{
+		rowsScanned.increment();
+	}
+
+	void returned()
+	{
+		rowsReturned.increment();
+	}
+
+	/**
+	 * @return the number of selections made.
+	 */
+	public long getSelections()
+	{
+		return selections.sum();
+	}
+
+	/**
+	 * @return the number of selections that were at least partly done in the database.
+	 */
+	public long getRestrictedSelections()
+	{
+		return restrictedSelections.sum();
+	}
+
+	/**
+	 * @return the number of records read from the database.
+	 */
+	public long getRowsScanned()
+	{
+		return rowsScanned.sum();
+	}
+
+	/**
+	 * @return the number of records accepted and returned.
+	 */
+	public long getRowsReturned()
+	{
+		return rowsReturned.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "selections: " + getSelections() + " (restricted: " + getRestrictedSelections() + ") rows scanned: " + getRowsScanned()
+				+ " returned: " + getRowsReturned();
+	}
+}
@@ -25,6 +25,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -70,6 +71,8 @@ import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.id.api.IdManager;
 import org.sakaiproject.javax.Filter;
 import org.sakaiproject.javax.PagingPosition;
+import org.sakaiproject.javax.RestrictedFilter;
+import org.sakaiproject.javax.Restriction;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.message.api.Message;
@@ -3088,6 +3091,22 @@ public abstract class BaseMessage implements MessageService, DoubleStorageUser
 		 */
 		public List findFilterMessages(Filter filter, boolean ascending)
 		{
+			// let the storage select what the filter restricts rather than reading the whole channel, it has already
+			// asked the filter to accept each message it returns
+			if (filter instanceof RestrictedFilter && !((RestrictedFilter) filter).getRestrictions().isEmpty())
+			{
+				List selected = m_storage.getMessages(this, filter, ascending, null);
+				if (selected != null)
+				{
+					Collections.sort(selected);
+					if (!ascending)
+					{
+						Collections.reverse(selected);
+					}
+					return filterGroupAccess(selected);
+				}
+			}
+
 			List msgs = findMessages();
 			if (msgs.size() == 0) return msgs;
 			
@@ -4384,7 +4403,7 @@ public abstract class BaseMessage implements MessageService, DoubleStorageUser
 
 	} // MessagePermissionFilter
 
-	protected class MessageSelectionFilter implements Filter
+	protected class MessageSelectionFilter implements RestrictedFilter
 	{
 		protected Time m_afterDate = null;
 
@@ -4399,6 +4418,31 @@ public abstract class BaseMessage implements MessageService, DoubleStorageUser
 			m_pubViewOnly = pubViewOnly;
 		}
 
+		/**
+		 * The date and pub view criteria, on the MESSAGE_DATE and PUBVIEW fields the storage keeps for each message.
+		 */
+		public List<Restriction> getRestrictions()
+		{
+			List<Restriction> restrictions = new ArrayList<>();
+			if (m_afterDate != null)
+			{
+				restrictions.add(new Restriction("MESSAGE_DATE", m_afterDate, Restriction.GREATER));
+			}
+			if (m_pubViewOnly)
+			{
+				restrictions.add(new Restriction("PUBVIEW", "1"));
+			}
+			return restrictions;
+		}
+
+		/**
+		 * Drafts for one user depend on the owner too, otherwise the restrictions are all there is to the filter.
+		 */
+		public boolean isExact()
+		{
+			return m_draftsForId == null || "*".equals(m_draftsForId);
+		}
+
 		/**
 		 * Does this object satisfy the criteria of the filter?
 		 * 
@@ -441,6 +441,9 @@ public class DeliveryBean implements Serializable {
   private boolean submitFromTimeoutPopup;
   @Getter @Setter
   private boolean skipFlag;
+  // set while the timer in the browser saves the answers, they may then be written behind
+  @Getter
+  private boolean autoSaving;
   @Getter
   private Date deadline;
   @Getter @Setter
@@ -1125,7 +1128,12 @@ public class DeliveryBean implements Serializable {
   
   public String autoSave() {
 	  skipFlag = true;
-	  return saveWork();
+	  autoSaving = true;
+	  try {
+		  return saveWork();
+	  } finally {
+		  autoSaving = false;
+	  }
   }
   
   public String saveWork() {
@@ -1160,6 +1168,8 @@ public class DeliveryBean implements Serializable {
 				  timedAG.getExpirationDate().getTime();
 			  setConfirmation(confirmation);
 			  lastSave = true;
+			  // the last save is written straight away
+			  autoSaving = false;
           }
         try {
           listener.processAction(null);
@@ -1914,24 +1924,39 @@ public class DeliveryBean implements Serializable {
 
   public Map getPublishedItemHash(){
     if (this.publishedItemHash.isEmpty()){
-      PublishedAssessmentService pubService = new PublishedAssessmentService();
-      this.publishedItemHash = pubService.preparePublishedItemHash(getPublishedAssessment());
+      if (getPublishedAssessment().getSnapshot() != null) {
+        // shared by every delivery of the assessment, it is only read when scoring
+        this.publishedItemHash = getPublishedAssessment().getSnapshot().getItemHash();
+      } else {
+        PublishedAssessmentService pubService = new PublishedAssessmentService();
+        this.publishedItemHash = pubService.preparePublishedItemHash(getPublishedAssessment());
+      }
     }
     return this.publishedItemHash;
   }
 
   public Map getPublishedItemTextHash(){
     if (this.publishedItemTextHash.isEmpty()){
-      PublishedAssessmentService pubService = new PublishedAssessmentService();
-      this.publishedItemTextHash = pubService.preparePublishedItemTextHash(getPublishedAssessment());
+      if (getPublishedAssessment().getSnapshot() != null) {
+        // shared by every delivery of the assessment, it is only read when scoring
+        this.publishedItemTextHash = getPublishedAssessment().getSnapshot().getItemTextHash();
+      } else {
+        PublishedAssessmentService pubService = new PublishedAssessmentService();
+        this.publishedItemTextHash = pubService.preparePublishedItemTextHash(getPublishedAssessment());
+      }
     }
     return this.publishedItemTextHash;
   }
 
   public Map getPublishedAnswerHash(){
     if (this.publishedAnswerHash.isEmpty()){
-      PublishedAssessmentService pubService = new PublishedAssessmentService();
-      this.publishedAnswerHash = pubService.preparePublishedAnswerHash(getPublishedAssessment());
+      if (getPublishedAssessment().getSnapshot() != null) {
+        // shared by every delivery of the assessment, it is only read when scoring
+        this.publishedAnswerHash = getPublishedAssessment().getSnapshot().getAnswerHash();
+      } else {
+        PublishedAssessmentService pubService = new PublishedAssessmentService();
+        this.publishedAnswerHash = pubService.preparePublishedAnswerHash(getPublishedAssessment());
+      }
     }
     return this.publishedAnswerHash;
   }
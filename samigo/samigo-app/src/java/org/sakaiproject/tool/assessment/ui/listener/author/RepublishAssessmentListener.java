@@ -97,6 +97,9 @@ public class RepublishAssessmentListener implements ActionListener {
 		EventTrackingService.post(EventTrackingService.newEvent(SamigoConstants.EVENT_PUBLISHED_ASSESSMENT_REPUBLISH, "siteId=" + AgentFacade.getCurrentSiteId() + ", publishedAssessmentId=" + publishedAssessmentId, true));
 
 		assessment.setStatus(AssessmentBaseIfc.ACTIVE_STATUS);
+		// a new modified date tells every node its delivery snapshot of the assessment is out of date
+		assessment.setLastModifiedBy(AgentFacade.getAgentString());
+		assessment.setLastModifiedDate(new Date());
 		publishedAssessmentService.saveAssessment(assessment);
 
 		AuthorBean author = (AuthorBean) ContextUtil.lookupBean("author");
@@ -152,7 +152,8 @@ implements ActionListener
 		extendedTimeFacade.saveEntriesPub(assessmentService.getBasicInfoOfPublishedAssessment(assessmentId.toString()), assessmentSettings.getExtendedTimes());
 
 		assessment.setLastModifiedBy(AgentFacade.getAgentString());
-		assessment.setLastModifiedDate(new Date());
+		Date firstModifiedDate = new Date();
+		assessment.setLastModifiedDate(firstModifiedDate);
 		assessmentService.saveAssessment(assessment); 
 		
 		// jj. save assessment first, then deal with ip
@@ -207,6 +208,9 @@ implements ActionListener
 	    }
 	    
 	    // l. FINALLY: save the assessment
+	    // with a later modified date than the first save, at least a second later for databases that drop the millis,
+	    // so a delivery snapshot taken on any node from the half saved settings is of an older version
+	    assessment.setLastModifiedDate(new Date(Math.max(System.currentTimeMillis(), firstModifiedDate.getTime() + 1000)));
 	    assessmentService.saveAssessment(assessment);
 	    
 		saveAssessmentSettings.updateAttachment(assessment.getAssessmentAttachmentList(), assessmentSettings.getAttachmentList(),(AssessmentIfc)assessment.getData(), false);
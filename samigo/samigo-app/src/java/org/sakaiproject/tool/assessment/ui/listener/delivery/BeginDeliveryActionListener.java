@@ -194,7 +194,7 @@ public class BeginDeliveryActionListener implements ActionListener
   {
     PublishedAssessmentFacade pub;
     PublishedAssessmentService assessmentService = new PublishedAssessmentService();
-    pub = assessmentService.getPublishedAssessment(id);
+    pub = assessmentService.getPublishedAssessmentForDelivery(id);
     if (pub.getAssessmentFeedback()==null)
     {
       pub.setAssessmentFeedback(new PublishedFeedback());
@@ -2561,7 +2561,7 @@ public class DeliveryActionListener
     else {
       try{
         publishedAssessment =
-          (new PublishedAssessmentService()).getPublishedAssessment(id);
+          (new PublishedAssessmentService()).getPublishedAssessmentForDelivery(id);
 	delivery.setPublishedAssessment(publishedAssessment);
       }
       catch(Exception e){
@@ -138,7 +138,7 @@ public class SubmitToGradingActionListener implements ActionListener {
 				publishedAssessment = delivery.getPublishedAssessment();
 			else {
 				publishedAssessment = publishedAssesmentService
-						.getPublishedAssessment(delivery.getAssessmentId());
+						.getPublishedAssessmentForDelivery(delivery.getAssessmentId());
 				delivery.setPublishedAssessment(publishedAssessment);
 			}
 			
@@ -416,6 +416,7 @@ public class SubmitToGradingActionListener implements ActionListener {
 		}
 
 		GradingService service = new GradingService();
+		service.setAutoSave(delivery.isAutoSaving() && !delivery.isForGrade());
 		log.debug("**adata={}", adata);
 		if (adata == null) { // <--- this shouldn't happened 'cos it should
 			// have been created by BeginDelivery
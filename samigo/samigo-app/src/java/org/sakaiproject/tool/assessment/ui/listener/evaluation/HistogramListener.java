@@ -23,7 +23,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -63,7 +62,8 @@ import org.sakaiproject.tool.assessment.data.ifc.assessment.SectionDataIfc;
 import org.sakaiproject.tool.assessment.data.ifc.shared.TypeIfc;
 import org.sakaiproject.tool.assessment.facade.AgentFacade;
 import org.sakaiproject.tool.assessment.services.GradingService;
-import org.sakaiproject.tool.assessment.services.PublishedItemService;
+import org.sakaiproject.tool.assessment.services.ItemAnalysis;
+import org.sakaiproject.tool.assessment.services.ItemAnalysisService;
 import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
 import org.sakaiproject.tool.assessment.shared.api.assessment.SecureDeliveryServiceAPI;
 import org.sakaiproject.tool.assessment.shared.api.assessment.SecureDeliveryServiceAPI.Phase;
@@ -233,11 +233,6 @@ public class HistogramListener
 		  delegate = new GradingService();
 		  PublishedAssessmentService pubService = new PublishedAssessmentService();
 		  List<AssessmentGradingData> allscores = delegate.getTotalScores(publishedId, which);
-          //set the ItemGradingData manually here. or we cannot
-          //retrieve it later.
-          for(AssessmentGradingData agd: allscores){
-          	agd.setItemGradingSet(delegate.getItemGradingSet(String.valueOf(agd.getAssessmentGradingId())));
-          }
           if (allscores.isEmpty()) {
 			// Similar case in Bug 1537, but clicking Statistics link instead of assignment title.
 			// Therefore, redirect the the same page.
@@ -355,38 +350,12 @@ public class HistogramListener
 			  boolean isRandompart = false;
                           String poolName = null;
 			  
-			  Map itemScoresMap = delegate.getItemScores(Long.valueOf(publishedId), Long.valueOf(0), which);
-			  Map itemScores = new HashMap();
-			  			  
-			  if (totalScores.getReleaseToAnonymous()) {
-				  // skip section filter if it's published to anonymous users
-				  itemScores.putAll(itemScoresMap);
-			  }
-			  else {
-				  if (useridMap == null) {
-					  useridMap = totalScores.getUserIdMap(callerName, siteId);
-				  }
-
-				  for (Iterator it = itemScoresMap.entrySet().iterator(); it.hasNext();) {
-					  Map.Entry entry = (Map.Entry) it.next();
-					  Long itemId = (Long) entry.getKey();
-					  List itemScoresList = (List) entry.getValue();
-
-					  List filteredItemScoresList = new ArrayList();
-					  Iterator itemScoresIter = itemScoresList.iterator();
-					  // get the Map of all users(keyed on userid) belong to the
-					  // selected sections
-					  
-					  while (itemScoresIter.hasNext()) {
-						  ItemGradingData idata = (ItemGradingData) itemScoresIter.next();
-						  String agentid = idata.getAgentId();
-						  if (useridMap.containsKey(agentid)) {
-							  filteredItemScoresList.add(idata);
-						  }
-					  }
-					  itemScores.put(itemId, filteredItemScoresList);
-				  }
-			  }
+			  // counts, right answers and discrimination of every question come from one pass over the item gradings,
+			  // the item gradings themselves are only loaded for the questions whose statistics need them
+			  ItemAnalysis analysis = new ItemAnalysisService().getItemAnalysis(pub, submissionsSortedForDiscrim);
+			  Map publishedItemHash = pubService.preparePublishedItemHash(pub);
+			  Map publishedItemTextHash = pubService.preparePublishedItemTextHash(pub);
+			  Map publishedAnswerHash = pubService.preparePublishedAnswerHash(pub);
 
 			  // Iterate through the assessment parts
 			  while (partsIter.hasNext()) {
@@ -470,92 +439,33 @@ public class HistogramListener
 					  //ArrayList responses = null;
 
 					  //for each question (item) in the published assessment's current part/section
-					  determineResults(pub, questionScores, (List) itemScores.get(item.getItemId()));
+					  List<ItemGradingData> itemScores = null;
+					  if (!isAnalysedType(questionScores.getQuestionType())) {
+						  itemScores = getItemScores(item.getItemId(), allscores, useridMap);
+					  }
+					  determineResults(questionScores, itemScores, analysis, publishedItemHash, publishedItemTextHash, publishedAnswerHash);
 					  questionScores.setTotalScore(item.getScore().toString());
 
 					  questionScores.setN(""+numSubmissions);
 					  questionScores.setItemId(item.getItemId());
-					  Set studentsWithAllCorrect = questionScores.getStudentsWithAllCorrect();
-					  Set studentsResponded = questionScores.getStudentsResponded();
-					  if (studentsWithAllCorrect == null || studentsResponded == null || 
-							  studentsWithAllCorrect.isEmpty() || studentsResponded.isEmpty()) {
+					  if (analysis.getCorrect(item.getItemId()) == 0 || questionScores.getNumResponses() == 0) {
 						  questionScores.setPercentCorrectFromUpperQuartileStudents("0");
 						  questionScores.setPercentCorrectFromLowerQuartileStudents("0");
 						  questionScores.setDiscrimination("0.0");
 					  }
+					  else if (analysis.getGroupSize(item.getItemId()) == 0) {
+						  questionScores.setPercentCorrectFromUpperQuartileStudents(rb.getString("na"));
+						  questionScores.setPercentCorrectFromLowerQuartileStudents(rb.getString("na"));
+						  questionScores.setDiscrimination(rb.getString("na"));
+					  }
 					  else {
-                          int percent27ForThisQuestion = percent27;
-                          Set<String> upperQuartileStudents = histogramScores.getUpperQuartileStudents().keySet();
-                          Set<String> lowerQuartileStudents = histogramScores.getLowerQuartileStudents().keySet();
-                          if(isRandompart){
-                          	//we need to calculate the 27% upper and lower
-                            //per question for the people that actually answered
-                            //this question.
-                            upperQuartileStudents = new HashSet<String>();
-                            lowerQuartileStudents = new HashSet<String>();
-                            percent27ForThisQuestion = questionScores.getNumResponses()*27/100;
-                            if (percent27ForThisQuestion == 0) percent27ForThisQuestion = 1;
-                            if(questionScores.getNumResponses() != 0){
-                                //need to only get gradings for students that answered this question
-                                List<AssessmentGradingData> filteredGradings =
-                            		filterGradingData(submissionsSortedForDiscrim, questionScores.getItemId());
-                                
-                                // SAM-2228: loop control issues because of unsynchronized collection access
-                                int filteredGradingsSize = filteredGradings.size();
-                                percent27ForThisQuestion = filteredGradingsSize*27/100;
-                                
-                                for (int i = 0; i < percent27ForThisQuestion; i++) {
-                                    lowerQuartileStudents.add(((AssessmentGradingData)
-                                	filteredGradings.get(i)).getAgentId());
-                                    //
-                                    upperQuartileStudents.add(((AssessmentGradingData)
-                                    filteredGradings.get(filteredGradingsSize-1-i)).getAgentId());
-                                }
-                             }
-                          }
-						  if(questionScores.getNumResponses() != 0){
-                              int numStudentsWithAllCorrectFromUpperQuartile = 0;
-                              int numStudentsWithAllCorrectFromLowerQuartile = 0;
-                              Iterator studentsIter = studentsWithAllCorrect.iterator();
-                              while (studentsIter.hasNext()) {
-							  String agentId = (String) studentsIter.next();
-							  if (upperQuartileStudents.contains(agentId)) {
-								  numStudentsWithAllCorrectFromUpperQuartile++;
-							  }
-							  if (lowerQuartileStudents.contains(agentId)) {
-								  numStudentsWithAllCorrectFromLowerQuartile++;
-							  }
-                              }
-						  
-                              double percentCorrectFromUpperQuartileStudents =
-							  ((double) numStudentsWithAllCorrectFromUpperQuartile / 
-									  (double) percent27ForThisQuestion) * 100d;
-
-                              double percentCorrectFromLowerQuartileStudents =
-							  ((double) numStudentsWithAllCorrectFromLowerQuartile / 
-									  (double) percent27ForThisQuestion) * 100d;
-
-                              questionScores.setPercentCorrectFromUpperQuartileStudents(
-								  Integer.toString((int) percentCorrectFromUpperQuartileStudents));
-                              questionScores.setPercentCorrectFromLowerQuartileStudents(
-								  Integer.toString((int) percentCorrectFromLowerQuartileStudents));
-                                                  
-                                                    double discrimination = ((double)numStudentsWithAllCorrectFromUpperQuartile -
-								  (double)numStudentsWithAllCorrectFromLowerQuartile)/(double)percent27ForThisQuestion ;
-
-                              // round to 2 decimals
-                              if (discrimination > 999999 || discrimination < -999999) {
-							  questionScores.setDiscrimination("NaN");
-                              }
-                              else {
-							  discrimination = ((int) (discrimination*100.00d)) / 100.00d;
-							  questionScores.setDiscrimination(Double.toString(discrimination));
-                              }
-                          }else{
-                              questionScores.setPercentCorrectFromUpperQuartileStudents(rb.getString("na"));
-                              questionScores.setPercentCorrectFromLowerQuartileStudents(rb.getString("na"));
-                              questionScores.setDiscrimination(rb.getString("na"));
-                          }
+						  questionScores.setPercentCorrectFromUpperQuartileStudents(
+								  Integer.toString((int) analysis.getPercentCorrectFromUpperGroup(item.getItemId())));
+						  questionScores.setPercentCorrectFromLowerQuartileStudents(
+								  Integer.toString((int) analysis.getPercentCorrectFromLowerGroup(item.getItemId())));
+						  // round to 2 decimals
+						  double discrimination = ((int) (analysis.getDiscrimination(item.getItemId())*100.00d)) / 100.00d;
+						  questionScores.setDiscrimination(Double.toString(discrimination));
 					  }
 
 					  info.add(questionScores);
@@ -755,39 +665,18 @@ public class HistogramListener
    * For each question (item) in the published assessment's current part/section
    * determine the results by calculating statistics for whole question or 
    * individual answers depending on the question type
-   * @param pub
    * @param qbean
-   * @param itemScores
+   * @param itemScores the item gradings of the question, null if its statistics come from the analysis
+   * @param analysis
    */
-  private void determineResults(PublishedAssessmentIfc pub, HistogramQuestionScoresBean qbean, List<ItemGradingData> itemScores)
+  private void determineResults(HistogramQuestionScoresBean qbean, List<ItemGradingData> itemScores, ItemAnalysis analysis,
+    Map publishedItemHash, Map publishedItemTextHash, Map publishedAnswerHash)
   {
     if (itemScores == null)
       itemScores = new ArrayList<ItemGradingData>();
 
-      int responses = 0;
-      Set<Long> assessmentGradingIds = new HashSet<Long>();
-      int numStudentsWithZeroAnswers = 0;
-      for (ItemGradingData itemGradingData: itemScores) {
-          // only count the unique questions answers
-	  // There may be multiple itemGradingData with the same AssessmentGradingId
-	  // for matching questions (essentially a collection of MC questions)
-          if(!assessmentGradingIds.contains(itemGradingData.getAssessmentGradingId())){
-	      if (itemGradingData.getPublishedAnswerId() != null) {
-	          responses++;
-	          assessmentGradingIds.add(itemGradingData.getAssessmentGradingId());
-	      } else if (!qbean.getQuestionType().equals(TypeIfc.MATCHING.toString())) { 
-	          assessmentGradingIds.add(itemGradingData.getAssessmentGradingId());
-	      }
-
-              assessmentGradingIds.add(itemGradingData.getAssessmentGradingId());
-
-              if (itemGradingData.getSubmittedDate() == null) {
-                  numStudentsWithZeroAnswers++;
-              }
-          }
-      }
-      qbean.setNumResponses(responses);
-      qbean.setNumberOfStudentsWithZeroAnswers(numStudentsWithZeroAnswers);
+      qbean.setNumResponses(analysis.getResponses(qbean.getItemId()));
+      qbean.setNumberOfStudentsWithZeroAnswers(analysis.getNumberOfStudentsWithZeroAnswers(qbean.getItemId()));
 
     if (qbean.getQuestionType().equals(TypeIfc.MULTIPLE_CHOICE.toString()) ||  // mcsc
         qbean.getQuestionType().equals(TypeIfc.MULTIPLE_CORRECT.toString()) ||  // mcmcms
@@ -801,7 +690,7 @@ public class HistogramListener
         qbean.getQuestionType().equals(TypeIfc.CALCULATED_QUESTION.toString()) || // CALCULATED_QUESTION
         qbean.getQuestionType().equals(TypeIfc.IMAGEMAP_QUESTION.toString()) || // IMAGEMAP_QUESTION
     	qbean.getQuestionType().equals(TypeIfc.MATRIX_CHOICES_SURVEY.toString()))  // matrix survey 
-      doAnswerStatistics(pub, qbean, itemScores);
+      doAnswerStatistics(qbean, itemScores, analysis, publishedItemHash, publishedItemTextHash, publishedAnswerHash);
     if (qbean.getQuestionType().equals(TypeIfc.ESSAY_QUESTION.toString()) || // essay
         qbean.getQuestionType().equals(TypeIfc.FILE_UPLOAD.toString()) || // file upload
         qbean.getQuestionType().equals(TypeIfc.AUDIO_RECORDING.toString())) // audio recording
@@ -813,12 +702,12 @@ public class HistogramListener
    * For each question where statistics are required for seperate answers, 
    * this method calculates the answer statistics by calling a different
    * getXXXScores() method for each question type.
-   * @param pub
    * @param qbean
    * @param scores
+   * @param analysis
    */
-  private void doAnswerStatistics(PublishedAssessmentIfc pub, HistogramQuestionScoresBean qbean,
-    List<ItemGradingData> scores)
+  private void doAnswerStatistics(HistogramQuestionScoresBean qbean, List<ItemGradingData> scores, ItemAnalysis analysis,
+    Map publishedItemHash, Map publishedItemTextHash, Map publishedAnswerHash)
   {
 	
 //    Don't return here. This will cause questions to be displayed inconsistently on the stats page
@@ -830,27 +719,6 @@ public class HistogramListener
 //      return;
 //    }
 
-    PublishedAssessmentService pubService  =  new PublishedAssessmentService();
-    PublishedItemService pubItemService = new PublishedItemService();
-    
-    //build a hashMap (publishedItemId, publishedItem)
-    Map publishedItemHash = pubService.preparePublishedItemHash(pub);
-    Map publishedItemTextHash = pubService.preparePublishedItemTextHash(pub);
-    Map publishedAnswerHash = pubService.preparePublishedAnswerHash(pub);
-    
- // re-attach session and load all lazy loaded parent/child stuff
-       
-//        Set<Long> publishedAnswerHashKeySet = publishedAnswerHash.keySet();
-//    	   
-//     	    for(Long key : publishedAnswerHashKeySet) {
-//              AnswerIfc answer = (AnswerIfc) publishedAnswerHash.get(key);
-//             
-//     	          if (! Hibernate.isInitialized(answer.getChildAnswerSet())) {
-//                 pubItemService.eagerFetchAnswer(answer);
-//    	          }
-//    	    }
-    	
-
     //int numAnswers = 0;
     ItemDataIfc item = (ItemDataIfc) publishedItemHash.get(qbean.getItemId());
     List text = item.getItemTextArraySorted();
@@ -892,7 +760,7 @@ public class HistogramListener
     }
    
     if (StringUtils.equalsAny(qbean.getQuestionType(), TypeIfc.MULTIPLE_CHOICE.toString(), TypeIfc.MULTIPLE_CORRECT_SINGLE_SELECTION.toString(), TypeIfc.MULTIPLE_CHOICE_SURVEY.toString(), TypeIfc.TRUE_FALSE.toString())) {
-      getTFMCScores(publishedAnswerHash, scores, qbean, answers);
+      getTFMCScores(analysis, qbean, answers);
     } else if (StringUtils.equalsAny(qbean.getQuestionType(), TypeIfc.MULTIPLE_CORRECT.toString(), TypeIfc.FILL_IN_BLANK.toString(), TypeIfc.FILL_IN_NUMERIC.toString())) {
       getFIBMCMCScores(publishedItemHash, publishedAnswerHash, scores, qbean, answers, item);
     } else if (qbean.getQuestionType().equals(TypeIfc.MATCHING.toString())) {
@@ -1555,7 +1423,7 @@ public class HistogramListener
 							.toString((int) (((double) correctresponses / (double) qbean.getNumResponses()) * 100)));
 	}
 
-  private void getTFMCScores(Map publishedAnswerHash, List scores, HistogramQuestionScoresBean qbean, List answers) {
+  private void getTFMCScores(ItemAnalysis analysis, HistogramQuestionScoresBean qbean, List answers) {
 		Map texts = new HashMap();
 		Map results = new HashMap();
 		Map sequenceMap = new HashMap();
@@ -1563,57 +1431,14 @@ public class HistogramListener
 		if (answers != null) {
 			Iterator iter = answers.iterator();
 		
-			// create the lookup maps
+			// create the lookup maps, with the number of responses (ItemGradingData) for each answer
 			while (iter.hasNext()) {
 				AnswerIfc answer = (AnswerIfc) iter.next();
 				texts.put(answer.getId(), answer);
-				results.put(answer.getId(), Integer.valueOf(0));
+				results.put(answer.getId(), Integer.valueOf(analysis.getAnswerCount(answer.getId())));
 				sequenceMap.put(answer.getSequence(), answer.getId());
 			}
 	
-			// find the number of responses (ItemGradingData) for each answer
-			iter = scores.iterator();
-			while (iter.hasNext()) {
-				ItemGradingData data = (ItemGradingData) iter.next();
-				
-				AnswerIfc answer = (AnswerIfc) publishedAnswerHash.get(data
-						.getPublishedAnswerId());
-	
-				if (answer != null) {
-					// found a response
-					Integer num = null;
-					// num is a counter
-					try {
-						// we found a response, now get existing count from the
-						// hashmap
-						num = (Integer) results.get(answer.getId());
-	
-					} catch (Exception e) {
-						log.warn("No results for " + answer.getId());
-						log.error(e.getMessage(), e);
-					}
-					if (num == null)
-						num = Integer.valueOf(0);
-	
-					// we found a response, and got the existing num , now update
-					// one
-					// check here for the other bug about non-autograded items
-					// having 1 even with no responses
-					results.put(answer.getId(), Integer.valueOf(num.intValue() + 1));
-					
-					
-					// this should work because for tf/mc(single)
-					// questions, there should be at most 
-					// one submitted answer per student/assessment
-					if (answer.getIsCorrect() != null
-							&& answer.getIsCorrect().booleanValue()) {
-						qbean.addStudentWithAllCorrect(data.getAgentId()); 
-					}
-					qbean.addStudentResponded(data.getAgentId()); 
-	
-				}
-			}
-			
 			HistogramBarBean[] bars = new HistogramBarBean[results.keySet().size()];
 			int[] numarray = new int[results.keySet().size()];
 			List sequenceList = new ArrayList();
@@ -3023,18 +2848,27 @@ public class HistogramListener
 		});
 	}
 
-	private List<AssessmentGradingData> filterGradingData(List<AssessmentGradingData> submissionsSortedForDiscrim, Long itemId) {
-        List<AssessmentGradingData> submissionsForItemSortedForDiscrim = new ArrayList<AssessmentGradingData>();
-        for(AssessmentGradingData agd: submissionsSortedForDiscrim){
-            Set<ItemGradingData> itemGradings = agd.getItemGradingSet();
-            for(ItemGradingData igd: itemGradings){
-                if(igd.getPublishedItemId().equals(itemId)){
-                    submissionsForItemSortedForDiscrim.add(agd);
-                    break;
-                }
-            }
-        }
-        return submissionsForItemSortedForDiscrim;
-    }
+	/**
+	 * @return true for the question types whose statistics all come from the item analysis, their item gradings
+	 * aren't loaded
+	 */
+	private boolean isAnalysedType(String questionType) {
+		return StringUtils.equalsAny(questionType, TypeIfc.MULTIPLE_CHOICE.toString(), TypeIfc.MULTIPLE_CORRECT_SINGLE_SELECTION.toString(),
+				TypeIfc.MULTIPLE_CHOICE_SURVEY.toString(), TypeIfc.TRUE_FALSE.toString());
+	}
+
+	/**
+	 * @return the item gradings of a question in the submissions, of the users in useridMap when there is one
+	 */
+	private List<ItemGradingData> getItemScores(Long itemId, List<AssessmentGradingData> allscores, Map useridMap) {
+		List<ItemGradingData> itemScores = (List<ItemGradingData>) delegate.getItemScores(itemId, allscores, false).get(itemId);
+		if (itemScores == null) {
+			return new ArrayList<>();
+		}
+		if (useridMap != null) {
+			itemScores.removeIf(data -> !useridMap.containsKey(data.getAgentId()));
+		}
+		return itemScores;
+	}
 
 }
@@ -39,6 +39,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -54,6 +55,8 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.NullPrecedence;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.query.Query;
 import org.sakaiproject.antivirus.api.VirusFoundException;
 import org.sakaiproject.authz.api.SecurityAdvisor;
@@ -97,7 +100,7 @@ import org.sakaiproject.tool.assessment.data.ifc.assessment.PublishedAssessmentI
 import org.sakaiproject.tool.assessment.data.ifc.assessment.SectionDataIfc;
 import org.sakaiproject.tool.assessment.data.ifc.grading.StudentGradingSummaryIfc;
 import org.sakaiproject.tool.assessment.data.ifc.shared.TypeIfc;
-import org.sakaiproject.tool.assessment.integration.context.IntegrationContextFactory;
+import org.sakaiproject.tool.assessment.services.ItemGradingWriteBehind;
 import org.sakaiproject.tool.assessment.services.ItemService;
 import org.sakaiproject.tool.assessment.services.PersistenceHelper;
 import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
@@ -340,6 +343,26 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
         }
     }
 
+    public void scrollItemScores(final Long publishedId, final Consumer<Object[]> rows) {
+        final HibernateCallback<Void> hcb = session -> {
+            Query q = session.createQuery(
+                    "select i.assessmentGradingId, i.publishedItemId, i.publishedAnswerId, i.autoScore, i.overrideScore, i.submittedDate " +
+                    "from ItemGradingData i, AssessmentGradingData a " +
+                    "where i.assessmentGradingId = a.assessmentGradingId and a.publishedAssessmentId = :id and a.status > :status");
+            q.setParameter("id", publishedId);
+            q.setParameter("status", AssessmentGradingData.REMOVED);
+            q.setReadOnly(true);
+            q.setFetchSize(1000);
+            try (ScrollableResults results = q.scroll(ScrollMode.FORWARD_ONLY)) {
+                while (results.next()) {
+                    rows.accept(results.get());
+                }
+            }
+            return null;
+        };
+        getHibernateTemplate().execute(hcb);
+    }
+
     /**
      * This returns a hashmap of all the latest item entries, keyed by
      * item id for easy retrieval.
@@ -1477,6 +1500,36 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
         }
     }
 
+    public int updateItemGradings(Collection<ItemGradingData> c, int batchSize) {
+        Map<Long, ItemGradingData> answers = new HashMap<>();
+        for (ItemGradingData itemGrading : c) {
+            answers.put(itemGrading.getItemGradingId(), itemGrading);
+        }
+        List<Long> ids = new ArrayList<>(answers.keySet());
+        int updated = 0;
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + batchSize));
+            final HibernateCallback<Integer> hcb = session -> {
+                session.setJdbcBatchSize(batchSize);
+                Query<ItemGradingData> q = session.createQuery("from ItemGradingData i where i.itemGradingId in (:ids)", ItemGradingData.class);
+                q.setParameterList("ids", chunk);
+                int count = 0;
+                for (ItemGradingData itemGrading : q.list()) {
+                    ItemGradingData answer = answers.get(itemGrading.getItemGradingId());
+                    if (!ItemGradingWriteBehind.isOlder(answer, itemGrading)) {
+                        ItemGradingWriteBehind.copyResponse(answer, itemGrading);
+                        count++;
+                    }
+                }
+                // the changed item gradings go out in batches as the session flushes
+                session.flush();
+                return count;
+            };
+            updated += getHibernateTemplate().execute(hcb);
+        }
+        return updated;
+    }
+
     public PublishedAssessmentIfc getPublishedAssessmentByAssessmentGradingId(final Long assessmentGradingId) {
 
         final HibernateCallback<List<PublishedAssessmentData>> hcb = session -> {
@@ -2969,9 +3022,7 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
     }
 
     @Override
-    public int autoSubmitAssessments() {
-        java.util.Date currentTime = new java.util.Date();
-
+    public List<AssessmentGradingData> getAutoSubmitAttempts(Date currentTime) {
         Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
 
 		Query query = session.createQuery("select new AssessmentGradingData(a.assessmentGradingId, a.publishedAssessmentId, " +
@@ -2988,54 +3039,7 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
 		query.setParameterList("status", Arrays.asList(AssessmentGradingData.REMOVED, AssessmentGradingData.NO_SUBMISSION) );
 		query.setTimeout(300);
 
-		List<AssessmentGradingData> list = query.list();
-
-        Iterator<AssessmentGradingData> iter = list.iterator();
-        String lastAgentId = "";
-        Long lastPublishedAssessmentId = 0L;
-        PublishedAssessmentFacade assessment = null;
-        AssessmentGradingData adata = null;
-        Map<Long, Set<PublishedSectionData>> sectionSetMap = new HashMap();
-
-
-        PublishedAssessmentService publishedAssessmentService = new PublishedAssessmentService();
-
-        boolean updateGrades = IntegrationContextFactory.getInstance() != null;
-        AutoSubmitFacadeQueriesAPI autoSubmitFacade = PersistenceService.getInstance().getAutoSubmitFacadeQueries();
-        int failures = 0;
-        
-        while (iter.hasNext()) {
-
-            try {
-                adata = (AssessmentGradingData) iter.next();
-
-                if (!lastPublishedAssessmentId.equals(adata.getPublishedAssessmentId())) {
-                    assessment = publishedAssessmentService.getPublishedAssessmentQuick(adata.getPublishedAssessmentId().toString());
-                }
-
-                // this call happens in a separate transaction, so a rollback only affects this iteration
-                boolean success = autoSubmitFacade.processAttempt(adata, updateGrades, this, assessment, currentTime, lastAgentId, lastPublishedAssessmentId, sectionSetMap);
-                if (!success) {
-                    ++failures;
-                }
-
-                lastPublishedAssessmentId = adata.getPublishedAssessmentId();
-                lastAgentId = adata.getAgentId();
-            } catch (Exception e) {
-                ++failures;
-                if (adata != null) {
-                    log.error("Error while auto submitting assessment grade data id: " + adata.getAssessmentGradingId(),
-                            e);
-                } else {
-                    log.error(e.getMessage(), e);
-                }
-            }
-            finally {
-                adata = null;
-            }
-        }
-
-        return failures;
+		return query.list();
     }
     
     private String makeHeader(String section, int sectionNumber, String question, String headerType, int questionNumber, String pool, String poolName) {
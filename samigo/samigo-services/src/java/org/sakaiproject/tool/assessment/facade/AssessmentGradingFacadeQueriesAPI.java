@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedItemData;
 import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedSectionData;
@@ -68,6 +69,15 @@ public interface AssessmentGradingFacadeQueriesAPI
   public Map<Long, List<ItemGradingData>> getItemScores(Long publishedId, Long itemId, String which, boolean loadItemGradingAttachment);
 
   public Map<Long, List<ItemGradingData>> getItemScores(final Long itemId, List<AssessmentGradingData> scores, boolean loadItemGradingAttachment);
+
+  /**
+   * Reads the item gradings of the submissions to a published assessment a row at a time, without loading them as
+   * entities, for working out statistics in one pass.
+   *
+   * @param rows given the assessment grading id, published item id, published answer id, auto score, override score
+   * and submitted date of each item grading
+   */
+  public void scrollItemScores(Long publishedId, Consumer<Object[]> rows);
   
   /**
    * This returns a hashmap of all the latest item entries, keyed by
@@ -204,6 +214,14 @@ public interface AssessmentGradingFacadeQueriesAPI
 
   public void saveOrUpdateAll(Collection<ItemGradingData> c);
 
+  /**
+   * Write the answers of item gradings already in the database, in JDBC batches. An answer isn't written if its item
+   * grading has been deleted or saved with a newer answer.
+   *
+   * @return the number of item gradings written
+   */
+  public int updateItemGradings(Collection<ItemGradingData> c, int batchSize);
+
   public PublishedAssessmentIfc getPublishedAssessmentByAssessmentGradingId(Long assessmentGradingId);
 
   public PublishedAssessmentIfc getPublishedAssessmentByPublishedItemId(Long publishedItemId);
@@ -260,10 +278,11 @@ public interface AssessmentGradingFacadeQueriesAPI
   public List getSiteNeedResubmitList(String siteId);
   
   /**
-   * Checks for assessment attempts that should be autosubmitted
-   * @return number of attempts/submissions that could not be processed due to error
+   * Finds the assessment attempts that may need autosubmitting, in order of published assessment and student,
+   * the attempts of a student starting with those for grade
+   * @param currentTime when the job started
    */
-  public int autoSubmitAssessments();
+  public List<AssessmentGradingData> getAutoSubmitAttempts(Date currentTime);
   
   public ItemGradingAttachment createItemGradingtAttachment(ItemGradingData itemGrading, String resourceId, String filename, String protocol);
   
@@ -15,6 +15,7 @@
  */
 package org.sakaiproject.tool.assessment.facade;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
@@ -23,6 +24,8 @@ import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedSectionData
 import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
 import org.sakaiproject.tool.assessment.data.ifc.assessment.AssessmentAccessControlIfc;
 import org.sakaiproject.tool.assessment.data.ifc.assessment.AssessmentBaseIfc;
+import org.sakaiproject.tool.assessment.services.AutoSubmitProgress;
+import org.sakaiproject.tool.assessment.services.GradebookScoreBatch;
 import org.sakaiproject.tool.assessment.services.GradingService;
 import org.sakaiproject.tool.assessment.util.ExtendedTimeDeliveryService;
 import org.springframework.orm.hibernate5.support.HibernateDaoSupport;
@@ -35,17 +38,19 @@ import org.springframework.orm.hibernate5.support.HibernateDaoSupport;
 public class AutoSubmitFacadeQueries extends HibernateDaoSupport implements AutoSubmitFacadeQueriesAPI
 {
 	@Override
-	public boolean processAttempt(AssessmentGradingData adata, boolean updateGrades, AssessmentGradingFacadeQueriesAPI agfq, PublishedAssessmentFacade assessment,
-			Date currentTime, String lastAgentId, Long lastPublishedAssessmentId, Map<Long, Set<PublishedSectionData>> sectionSetMap)
+	public boolean processAttempt(AssessmentGradingData adata, AssessmentGradingFacadeQueriesAPI agfq, PublishedAssessmentFacade assessment,
+			Date currentTime, String lastAgentId, Long lastPublishedAssessmentId, Map<Long, Set<PublishedSectionData>> sectionSetMap,
+			AutoSubmitProgress progress, GradebookScoreBatch gradebookScores)
 	{
 		boolean autoSubmitCurrent = false;
-		adata.setHasAutoSubmissionRun(Boolean.TRUE);
 
 		// If the assessment is deleted, or the submission is not forGrade just set hasAutoSubmissionRun = true; do not update gradebook
-		if (Boolean.FALSE.equals(adata.getForGrade()) && assessment.getStatus() != AssessmentBaseIfc.DEAD_STATUS) {
+		boolean submit = Boolean.FALSE.equals(adata.getForGrade()) && assessment.getStatus() != AssessmentBaseIfc.DEAD_STATUS;
+		Date dueDate = null;
+		if (submit) {
 
 			// SAM-1088 check to see if last user attempt was after due date
-			Date dueDate = assessment.getAssessmentAccessControl().getDueDate();
+			dueDate = assessment.getAssessmentAccessControl().getDueDate();
 			Date retractDate = assessment.getAssessmentAccessControl().getRetractDate();
 			Integer lateHandling = assessment.getAssessmentAccessControl().getLateHandling();
 			boolean acceptLate = AssessmentAccessControlIfc.ACCEPT_LATE_SUBMISSION.toString().equals(lateHandling);
@@ -65,13 +70,30 @@ public class AutoSubmitFacadeQueries extends HibernateDaoSupport implements Auto
 			}
 
 			// If the due date or retract date hasn't passed yet, go on to the next one, don't consider it yet
-			if (acceptLate && retractDate != null && (currentTime.before(retractDate) || adata.getAttemptDate().after(retractDate))) {
-				return true;
-			}
-			else if ( (!acceptLate || retractDate == null) && dueDate != null && currentTime.before(dueDate)) {
+			if ((acceptLate && retractDate != null && (currentTime.before(retractDate) || adata.getAttemptDate().after(retractDate)))
+					|| ((!acceptLate || retractDate == null) && dueDate != null && currentTime.before(dueDate))) {
+				progress.notDue();
 				return true;
 			}
+		}
 
+		// an earlier run submitted this attempt but could not send its score, it is not saved again so it is left as it is
+		if (!submit && gradebookScores != null && Boolean.TRUE.equals(adata.getForGrade())
+				&& assessment.getStatus() != AssessmentBaseIfc.DEAD_STATUS && claimUnsentScore(adata)) {
+			adata.setHasAutoSubmissionRun(Boolean.TRUE);
+			new GradingService().addGradebookScore(gradebookScores, adata, assessment);
+			progress.resent();
+			return true;
+		}
+
+		// another node running the job, or the student, may have got to this attempt since it was found
+		if (!claimAttempt(adata)) {
+			progress.claimedElsewhere();
+			return true;
+		}
+		adata.setHasAutoSubmissionRun(Boolean.TRUE);
+
+		if (submit) {
 			// If it's an "empty" submission don't autosubmit; change status and save (status = 5, hasAutoSubmitRun = true)
 			// We determine "empty" if it has an attempt date but submitted date is null
 			// Attempt date is populated as soon as student clicks "Begin"; submit date is populated as soon as student makes any progress (next, save, submit)
@@ -118,15 +140,75 @@ public class AutoSubmitFacadeQueries extends HibernateDaoSupport implements Auto
 
 		if (autoSubmitCurrent) {
 			GradingService gs = new GradingService();
-			if (updateGrades) {
-				gs.notifyGradebookByScoringType(adata, assessment); // this may throw runtime exceptions triggering a rollback
-			}
 
-			// if we get this far, the processing of this attempt was successful so it is now safe to
-			// update the log and email the student (triggered by the same method)
+			// the attempt is saved so it is now safe to update the log and email the student (triggered by the same method)
 			gs.updateAutosubmitEventLog(adata);
+
+			// the score goes to the gradebook with the others of the chunk once they are all in
+			if (gradebookScores != null) {
+				gs.addGradebookScore(gradebookScores, adata, assessment);
+			}
+			progress.submitted();
+		}
+		else if (submit) {
+			progress.empty();
+		}
+		else {
+			progress.skipped();
 		}
 
 		return true;
 	}
+
+	/**
+	 * Mark an attempt as auto submitted if it is still as it was found, holding its row until the transaction ends
+	 * @return false if another node has marked it, or it has been changed, since it was found
+	 */
+	private boolean claimAttempt(AssessmentGradingData adata)
+	{
+		Integer claimed = getHibernateTemplate().execute(session -> session.createQuery(
+				"update AssessmentGradingData set hasAutoSubmissionRun = :run " +
+				" where assessmentGradingId = :id and status = :status " +
+				" and (hasAutoSubmissionRun = :notRun or hasAutoSubmissionRun is null)")
+				.setParameter("run", Boolean.TRUE)
+				.setParameter("notRun", Boolean.FALSE)
+				.setParameter("id", adata.getAssessmentGradingId())
+				.setParameter("status", adata.getStatus())
+				.executeUpdate());
+		return claimed != null && claimed > 0;
+	}
+
+	/**
+	 * Mark an attempt as done if it was auto submitted by an earlier run that left it for its score to be sent again
+	 * @return false if it is not such an attempt, or another node has marked it
+	 */
+	private boolean claimUnsentScore(AssessmentGradingData adata)
+	{
+		Integer claimed = getHibernateTemplate().execute(session -> session.createQuery(
+				"update AssessmentGradingData set hasAutoSubmissionRun = :run " +
+				" where assessmentGradingId = :id and status = :status and isAutoSubmitted = :run " +
+				" and (hasAutoSubmissionRun = :notRun or hasAutoSubmissionRun is null)")
+				.setParameter("run", Boolean.TRUE)
+				.setParameter("notRun", Boolean.FALSE)
+				.setParameter("id", adata.getAssessmentGradingId())
+				.setParameter("status", adata.getStatus())
+				.executeUpdate());
+		return claimed != null && claimed > 0;
+	}
+
+	@Override
+	public int releaseAttempts(Collection<Long> assessmentGradingIds)
+	{
+		if (assessmentGradingIds.isEmpty()) {
+			return 0;
+		}
+		Integer released = getHibernateTemplate().execute(session -> session.createQuery(
+				"update AssessmentGradingData set hasAutoSubmissionRun = :notRun " +
+				" where assessmentGradingId in (:ids) and isAutoSubmitted = :auto")
+				.setParameter("notRun", Boolean.FALSE)
+				.setParameter("auto", Boolean.TRUE)
+				.setParameterList("ids", assessmentGradingIds)
+				.executeUpdate());
+		return released != null ? released : 0;
+	}
 }
@@ -15,11 +15,14 @@
  */
 package org.sakaiproject.tool.assessment.facade;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
 import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedSectionData;
 import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+import org.sakaiproject.tool.assessment.services.AutoSubmitProgress;
+import org.sakaiproject.tool.assessment.services.GradebookScoreBatch;
 
 /**
  * Queries for persisting a single attempt/submission and all related updates in a single transaction. This is important
@@ -31,18 +34,31 @@ import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
 public interface AutoSubmitFacadeQueriesAPI
 {
 	/**
-	 * Persist updates to a single assessment attempt/submission to the database. This includes updating the attempt,
-	 * the Gradebook integration, and the Samigo event log, as well as firing an event to trigger the email notification system.
+	 * Persist updates to a single assessment attempt/submission to the database. This includes updating the attempt
+	 * and the Samigo event log, as well as firing an event to trigger the email notification system. The attempt is
+	 * claimed first, so when the job runs on several nodes at once only one of them submits it.
 	 * @param adata the data for this attempt/submission
-	 * @param updateGrades if integration with Gradebook is a possibility
 	 * @param agfq service for persisting the attempt
 	 * @param assessment the assessment
 	 * @param currentTime timestamp when the job started
 	 * @param lastAgentId agent id from the previously processed attempt
 	 * @param lastPublishedAssessmentId assessment id from the previously processed attempt
 	 * @param sectionSetMap map of assessment id to assessment sections (aka parts)
+	 * @param progress counts what was done with the attempt
+	 * @param gradebookScores where the gradebook score of a submitted attempt is added to be sent later, null if
+	 * integration with Gradebook is not a possibility. The score of an attempt left by {@link #releaseAttempts} is
+	 * added again.
 	 * @return true if all processing succeeded
 	 */
-	public boolean processAttempt(AssessmentGradingData adata, boolean updateGrades, AssessmentGradingFacadeQueriesAPI agfq, PublishedAssessmentFacade assessment,
-			Date currentTime, String lastAgentId, Long lastPublishedAssessmentId, Map<Long, Set<PublishedSectionData>> sectionSetMap);
+	public boolean processAttempt(AssessmentGradingData adata, AssessmentGradingFacadeQueriesAPI agfq, PublishedAssessmentFacade assessment,
+			Date currentTime, String lastAgentId, Long lastPublishedAssessmentId, Map<Long, Set<PublishedSectionData>> sectionSetMap,
+			AutoSubmitProgress progress, GradebookScoreBatch gradebookScores);
+
+	/**
+	 * Unmark auto submitted attempts whose gradebook scores could not be sent, so the next run finds them again and
+	 * sends their scores.
+	 * @param assessmentGradingIds the attempts
+	 * @return the number of attempts unmarked
+	 */
+	public int releaseAttempts(Collection<Long> assessmentGradingIds);
 }
@@ -47,6 +47,7 @@ import org.sakaiproject.tool.assessment.data.ifc.assessment.PublishedAssessmentI
 import org.sakaiproject.tool.assessment.data.ifc.assessment.SectionDataIfc;
 import org.sakaiproject.tool.assessment.data.ifc.shared.TypeIfc;
 import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
+import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentSnapshot;
 
 @Slf4j
 public class PublishedAssessmentFacade
@@ -112,6 +113,8 @@ public class PublishedAssessmentFacade
   private boolean selected;
   private Long categoryId;
   private boolean pastDue = false;
+  // the snapshot this is a copy of, null if it was loaded on its own
+  @Getter @Setter private transient PublishedAssessmentSnapshot snapshot;
 
   public PublishedAssessmentFacade() {
   }
@@ -2434,6 +2434,19 @@ public class PublishedAssessmentFacadeQueries extends HibernateDaoSupport implem
 		}
 		return AssessmentBaseIfc.DEAD_STATUS;
 	}
+
+	public String getPublishedAssessmentVersion(Long publishedAssessmentId) {
+		final HibernateCallback<List<Object[]>> hcb = session -> session
+				.createQuery("select p.status, p.lastModifiedDate from PublishedAssessmentData p where p.publishedAssessmentId = :id")
+				.setParameter("id", publishedAssessmentId)
+				.list();
+		List<Object[]> l = getHibernateTemplate().execute(hcb);
+		if (l.isEmpty()) {
+			return null;
+		}
+		Date lastModified = (Date) l.get(0)[1];
+		return l.get(0)[0] + "-" + (lastModified != null ? lastModified.getTime() : 0);
+	}
 	
 	public AssessmentAttachmentIfc createAssessmentAttachment(AssessmentIfc assessment, String resourceId, String filename, String protocol) {
 		PublishedAssessmentAttachment attach = null;
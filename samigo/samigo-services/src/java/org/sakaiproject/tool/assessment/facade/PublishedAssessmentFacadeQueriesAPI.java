@@ -293,6 +293,12 @@ public interface PublishedAssessmentFacadeQueriesAPI
   public List getReleaseToGroupIdsForPublishedAssessment(final String publishedAssessmentId);
   
   public Integer getPublishedAssessmentStatus(Long publishedAssessmentId);
+
+  /**
+   * @return the status and last modified date of a published assessment, which change whenever it does, or null if
+   * there is no such assessment
+   */
+  public String getPublishedAssessmentVersion(Long publishedAssessmentId);
   
   public AssessmentAttachmentIfc createAssessmentAttachment(
 			AssessmentIfc assessment, String resourceId, String filename,
@@ -78,8 +78,17 @@ public class AutoSubmitAssessmentsJob implements StatefulJob {
 
 		log.info("Start Job: {}", whoAmI);
 		
+		int threads = serverConfigurationService.getInt("samigo.autoSubmit.threads", 4);
+		int chunkSize = serverConfigurationService.getInt("samigo.autoSubmit.chunkSize", 50);
+		long reportInterval = serverConfigurationService.getInt("samigo.autoSubmit.progressInterval", 30) * 1000L;
+
+		// the progress so far is the result of the job, and is logged, while it runs
+		AutoSubmitProgress progress = new AutoSubmitProgress();
 		GradingService gradingService = new GradingService();
-		int failures = gradingService.autoSubmitAssessments();
+		int failures = gradingService.autoSubmitAssessments(threads, chunkSize, reportInterval, progress, p -> {
+			jobInfo.setResult(p.toString());
+			log.info("Job: {} {}", whoAmI, p);
+		});
 		
 		if (failures > 0)
 		{
@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.sakaiproject.thread_local.cover.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedSectionData;
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+import org.sakaiproject.tool.assessment.facade.AssessmentGradingFacadeQueriesAPI;
+import org.sakaiproject.tool.assessment.facade.AutoSubmitFacadeQueriesAPI;
+import org.sakaiproject.tool.assessment.facade.PublishedAssessmentFacade;
+import org.sakaiproject.tool.assessment.integration.context.IntegrationContextFactory;
+import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
+import org.sakaiproject.tool.cover.SessionManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Auto submits the attempts that are past due on a pool of workers, a chunk of the students of one published
+ * assessment at a time. The attempts of a student are worked through in order by one worker as the later ones
+ * update the first, and each attempt is claimed in its own transaction so nodes running the job at the same time
+ * never both submit it. The gradebook scores of a chunk are sent together once its attempts are in.
+ */
+@Slf4j
+class AutoSubmitEngine {
+
+  private final int threads;
+  private final int chunkSize;
+  private final long reportInterval;
+
+  AutoSubmitEngine(int threads, int chunkSize, long reportInterval) {
+    this.threads = Math.max(1, threads);
+    this.chunkSize = Math.max(1, chunkSize);
+    this.reportInterval = reportInterval;
+  }
+
+  /**
+   * The students of one published assessment, each with their attempts in the order they are to be worked through
+   */
+  static class Chunk {
+    final Long publishedAssessmentId;
+    final List<List<AssessmentGradingData>> students = new ArrayList<>();
+
+    Chunk(Long publishedAssessmentId) {
+      this.publishedAssessmentId = publishedAssessmentId;
+    }
+
+    int getAttempts() {
+      return students.stream().mapToInt(List::size).sum();
+    }
+  }
+
+  /**
+   * Split attempts ordered by published assessment and student into chunks of at most chunkSize students, never
+   * splitting the attempts of a student or putting two published assessments in one chunk
+   */
+  static List<Chunk> chunk(List<AssessmentGradingData> attempts, int chunkSize) {
+    List<Chunk> chunks = new ArrayList<>();
+    Chunk chunk = null;
+    List<AssessmentGradingData> student = null;
+    for (AssessmentGradingData attempt : attempts) {
+      boolean sameAssessment = chunk != null && chunk.publishedAssessmentId.equals(attempt.getPublishedAssessmentId());
+      if (sameAssessment && student.get(0).getAgentId().equals(attempt.getAgentId())) {
+        student.add(attempt);
+        continue;
+      }
+      if (!sameAssessment || chunk.students.size() >= chunkSize) {
+        chunk = new Chunk(attempt.getPublishedAssessmentId());
+        chunks.add(chunk);
+      }
+      student = new ArrayList<>();
+      student.add(attempt);
+      chunk.students.add(student);
+    }
+    return chunks;
+  }
+
+  /**
+   * @return the number of attempts and gradebook scores that could not be done
+   */
+  int run(AutoSubmitProgress progress, Consumer<AutoSubmitProgress> listener) {
+    Date currentTime = new Date();
+    List<Chunk> chunks = chunk(PersistenceService.getInstance().getAssessmentGradingFacadeQueries().getAutoSubmitAttempts(currentTime), chunkSize);
+    progress.found(chunks.stream().mapToInt(Chunk::getAttempts).sum(), chunks.size());
+    log.info("Auto submitting {} attempts in {} chunks on {} workers", progress.getAttempts(), chunks.size(), Math.min(threads, chunks.size()));
+
+    if (threads == 1 || chunks.size() <= 1) {
+      for (Chunk chunk : chunks) {
+        process(chunk, currentTime, progress);
+      }
+    } else {
+      // the workers act as the user running the job
+      Session session = SessionManager.getCurrentSession();
+      AtomicInteger count = new AtomicInteger();
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks.size()), r -> {
+        Thread thread = new Thread(r, "samigo-auto-submit-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+      for (Chunk chunk : chunks) {
+        executor.execute(() -> {
+          try {
+            SessionManager.setCurrentSession(session);
+            process(chunk, currentTime, progress);
+          } finally {
+            ThreadLocalManager.clear();
+          }
+        });
+      }
+      executor.shutdown();
+      try {
+        while (!executor.awaitTermination(reportInterval > 0 ? reportInterval : Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+          if (listener != null) {
+            listener.accept(progress);
+          }
+        }
+      } catch (InterruptedException e) {
+        // the attempts not reached are left for the next run
+        log.warn("Auto submit interrupted with {} of {} attempts done", progress.getDone(), progress.getAttempts());
+        executor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    progress.done();
+    if (listener != null) {
+      listener.accept(progress);
+    }
+    return progress.getFailures();
+  }
+
+  private void process(Chunk chunk, Date currentTime, AutoSubmitProgress progress) {
+    PublishedAssessmentFacade assessment;
+    try {
+      assessment = new PublishedAssessmentService().getPublishedAssessmentQuick(chunk.publishedAssessmentId.toString());
+    } catch (Exception e) {
+      log.error("Could not load published assessment {} to auto submit {} attempts", chunk.publishedAssessmentId, chunk.getAttempts(), e);
+      progress.failed(chunk.getAttempts());
+      progress.chunkDone();
+      return;
+    }
+
+    AssessmentGradingFacadeQueriesAPI agfq = PersistenceService.getInstance().getAssessmentGradingFacadeQueries();
+    AutoSubmitFacadeQueriesAPI autoSubmitFacade = PersistenceService.getInstance().getAutoSubmitFacadeQueries();
+    Map<Long, Set<PublishedSectionData>> sectionSetMap = new HashMap<>();
+    boolean updateGrades = IntegrationContextFactory.getInstance() != null;
+    GradebookScoreBatch gradebookScores = updateGrades ? new GradebookScoreBatch(chunk.publishedAssessmentId) : null;
+
+    for (List<AssessmentGradingData> student : chunk.students) {
+      String lastAgentId = "";
+      Long lastPublishedAssessmentId = 0L;
+      for (AssessmentGradingData adata : student) {
+        try {
+          // this call happens in a separate transaction, so a rollback only affects this attempt
+          if (!autoSubmitFacade.processAttempt(adata, agfq, assessment, currentTime, lastAgentId, lastPublishedAssessmentId,
+              sectionSetMap, progress, gradebookScores)) {
+            progress.failed();
+          }
+          lastPublishedAssessmentId = adata.getPublishedAssessmentId();
+          lastAgentId = adata.getAgentId();
+        } catch (Exception e) {
+          progress.failed();
+          log.error("Error while auto submitting assessment grade data id: {}", adata.getAssessmentGradingId(), e);
+        }
+      }
+    }
+
+    if (gradebookScores != null && !gradebookScores.isEmpty()) {
+      Set<String> unsent;
+      try {
+        unsent = new GradingService().notifyGradebook(gradebookScores, assessment);
+      } catch (Exception e) {
+        log.error("Could not send {} scores of published assessment {} to the gradebook", gradebookScores.size(), chunk.publishedAssessmentId, e);
+        unsent = gradebookScores.getScores().keySet();
+      }
+      if (!unsent.isEmpty()) {
+        // the attempts are in, so the next run is left to send their scores
+        List<Long> attempts = gradebookScores.getAttempts(unsent);
+        try {
+          int released = autoSubmitFacade.releaseAttempts(attempts);
+          log.warn("Left {} attempts of published assessment {} for the next run to send their gradebook scores", released, chunk.publishedAssessmentId);
+        } catch (Exception e) {
+          log.error("Could not leave the attempts {} of published assessment {} for the next run to send their gradebook scores",
+              attempts, chunk.publishedAssessmentId, e);
+        }
+      }
+      progress.gradebook(gradebookScores.size() - unsent.size(), unsent.size());
+    }
+    progress.chunkDone();
+  }
+}
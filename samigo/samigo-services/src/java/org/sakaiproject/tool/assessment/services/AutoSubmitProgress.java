@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what a run of the auto submit job has done with the attempts it found. It is updated by all of the workers
+ * of the run at once and can be read while they go.
+ */
+public class AutoSubmitProgress {
+
+  private final long start = System.currentTimeMillis();
+  private volatile int attempts;
+  private volatile int chunks;
+  private volatile long end;
+
+  private final LongAdder chunksDone = new LongAdder();
+  private final LongAdder submitted = new LongAdder();
+  private final LongAdder empty = new LongAdder();
+  private final LongAdder notDue = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder claimedElsewhere = new LongAdder();
+  private final LongAdder resent = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder gradebookScores = new LongAdder();
+  private final LongAdder gradebookFailures = new LongAdder();
+
+  public void found(int attempts, int chunks) {
+    this.attempts = attempts;
+    this.chunks = chunks;
+  }
+
+  public void chunkDone() {
+    chunksDone.increment();
+  }
+
+  /**
+   * An attempt was submitted for grade
+   */
+  public void submitted() {
+    submitted.increment();
+  }
+
+  /**
+   * An attempt that was begun but never saved was closed without a submission
+   */
+  public void empty() {
+    empty.increment();
+  }
+
+  /**
+   * An attempt was left for a later run as its student still has time
+   */
+  public void notDue() {
+    notDue.increment();
+  }
+
+  /**
+   * An attempt only needed marking as done, it was already for grade or its assessment is deleted
+   */
+  public void skipped() {
+    skipped.increment();
+  }
+
+  /**
+   * An attempt had been taken by another node, or changed, since it was found
+   */
+  public void claimedElsewhere() {
+    claimedElsewhere.increment();
+  }
+
+  /**
+   * An attempt submitted by an earlier run was found again as that run could not send its gradebook score
+   */
+  public void resent() {
+    resent.increment();
+  }
+
+  public void failed() {
+    failed.increment();
+  }
+
+  public void failed(int attempts) {
+    failed.add(attempts);
+  }
+
+  public void gradebook(int sent, int failures) {
+    gradebookScores.add(sent);
+    gradebookFailures.add(failures);
+  }
+
+  public void done() {
+    end = System.currentTimeMillis();
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public long getDone() {
+    return submitted.sum() + empty.sum() + notDue.sum() + skipped.sum() + claimedElsewhere.sum() + resent.sum() + failed.sum();
+  }
+
+  public long getSubmitted() {
+    return submitted.sum();
+  }
+
+  public long getClaimedElsewhere() {
+    return claimedElsewhere.sum();
+  }
+
+  /**
+   * @return the attempts and the gradebook scores that could not be done
+   */
+  public int getFailures() {
+    return (int) (failed.sum() + gradebookFailures.sum());
+  }
+
+  @Override
+  public String toString() {
+    long elapsed = (end > 0 ? end : System.currentTimeMillis()) - start;
+    return getDone() + " of " + attempts + " attempts done, " + chunksDone.sum() + " of " + chunks + " chunks in " + elapsed + " ms"
+        + ": " + submitted.sum() + " submitted, " + empty.sum() + " without answers, " + notDue.sum() + " not due yet, "
+        + skipped.sum() + " only marked, " + claimedElsewhere.sum() + " taken by another node, " + resent.sum() + " to send to the gradebook again, "
+        + failed.sum() + " failed, " + gradebookScores.sum() + " gradebook scores sent, " + gradebookFailures.sum() + " not sent";
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.util.Precision;
+
+import lombok.Getter;
+
+/**
+ * The gradebook scores, and comments, of students of one published assessment to send to the gradebook together,
+ * with the attempts they come from. Scores are rounded the way a single score is when it is sent.
+ */
+public class GradebookScoreBatch {
+
+  @Getter private final Long publishedAssessmentId;
+  private final Map<String, Double> scores = new LinkedHashMap<>();
+  private final Map<String, String> comments = new LinkedHashMap<>();
+  private final Map<String, List<Long>> attempts = new LinkedHashMap<>();
+
+  public GradebookScoreBatch(Long publishedAssessmentId) {
+    this.publishedAssessmentId = publishedAssessmentId;
+  }
+
+  /**
+   * Add the score of a student for an attempt, replacing any score added before. The comment is sent even if it is
+   * blank, as a single score's is, so it replaces the one in the gradebook.
+   */
+  public void add(String agentId, Long assessmentGradingId, Double score, String comment) {
+    if (score == null) {
+      return;
+    }
+    scores.put(agentId, Precision.round(score, 2));
+    comments.put(agentId, comment);
+    attempts.computeIfAbsent(agentId, a -> new ArrayList<>()).add(assessmentGradingId);
+  }
+
+  public Map<String, Double> getScores() {
+    return Collections.unmodifiableMap(scores);
+  }
+
+  public Map<String, String> getComments() {
+    return Collections.unmodifiableMap(comments);
+  }
+
+  /**
+   * @return the attempts the scores of some students come from
+   */
+  public List<Long> getAttempts(Collection<String> agentIds) {
+    List<Long> ids = new ArrayList<>();
+    for (String agentId : agentIds) {
+      ids.addAll(attempts.getOrDefault(agentId, Collections.emptyList()));
+    }
+    return ids;
+  }
+
+  public boolean isEmpty() {
+    return scores.isEmpty();
+  }
+
+  public int size() {
+    return scores.size();
+  }
+}
@@ -45,6 +45,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.time.Instant;
@@ -154,6 +155,8 @@ public class GradingService
   private List<String> texts;
   @Getter @Setter
   private HashMap<Integer, String> answersMap = new HashMap<Integer, String>();
+  // whether the answers being stored come from an autosave, and so may be written behind
+  @Setter private boolean autoSave;
   private static final int MAX_ERROR_TRIES = 100;
 	  
   /**
@@ -470,9 +473,14 @@ public class GradingService
   public Map getLastItemGradingData(String publishedId, String agentId)
   {
     try {
-      return PersistenceService.getInstance().
+      Map itemGradings = PersistenceService.getInstance().
         getAssessmentGradingFacadeQueries()
           .getLastItemGradingData(Long.valueOf(publishedId), agentId);
+      ItemGradingWriteBehind writeBehind = getItemGradingWriteBehind();
+      if (writeBehind != null) {
+        writeBehind.readBack(itemGradings);
+      }
+      return itemGradings;
     } catch (Exception e) {
       log.error(e.getMessage(), e);
       return new HashMap();
@@ -782,8 +790,10 @@ public class GradingService
   
   public Set getItemGradingSet(String assessmentGradingId){
     try{
-      return PersistenceService.getInstance().getAssessmentGradingFacadeQueries().
+      Set<ItemGradingData> itemGradings = PersistenceService.getInstance().getAssessmentGradingFacadeQueries().
                getItemGradingSet(Long.valueOf(assessmentGradingId));
+      ItemGradingWriteBehind writeBehind = getItemGradingWriteBehind();
+      return writeBehind != null ? writeBehind.readBack(itemGradings) : itemGradings;
     }
     catch(Exception e){
         log.error(e.getMessage(), e);
@@ -1246,7 +1256,16 @@ public class GradingService
       // changed. Yes, assessmentGrading's total score will be out of sync at this point, I am afraid. It
       // would be in sync again once the whole method is completed sucessfully. 
       if (persistToDB) {
-    	  saveOrUpdateAll(itemGradingSet);
+    	  ItemGradingWriteBehind writeBehind = getItemGradingWriteBehind();
+    	  if (autoSave && !regrade && writeBehind != null && writeBehind.isEnabled()) {
+    		  // changed answers are held to be written with later ones, new ones need their rows now
+    		  saveOrUpdateAll(new ArrayList<>(writeBehind.buffer(itemGradingSet)));
+    	  } else {
+    		  saveOrUpdateAll(itemGradingSet);
+    		  if (writeBehind != null) {
+    			  writeBehind.flush(data.getAssessmentGradingId());
+    		  }
+    	  }
       }
       log.debug("****x5. "+(new Date()).getTime());
 
@@ -1360,6 +1379,94 @@ public class GradingService
     }
   }
 
+  /**
+   * Add the score the gradebook should have for a submission to a batch, going by the scoring type like
+   * notifyGradebookByScoringType but without changing the submission.
+   */
+  public void addGradebookScore(GradebookScoreBatch batch, AssessmentGradingData data, PublishedAssessmentIfc pub) {
+    if (pub == null || pub.getEvaluationModel() == null || !updateGradebook(data, pub)) {
+      return;
+    }
+    Integer scoringType = pub.getEvaluationModel().getScoringType();
+    AssessmentGradingData d = data;
+    Double score = data.getFinalScore();
+    if (EvaluationModelIfc.HIGHEST_SCORE.equals(scoringType)) {
+      final AssessmentGradingData highestAG = getHighestSubmittedAssessmentGrading(pub.getPublishedAssessmentId().toString(), data.getAgentId());
+      if (highestAG != null) {
+        d = highestAG;
+        score = highestAG.getFinalScore();
+      }
+    }
+    else if (EvaluationModelIfc.AVERAGE_SCORE.equals(scoringType) && data.getStatus() != AssessmentGradingData.NO_SUBMISSION) {
+      score = PersistenceService.getInstance().getAssessmentGradingFacadeQueries().
+        getAverageSubmittedAssessmentGrading(pub.getPublishedAssessmentId(), data.getAgentId());
+    }
+    batch.add(data.getAgentId(), data.getAssessmentGradingId(), score, d.getComments());
+  }
+
+  /**
+   * Send a batch of scores to the gradebook in one call, retrying like a single score. If it still fails the scores
+   * are sent one at a time so one bad score does not hold back the rest.
+   * @return the students whose scores could not be sent
+   */
+  public Set<String> notifyGradebook(GradebookScoreBatch batch, PublishedAssessmentIfc pub) {
+    Set<String> failures = new HashSet<>();
+    if (batch.isEmpty()) {
+      return failures;
+    }
+    org.sakaiproject.grading.api.GradingService g = null;
+    if (IntegrationContextFactory.getInstance().isIntegrated()) {
+      g = (org.sakaiproject.grading.api.GradingService) SpringBeanLocator.getInstance().
+        getBean("org.sakaiproject.grading.api.GradingService");
+    }
+    GradebookServiceHelper gbsHelper = IntegrationContextFactory.getInstance().getGradebookServiceHelper();
+    Long publishedAssessmentId = batch.getPublishedAssessmentId();
+
+    int retryCount = PersistenceService.getInstance().getPersistenceHelper().getRetryCount();
+    try {
+      while (retryCount > 0) {
+        try {
+          gbsHelper.updateExternalAssessmentScores(publishedAssessmentId, batch.getScores(), g);
+          retryCount = 0;
+        }
+        catch (org.sakaiproject.grading.api.AssessmentNotFoundException ante) {
+          log.warn("problem sending grades to gradebook: {}", ante.getMessage());
+          retryCount = retry(retryCount, ante, pub, AssessmentIfc.RETRACT_FOR_EDIT_STATUS.equals(pub.getStatus()));
+        }
+        catch (Exception e) {
+          retryCount = retry(retryCount, e, pub, false);
+        }
+      }
+    }
+    catch (GradebookServiceException e) {
+      log.warn("Could not send {} scores of published assessment {} to the gradebook together, sending them one at a time",
+          batch.size(), publishedAssessmentId);
+      for (Map.Entry<String, Double> score : batch.getScores().entrySet()) {
+        try {
+          gbsHelper.updateExternalAssessmentScores(publishedAssessmentId, Collections.singletonMap(score.getKey(), score.getValue()), g);
+        }
+        catch (Exception ex) {
+          failures.add(score.getKey());
+          log.error("Could not send the score of {} for published assessment {} to the gradebook: {}",
+              score.getKey(), publishedAssessmentId, ex.toString());
+        }
+      }
+    }
+
+    for (Map.Entry<String, String> comment : batch.getComments().entrySet()) {
+      if (failures.contains(comment.getKey())) {
+        continue;
+      }
+      try {
+        gbsHelper.updateExternalAssessmentComment(publishedAssessmentId, comment.getKey(), comment.getValue(), g);
+      }
+      catch (Exception ex) {
+        log.warn("Error sending comments to gradebook: {}", ex.getMessage());
+      }
+    }
+    return failures;
+  }
+
   private double getScoreByQuestionType(ItemGradingData itemGrading, ItemDataIfc item,
                                        Long itemType, Map publishedItemTextHash, 
                                        Map totalItems, Map fibAnswersMap, Map<Long, Map<Long,Set<EMIScore>>> emiScoresMap,
@@ -2392,6 +2499,10 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
   public void deleteAll(Collection c)
   {
     try {
+      ItemGradingWriteBehind writeBehind = getItemGradingWriteBehind();
+      if (writeBehind != null) {
+        writeBehind.discard(c);
+      }
       PersistenceService.getInstance().
         getAssessmentGradingFacadeQueries().deleteAll(c);
     } catch (Exception e) {
@@ -2434,9 +2545,17 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
      }
   }
 
+  private ItemGradingWriteBehind getItemGradingWriteBehind() {
+    return PersistenceService.getInstance().getItemGradingWriteBehind();
+  }
+
   public void saveOrUpdateAll(Collection<ItemGradingData> c)
   {
     try {
+      ItemGradingWriteBehind writeBehind = getItemGradingWriteBehind();
+      if (writeBehind != null) {
+        writeBehind.discard(c);
+      }
       PersistenceService.getInstance().
         getAssessmentGradingFacadeQueries().saveOrUpdateAll(c);
     } catch (Exception e) {
@@ -3654,12 +3773,28 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
   }
   
   public int autoSubmitAssessments() {
+    return autoSubmitAssessments(1, Integer.MAX_VALUE, 0, new AutoSubmitProgress(), null);
+  }
+
+  /**
+   * Auto submit the attempts that are past due
+   * @param threads how many workers submit chunks at once
+   * @param chunkSize how many students of a published assessment a chunk has
+   * @param reportInterval how often in ms to pass the progress to the listener while the workers go, 0 for only at the end
+   * @param listener passed the progress, may be null
+   * @return the number of attempts and gradebook scores that could not be done
+   */
+  public int autoSubmitAssessments(int threads, int chunkSize, long reportInterval, AutoSubmitProgress progress,
+      Consumer<AutoSubmitProgress> listener) {
 	  try {
-		  return PersistenceService.getInstance().
-		  getAssessmentGradingFacadeQueries().autoSubmitAssessments();
+		  ItemGradingWriteBehind writeBehind = getItemGradingWriteBehind();
+		  if (writeBehind != null) {
+			  writeBehind.flushAll();
+		  }
+		  return new AutoSubmitEngine(threads, chunkSize, reportInterval).run(progress, listener);
 	  } catch (Exception e) {
 		  log.error(e.getMessage(), e);
-		  return 1;
+		  return Math.max(1, progress.getFailures());
 	  }
   }
   
@@ -3717,6 +3852,10 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
   }
   
   public void completeItemGradingData(AssessmentGradingData assessmentGradingData)  {
+      ItemGradingWriteBehind writeBehind = getItemGradingWriteBehind();
+      if (writeBehind != null) {
+          writeBehind.flush(assessmentGradingData.getAssessmentGradingId());
+      }
       PersistenceService.getInstance().getAssessmentGradingFacadeQueries().
       completeItemGradingData(assessmentGradingData);
   }
@@ -0,0 +1,351 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.AnswerIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.ItemDataIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.ItemTextIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.PublishedAssessmentIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.SectionDataIfc;
+
+/**
+ * Item analysis of the submissions to a published assessment: for each item how many submissions it was in, how
+ * many answered it and got it right, how the upper and lower 27% of submissions by total score did on it, and how
+ * many times each of its answers was picked. It is worked out in one pass over the item gradings of the submissions
+ * and kept in arrays indexed by item and answer, the item gradings themselves aren't kept.
+ *
+ * An item is right when its score is its full score. For items in a part drawn at random the upper and lower groups
+ * are taken from the submissions the item was drawn for.
+ */
+public class ItemAnalysis {
+
+  private static final double EPSILON = 0.0001;
+
+  private static final byte SEEN = 1;
+  private static final byte ANSWERED = 2;
+  private static final byte SUBMITTED = 4;
+
+  private final String version;
+  private final long[] gradingIds;
+  private final double[] finalScores;
+  private final long created = System.currentTimeMillis();
+
+  private final Map<Long, Integer> items;
+  private final Map<Long, Integer> answers;
+  private final int[] seen;
+  private final int[] responses;
+  private final int[] zeroAnswers;
+  private final int[] correct;
+  private final double[] scores;
+  private final int[] groupSize;
+  private final int[] upperCorrect;
+  private final int[] lowerCorrect;
+  private final int[] answerCounts;
+
+  private ItemAnalysis(Builder builder) {
+    this.version = builder.version;
+    this.gradingIds = builder.gradingIds;
+    this.finalScores = builder.finalScores;
+    this.items = builder.items;
+    this.answers = builder.answers;
+    this.answerCounts = builder.answerCounts;
+
+    int itemCount = items.size();
+    int submissionCount = gradingIds.length;
+    seen = new int[itemCount];
+    responses = new int[itemCount];
+    zeroAnswers = new int[itemCount];
+    correct = new int[itemCount];
+    scores = new double[itemCount];
+    groupSize = new int[itemCount];
+    upperCorrect = new int[itemCount];
+    lowerCorrect = new int[itemCount];
+
+    // the submissions of the group of an item, lowest total score first
+    int[] group = new int[submissionCount];
+    for (int i = 0; i < itemCount; i++) {
+      int members = 0;
+      for (int s = 0; s < submissionCount; s++) {
+        int cell = s * itemCount + i;
+        byte state = builder.states[cell];
+        if ((state & SEEN) != 0) {
+          seen[i]++;
+          if ((state & ANSWERED) != 0) {
+            responses[i]++;
+          }
+          if ((state & SUBMITTED) == 0) {
+            zeroAnswers[i]++;
+          }
+          if (builder.isCorrect(i, cell)) {
+            correct[i]++;
+          }
+          scores[i] += builder.scores[cell];
+        }
+        if (!builder.random[i] || (state & SEEN) != 0) {
+          group[members++] = s;
+        }
+      }
+
+      int size = members * 27 / 100;
+      if (size == 0 && !builder.random[i]) {
+        size = Math.min(1, members);
+      }
+      groupSize[i] = size;
+      for (int k = 0; k < size; k++) {
+        if (builder.isCorrect(i, group[k] * itemCount + i)) {
+          lowerCorrect[i]++;
+        }
+        if (builder.isCorrect(i, group[members - 1 - k] * itemCount + i)) {
+          upperCorrect[i]++;
+        }
+      }
+    }
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  long getCreated() {
+    return created;
+  }
+
+  /**
+   * @return true if this was worked out at the given version of the assessment from the same submissions, in the
+   * same order and with the same scores
+   */
+  public boolean isCurrent(String version, List<AssessmentGradingData> ranked) {
+    if (!this.version.equals(version) || ranked.size() != gradingIds.length) {
+      return false;
+    }
+    for (int s = 0; s < gradingIds.length; s++) {
+      AssessmentGradingData submission = ranked.get(s);
+      if (gradingIds[s] != submission.getAssessmentGradingId() || Double.compare(finalScores[s], score(submission)) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int getNumberOfSubmissions() {
+    return gradingIds.length;
+  }
+
+  private int index(Long itemId) {
+    Integer index = items.get(itemId);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * @return the number of submissions the item was in
+   */
+  public int getSeen(Long itemId) {
+    int i = index(itemId);
+    return i < 0 ? 0 : seen[i];
+  }
+
+  /**
+   * @return the number of submissions that picked an answer of the item
+   */
+  public int getResponses(Long itemId) {
+    int i = index(itemId);
+    return i < 0 ? 0 : responses[i];
+  }
+
+  /**
+   * @return the number of submissions the item was in but never answered
+   */
+  public int getNumberOfStudentsWithZeroAnswers(Long itemId) {
+    int i = index(itemId);
+    return i < 0 ? 0 : zeroAnswers[i];
+  }
+
+  /**
+   * @return the number of submissions that got the item right
+   */
+  public int getCorrect(Long itemId) {
+    int i = index(itemId);
+    return i < 0 ? 0 : correct[i];
+  }
+
+  /**
+   * @return the share of the submissions the item was in that got it right, 0 to 1
+   */
+  public double getDifficulty(Long itemId) {
+    int i = index(itemId);
+    return i < 0 || seen[i] == 0 ? 0 : (double) correct[i] / seen[i];
+  }
+
+  public double getMeanScore(Long itemId) {
+    int i = index(itemId);
+    return i < 0 || seen[i] == 0 ? 0 : scores[i] / seen[i];
+  }
+
+  /**
+   * @return the number of submissions in each of the upper and lower groups of the item
+   */
+  public int getGroupSize(Long itemId) {
+    int i = index(itemId);
+    return i < 0 ? 0 : groupSize[i];
+  }
+
+  public double getPercentCorrectFromUpperGroup(Long itemId) {
+    int i = index(itemId);
+    return i < 0 || groupSize[i] == 0 ? 0 : upperCorrect[i] * 100d / groupSize[i];
+  }
+
+  public double getPercentCorrectFromLowerGroup(Long itemId) {
+    int i = index(itemId);
+    return i < 0 || groupSize[i] == 0 ? 0 : lowerCorrect[i] * 100d / groupSize[i];
+  }
+
+  /**
+   * @return the share of the upper group that got the item right less the share of the lower group, -1 to 1, or NaN
+   * if the groups are empty
+   */
+  public double getDiscrimination(Long itemId) {
+    int i = index(itemId);
+    return i < 0 || groupSize[i] == 0 ? Double.NaN : (double) (upperCorrect[i] - lowerCorrect[i]) / groupSize[i];
+  }
+
+  /**
+   * @return the number of item gradings that picked the answer
+   */
+  public int getAnswerCount(Long answerId) {
+    Integer index = answers.get(answerId);
+    return index == null ? 0 : answerCounts[index];
+  }
+
+  private static double score(AssessmentGradingData submission) {
+    return submission.getFinalScore() == null ? 0 : submission.getFinalScore();
+  }
+
+  private static double value(Object value) {
+    return value == null ? 0 : ((Number) value).doubleValue();
+  }
+
+  /**
+   * Counts the item gradings of the submissions one at a time, each submission and item has a cell of score and state
+   */
+  public static class Builder {
+
+    private final String version;
+    private final long[] gradingIds;
+    private final double[] finalScores;
+    private final Map<Long, Integer> submissions = new HashMap<>();
+    private final Map<Long, Integer> items = new HashMap<>();
+    private final Map<Long, Integer> answers = new HashMap<>();
+    private double[] fullScores;
+    private boolean[] random;
+    private final int[] answerCounts;
+    private final double[] scores;
+    private final byte[] states;
+
+    /**
+     * @param version the version of the assessment
+     * @param pub the assessment
+     * @param ranked the submissions to count, lowest total score first
+     */
+    public Builder(String version, PublishedAssessmentIfc pub, List<AssessmentGradingData> ranked) {
+      this.version = version;
+      gradingIds = new long[ranked.size()];
+      finalScores = new double[ranked.size()];
+      for (int s = 0; s < gradingIds.length; s++) {
+        AssessmentGradingData submission = ranked.get(s);
+        gradingIds[s] = submission.getAssessmentGradingId();
+        finalScores[s] = score(submission);
+        submissions.put(gradingIds[s], s);
+      }
+
+      fullScores = new double[16];
+      random = new boolean[16];
+      List<? extends SectionDataIfc> sections = pub.getSectionArraySorted();
+      for (SectionDataIfc section : sections) {
+        boolean randomDraw = String.valueOf(SectionDataIfc.RANDOM_DRAW_FROM_QUESTIONPOOL)
+            .equals(section.getSectionMetaDataByLabel(SectionDataIfc.AUTHOR_TYPE));
+        List<ItemDataIfc> sectionItems = section.getItemArraySortedForGrading();
+        for (ItemDataIfc item : sectionItems) {
+          addItem(item, randomDraw);
+        }
+      }
+      fullScores = Arrays.copyOf(fullScores, items.size());
+      random = Arrays.copyOf(random, items.size());
+      answerCounts = new int[answers.size()];
+      scores = new double[gradingIds.length * items.size()];
+      states = new byte[scores.length];
+    }
+
+    private void addItem(ItemDataIfc item, boolean randomDraw) {
+      int i = items.size();
+      if (items.putIfAbsent(item.getItemId(), i) != null) {
+        return;
+      }
+      if (i == fullScores.length) {
+        fullScores = Arrays.copyOf(fullScores, i * 2);
+        random = Arrays.copyOf(random, i * 2);
+      }
+      fullScores[i] = item.getScore() == null ? 0 : item.getScore();
+      random[i] = randomDraw;
+      for (ItemTextIfc text : item.getItemTextArraySorted()) {
+        List<AnswerIfc> textAnswers = text.getAnswerArraySorted();
+        if (textAnswers != null) {
+          for (AnswerIfc answer : textAnswers) {
+            answers.putIfAbsent(answer.getId(), answers.size());
+          }
+        }
+      }
+    }
+
+    /**
+     * @param row the assessment grading id, published item id, published answer id, auto score, override score and
+     * submitted date of an item grading
+     */
+    public void add(Object[] row) {
+      Integer s = submissions.get((Long) row[0]);
+      Integer i = items.get((Long) row[1]);
+      if (s == null || i == null) {
+        return;
+      }
+      int cell = s * items.size() + i;
+      states[cell] |= SEEN;
+      if (row[2] != null) {
+        states[cell] |= ANSWERED;
+        Integer a = answers.get((Long) row[2]);
+        if (a != null) {
+          answerCounts[a]++;
+        }
+      }
+      if (row[5] != null) {
+        states[cell] |= SUBMITTED;
+      }
+      scores[cell] += value(row[3]) + value(row[4]);
+    }
+
+    private boolean isCorrect(int i, int cell) {
+      return (states[cell] & SEEN) != 0 && fullScores[i] > 0 && scores[cell] >= fullScores[i] - EPSILON;
+    }
+
+    public ItemAnalysis build() {
+      return new ItemAnalysis(this);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.component.cover.ServerConfigurationService;
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.PublishedAssessmentIfc;
+
+/**
+ * Works out the item analysis of published assessments for their statistics. The last analysis of each assessment
+ * is kept until the assessment is changed or regraded, or its submissions or their scores change.
+ */
+@Slf4j
+public class ItemAnalysisService {
+
+  private static class CacheHolder {
+    private static final int SIZE = ServerConfigurationService.getInt("samigo.itemAnalysis.cacheSize", 50);
+    private static final Map<Long, ItemAnalysis> CACHE = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * @param pub the assessment
+   * @param ranked the submissions to analyse, lowest total score first
+   * @return the item analysis of the submissions
+   */
+  public ItemAnalysis getItemAnalysis(PublishedAssessmentIfc pub, List<AssessmentGradingData> ranked) {
+    Long publishedId = pub.getPublishedAssessmentId();
+    String version = PersistenceService.getInstance().getPublishedAssessmentFacadeQueries().getPublishedAssessmentVersion(publishedId);
+    if (version == null) {
+      version = "";
+    }
+
+    ItemAnalysis analysis = CacheHolder.CACHE.get(publishedId);
+    if (analysis != null && analysis.isCurrent(version, ranked)) {
+      return analysis;
+    }
+
+    long start = System.currentTimeMillis();
+    ItemAnalysis.Builder builder = new ItemAnalysis.Builder(version, pub, ranked);
+    PersistenceService.getInstance().getAssessmentGradingFacadeQueries().scrollItemScores(publishedId, builder::add);
+    analysis = builder.build();
+    log.debug("Analysed {} submissions of published assessment {} in {} ms", ranked.size(), publishedId, System.currentTimeMillis() - start);
+
+    if (CacheHolder.SIZE > 0) {
+      CacheHolder.CACHE.put(publishedId, analysis);
+      trim();
+    }
+    return analysis;
+  }
+
+  private void trim() {
+    while (CacheHolder.CACHE.size() > CacheHolder.SIZE) {
+      Map.Entry<Long, ItemAnalysis> oldest = null;
+      for (Map.Entry<Long, ItemAnalysis> e : CacheHolder.CACHE.entrySet()) {
+        if (oldest == null || e.getValue().getCreated() < oldest.getValue().getCreated()) {
+          oldest = e;
+        }
+      }
+      if (oldest == null || !CacheHolder.CACHE.remove(oldest.getKey(), oldest.getValue())) {
+        return;
+      }
+    }
+  }
+
+  public void removeItemAnalysis(Long publishedAssessmentId) {
+    CacheHolder.CACHE.remove(publishedAssessmentId);
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.tool.assessment.data.dao.grading.ItemGradingData;
+
+/**
+ * An append only file of the answers held by the item grading write-behind, so answers autosaved just before a
+ * crash are written when the server comes back. Each answer is a length, a checksum and the serialized answer, an
+ * answer cut short by the crash fails its checksum and ends the replay.
+ */
+@Slf4j
+class ItemGradingJournal {
+
+  @Getter private final File file;
+  private final boolean sync;
+  private FileOutputStream fileOut;
+  private DataOutputStream out;
+
+  /**
+   * @param sync whether to wait for each answer to reach the disk, not just the operating system
+   */
+  ItemGradingJournal(File file, boolean sync) throws IOException {
+    this.file = file;
+    this.sync = sync;
+    this.fileOut = new FileOutputStream(file, true);
+    this.out = new DataOutputStream(fileOut);
+  }
+
+  void append(ItemGradingData itemGrading) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+    try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+      objectOut.writeObject(itemGrading);
+    }
+    byte[] record = bytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    out.writeInt(record.length);
+    out.writeLong(crc.getValue());
+    out.write(record);
+    out.flush();
+    if (sync) {
+      fileOut.getFD().sync();
+    }
+  }
+
+  void close() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      log.warn("Could not close item grading journal {}: {}", file, e.toString());
+    }
+  }
+
+  /**
+   * Close the journal and delete it, everything in it has been written
+   */
+  void delete() {
+    close();
+    if (!file.delete() && file.exists()) {
+      log.warn("Could not delete item grading journal {}", file);
+    }
+  }
+
+  /**
+   * @return the answers in a journal, up to the first that is incomplete
+   */
+  static List<ItemGradingData> read(File file) {
+    List<ItemGradingData> itemGradings = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      while (true) {
+        int length = in.readInt();
+        long checksum = in.readLong();
+        if (length <= 0 || length > 16 * 1024 * 1024) {
+          log.warn("Item grading journal {} is corrupt after {} answers", file, itemGradings.size());
+          break;
+        }
+        byte[] record = new byte[length];
+        in.readFully(record);
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        if (crc.getValue() != checksum) {
+          log.warn("Item grading journal {} is corrupt after {} answers", file, itemGradings.size());
+          break;
+        }
+        try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(record))) {
+          itemGradings.add((ItemGradingData) objectIn.readObject());
+        }
+      }
+    } catch (EOFException e) {
+      // the end of the journal, or an answer the crash cut short
+    } catch (IOException | ClassNotFoundException e) {
+      log.warn("Could not read all of item grading journal {}: {}", file, e.toString());
+    }
+    return itemGradings;
+  }
+}
@@ -0,0 +1,492 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.tool.assessment.data.dao.grading.ItemGradingData;
+import org.sakaiproject.tool.assessment.facade.AssessmentGradingFacadeQueriesAPI;
+
+/**
+ * Holds the answers of autosaves for a few seconds before writing them, so a student whose answer changes over
+ * several autosaves costs one write rather than one for each, and the answers of everyone autosaving are written
+ * together in JDBC batches rather than in a transaction each.
+ *
+ * Only changes to answers already in the database are held, new answers need their row straight away. Held answers
+ * are read back over the database by GradingService, so delivery and scoring see them before they are written. They
+ * are written every samigo.autosave.writeBehind.interval, whenever the student saves or moves through the assessment,
+ * on submit and before timed and automatic submissions. Each answer goes to a journal as it is held, answers that
+ * hadn't been written when the server stopped are written from it when it starts again. An answer from the journal
+ * doesn't replace one saved since.
+ *
+ * The answers are held by this node, other nodes only see them once they are written.
+ */
+@Slf4j
+public class ItemGradingWriteBehind implements ItemGradingWriteBehindMXBean {
+
+  private static final String MBEAN_NAME = "org.sakaiproject:name=SamigoItemGradingWriteBehind";
+  private static final String JOURNAL_SUFFIX = ".journal";
+
+  @Setter private AssessmentGradingFacadeQueriesAPI assessmentGradingFacadeQueries;
+  @Setter private ServerConfigurationService serverConfigurationService;
+
+  @Getter private volatile boolean enabled;
+  @Setter private long interval = 5000;
+  @Setter private int batchSize = 100;
+  @Setter private boolean syncJournal;
+
+  private File journalDir;
+  private String journalPrefix;
+  private ScheduledExecutorService executor;
+
+  private final Object lock = new Object();
+  // answers waiting to be written by assessment grading and item grading, and the journal they are in
+  private Map<Long, Map<Long, ItemGradingData>> pending = new HashMap<>();
+  private ItemGradingJournal journal;
+  // the answers being written by flushAll, still read back until they are in
+  private Map<Long, Map<Long, ItemGradingData>> flushing = Collections.emptyMap();
+  // flushAll holds the write lock so writing the answers of one student waits for it to finish with them
+  private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+  private final LongAdder buffered = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder flushed = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder replayed = new LongAdder();
+
+  public void init() {
+    if (!serverConfigurationService.getBoolean("samigo.autosave.writeBehind.enabled", false)) {
+      log.info("Samigo autosaves are written straight away");
+      return;
+    }
+    interval = serverConfigurationService.getInt("samigo.autosave.writeBehind.interval", 5000);
+    batchSize = serverConfigurationService.getInt("samigo.autosave.writeBehind.batchSize", 100);
+    syncJournal = serverConfigurationService.getBoolean("samigo.autosave.writeBehind.journal.sync", false);
+    String dir = serverConfigurationService.getString("samigo.autosave.writeBehind.journal",
+        serverConfigurationService.getSakaiHomePath() + "samigo/itemGradingJournal");
+    try {
+      start(new File(dir), serverConfigurationService.getServerId() + "-");
+    } catch (IOException e) {
+      log.error("Could not open the item grading journal in {}, autosaves are written straight away", dir, e);
+      return;
+    }
+
+    try {
+      MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      ObjectName on = new ObjectName(MBEAN_NAME);
+      if (!mBeanServer.isRegistered(on)) {
+        mBeanServer.registerMBean(this, on);
+      }
+    } catch (Exception e) {
+      log.warn("Could not register the item grading write-behind with JMX: {}", e.toString());
+    }
+    log.info("Samigo autosaves are written every {} ms, journal in {}", interval, dir);
+  }
+
+  /**
+   * Open a journal, write what the last journals of this node hold and start writing every interval
+   */
+  void start(File journalDir, String journalPrefix) throws IOException {
+    if (!journalDir.isDirectory() && !journalDir.mkdirs()) {
+      throw new IOException("Could not create " + journalDir);
+    }
+    this.journalDir = journalDir;
+    this.journalPrefix = journalPrefix;
+    File[] journals = journalDir.listFiles((d, name) -> name.startsWith(journalPrefix) && name.endsWith(JOURNAL_SUFFIX));
+    synchronized (lock) {
+      journal = newJournal();
+    }
+    enabled = true;
+
+    if (journals != null && journals.length > 0) {
+      Arrays.sort(journals);
+      for (File file : journals) {
+        List<ItemGradingData> itemGradings = ItemGradingJournal.read(file);
+        replayed.add(itemGradings.size());
+        if (!buffer(itemGradings).isEmpty()) {
+          throw new IOException("Could not move the answers in " + file + " to the new journal");
+        }
+        if (!file.delete()) {
+          log.warn("Could not delete item grading journal {}", file);
+        }
+      }
+      log.info("Replaying {} answers from the item grading journal", replayed.sum());
+      flushAll();
+    }
+
+    if (interval > 0) {
+      executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "samigo-item-grading-write-behind");
+        thread.setDaemon(true);
+        return thread;
+      });
+      executor.scheduleWithFixedDelay(() -> {
+        try {
+          flushAll();
+        } catch (Exception e) {
+          log.warn("Could not write autosaved answers: {}", e.toString());
+        }
+      }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public void destroy() {
+    if (!enabled) {
+      return;
+    }
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(interval, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flushAll();
+    enabled = false;
+    synchronized (lock) {
+      if (pending.isEmpty()) {
+        journal.delete();
+      } else {
+        // left for the next start
+        journal.close();
+      }
+      journal = null;
+    }
+
+    try {
+      MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      ObjectName on = new ObjectName(MBEAN_NAME);
+      if (mBeanServer.isRegistered(on)) {
+        mBeanServer.unregisterMBean(on);
+      }
+    } catch (Exception e) {
+      log.warn("Could not unregister the item grading write-behind from JMX: {}", e.toString());
+    }
+  }
+
+  private ItemGradingJournal newJournal() throws IOException {
+    File file = new File(journalDir, journalPrefix + System.currentTimeMillis() + "-" + System.nanoTime() + JOURNAL_SUFFIX);
+    return new ItemGradingJournal(file, syncJournal);
+  }
+
+  /**
+   * Hold the changed answers of an autosave
+   *
+   * @return the answers that weren't held and need saving now, those not in the database yet
+   */
+  public Collection<ItemGradingData> buffer(Collection<ItemGradingData> itemGradings) {
+    if (!enabled) {
+      return itemGradings;
+    }
+    List<ItemGradingData> notHeld = new ArrayList<>();
+    synchronized (lock) {
+      for (ItemGradingData itemGrading : itemGradings) {
+        if (itemGrading == null) {
+          continue;
+        }
+        if (journal == null || itemGrading.getItemGradingId() == null || itemGrading.getAssessmentGradingId() == null) {
+          notHeld.add(itemGrading);
+          continue;
+        }
+        ItemGradingData copy = copy(itemGrading);
+        try {
+          journal.append(copy);
+        } catch (IOException e) {
+          log.warn("Could not journal item grading {}, saving it now: {}", itemGrading.getItemGradingId(), e.toString());
+          notHeld.add(itemGrading);
+          continue;
+        }
+        if (pending.computeIfAbsent(copy.getAssessmentGradingId(), id -> new HashMap<>()).put(copy.getItemGradingId(), copy) != null) {
+          coalesced.increment();
+        }
+        buffered.increment();
+      }
+    }
+    return notHeld;
+  }
+
+  /**
+   * Write the answers held for an assessment grading, before it is submitted or read by something that doesn't
+   * read back held answers
+   */
+  public void flush(Long assessmentGradingId) {
+    if (!enabled || assessmentGradingId == null) {
+      return;
+    }
+    flushLock.readLock().lock();
+    try {
+      Map<Long, ItemGradingData> answers;
+      synchronized (lock) {
+        answers = pending.remove(assessmentGradingId);
+      }
+      if (answers != null && !write(answers.values())) {
+        synchronized (lock) {
+          Map<Long, ItemGradingData> current = pending.computeIfAbsent(assessmentGradingId, id -> new HashMap<>());
+          answers.forEach(current::putIfAbsent);
+        }
+        throw new IllegalStateException("Could not write the autosaved answers of assessment grading " + assessmentGradingId);
+      }
+    } finally {
+      flushLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void flushAll() {
+    if (!enabled) {
+      return;
+    }
+    flushLock.writeLock().lock();
+    try {
+      ItemGradingJournal written;
+      synchronized (lock) {
+        if (pending.isEmpty() && journal.getFile().length() == 0) {
+          return;
+        }
+        try {
+          written = journal;
+          journal = newJournal();
+        } catch (IOException e) {
+          log.warn("Could not start a new item grading journal: {}", e.toString());
+          return;
+        }
+        flushing = pending;
+        pending = new HashMap<>();
+      }
+
+      List<ItemGradingData> answers = new ArrayList<>();
+      flushing.values().forEach(a -> answers.addAll(a.values()));
+      if (!write(answers)) {
+        // hold them again, in the new journal, unless a newer answer has come in meanwhile
+        List<ItemGradingData> retry = new ArrayList<>();
+        synchronized (lock) {
+          for (ItemGradingData answer : answers) {
+            Map<Long, ItemGradingData> current = pending.get(answer.getAssessmentGradingId());
+            if (current == null || !current.containsKey(answer.getItemGradingId())) {
+              retry.add(answer);
+            }
+          }
+        }
+        if (!buffer(retry).isEmpty()) {
+          // still in the old journal, which is kept for the next start
+          written.close();
+          return;
+        }
+      }
+      written.delete();
+    } finally {
+      synchronized (lock) {
+        flushing = Collections.emptyMap();
+      }
+      flushLock.writeLock().unlock();
+    }
+  }
+
+  private boolean write(Collection<ItemGradingData> answers) {
+    if (answers.isEmpty()) {
+      return true;
+    }
+    try {
+      int updated = assessmentGradingFacadeQueries.updateItemGradings(answers, batchSize);
+      flushed.add(updated);
+      skipped.add(answers.size() - updated);
+      log.debug("Wrote {} autosaved answers, skipped {}", updated, answers.size() - updated);
+      return true;
+    } catch (RuntimeException e) {
+      failed.add(answers.size());
+      log.warn("Could not write {} autosaved answers: {}", answers.size(), e.toString());
+      return false;
+    }
+  }
+
+  /**
+   * Forget the answers held for item gradings being saved or deleted now
+   */
+  public void discard(Collection<?> itemGradings) {
+    if (!enabled || itemGradings == null) {
+      return;
+    }
+    synchronized (lock) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      for (Object o : itemGradings) {
+        ItemGradingData itemGrading = o instanceof ItemGradingData ? (ItemGradingData) o : null;
+        if (itemGrading != null && itemGrading.getItemGradingId() != null) {
+          Map<Long, ItemGradingData> answers = pending.get(itemGrading.getAssessmentGradingId());
+          if (answers != null) {
+            answers.remove(itemGrading.getItemGradingId());
+            if (answers.isEmpty()) {
+              pending.remove(itemGrading.getAssessmentGradingId());
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Put the answers held over item gradings read from the database
+   *
+   * @return the item gradings as they will be once the answers are written
+   */
+  public Set<ItemGradingData> readBack(Set<ItemGradingData> itemGradings) {
+    if (!enabled || itemGradings == null || itemGradings.isEmpty() || !copyHeld(itemGradings)) {
+      return itemGradings;
+    }
+    // the hash of an item grading is of its fields
+    return new HashSet<>(itemGradings);
+  }
+
+  /**
+   * Put the answers held over item gradings read from the database, as lists of item gradings by item
+   */
+  public void readBack(Map<?, ? extends Collection<ItemGradingData>> itemGradings) {
+    if (!enabled || itemGradings == null) {
+      return;
+    }
+    for (Collection<ItemGradingData> byItem : itemGradings.values()) {
+      copyHeld(byItem);
+    }
+  }
+
+  private boolean copyHeld(Collection<ItemGradingData> itemGradings) {
+    boolean changed = false;
+    synchronized (lock) {
+      if (pending.isEmpty() && flushing.isEmpty()) {
+        return false;
+      }
+      for (ItemGradingData itemGrading : itemGradings) {
+        ItemGradingData latest = held(pending, itemGrading);
+        if (latest == null) {
+          latest = held(flushing, itemGrading);
+        }
+        // an answer being written may already have been saved over
+        if (latest != null && !isOlder(latest, itemGrading)) {
+          copyResponse(latest, itemGrading);
+          changed = true;
+        }
+      }
+    }
+    return changed;
+  }
+
+  private static ItemGradingData held(Map<Long, Map<Long, ItemGradingData>> answers, ItemGradingData itemGrading) {
+    Map<Long, ItemGradingData> byId = answers.get(itemGrading.getAssessmentGradingId());
+    return byId != null ? byId.get(itemGrading.getItemGradingId()) : null;
+  }
+
+  /**
+   * @return true if an answer was given before the one saved in an item grading
+   */
+  public static boolean isOlder(ItemGradingData answer, ItemGradingData itemGrading) {
+    return answer.getSubmittedDate() != null && itemGrading.getSubmittedDate() != null
+        && answer.getSubmittedDate().before(itemGrading.getSubmittedDate());
+  }
+
+  private static ItemGradingData copy(ItemGradingData itemGrading) {
+    ItemGradingData copy = new ItemGradingData(itemGrading.getItemGradingId(), itemGrading.getAssessmentGradingId());
+    copy.setAgentId(itemGrading.getAgentId());
+    copy.setPublishedItemId(itemGrading.getPublishedItemId());
+    copy.setPublishedItemTextId(itemGrading.getPublishedItemTextId());
+    copyResponse(itemGrading, copy);
+    return copy;
+  }
+
+  /**
+   * Copy what a student's answer changes from one item grading to another
+   */
+  public static void copyResponse(ItemGradingData from, ItemGradingData to) {
+    to.setPublishedAnswerId(from.getPublishedAnswerId());
+    to.setAnswerText(from.getAnswerText());
+    to.setRationale(from.getRationale());
+    to.setReview(from.getReview());
+    to.setIsCorrect(from.getIsCorrect());
+    to.setAutoScore(from.getAutoScore());
+    to.setOverrideScore(from.getOverrideScore());
+    to.setAttemptsRemaining(from.getAttemptsRemaining());
+    to.setLastDuration(from.getLastDuration());
+    to.setSubmittedDate(from.getSubmittedDate());
+  }
+
+  @Override
+  public long getBuffered() {
+    return buffered.sum();
+  }
+
+  @Override
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  @Override
+  public long getFlushed() {
+    return flushed.sum();
+  }
+
+  @Override
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  @Override
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  @Override
+  public long getReplayed() {
+    return replayed.sum();
+  }
+
+  @Override
+  public int getPending() {
+    synchronized (lock) {
+      int count = 0;
+      for (Map<Long, ItemGradingData> answers : pending.values()) {
+        count += answers.size();
+      }
+      return count;
+    }
+  }
+}
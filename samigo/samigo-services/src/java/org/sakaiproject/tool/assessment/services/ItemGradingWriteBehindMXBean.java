@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+/**
+ * JMX view of the answers autosaved through the item grading write-behind.
+ */
+public interface ItemGradingWriteBehindMXBean {
+
+  /**
+   * @return the answers autosaves have handed to the write-behind
+   */
+  long getBuffered();
+
+  /**
+   * @return the answers that replaced one still waiting to be written, saving a write
+   */
+  long getCoalesced();
+
+  /**
+   * @return the answers written to the database
+   */
+  long getFlushed();
+
+  /**
+   * @return the answers not written because their row was deleted or has since been saved with a newer answer
+   */
+  long getSkipped();
+
+  /**
+   * @return the answers that failed to be written, they are kept in the journal
+   */
+  long getFailed();
+
+  /**
+   * @return the answers found in the journal at startup
+   */
+  long getReplayed();
+
+  /**
+   * @return the answers waiting to be written now
+   */
+  int getPending();
+
+  /**
+   * Write every answer waiting now.
+   */
+  void flushAll();
+}
@@ -57,6 +57,7 @@ public class PersistenceService{
 	private ExtendedTimeFacade extendedTimeFacade;
 	private EventLogFacadeQueriesAPI eventLogFacadeQueries;  
 	private SecureDeliveryFacadeQueriesAPI secureDeliveryFacadeQueries;  
+	private ItemGradingWriteBehind itemGradingWriteBehind;
 
 	public static PersistenceService getInstance(){
 	    return (PersistenceService)ComponentManager.get("PersistenceService");
@@ -262,5 +263,13 @@ public class PersistenceService{
 	public SecureDeliveryFacadeQueriesAPI getSecureDeliveryFacadeQueries() {
 		return secureDeliveryFacadeQueries;
 	}
+
+	public void setItemGradingWriteBehind(ItemGradingWriteBehind itemGradingWriteBehind) {
+		this.itemGradingWriteBehind = itemGradingWriteBehind;
+	}
+
+	public ItemGradingWriteBehind getItemGradingWriteBehind() {
+		return itemGradingWriteBehind;
+	}
 }
 
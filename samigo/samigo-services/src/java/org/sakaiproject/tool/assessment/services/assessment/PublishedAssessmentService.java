@@ -26,6 +26,7 @@ import java.util.Set;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.component.cover.ServerConfigurationService;
 
 import org.sakaiproject.tool.assessment.data.dao.assessment.AssessmentAccessControl;
 import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedAssessmentData;
@@ -52,6 +53,7 @@ import org.sakaiproject.tool.assessment.facade.PublishedAssessmentFacade;
 import org.sakaiproject.tool.assessment.facade.PublishedAssessmentFacadeQueriesAPI;
 import org.sakaiproject.tool.assessment.facade.PublishedSectionFacade;
 import org.sakaiproject.tool.assessment.facade.SectionFacade;
+import org.sakaiproject.tool.assessment.services.ItemAnalysisService;
 import org.sakaiproject.tool.assessment.services.PersistenceService;
 
 /**
@@ -62,6 +64,11 @@ import org.sakaiproject.tool.assessment.services.PersistenceService;
 @Slf4j
 public class PublishedAssessmentService extends AssessmentService{
 
+  private static class SnapshotCacheHolder {
+    private static final int SIZE = ServerConfigurationService.getInt("samigo.publishedAssessmentSnapshot.cacheSize", 100);
+    private static final PublishedAssessmentSnapshotCache CACHE = SIZE > 0 ? new PublishedAssessmentSnapshotCache(SIZE) : null;
+  }
+
   /**
    * Creates a new QuestionPoolService object.
    */
@@ -161,6 +168,43 @@ public class PublishedAssessmentService extends AssessmentService{
 		}
 	}
 
+  /**
+   * The published assessment for a student to take. It comes from the snapshot shared by all deliveries of the
+   * assessment on this node, so it is only loaded from the database when it has changed.
+   *
+   * @return a copy of the assessment of its own, which the delivery may change
+   */
+  public PublishedAssessmentFacade getPublishedAssessmentForDelivery(String assessmentId) {
+    if (StringUtils.isBlank(assessmentId)) {
+      throw new IllegalArgumentException("AssesmentId must be specified");
+    }
+    PublishedAssessmentSnapshot snapshot = getPublishedAssessmentSnapshot(Long.valueOf(assessmentId));
+    return snapshot != null ? snapshot.newFacade() : getPublishedAssessment(assessmentId);
+  }
+
+  /**
+   * @return the snapshot of the assessment at its current version, or null if snapshots are off, the assessment
+   * doesn't exist or it couldn't be copied
+   */
+  public PublishedAssessmentSnapshot getPublishedAssessmentSnapshot(Long publishedAssessmentId) {
+    PublishedAssessmentSnapshotCache cache = SnapshotCacheHolder.CACHE;
+    if (cache == null) {
+      return null;
+    }
+    PublishedAssessmentFacadeQueriesAPI queries = PersistenceService.getInstance().getPublishedAssessmentFacadeQueries();
+    String version = queries.getPublishedAssessmentVersion(publishedAssessmentId);
+    if (version == null) {
+      return null;
+    }
+    try {
+      return cache.get(publishedAssessmentId, version,
+          () -> new PublishedAssessmentSnapshot(version, queries.getPublishedAssessment(publishedAssessmentId)));
+    } catch (RuntimeException e) {
+      log.warn("Could not get a snapshot of published assessment {}, loading it directly: {}", publishedAssessmentId, e.toString());
+      return null;
+    }
+  }
+
   public PublishedAssessmentFacade getPublishedAssessment(String assessmentId, boolean withGroupsInfo) {
 	    try {
 	      return PersistenceService.getInstance().
@@ -224,6 +268,7 @@ public class PublishedAssessmentService extends AssessmentService{
     try{
       PersistenceService.getInstance().getPublishedAssessmentFacadeQueries().
         saveOrUpdate(assessment);
+      removeSnapshot(assessment.getPublishedAssessmentId());
     }
     catch (Exception e) {
       log.error(e.getMessage(), e);
@@ -237,6 +282,17 @@ public class PublishedAssessmentService extends AssessmentService{
   public void removeAssessment(String assessmentId, String action) {
 	    PersistenceService.getInstance().getPublishedAssessmentFacadeQueries().
 	        removeAssessment(new Long(assessmentId), action);
+	    removeSnapshot(Long.valueOf(assessmentId));
+	    new ItemAnalysisService().removeItemAnalysis(Long.valueOf(assessmentId));
+  }
+
+  /**
+   * Drop the snapshot of an assessment on this node, other nodes see it has changed from its version
+   */
+  private void removeSnapshot(Long publishedAssessmentId) {
+    if (SnapshotCacheHolder.CACHE != null && publishedAssessmentId != null) {
+      SnapshotCacheHolder.CACHE.remove(publishedAssessmentId);
+    }
   }
   
   public List<PublishedAssessmentFacade> getBasicInfoOfAllActivePublishedAssessments(String orderBy,boolean ascending) {
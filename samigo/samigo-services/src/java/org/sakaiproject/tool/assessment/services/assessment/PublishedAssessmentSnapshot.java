@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services.assessment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Getter;
+
+import org.sakaiproject.tool.assessment.data.ifc.assessment.AnswerIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.AssessmentBaseIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.ItemDataIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.ItemTextIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.PublishedAssessmentIfc;
+import org.sakaiproject.tool.assessment.facade.PublishedAssessmentFacade;
+
+/**
+ * A published assessment as it was at one version, shared by every delivery of it on this node so taking an
+ * assessment doesn't load the whole of it from the database for each student.
+ *
+ * Delivery changes the assessment it is given (answers are relabelled in the shuffled order of the student, dates
+ * are moved for extended time) so each delivery gets a copy of its own from {@link #newFacade()}. The items, item
+ * texts and answers used for scoring aren't changed that way, those maps are built once and shared read only.
+ */
+public class PublishedAssessmentSnapshot {
+
+  @Getter private final Long publishedAssessmentId;
+  /** the version of the assessment this was taken from, see PublishedAssessmentFacadeQueriesAPI.getPublishedAssessmentVersion */
+  @Getter private final String version;
+  @Getter private final Integer status;
+  private final byte[] data;
+  private final Map releaseToGroups;
+
+  @Getter private final Map<Long, ItemDataIfc> itemHash;
+  @Getter private final Map<Long, ItemTextIfc> itemTextHash;
+  @Getter private final Map<Long, AnswerIfc> answerHash;
+
+  /**
+   * @param version the version the assessment was loaded at
+   * @param assessment the assessment freshly loaded, it isn't kept
+   */
+  public PublishedAssessmentSnapshot(String version, PublishedAssessmentFacade assessment) {
+    this.publishedAssessmentId = assessment.getPublishedAssessmentId();
+    this.version = version;
+    this.status = assessment.getStatus();
+    this.data = serialize(assessment.getData());
+    this.releaseToGroups = assessment.getReleaseToGroups() != null
+        ? Collections.unmodifiableMap(new HashMap(assessment.getReleaseToGroups())) : null;
+
+    PublishedAssessmentIfc shared = deserialize(data);
+    PublishedAssessmentService service = new PublishedAssessmentService();
+    this.itemHash = Collections.unmodifiableMap(service.preparePublishedItemHash(shared));
+    this.itemTextHash = Collections.unmodifiableMap(service.preparePublishedItemTextHash(shared));
+    this.answerHash = Collections.unmodifiableMap(service.preparePublishedAnswerHash(shared));
+  }
+
+  /**
+   * @return a copy of the assessment for one delivery to change as it likes
+   */
+  public PublishedAssessmentFacade newFacade() {
+    PublishedAssessmentFacade facade = new PublishedAssessmentFacade(deserialize(data),
+        releaseToGroups != null ? new HashMap(releaseToGroups) : null);
+    facade.setSnapshot(this);
+    return facade;
+  }
+
+  /**
+   * @return false while the assessment is being edited, it changes without a new version until it is republished
+   */
+  public boolean isCacheable() {
+    return !AssessmentBaseIfc.RETRACT_FOR_EDIT_STATUS.equals(status);
+  }
+
+  /**
+   * @return the size of the assessment as kept
+   */
+  public int getSize() {
+    return data.length;
+  }
+
+  private static byte[] serialize(PublishedAssessmentIfc assessment) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(assessment);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not copy published assessment " + assessment.getPublishedAssessmentId(), e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static PublishedAssessmentIfc deserialize(byte[] data) {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data)) {
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        // the assessment classes belong to the webapp, not to whatever loaded ObjectInputStream
+        try {
+          return Class.forName(desc.getName(), false, PublishedAssessmentSnapshot.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+          return super.resolveClass(desc);
+        }
+      }
+    }) {
+      return (PublishedAssessmentIfc) in.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalStateException("Could not copy published assessment", e);
+    }
+  }
+}
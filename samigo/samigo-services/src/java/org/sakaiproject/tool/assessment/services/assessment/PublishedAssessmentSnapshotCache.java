@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services.assessment;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The published assessment snapshots of this node. When many students start the same assessment at once only the
+ * first of them loads it, the rest wait for that load and share what it got. A snapshot is used for as long as the
+ * version of its assessment in the database is the one it was loaded at, the least recently used are dropped once
+ * there are more than the cache holds.
+ */
+@Slf4j
+class PublishedAssessmentSnapshotCache {
+
+  private final int maxSize;
+  private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+  PublishedAssessmentSnapshotCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @param publishedAssessmentId the assessment
+   * @param version the version of the assessment in the database now
+   * @param loader loads the assessment, run by one thread at a time for each assessment
+   * @return the snapshot of the assessment at that version
+   */
+  PublishedAssessmentSnapshot get(Long publishedAssessmentId, String version, Supplier<PublishedAssessmentSnapshot> loader) {
+    Entry[] loading = new Entry[1];
+    Entry entry = entries.compute(publishedAssessmentId, (id, current) -> {
+      if (current != null && !current.isStale(version)) {
+        return current;
+      }
+      loading[0] = new Entry();
+      return loading[0];
+    });
+
+    if (entry == loading[0]) {
+      load(publishedAssessmentId, entry, loader);
+    }
+
+    PublishedAssessmentSnapshot snapshot;
+    try {
+      snapshot = entry.future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+    entry.lastUsed = System.nanoTime();
+
+    if (!version.equals(snapshot.getVersion())) {
+      // it changed again while we waited on a load started at an older version
+      return entry == loading[0] ? snapshot : get(publishedAssessmentId, version, loader);
+    }
+    return snapshot;
+  }
+
+  private void load(Long publishedAssessmentId, Entry entry, Supplier<PublishedAssessmentSnapshot> loader) {
+    PublishedAssessmentSnapshot snapshot;
+    try {
+      snapshot = loader.get();
+    } catch (RuntimeException e) {
+      // don't keep the failure, the next delivery tries again
+      entries.remove(publishedAssessmentId, entry);
+      entry.future.completeExceptionally(e);
+      return;
+    }
+    if (!snapshot.isCacheable()) {
+      entries.remove(publishedAssessmentId, entry);
+    }
+    entry.future.complete(snapshot);
+    log.debug("Loaded snapshot of published assessment {} at version {}, {} bytes", publishedAssessmentId, snapshot.getVersion(), snapshot.getSize());
+    trim();
+  }
+
+  private void trim() {
+    while (entries.size() > maxSize) {
+      Map.Entry<Long, Entry> oldest = null;
+      for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+        if (e.getValue().future.isDone() && (oldest == null || e.getValue().lastUsed - oldest.getValue().lastUsed < 0)) {
+          oldest = e;
+        }
+      }
+      if (oldest == null || !entries.remove(oldest.getKey(), oldest.getValue())) {
+        return;
+      }
+    }
+  }
+
+  void remove(Long publishedAssessmentId) {
+    entries.remove(publishedAssessmentId);
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  private static class Entry {
+
+    private final CompletableFuture<PublishedAssessmentSnapshot> future = new CompletableFuture<>();
+    private volatile long lastUsed = System.nanoTime();
+
+    /**
+     * @return true once the load is done and either failed or got another version
+     */
+    private boolean isStale(String version) {
+      if (!future.isDone()) {
+        return false;
+      }
+      if (future.isCompletedExceptionally()) {
+        return true;
+      }
+      return !version.equals(future.join().getVersion());
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+
+public class AutoSubmitEngineTest {
+
+    private long nextId = 1;
+
+    private AssessmentGradingData attempt(long publishedAssessmentId, String agentId) {
+        AssessmentGradingData data = new AssessmentGradingData();
+        data.setAssessmentGradingId(nextId++);
+        data.setPublishedAssessmentId(publishedAssessmentId);
+        data.setAgentId(agentId);
+        return data;
+    }
+
+    @Test
+    public void testNoAttempts() {
+        Assert.assertTrue(AutoSubmitEngine.chunk(new ArrayList<>(), 10).isEmpty());
+    }
+
+    @Test
+    public void testChunksKeepAStudentsAttemptsTogether() {
+        List<AssessmentGradingData> attempts = new ArrayList<>();
+        attempts.add(attempt(1, "a"));
+        attempts.add(attempt(1, "a"));
+        attempts.add(attempt(1, "b"));
+        attempts.add(attempt(1, "c"));
+        attempts.add(attempt(1, "c"));
+        attempts.add(attempt(1, "c"));
+        attempts.add(attempt(1, "d"));
+
+        List<AutoSubmitEngine.Chunk> chunks = AutoSubmitEngine.chunk(attempts, 2);
+        Assert.assertEquals(2, chunks.size());
+        Assert.assertEquals(2, chunks.get(0).students.size());
+        Assert.assertEquals(3, chunks.get(0).getAttempts());
+        Assert.assertEquals(2, chunks.get(1).students.size());
+        Assert.assertEquals(3, chunks.get(1).students.get(0).size());
+        Assert.assertEquals("d", chunks.get(1).students.get(1).get(0).getAgentId());
+
+        // the attempts of a student stay in the order they were found
+        List<AssessmentGradingData> student = chunks.get(1).students.get(0);
+        Assert.assertSame(attempts.get(3), student.get(0));
+        Assert.assertSame(attempts.get(5), student.get(2));
+    }
+
+    @Test
+    public void testChunksNeverMixAssessments() {
+        List<AssessmentGradingData> attempts = new ArrayList<>();
+        attempts.add(attempt(1, "a"));
+        attempts.add(attempt(2, "a"));
+        attempts.add(attempt(2, "b"));
+        attempts.add(attempt(3, "b"));
+
+        List<AutoSubmitEngine.Chunk> chunks = AutoSubmitEngine.chunk(attempts, 50);
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertEquals(Long.valueOf(1), chunks.get(0).publishedAssessmentId);
+        Assert.assertEquals(2, chunks.get(1).students.size());
+        Assert.assertEquals(Long.valueOf(3), chunks.get(2).publishedAssessmentId);
+    }
+
+    @Test
+    public void testGradebookBatchKeepsTheLastScoreOfAStudent() {
+        GradebookScoreBatch batch = new GradebookScoreBatch(1L);
+        batch.add("a", 1L, 1.234, "first");
+        batch.add("a", 2L, 2.345, " ");
+        batch.add("b", 3L, null, "no score");
+
+        Assert.assertEquals(1, batch.size());
+        Assert.assertEquals(Double.valueOf(2.35), batch.getScores().get("a"));
+        // a blank comment still replaces the one in the gradebook
+        Assert.assertEquals(" ", batch.getComments().get("a"));
+        Assert.assertFalse(batch.getComments().containsKey("b"));
+    }
+
+    @Test
+    public void testGradebookBatchKnowsTheAttemptsOfUnsentScores() {
+        GradebookScoreBatch batch = new GradebookScoreBatch(1L);
+        batch.add("a", 1L, 1.0, null);
+        batch.add("a", 2L, 2.0, null);
+        batch.add("b", 3L, 3.0, null);
+
+        Assert.assertEquals(List.of(1L, 2L), batch.getAttempts(List.of("a")));
+        Assert.assertEquals(List.of(3L), batch.getAttempts(List.of("b", "c")));
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.AnswerIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.ItemDataIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.ItemTextIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.PublishedAssessmentIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.SectionDataIfc;
+
+public class ItemAnalysisTest {
+
+    private static final Long ITEM = 1L;
+    private static final Long UNANSWERED_ITEM = 2L;
+    private static final Long DRAWN_ITEM = 3L;
+    private static final Long RIGHT = 11L;
+    private static final Long WRONG = 12L;
+
+    private PublishedAssessmentIfc pub;
+    private List<AssessmentGradingData> ranked;
+
+    @Before
+    public void setUp() {
+        SectionDataIfc section = section(false, item(ITEM, RIGHT, WRONG), item(UNANSWERED_ITEM, 21L, 22L));
+        SectionDataIfc randomSection = section(true, item(DRAWN_ITEM, 31L, 32L));
+        pub = mock(PublishedAssessmentIfc.class);
+        when(pub.getSectionArraySorted()).thenReturn(new ArrayList<>(Arrays.asList(section, randomSection)));
+
+        // ten submissions scoring 0 to 9, lowest first
+        ranked = new ArrayList<>();
+        for (long s = 0; s < 10; s++) {
+            AssessmentGradingData submission = new AssessmentGradingData();
+            submission.setAssessmentGradingId(100 + s);
+            submission.setFinalScore((double) s);
+            ranked.add(submission);
+        }
+    }
+
+    private SectionDataIfc section(boolean random, ItemDataIfc... items) {
+        SectionDataIfc section = mock(SectionDataIfc.class);
+        when(section.getSectionMetaDataByLabel(SectionDataIfc.AUTHOR_TYPE))
+                .thenReturn(String.valueOf(random ? SectionDataIfc.RANDOM_DRAW_FROM_QUESTIONPOOL : SectionDataIfc.QUESTIONS_AUTHORED_ONE_BY_ONE));
+        when(section.getItemArraySortedForGrading()).thenReturn(new ArrayList<>(Arrays.asList(items)));
+        return section;
+    }
+
+    private ItemDataIfc item(Long itemId, Long... answerIds) {
+        List<AnswerIfc> answers = new ArrayList<>();
+        for (Long answerId : answerIds) {
+            AnswerIfc answer = mock(AnswerIfc.class);
+            when(answer.getId()).thenReturn(answerId);
+            answers.add(answer);
+        }
+        ItemTextIfc text = mock(ItemTextIfc.class);
+        when(text.getAnswerArraySorted()).thenReturn(answers);
+        ItemDataIfc item = mock(ItemDataIfc.class);
+        when(item.getItemId()).thenReturn(itemId);
+        when(item.getScore()).thenReturn(1d);
+        when(item.getItemTextArraySorted()).thenReturn(Arrays.asList(text));
+        return item;
+    }
+
+    private static Object[] row(long submission, Long itemId, Long answerId, double score) {
+        return new Object[] { 100 + submission, itemId, answerId, score, 0d, answerId != null ? new Date() : null };
+    }
+
+    @Test
+    public void testUpperGroupGotItRight() {
+        ItemAnalysis.Builder builder = new ItemAnalysis.Builder("1", pub, ranked);
+        for (long s = 0; s < 10; s++) {
+            // the five best submissions got it right
+            builder.add(s >= 5 ? row(s, ITEM, RIGHT, 1) : row(s, ITEM, WRONG, 0));
+        }
+        ItemAnalysis analysis = builder.build();
+
+        Assert.assertEquals(10, analysis.getNumberOfSubmissions());
+        Assert.assertEquals(10, analysis.getResponses(ITEM));
+        Assert.assertEquals(5, analysis.getCorrect(ITEM));
+        Assert.assertEquals(0.5, analysis.getDifficulty(ITEM), 0.0001);
+        Assert.assertEquals(0.5, analysis.getMeanScore(ITEM), 0.0001);
+        Assert.assertEquals(2, analysis.getGroupSize(ITEM));
+        Assert.assertEquals(100, analysis.getPercentCorrectFromUpperGroup(ITEM), 0.0001);
+        Assert.assertEquals(0, analysis.getPercentCorrectFromLowerGroup(ITEM), 0.0001);
+        Assert.assertEquals(1.0, analysis.getDiscrimination(ITEM), 0.0001);
+        Assert.assertEquals(5, analysis.getAnswerCount(RIGHT));
+        Assert.assertEquals(5, analysis.getAnswerCount(WRONG));
+    }
+
+    @Test
+    public void testUnansweredItems() {
+        ItemAnalysis.Builder builder = new ItemAnalysis.Builder("1", pub, ranked);
+        builder.add(row(0, UNANSWERED_ITEM, null, 0));
+        for (long s = 1; s < 10; s++) {
+            builder.add(row(s, UNANSWERED_ITEM, 22L, 0));
+        }
+        ItemAnalysis analysis = builder.build();
+
+        Assert.assertEquals(10, analysis.getSeen(UNANSWERED_ITEM));
+        Assert.assertEquals(9, analysis.getResponses(UNANSWERED_ITEM));
+        Assert.assertEquals(1, analysis.getNumberOfStudentsWithZeroAnswers(UNANSWERED_ITEM));
+        Assert.assertEquals(0, analysis.getCorrect(UNANSWERED_ITEM));
+        Assert.assertEquals(0, analysis.getDiscrimination(UNANSWERED_ITEM), 0.0001);
+        Assert.assertEquals(0, analysis.getResponses(ITEM));
+        Assert.assertEquals(0, analysis.getResponses(99L));
+    }
+
+    @Test
+    public void testDrawnItemsAreRankedAmongTheirSubmissions() {
+        ItemAnalysis.Builder builder = new ItemAnalysis.Builder("1", pub, ranked);
+        for (long s = 6; s < 10; s++) {
+            builder.add(s == 9 ? row(s, DRAWN_ITEM, 31L, 1) : row(s, DRAWN_ITEM, 32L, 0));
+        }
+        ItemAnalysis analysis = builder.build();
+
+        Assert.assertEquals(4, analysis.getSeen(DRAWN_ITEM));
+        Assert.assertEquals(1, analysis.getGroupSize(DRAWN_ITEM));
+        Assert.assertEquals(100, analysis.getPercentCorrectFromUpperGroup(DRAWN_ITEM), 0.0001);
+        Assert.assertEquals(1.0, analysis.getDiscrimination(DRAWN_ITEM), 0.0001);
+        Assert.assertEquals(0.25, analysis.getDifficulty(DRAWN_ITEM), 0.0001);
+    }
+
+    @Test
+    public void testOtherSubmissionsAreNotCounted() {
+        ItemAnalysis.Builder builder = new ItemAnalysis.Builder("1", pub, ranked);
+        builder.add(row(50, ITEM, RIGHT, 1));
+        builder.add(row(0, ITEM, RIGHT, 1));
+        ItemAnalysis analysis = builder.build();
+
+        Assert.assertEquals(1, analysis.getResponses(ITEM));
+        Assert.assertEquals(1, analysis.getAnswerCount(RIGHT));
+    }
+
+    @Test
+    public void testChangedSubmissionsAreNotCurrent() {
+        ItemAnalysis analysis = new ItemAnalysis.Builder("1", pub, ranked).build();
+        Assert.assertTrue(analysis.isCurrent("1", new ArrayList<>(ranked)));
+        // republished or regraded
+        Assert.assertFalse(analysis.isCurrent("2", ranked));
+        // a new submission
+        Assert.assertFalse(analysis.isCurrent("1", ranked.subList(0, 9)));
+        // a score changed
+        ranked.get(3).setFinalScore(3.5);
+        Assert.assertFalse(analysis.isCurrent("1", ranked));
+    }
+}
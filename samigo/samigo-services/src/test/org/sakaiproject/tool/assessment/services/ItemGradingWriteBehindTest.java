@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.tool.assessment.data.dao.grading.ItemGradingData;
+import org.sakaiproject.tool.assessment.facade.AssessmentGradingFacadeQueriesAPI;
+
+public class ItemGradingWriteBehindTest {
+
+    private static final Long GRADING_ID = 10L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // the item grading table
+    private final Map<Long, ItemGradingData> database = new HashMap<>();
+    private final AtomicInteger writes = new AtomicInteger();
+    private final AtomicBoolean databaseDown = new AtomicBoolean();
+    private AssessmentGradingFacadeQueriesAPI queries;
+    private File journalDir;
+
+    @Before
+    public void setUp() {
+        queries = mock(AssessmentGradingFacadeQueriesAPI.class);
+        when(queries.updateItemGradings(anyCollection(), anyInt())).thenAnswer(invocation -> {
+            if (databaseDown.get()) {
+                throw new IllegalStateException("database down");
+            }
+            writes.incrementAndGet();
+            int updated = 0;
+            for (ItemGradingData answer : (Collection<ItemGradingData>) invocation.getArgument(0)) {
+                ItemGradingData row = database.get(answer.getItemGradingId());
+                if (row != null && !ItemGradingWriteBehind.isOlder(answer, row)) {
+                    ItemGradingWriteBehind.copyResponse(answer, row);
+                    updated++;
+                }
+            }
+            return updated;
+        });
+        for (long id = 1; id <= 3; id++) {
+            database.put(id, itemGrading(id, 0d, "", new Date(1000)));
+        }
+        journalDir = new File(folder.getRoot(), "journal");
+    }
+
+    private ItemGradingWriteBehind start() throws Exception {
+        ItemGradingWriteBehind writeBehind = new ItemGradingWriteBehind();
+        writeBehind.setAssessmentGradingFacadeQueries(queries);
+        writeBehind.setInterval(0);
+        writeBehind.start(journalDir, "node1-");
+        return writeBehind;
+    }
+
+    private static ItemGradingData itemGrading(Long id, Double autoScore, String answer, Date submitted) {
+        ItemGradingData itemGrading = new ItemGradingData(id, GRADING_ID);
+        itemGrading.setPublishedItemId(id != null ? 100 + id : 100L);
+        itemGrading.setAgentId("student");
+        itemGrading.setAutoScore(autoScore);
+        itemGrading.setAnswerText(answer);
+        itemGrading.setSubmittedDate(submitted);
+        return itemGrading;
+    }
+
+    // what GradingService reads from the database, detached copies of the rows
+    private Set<ItemGradingData> read() {
+        Set<ItemGradingData> itemGradings = new HashSet<>();
+        for (ItemGradingData row : database.values()) {
+            ItemGradingData copy = itemGrading(row.getItemGradingId(), null, null, null);
+            ItemGradingWriteBehind.copyResponse(row, copy);
+            itemGradings.add(copy);
+        }
+        return itemGradings;
+    }
+
+    private static double totalAutoScore(Collection<ItemGradingData> itemGradings) {
+        return itemGradings.stream().mapToDouble(i -> i.getAutoScore() != null ? i.getAutoScore() : 0).sum();
+    }
+
+    @Test
+    public void testAutosavesAreCoalesced() throws Exception {
+        ItemGradingWriteBehind writeBehind = start();
+        for (int i = 1; i <= 5; i++) {
+            Assert.assertTrue(writeBehind.buffer(Collections.singleton(itemGrading(1L, (double) i, "answer " + i, new Date(1000 + i)))).isEmpty());
+        }
+        Assert.assertEquals(1, writeBehind.getPending());
+        Assert.assertEquals(5, writeBehind.getBuffered());
+        Assert.assertEquals(4, writeBehind.getCoalesced());
+        Assert.assertEquals("", database.get(1L).getAnswerText());
+
+        writeBehind.flush(GRADING_ID);
+        Assert.assertEquals(1, writes.get());
+        Assert.assertEquals("answer 5", database.get(1L).getAnswerText());
+        Assert.assertEquals(1, writeBehind.getFlushed());
+        Assert.assertEquals(0, writeBehind.getPending());
+        writeBehind.destroy();
+    }
+
+    @Test
+    public void testNewAnswersAreNotHeld() throws Exception {
+        ItemGradingWriteBehind writeBehind = start();
+        ItemGradingData added = itemGrading(null, 1d, "new", new Date(2000));
+        Collection<ItemGradingData> notHeld = writeBehind.buffer(Arrays.asList(added, itemGrading(2L, 1d, "changed", new Date(2000))));
+        Assert.assertEquals(Collections.singletonList(added), notHeld);
+        Assert.assertEquals(1, writeBehind.getPending());
+        writeBehind.destroy();
+    }
+
+    @Test
+    public void testFinalScoreIncludesHeldAnswers() throws Exception {
+        ItemGradingWriteBehind writeBehind = start();
+        writeBehind.buffer(Arrays.asList(itemGrading(1L, 2d, "a", new Date(2000)), itemGrading(2L, 3d, "b", new Date(2000))));
+        writeBehind.buffer(Collections.singleton(itemGrading(2L, 1.5d, "c", new Date(3000))));
+
+        // scoring an autosave reads the held answers over the database
+        Assert.assertEquals(0d, totalAutoScore(database.values()), 0);
+        Assert.assertEquals(3.5d, totalAutoScore(writeBehind.readBack(read())), 0);
+
+        // the submit saves its own answers straight away and writes the rest
+        ItemGradingData submitted = itemGrading(3L, 4d, "d", new Date(4000));
+        writeBehind.discard(Collections.singleton(submitted));
+        database.put(3L, submitted);
+        writeBehind.flush(GRADING_ID);
+
+        Assert.assertEquals(7.5d, totalAutoScore(database.values()), 0);
+        Assert.assertEquals(7.5d, totalAutoScore(writeBehind.readBack(read())), 0);
+        writeBehind.destroy();
+    }
+
+    @Test
+    public void testDeletedAnswersAreNotWritten() throws Exception {
+        ItemGradingWriteBehind writeBehind = start();
+        ItemGradingData answer = itemGrading(1L, 1d, "a", new Date(2000));
+        writeBehind.buffer(Collections.singleton(answer));
+        writeBehind.discard(Collections.singleton(answer));
+        database.remove(1L);
+        writeBehind.flushAll();
+
+        Assert.assertEquals(0, writes.get());
+        Assert.assertFalse(database.containsKey(1L));
+        writeBehind.destroy();
+    }
+
+    @Test
+    public void testFailedWritesAreKept() throws Exception {
+        ItemGradingWriteBehind writeBehind = start();
+        writeBehind.buffer(Collections.singleton(itemGrading(1L, 1d, "a", new Date(2000))));
+
+        databaseDown.set(true);
+        writeBehind.flushAll();
+        Assert.assertEquals(1, writeBehind.getFailed());
+        Assert.assertEquals(1, writeBehind.getPending());
+        try {
+            writeBehind.flush(GRADING_ID);
+            Assert.fail("a submit must not go ahead without its answers");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(1, writeBehind.getPending());
+
+        databaseDown.set(false);
+        writeBehind.flushAll();
+        Assert.assertEquals("a", database.get(1L).getAnswerText());
+        Assert.assertEquals(0, writeBehind.getPending());
+        writeBehind.destroy();
+    }
+
+    @Test
+    public void testJournalIsReplayedAfterACrash() throws Exception {
+        ItemGradingWriteBehind crashed = start();
+        crashed.buffer(Collections.singleton(itemGrading(1L, 1d, "a", new Date(2000))));
+        crashed.buffer(Collections.singleton(itemGrading(1L, 2d, "b", new Date(3000))));
+        crashed.buffer(Collections.singleton(itemGrading(2L, 1d, "old", new Date(2000))));
+        // saved on another node after the crash
+        database.get(2L).setAnswerText("newer");
+        database.get(2L).setSubmittedDate(new Date(5000));
+
+        ItemGradingWriteBehind restarted = start();
+        Assert.assertEquals(3, restarted.getReplayed());
+        Assert.assertEquals("b", database.get(1L).getAnswerText());
+        Assert.assertEquals(2d, database.get(1L).getAutoScore(), 0);
+        Assert.assertEquals("newer", database.get(2L).getAnswerText());
+        Assert.assertEquals(1, restarted.getSkipped());
+        restarted.destroy();
+
+        Assert.assertEquals(0, journalDir.listFiles((d, name) -> name.endsWith(".journal")).length);
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services.assessment;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PublishedAssessmentSnapshotCacheTest {
+
+    private static PublishedAssessmentSnapshot snapshot(String version, boolean cacheable) {
+        PublishedAssessmentSnapshot snapshot = mock(PublishedAssessmentSnapshot.class);
+        when(snapshot.getVersion()).thenReturn(version);
+        when(snapshot.isCacheable()).thenReturn(cacheable);
+        return snapshot;
+    }
+
+    @Test
+    public void testConcurrentGetsLoadOnce() throws Exception {
+        PublishedAssessmentSnapshotCache cache = new PublishedAssessmentSnapshotCache(10);
+        PublishedAssessmentSnapshot snapshot = snapshot("1-100", true);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<PublishedAssessmentSnapshot>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> cache.get(1L, "1-100", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return snapshot;
+            })));
+            Assert.assertTrue(loading.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) {
+                futures.add(executor.submit(() -> cache.get(1L, "1-100", () -> {
+                    loads.incrementAndGet();
+                    return snapshot;
+                })));
+            }
+            release.countDown();
+            for (Future<PublishedAssessmentSnapshot> future : futures) {
+                Assert.assertSame(snapshot, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testNewVersionReloads() {
+        PublishedAssessmentSnapshotCache cache = new PublishedAssessmentSnapshotCache(10);
+        PublishedAssessmentSnapshot first = snapshot("1-100", true);
+        PublishedAssessmentSnapshot second = snapshot("1-200", true);
+
+        Assert.assertSame(first, cache.get(1L, "1-100", () -> first));
+        Assert.assertSame(first, cache.get(1L, "1-100", () -> second));
+        Assert.assertSame(second, cache.get(1L, "1-200", () -> second));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testFailedAndUncacheableLoadsAreNotKept() {
+        PublishedAssessmentSnapshotCache cache = new PublishedAssessmentSnapshotCache(10);
+        try {
+            cache.get(1L, "1-100", () -> {
+                throw new IllegalStateException("database down");
+            });
+            Assert.fail("expected the load to fail");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("database down", e.getMessage());
+        }
+        Assert.assertEquals(0, cache.size());
+
+        PublishedAssessmentSnapshot editing = snapshot("3-100", false);
+        Assert.assertSame(editing, cache.get(1L, "3-100", () -> editing));
+        Assert.assertEquals(0, cache.size());
+
+        PublishedAssessmentSnapshot snapshot = snapshot("1-100", true);
+        Assert.assertSame(snapshot, cache.get(1L, "1-100", () -> snapshot));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsDropped() {
+        PublishedAssessmentSnapshotCache cache = new PublishedAssessmentSnapshotCache(2);
+        PublishedAssessmentSnapshot one = snapshot("1-1", true);
+        PublishedAssessmentSnapshot two = snapshot("1-2", true);
+        PublishedAssessmentSnapshot three = snapshot("1-3", true);
+
+        cache.get(1L, "1-1", () -> one);
+        cache.get(2L, "1-2", () -> two);
+        cache.get(1L, "1-1", () -> one);
+        cache.get(3L, "1-3", () -> three);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(one, cache.get(1L, "1-1", () -> snapshot("1-1", true)));
+        PublishedAssessmentSnapshot reloaded = snapshot("1-2", true);
+        Assert.assertSame(reloaded, cache.get(2L, "1-2", () -> reloaded));
+    }
+}
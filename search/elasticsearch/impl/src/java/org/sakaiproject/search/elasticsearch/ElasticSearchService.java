@@ -670,6 +670,16 @@ import lombok.extern.slf4j.Slf4j;
         }
     }
 
+    @Override
+    public void reconcileIndex(String indexBuilderName) {
+        log.info("Reconcile Index Builder Name="+indexBuilderName);
+        ElasticSearchIndexBuilderRegistration builder =
+            indexBuilders.get(indexBuilderName);
+        if (builder != null && builder.indexBuilder instanceof SiteSearchIndexBuilder) {
+            ((SiteSearchIndexBuilder) builder.indexBuilder).reconcileIndex();
+        }
+    }
+
     public void refreshSite(String currentSiteId) {
         forEachRegisteredIndexBuilder(i -> {
             if ( i instanceof SiteSearchIndexBuilder ) {
@@ -752,12 +762,13 @@ import lombok.extern.slf4j.Slf4j;
 
             @Override
             public String getCurrentWorker() {
-                return getNodeName();
+                // a builder reporting work of its own, such as a reconcile, shows that rather than the node
+                return toWrap.getCurrentWorker() != null ? toWrap.getCurrentWorker() : getNodeName();
             }
 
             @Override
             public String getCurrentWorkerETC() {
-                return getNodeName();
+                return toWrap.getCurrentWorker() != null ? toWrap.getCurrentWorkerETC() : getNodeName();
             }
 
             @Override
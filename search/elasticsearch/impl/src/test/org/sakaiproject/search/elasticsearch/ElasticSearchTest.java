@@ -19,11 +19,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -487,6 +491,70 @@ public class ElasticSearchTest {
 
     }
 
+    @Test
+    public void testProcessContentQueueInSmallBulks() {
+        elasticSearchIndexBuilder.setContentIndexBatchSize(200);
+        elasticSearchIndexBuilder.setBulkRequestSize(7);
+        elasticSearchIndexBuilder.setBulkRequestBytes(16 * 1024);
+        elasticSearchIndexBuilder.setBulkConcurrentRequests(3);
+
+        elasticSearchIndexBuilder.addResource(notification, event);
+        addResources();
+        elasticSearchIndexBuilder.refreshIndex();
+
+        elasticSearchIndexBuilder.processContentQueue();
+
+        elasticSearchIndexBuilder.refreshIndex();
+
+        verify(entityContentProducer, atLeast(106)).getContent(any(String.class));
+        assertEquals(0, elasticSearchIndexBuilder.getPendingDocuments());
+        assertEquals(106, elasticSearchService.getNDocs());
+    }
+
+    @Test
+    public void testReconcileIndex() {
+        elasticSearchIndexBuilder.setContentIndexBatchSize(200);
+        when(entityContentProducer.getContentVersion(resourceName)).thenReturn("1");
+
+        // a resource of the site that goes away
+        String orphanName = "orphan";
+        Event orphanEvent = mock(Event.class);
+        when(orphanEvent.getResource()).thenReturn(orphanName);
+        when(entityContentProducer.matches(orphanEvent)).thenReturn(true);
+        when(entityContentProducer.getSiteId(orphanName)).thenReturn(siteId);
+        when(entityContentProducer.getAction(orphanEvent)).thenReturn(SearchBuilderItem.ACTION_ADD);
+        when(entityContentProducer.getContent(orphanName)).thenReturn(generateContent());
+        when(entityContentProducer.getId(orphanName)).thenReturn(orphanName);
+        events.add(orphanEvent);
+
+        elasticSearchIndexBuilder.addResource(notification, event);
+        addResources();
+        elasticSearchIndexBuilder.processContentQueue();
+        elasticSearchIndexBuilder.refreshIndex();
+        assertEquals(107, elasticSearchService.getNDocs());
+
+        // unchanged docs aren't digested again, docs of entities that are gone are removed
+        clearInvocations(entityContentProducer);
+        when(entityContentProducer.getSiteContentIterator(siteId)).thenReturn(Collections.singletonList(resourceName).iterator());
+        elasticSearchService.reconcileIndex(elasticSearchIndexBuilder.getName());
+        elasticSearchIndexBuilder.refreshIndex();
+
+        verify(entityContentProducer, never()).getContent(resourceName);
+        assertEquals(106, elasticSearchService.getNDocs());
+        // a finished reconcile is no longer shown
+        assertNull(elasticSearchIndexBuilder.getSearchStatus().getCurrentWorker());
+
+        // a changed version is digested and indexed again
+        when(entityContentProducer.getContentVersion(resourceName)).thenReturn("2");
+        when(entityContentProducer.getSiteContentIterator(siteId)).thenReturn(Collections.singletonList(resourceName).iterator());
+        elasticSearchService.reconcileIndex(elasticSearchIndexBuilder.getName());
+        elasticSearchIndexBuilder.refreshIndex();
+
+        verify(entityContentProducer, times(1)).getContent(resourceName);
+        assertEquals(0, elasticSearchIndexBuilder.getPendingDocuments());
+        assertEquals(106, elasticSearchService.getNDocs());
+    }
+
     @Test
     public void testRefresh() {
         elasticSearchIndexBuilder.addResource(notification, event);
@@ -27,6 +27,7 @@ import static org.opensearch.common.xcontent.XContentFactory.jsonBuilder;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -40,6 +41,12 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -52,7 +59,9 @@ import org.opensearch.action.admin.cluster.health.ClusterHealthRequest;
 import org.opensearch.action.admin.cluster.health.ClusterHealthResponse;
 import org.opensearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.opensearch.action.admin.indices.refresh.RefreshRequest;
+import org.opensearch.action.bulk.BackoffPolicy;
 import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkProcessor;
 import org.opensearch.action.bulk.BulkRequest;
 import org.opensearch.action.bulk.BulkResponse;
 import org.opensearch.action.delete.DeleteRequest;
@@ -70,8 +79,11 @@ import org.opensearch.client.indices.CreateIndexRequest;
 import org.opensearch.client.indices.CreateIndexResponse;
 import org.opensearch.client.indices.GetIndexRequest;
 import org.opensearch.client.indices.GetIndexResponse;
+import org.opensearch.client.indices.PutMappingRequest;
 import org.opensearch.cluster.health.ClusterIndexHealth;
 import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.ByteSizeValue;
+import org.opensearch.common.unit.TimeValue;
 import org.opensearch.common.util.set.Sets;
 import org.opensearch.index.query.BoolQueryBuilder;
 import org.opensearch.rest.RestStatus;
@@ -100,6 +112,7 @@ import org.springframework.util.Assert;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
 
 /**
  *
@@ -121,6 +134,20 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
     protected static final String DELETE_RESOURCE_KEY_DOCUMENT_ID = "DOCUMENT_ID";
     protected static final String DELETE_RESOURCE_KEY_ENTITY_REFERENCE = "ENTITY_REFERENCE";
 
+    /**
+     * Stored with the content of a doc, the hash of the content and the version the producer gave for it
+     * (see {@link EntityContentProducer#getContentVersion(String)}), so a reconcile can tell what has changed.
+     */
+    protected static final String FIELD_CONTENT_HASH = "contenthash";
+    protected static final String FIELD_CONTENT_VERSION = "contentversion";
+
+    /**
+     * Mapping of the fields above, added to indexes created before they were
+     */
+    protected static final String CONTENT_STAMP_MAPPING = "{\"properties\": {"
+            + "\"" + FIELD_CONTENT_HASH + "\": {\"type\": \"keyword\", \"store\": \"true\"},"
+            + "\"" + FIELD_CONTENT_VERSION + "\": {\"type\": \"keyword\", \"store\": \"true\"}}}";
+
     protected final static SecurityAdvisor allowAllAdvisor =
             (userId, function, reference) -> SecurityAdvisor.SecurityAdvice.ALLOWED;
 
@@ -190,6 +217,37 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
      */
     protected int bulkRequestSize = 10;
 
+    /**
+     * Maximum size in bytes of one bulk index call made by the content indexing task, a bulk is sent when
+     * either this or {@link #bulkRequestSize} is reached (defaults to 5MB).
+     */
+    protected long bulkRequestBytes = 5 * 1024 * 1024;
+
+    /**
+     * Number of bulk index calls the content indexing task has in flight at once (defaults to 2). When they
+     * are all in flight digesting waits for one to finish, so no more than this many bulks are held in memory.
+     */
+    protected int bulkConcurrentRequests = 2;
+
+    /**
+     * Number of times a bulk rejected by a busy cluster is retried, waiting {@link #bulkRetryDelay} ms
+     * before the first retry and backing off exponentially (defaults to 3).
+     */
+    protected int bulkMaxRetries = 3;
+
+    protected long bulkRetryDelay = 500;
+
+    /**
+     * Number of threads digesting content for the content indexing task (defaults to 4). Digesting is
+     * usually the slowest part of indexing, so this is what makes a large queue go faster.
+     */
+    protected int contentIndexThreads = 4;
+
+    /**
+     * how long the content indexing task waits for its last bulks to finish, in minutes
+     */
+    protected static final long BULK_CLOSE_TIMEOUT = 10;
+
     /**
      * number seconds of wait after startup before starting the BulkContentIndexerTask (defaults to 3 minutes)
      */
@@ -251,6 +309,11 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
      */
     protected Timer backgroundScheduler = null;
 
+    /**
+     * threads digesting content for the indexing task
+     */
+    protected ExecutorService contentIndexExecutor = null;
+
     protected Set<EntityContentProducer> producers = Sets.newConcurrentHashSet();
 
     protected Set<String> triggerFunctions = Sets.newHashSet();
@@ -270,6 +333,11 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
             backgroundScheduler = null;
         }
 
+        if (contentIndexExecutor != null) {
+            contentIndexExecutor.shutdownNow();
+            contentIndexExecutor = null;
+        }
+
         if (client != null) {
             try {
                 getLog().info("elasticsearch closing client for index {}", indexName);
@@ -315,6 +383,7 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
 
         beforeBackgroundSchedulerInitialization();
 
+        this.contentIndexExecutor = initializeContentIndexExecutor();
         this.backgroundScheduler = initializeBackgroundScheduler();
         backgroundScheduler.schedule(initializeContentQueueProcessingTask(), (delay * 1000), (period * 1000));
 
@@ -408,6 +477,16 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
         return new Timer("[elasticsearch content indexer " + getName() + "]", true);
     }
 
+    protected ExecutorService initializeContentIndexExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(contentIndexThreads, 1), r -> {
+            Thread thread = new Thread(r, "[elasticsearch content digester " + getName() + " " + count.incrementAndGet() + "]");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
     protected TimerTask initializeContentQueueProcessingTask() {
         return testMode ? new NoOpTask() : newBulkContentIndexerTask();
     }
@@ -463,6 +542,11 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
      * Searches for any docs in the search index that have not been indexed yet,
      * digests the content and loads it into the index.  Any docs with empty content will be removed from
      * the index.
+     *
+     * This runs as a pipeline: the queued docs are digested in parallel on {@link #contentIndexExecutor},
+     * the results are rolled into bulks bounded by {@link #bulkRequestSize} and {@link #bulkRequestBytes}, and up
+     * to {@link #bulkConcurrentRequests} bulks are sent at once, retrying the ones the cluster is too busy for.
+     * It returns once everything has been sent.
      */
     protected void processContentQueue() {
         startTime = System.currentTimeMillis();
@@ -476,31 +560,59 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
             return;
         }
 
+        BulkIndexStats stats = new BulkIndexStats();
+
         SearchResponse response = findContentQueue();
 
         SearchHit[] hits = response.getHits().getHits();
-        List<NoContentException> noContentExceptions = new ArrayList<>();
+        stats.fetched(hits.length);
+        List<NoContentException> noContentExceptions = Collections.synchronizedList(new ArrayList<>());
         getLog().debug(getPendingDocuments() + " pending docs for index builder [" + getName() + "]");
 
-        BulkRequest bulkRequest = new BulkRequest();
+        BulkProcessor bulkProcessor = newBulkProcessor(stats);
 
-        for (SearchHit hit : hits) {
+        try {
+            List<Future<?>> digests = new ArrayList<>(hits.length);
+            for (SearchHit hit : hits) {
+                digests.add(contentIndexExecutor.submit(() -> {
+                    long start = System.currentTimeMillis();
+                    BulkRequest entryRequest = new BulkRequest();
+                    enableAzgSecurityAdvisor();
+                    try {
+                        processContentQueueEntry(hit, entryRequest);
+                    } catch (NoContentException e) {
+                        stats.noContent();
+                        noContentExceptions.add(e);
+                    } finally {
+                        disableAzgSecurityAdvisor();
+                        stats.digested(System.currentTimeMillis() - start);
+                    }
+                    // blocks while all the bulks allowed are in flight
+                    entryRequest.requests().forEach(bulkProcessor::add);
+                }));
+            }
 
-            if (bulkRequest.numberOfActions() < bulkRequestSize) {
+            for (Future<?> digest : digests) {
                 try {
-                    processContentQueueEntry(hit, bulkRequest);
-                } catch ( NoContentException e ) {
-                    noContentExceptions.add(e);
+                    digest.get();
+                } catch (ExecutionException e) {
+                    getLog().error("Failed to process content queue entry in index builder [" + getName() + "]", e.getCause());
                 }
-            } else {
-                executeBulkRequest(bulkRequest);
-                bulkRequest = new BulkRequest();
             }
-        }
-
-        // execute any remaining bulks requests not executed yet
-        if (bulkRequest.numberOfActions() > 0) {
-            executeBulkRequest(bulkRequest);
+            stats.digestDone();
+        } catch (InterruptedException e) {
+            getLog().warn("Content indexing interrupted for index builder [{}]", getName());
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                // sends whatever is left and waits for the bulks in flight
+                if (!bulkProcessor.awaitClose(BULK_CLOSE_TIMEOUT, TimeUnit.MINUTES)) {
+                    getLog().warn("Bulk requests of index builder [{}] didn't finish in {} minutes", getName(), BULK_CLOSE_TIMEOUT);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            stats.done();
         }
 
         // remove any docs without content, so we don't try to index them again
@@ -514,20 +626,57 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
 
         if (hits.length > 0) {
             getLog().info("Finished indexing " + hits.length + " docs in " +
-                    ((lastLoad - startTime)) + " ms for index builder " + getName());
+                    ((lastLoad - startTime)) + " ms for index builder " + getName() + ", " + stats);
         }
 
     }
 
+    /**
+     * The bulk processor for one run of the content indexing task. Bulks rejected because the cluster is busy are
+     * retried with backoff, bulks that fail outright are logged and their docs stay in the queue for the next run.
+     */
+    protected BulkProcessor newBulkProcessor(BulkIndexStats stats) {
+        BulkProcessor.Listener listener = new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request) {
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                stats.bulked(request, response);
+                logBulkResponse(request, response);
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                stats.bulkFailed(request);
+                getLog().warn("Error executing bulk operation of " + request.numberOfActions() + " actions in index builder: "
+                        + getName() + ", " + failure);
+            }
+        };
+
+        return BulkProcessor.builder((request, bulkListener) -> client.bulkAsync(request, RequestOptions.DEFAULT, bulkListener), listener)
+                .setBulkActions(bulkRequestSize)
+                .setBulkSize(new ByteSizeValue(bulkRequestBytes))
+                .setConcurrentRequests(bulkConcurrentRequests)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(bulkRetryDelay), bulkMaxRetries))
+                .build();
+    }
+
     protected void processContentQueueEntry(SearchHit hit, BulkRequest bulkRequest) throws NoContentException {
         String reference = getFieldFromSearchHit(SearchService.FIELD_REFERENCE, hit);
         EntityContentProducer ecp = newEntityContentProducer(reference);
 
         if (ecp != null) {
-            //updating was causing issues without a _source, so doing delete and re-add
+            //updating was causing issues without a _source, so the doc is indexed again in full, which replaces
+            //the queued one. Only a doc whose id has changed needs deleting, bulks are sent concurrently so a delete
+            //of the same id could land after the index
             try {
-                deleteDocument(hit);
-                bulkRequest.add(prepareIndex(reference, ecp, true));
+                IndexRequest indexRequest = prepareIndex(reference, ecp, true);
+                if (!hit.getId().equals(indexRequest.id())) {
+                    bulkRequest.add(prepareDeleteDocument(extractDeleteDocumentParams(hit)));
+                }
+                bulkRequest.add(indexRequest);
             } catch (NoContentException e) {
                 throw e;
             } catch (Exception e) {
@@ -548,6 +697,10 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
             return;
         }
 
+        logBulkResponse(bulkRequest, bulkResponse);
+    }
+
+    protected void logBulkResponse(BulkRequest bulkRequest, BulkResponse bulkResponse) {
         getLog().info("Bulk request of batch size: " + bulkRequest.numberOfActions() + " took "
                 + bulkResponse.getTook().getMillis() + " ms in index builder: " + getName());
 
@@ -690,12 +843,25 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
             indexExists = client.indices().exists(getIndexRequest, RequestOptions.DEFAULT);
             if (!indexExists) {
                 createIndex();
+            } else {
+                putContentStampMapping();
             }
         } catch (IOException e) {
             getLog().error("IO Error checking if index " + indexName + " exists in index builder [" + getName() + "]");
         }
     }
 
+    /**
+     * Adds the fields a reconcile compares docs by to the mapping of the index, whatever mapping it was created with
+     */
+    protected void putContentStampMapping() {
+        try {
+            client.indices().putMapping(new PutMappingRequest(indexName).source(CONTENT_STAMP_MAPPING, XContentType.JSON), RequestOptions.DEFAULT);
+        } catch (Exception e) {
+            getLog().warn("Could not add the content stamp fields to index " + indexName + " in index builder [" + getName() + "], " + e);
+        }
+    }
+
     /**
      * creates a new index, does not check if the exist exists
      */
@@ -707,6 +873,8 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
             CreateIndexResponse createIndexResponse = client.indices().create(createIndexRequest, RequestOptions.DEFAULT);
             if (!createIndexResponse.isAcknowledged()) {
                 getLog().error("Index " + indexName + " wasn't created for index builder [" + getName() + "], can't rebuild");
+            } else {
+                putContentStampMapping();
             }
         } catch (IOException e) {
             getLog().error("IO Error creating index " + indexName + " index builder [" + getName() + "], can't rebuild");
@@ -767,8 +935,16 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
      */
     protected IndexRequest prepareIndex(String resourceName, EntityContentProducer ecp, boolean includeContent)
             throws IOException, NoContentException {
+        return prepareIndex(resourceName, ecp, includeContent, null);
+    }
+
+    /**
+     * @param content the content already digested from the entity, or null to digest it here
+     */
+    protected IndexRequest prepareIndex(String resourceName, EntityContentProducer ecp, boolean includeContent, String content)
+            throws IOException, NoContentException {
         IndexRequest indexRequest = newIndexRequest(resourceName, ecp, includeContent);
-        final XContentBuilder requestContentSource = buildIndexRequestContentSource(resourceName, ecp, includeContent);
+        final XContentBuilder requestContentSource = buildIndexRequestContentSource(resourceName, ecp, includeContent, content);
         indexRequest = indexRequest.source(requestContentSource);
         return completeIndexRequest(indexRequest, resourceName, ecp, includeContent);
     }
@@ -781,10 +957,15 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
 
     protected XContentBuilder buildIndexRequestContentSource(String resourceName, EntityContentProducer ecp, boolean includeContent)
             throws NoContentException, IOException {
+        return buildIndexRequestContentSource(resourceName, ecp, includeContent, null);
+    }
+
+    protected XContentBuilder buildIndexRequestContentSource(String resourceName, EntityContentProducer ecp, boolean includeContent,
+                                                             String content) throws NoContentException, IOException {
         XContentBuilder requestBuilder = newIndexRequestContentSourceBuilder(resourceName, ecp, includeContent);
         requestBuilder = addFields(requestBuilder, resourceName, ecp, includeContent);
         requestBuilder = addCustomProperties(requestBuilder, resourceName, ecp, includeContent);
-        requestBuilder = addContent(requestBuilder, resourceName, ecp, includeContent);
+        requestBuilder = addContent(requestBuilder, resourceName, ecp, includeContent, content);
         return completeIndexRequestContentSourceBuilder(requestBuilder, resourceName, ecp, includeContent);
     }
 
@@ -809,15 +990,28 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
     protected XContentBuilder addContent(XContentBuilder contentSourceBuilder, String resourceName,
                                          EntityContentProducer ecp,
                                          boolean includeContent) throws NoContentException, IOException {
+        return addContent(contentSourceBuilder, resourceName, ecp, includeContent, null);
+    }
+
+    protected XContentBuilder addContent(XContentBuilder contentSourceBuilder, String resourceName,
+                                         EntityContentProducer ecp,
+                                         boolean includeContent, String content) throws NoContentException, IOException {
         if (includeContent || testMode) {
-            String content = ecp.getContent(resourceName);
+            if (content == null) {
+                content = ecp.getContent(resourceName);
+            }
             // some of the ecp impls produce content with nothing but whitespace, its waste of time to index those
             if (StringUtils.isNotBlank(content)) {
                 contentSourceBuilder
                         // cannot rely on ecp for providing something reliable to maintain index state
                         // indexed indicates if the document was indexed
                         .field(SearchService.FIELD_INDEXED, true)
-                        .field(SearchService.FIELD_CONTENTS, content);
+                        .field(SearchService.FIELD_CONTENTS, content)
+                        .field(FIELD_CONTENT_HASH, contentHash(content));
+                String version = ecp.getContentVersion(resourceName);
+                if (version != null) {
+                    contentSourceBuilder.field(FIELD_CONTENT_VERSION, version);
+                }
             } else {
                 return noContentForIndexRequest(contentSourceBuilder, resourceName, ecp, includeContent);
             }
@@ -827,6 +1021,10 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
         return contentSourceBuilder;
     }
 
+    protected String contentHash(String content) {
+        return Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+    }
+
     protected abstract XContentBuilder noContentForIndexRequest(XContentBuilder contentSourceBuilder,
                                                                 String resourceName, EntityContentProducer ecp,
                                                                 boolean includeContent)
@@ -1589,6 +1787,26 @@ public abstract class BaseElasticSearchIndexBuilder implements ElasticSearchInde
         this.bulkRequestSize = bulkRequestSize;
     }
 
+    public void setBulkRequestBytes(long bulkRequestBytes) {
+        this.bulkRequestBytes = bulkRequestBytes;
+    }
+
+    public void setBulkConcurrentRequests(int bulkConcurrentRequests) {
+        this.bulkConcurrentRequests = bulkConcurrentRequests;
+    }
+
+    public void setBulkMaxRetries(int bulkMaxRetries) {
+        this.bulkMaxRetries = bulkMaxRetries;
+    }
+
+    public void setBulkRetryDelay(long bulkRetryDelay) {
+        this.bulkRetryDelay = bulkRetryDelay;
+    }
+
+    public void setContentIndexThreads(int contentIndexThreads) {
+        this.contentIndexThreads = contentIndexThreads;
+    }
+
     public void setSecurityService(SecurityService securityService) {
         this.securityService = securityService;
     }
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.search.elasticsearch;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+
+/**
+ * Counts what each stage of a run of the content indexing pipeline did: fetching the queue, digesting
+ * content and sending the bulks. Digesting and bulks are counted from several threads at once.
+ */
+public class BulkIndexStats {
+
+    private final long start = System.currentTimeMillis();
+    private long fetchTime;
+    private long queued;
+    private long digestEnd;
+    private long end;
+
+    private final LongAdder digested = new LongAdder();
+    private final LongAdder digestTime = new LongAdder();
+    private final LongAdder noContent = new LongAdder();
+    private final LongAdder bulks = new LongAdder();
+    private final LongAdder actions = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder bulkTime = new LongAdder();
+    private final LongAdder failedActions = new LongAdder();
+
+    public void fetched(int hits) {
+        fetchTime = System.currentTimeMillis() - start;
+        queued = hits;
+    }
+
+    public void digested(long millis) {
+        digested.increment();
+        digestTime.add(millis);
+    }
+
+    public void noContent() {
+        noContent.increment();
+    }
+
+    public void digestDone() {
+        digestEnd = System.currentTimeMillis();
+    }
+
+    public void bulked(BulkRequest request, BulkResponse response) {
+        bulks.increment();
+        actions.add(request.numberOfActions());
+        bytes.add(request.estimatedSizeInBytes());
+        bulkTime.add(response.getTook().getMillis());
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                failedActions.increment();
+            }
+        }
+    }
+
+    public void bulkFailed(BulkRequest request) {
+        bulks.increment();
+        failedActions.add(request.numberOfActions());
+    }
+
+    public void done() {
+        end = System.currentTimeMillis();
+    }
+
+    public long getQueued() {
+        return queued;
+    }
+
+    public long getDigested() {
+        return digested.sum();
+    }
+
+    public long getNoContent() {
+        return noContent.sum();
+    }
+
+    public long getActions() {
+        return actions.sum();
+    }
+
+    public long getFailedActions() {
+        return failedActions.sum();
+    }
+
+    public long getElapsed() {
+        return end - start;
+    }
+
+    private static long perSecond(long count, long millis) {
+        return millis > 0 ? count * 1000 / millis : count;
+    }
+
+    @Override
+    public String toString() {
+        long digestWall = digestEnd - start - fetchTime;
+        long bulkWall = end - start - fetchTime;
+        return "fetched " + queued + " queued docs in " + fetchTime + " ms"
+                + ", digested " + getDigested() + " docs (" + getNoContent() + " without content) in " + digestWall
+                + " ms, " + perSecond(getDigested(), digestWall) + " docs/s, " + digestTime.sum() + " ms of digester time"
+                + ", sent " + bulks.sum() + " bulks of " + getActions() + " actions and " + bytes.sum() + " bytes in " + bulkWall
+                + " ms, " + perSecond(getActions(), bulkWall) + " actions/s, " + bulkTime.sum() + " ms in the cluster"
+                + ", " + getFailedActions() + " actions failed";
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.search.elasticsearch;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How far a reconcile of a site index has got: the site and producer being worked through, the last reference done
+ * and counts of what was done with the docs. It is saved as a doc of its own index so a reconcile interrupted by a
+ * restart can carry on from it.
+ */
+public class ReconcileCheckpoint {
+
+    public static final String RUNNING = "running";
+    public static final String FINISHED = "finished";
+
+    private volatile String status = RUNNING;
+    private volatile String node;
+    private volatile long started;
+    private volatile long updated;
+    private volatile int sites;
+    private volatile int sitesDone;
+    private volatile String lastSite;
+    private volatile String siteId;
+    private volatile String producer;
+    private volatile String reference;
+
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong digested = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+
+    public ReconcileCheckpoint(String node, int sites) {
+        this.node = node;
+        this.sites = sites;
+        this.started = System.currentTimeMillis();
+        this.updated = started;
+    }
+
+    private ReconcileCheckpoint() {
+    }
+
+    public static ReconcileCheckpoint fromMap(Map<String, Object> map) {
+        ReconcileCheckpoint checkpoint = new ReconcileCheckpoint();
+        checkpoint.status = (String) map.get("status");
+        checkpoint.node = (String) map.get("node");
+        checkpoint.started = number(map.get("started"));
+        checkpoint.updated = number(map.get("updated"));
+        checkpoint.sites = (int) number(map.get("sites"));
+        checkpoint.sitesDone = (int) number(map.get("sitesDone"));
+        checkpoint.lastSite = (String) map.get("lastSite");
+        checkpoint.siteId = (String) map.get("siteId");
+        checkpoint.producer = (String) map.get("producer");
+        checkpoint.reference = (String) map.get("reference");
+        checkpoint.checked.set(number(map.get("checked")));
+        checkpoint.skipped.set(number(map.get("skipped")));
+        checkpoint.digested.set(number(map.get("digested")));
+        checkpoint.indexed.set(number(map.get("indexed")));
+        checkpoint.removed.set(number(map.get("removed")));
+        return checkpoint;
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("status", status);
+        map.put("node", node);
+        map.put("started", started);
+        map.put("updated", updated);
+        map.put("sites", sites);
+        map.put("sitesDone", sitesDone);
+        map.put("lastSite", lastSite);
+        map.put("siteId", siteId);
+        map.put("producer", producer);
+        map.put("reference", reference);
+        map.put("checked", checked.get());
+        map.put("skipped", skipped.get());
+        map.put("digested", digested.get());
+        map.put("indexed", indexed.get());
+        map.put("removed", removed.get());
+        return map;
+    }
+
+    public boolean isRunning() {
+        return RUNNING.equals(status);
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public void setSites(int sites) {
+        this.sites = sites;
+    }
+
+    public int getSitesDone() {
+        return sitesDone;
+    }
+
+    /**
+     * @return the last site done, sites are reconciled in order of their ids
+     */
+    public String getLastSite() {
+        return lastSite;
+    }
+
+    public String getSiteId() {
+        return siteId;
+    }
+
+    public String getProducer() {
+        return producer;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    /**
+     * Move on to a site, or to a producer of the current site
+     */
+    public void at(String siteId, String producer) {
+        this.siteId = siteId;
+        this.producer = producer;
+        this.reference = null;
+    }
+
+    public void done(String reference) {
+        this.reference = reference;
+        this.updated = System.currentTimeMillis();
+    }
+
+    public void siteDone() {
+        sitesDone++;
+        lastSite = siteId;
+        at(null, null);
+        updated = System.currentTimeMillis();
+    }
+
+    public void finished() {
+        status = FINISHED;
+        at(null, null);
+        updated = System.currentTimeMillis();
+    }
+
+    public void checked() {
+        checked.incrementAndGet();
+    }
+
+    public void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    public void digested() {
+        digested.incrementAndGet();
+    }
+
+    public void indexed() {
+        indexed.incrementAndGet();
+    }
+
+    public void removed() {
+        removed.incrementAndGet();
+    }
+
+    /**
+     * @return when the reconcile should finish, going by how long the sites done so far took
+     */
+    public Date getEstimatedEnd() {
+        if (!isRunning() || sitesDone == 0) {
+            return null;
+        }
+        long elapsed = updated - started;
+        return new Date(started + elapsed * sites / sitesDone);
+    }
+
+    @Override
+    public String toString() {
+        return status + " on " + node + " since " + new Date(started) + ", " + sitesDone + " of " + sites + " sites"
+                + (siteId != null ? ", at site " + siteId : "")
+                + ", checked " + checked.get() + " docs, " + skipped.get() + " unchanged, " + digested.get() + " digested, "
+                + indexed.get() + " indexed, " + removed.get() + " removed";
+    }
+}
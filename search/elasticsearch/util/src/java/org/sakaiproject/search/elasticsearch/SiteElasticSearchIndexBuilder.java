@@ -30,21 +30,37 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.opensearch.action.bulk.BulkProcessor;
 import org.opensearch.action.bulk.BulkRequest;
 import org.opensearch.action.delete.DeleteRequest;
+import org.opensearch.action.get.GetRequest;
+import org.opensearch.action.get.GetResponse;
 import org.opensearch.action.index.IndexRequest;
+import org.opensearch.action.search.ClearScrollRequest;
 import org.opensearch.action.search.SearchRequest;
 import org.opensearch.action.search.SearchResponse;
+import org.opensearch.action.search.SearchScrollRequest;
 import org.opensearch.action.search.SearchType;
 import org.opensearch.client.RequestOptions;
+import org.opensearch.common.unit.TimeValue;
 import org.opensearch.index.query.BoolQueryBuilder;
 import org.opensearch.index.query.QueryBuilder;
 import org.opensearch.search.SearchHit;
@@ -56,6 +72,7 @@ import org.sakaiproject.event.api.Event;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.search.api.EntityContentProducer;
 import org.sakaiproject.search.api.SearchService;
+import org.sakaiproject.search.api.SearchStatus;
 import org.sakaiproject.search.api.SiteSearchIndexBuilder;
 import org.sakaiproject.search.model.SearchBuilderItem;
 import org.sakaiproject.site.api.Site;
@@ -77,6 +94,9 @@ public class SiteElasticSearchIndexBuilder extends BaseElasticSearchIndexBuilder
     protected static final String ADD_RESOURCE_VALIDATION_KEY_SITE_ID = "SITE_ID";
     protected static final String DELETE_RESOURCE_KEY_SITE_ID = "SITE_ID";
 
+    protected static final String RECONCILE_INDEX_SUFFIX = "_reconcile";
+    protected static final String RECONCILE_CHECKPOINT_ID = "checkpoint";
+
     private SiteService siteService;
     private UserDirectoryService userDirectoryService;
 
@@ -104,6 +124,19 @@ public class SiteElasticSearchIndexBuilder extends BaseElasticSearchIndexBuilder
      */
     private List<String> ignoredSitesList = new ArrayList<>();
 
+    /**
+     * the checkpoint of a reconcile is saved every this many docs
+     */
+    private int reconcileCheckpointInterval = 100;
+
+    /**
+     * minutes a reconcile running on another node can go without saving its checkpoint before it is taken as dead
+     */
+    private int reconcileStaleTimeout = 30;
+
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+    private volatile ReconcileCheckpoint reconcileCheckpoint;
+
     public void init() {
         onlyIndexSearchToolSites = serverConfigurationService.getBoolean("search.onlyIndexSearchToolSites", true);
     }
@@ -201,10 +234,7 @@ public class SiteElasticSearchIndexBuilder extends BaseElasticSearchIndexBuilder
     }
 
     protected void deleteDocument(String id, String siteId) {
-        final Map<String, Object> params = Maps.newHashMap();
-        params.put(DELETE_RESOURCE_KEY_DOCUMENT_ID, id);
-        params.put(DELETE_RESOURCE_KEY_SITE_ID, siteId);
-        deleteDocumentWithParams(params);
+        deleteDocumentWithParams(deleteDocumentParams(id, siteId));
     }
 
     @Override
@@ -369,6 +399,370 @@ public class SiteElasticSearchIndexBuilder extends BaseElasticSearchIndexBuilder
         backgroundScheduler.schedule(new RebuildSiteTask(siteId), 0);
     }
 
+    /**
+     * Reconcile the index of every indexable site with its entities, see {@link #reconcileSites(ReconcileCheckpoint)}.
+     * A reconcile that was interrupted carries on from its checkpoint, unless it is still running on another node.
+     */
+    @Override
+    public void reconcileIndex() {
+        ReconcileCheckpoint saved = loadReconcileCheckpoint();
+        if (saved != null && saved.isRunning()) {
+            boolean stale = System.currentTimeMillis() - saved.getUpdated() > TimeUnit.MINUTES.toMillis(reconcileStaleTimeout);
+            if (!StringUtils.equals(serverConfigurationService.getServerId(), saved.getNode()) && !stale) {
+                getLog().info("Not reconciling index builder [{}], a reconcile is already running on node {}", getName(), saved.getNode());
+                return;
+            }
+            startReconcile(saved, 0);
+        } else {
+            startReconcile(null, 0);
+        }
+    }
+
+    @Override
+    protected void initializeIndex() {
+        super.initializeIndex();
+
+        // carry on with a reconcile this node was running when it stopped
+        if (!rebuildIndexOnStartup) {
+            ReconcileCheckpoint saved = loadReconcileCheckpoint();
+            if (saved != null && saved.isRunning() && StringUtils.equals(serverConfigurationService.getServerId(), saved.getNode())) {
+                getLog().info("Resuming reconcile of index builder [{}], {}", getName(), saved);
+                startReconcile(saved, delay * 1000L);
+            }
+        }
+    }
+
+    protected void startReconcile(ReconcileCheckpoint resumeFrom, long delayMillis) {
+        if (!reconciling.compareAndSet(false, true)) {
+            getLog().info("A reconcile of index builder [{}] is already running", getName());
+            return;
+        }
+        if (testMode) {
+            new ReconcileTask(resumeFrom).run();
+            return;
+        }
+        backgroundScheduler.schedule(new ReconcileTask(resumeFrom), delayMillis);
+    }
+
+    protected class ReconcileTask extends TimerTask {
+        private final ReconcileCheckpoint resumeFrom;
+
+        public ReconcileTask(ReconcileCheckpoint resumeFrom) {
+            this.resumeFrom = resumeFrom;
+        }
+
+        public void run() {
+            try {
+                Thread.currentThread().setPriority(Thread.NORM_PRIORITY - 1);
+                reconcileSites(resumeFrom);
+            } catch (Exception e) {
+                getLog().error("Problem reconciling index builder [" + getName() + "]", e);
+            } finally {
+                reconciling.set(false);
+            }
+        }
+    }
+
+    /**
+     * Unlike a rebuild this leaves the index in place: the docs stored for each site are compared with what its
+     * producers have, docs whose entity is gone are removed and only entities whose content version or content hash
+     * differ from the stored ones are indexed again. Sites are done in order of their ids and producers in order of
+     * their class names, the checkpoint is saved every {@link #reconcileCheckpointInterval} docs so an interrupted
+     * reconcile can skip what it had done.
+     *
+     * @param resumeFrom the checkpoint of an interrupted reconcile, or null to start from the first site
+     */
+    protected void reconcileSites(ReconcileCheckpoint resumeFrom) throws InterruptedException {
+        List<String> siteIds = siteService.getSites(SiteService.SelectionType.ANY, null, null, null, SiteService.SortType.NONE, null)
+                .stream()
+                .filter(this::isSiteIndexable)
+                .map(Site::getId)
+                .sorted()
+                .collect(Collectors.toList());
+
+        ReconcileCheckpoint checkpoint = resumeFrom != null
+                ? resumeFrom
+                : new ReconcileCheckpoint(serverConfigurationService.getServerId(), siteIds.size());
+        checkpoint.setNode(serverConfigurationService.getServerId());
+        checkpoint.setSites(siteIds.size());
+        reconcileCheckpoint = checkpoint;
+
+        String lastSite = checkpoint.getLastSite();
+        String resumeSite = checkpoint.getSiteId();
+        getLog().info("Reconciling index builder [{}], {}", getName(), checkpoint);
+        saveReconcileCheckpoint(checkpoint);
+
+        BulkProcessor bulkProcessor = newBulkProcessor(new BulkIndexStats());
+        try {
+            for (String siteId : siteIds) {
+                if (lastSite != null && siteId.compareTo(lastSite) <= 0) {
+                    continue;
+                }
+                if (siteId.equals(resumeSite)) {
+                    reconcileSite(siteId, checkpoint, bulkProcessor, checkpoint.getProducer(), checkpoint.getReference());
+                } else {
+                    reconcileSite(siteId, checkpoint, bulkProcessor, null, null);
+                }
+                checkpoint.siteDone();
+                saveReconcileCheckpoint(checkpoint);
+            }
+        } finally {
+            if (!bulkProcessor.awaitClose(BULK_CLOSE_TIMEOUT, TimeUnit.MINUTES)) {
+                getLog().warn("Bulk requests of the reconcile of index builder [{}] didn't finish in {} minutes", getName(), BULK_CLOSE_TIMEOUT);
+            }
+        }
+
+        checkpoint.finished();
+        saveReconcileCheckpoint(checkpoint);
+        getLog().info("Reconciled index builder [{}], {}", getName(), checkpoint);
+    }
+
+    /**
+     * @param resumeProducer the producer to carry on from, those before it are only listed to find the orphaned docs
+     * @param resumeReference the last reference of that producer that was done
+     */
+    protected void reconcileSite(String siteId, ReconcileCheckpoint checkpoint, BulkProcessor bulkProcessor,
+                                 String resumeProducer, String resumeReference) throws InterruptedException {
+        Map<String, StoredDocument> stored = getStoredDocuments(siteId);
+        Set<String> produced = new HashSet<>();
+
+        List<EntityContentProducer> siteProducers = new ArrayList<>(producers);
+        siteProducers.sort(Comparator.comparing(p -> p.getClass().getName()));
+
+        for (EntityContentProducer ecp : siteProducers) {
+            String producer = ecp.getClass().getName();
+            List<String> references = new ArrayList<>();
+            enableAzgSecurityAdvisor();
+            try {
+                Iterator<String> i = ecp.getSiteContentIterator(siteId);
+                while (i != null && i.hasNext()) {
+                    references.add(i.next());
+                }
+            } finally {
+                disableAzgSecurityAdvisor();
+            }
+            produced.addAll(references);
+
+            int from = 0;
+            if (resumeProducer != null) {
+                int compared = producer.compareTo(resumeProducer);
+                if (compared < 0) {
+                    continue;
+                }
+                if (compared == 0 && resumeReference != null) {
+                    // if the reference has gone the producer is done again from the start
+                    from = references.indexOf(resumeReference) + 1;
+                }
+            }
+            checkpoint.at(siteId, producer);
+
+            for (int start = from; start < references.size(); start += reconcileCheckpointInterval) {
+                List<String> chunk = references.subList(start, Math.min(start + reconcileCheckpointInterval, references.size()));
+                List<Future<?>> reconciles = new ArrayList<>(chunk.size());
+                for (String reference : chunk) {
+                    reconciles.add(contentIndexExecutor.submit(
+                            () -> reconcileDocument(reference, ecp, stored.get(reference), checkpoint, bulkProcessor)));
+                }
+                for (Future<?> reconcile : reconciles) {
+                    try {
+                        reconcile.get();
+                    } catch (ExecutionException e) {
+                        getLog().error("Failed to reconcile a doc of site " + siteId + " in index builder [" + getName() + "]", e.getCause());
+                    }
+                }
+                // docs of the chunk that are still in flight when the node stops are left for the next reconcile
+                checkpoint.done(chunk.get(chunk.size() - 1));
+                saveReconcileCheckpoint(checkpoint);
+            }
+        }
+
+        for (StoredDocument document : stored.values()) {
+            if (!produced.contains(document.reference)) {
+                bulkProcessor.add(prepareDeleteDocument(deleteDocumentParams(document.id, siteId)));
+                checkpoint.removed();
+            }
+        }
+    }
+
+    protected void reconcileDocument(String reference, EntityContentProducer ecp, StoredDocument stored,
+                                     ReconcileCheckpoint checkpoint, BulkProcessor bulkProcessor) {
+        checkpoint.checked();
+        enableAzgSecurityAdvisor();
+        try {
+            String version = ecp.getContentVersion(reference);
+            if (stored != null && stored.hash != null && version != null && version.equals(stored.version)) {
+                checkpoint.skipped();
+                return;
+            }
+
+            String content = ecp.getContent(reference);
+            checkpoint.digested();
+            if (StringUtils.isBlank(content)) {
+                if (stored != null) {
+                    bulkProcessor.add(prepareDeleteDocument(deleteDocumentParams(stored.id, ecp.getSiteId(reference))));
+                    checkpoint.removed();
+                }
+                return;
+            }
+            if (stored != null && contentHash(content).equals(stored.hash) && Objects.equals(version, stored.version)) {
+                checkpoint.skipped();
+                return;
+            }
+
+            IndexRequest indexRequest = prepareIndex(reference, ecp, true, content);
+            if (stored != null && !stored.id.equals(indexRequest.id())) {
+                bulkProcessor.add(prepareDeleteDocument(deleteDocumentParams(stored.id, ecp.getSiteId(reference))));
+            }
+            bulkProcessor.add(indexRequest);
+            checkpoint.indexed();
+        } catch (Exception e) {
+            getLog().error("Failed to reconcile " + reference + " in index builder [" + getName() + "]", e);
+        } finally {
+            disableAzgSecurityAdvisor();
+        }
+    }
+
+    /**
+     * The docs stored for a site, by reference, with the hash and version of their content if they were indexed
+     */
+    protected Map<String, StoredDocument> getStoredDocuments(String siteId) {
+        Map<String, StoredDocument> documents = new HashMap<>();
+        TimeValue keepAlive = TimeValue.timeValueMinutes(1);
+
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                .query(termQuery(SearchService.FIELD_SITEID, siteId))
+                .size(1000)
+                .storedFields(Arrays.asList(SearchService.FIELD_REFERENCE, FIELD_CONTENT_HASH, FIELD_CONTENT_VERSION));
+        SearchRequest searchRequest = new SearchRequest(indexName)
+                .routing(siteId)
+                .scroll(keepAlive)
+                .source(searchSourceBuilder);
+
+        String scrollId = null;
+        try {
+            SearchResponse response = client.search(searchRequest, RequestOptions.DEFAULT);
+            while (response.getHits().getHits().length > 0) {
+                scrollId = response.getScrollId();
+                for (SearchHit hit : response.getHits()) {
+                    String reference = getFieldFromSearchHit(SearchService.FIELD_REFERENCE, hit);
+                    if (reference != null) {
+                        documents.put(reference, new StoredDocument(hit.getId(), reference,
+                                getFieldFromSearchHit(FIELD_CONTENT_HASH, hit), getFieldFromSearchHit(FIELD_CONTENT_VERSION, hit)));
+                    }
+                }
+                response = client.scroll(new SearchScrollRequest(scrollId).scroll(keepAlive), RequestOptions.DEFAULT);
+            }
+        } catch (IOException ioe) {
+            getLog().warn("Could not read the docs of site {} in index builder [{}], {}", siteId, getName(), ioe.toString());
+        } finally {
+            if (scrollId != null) {
+                ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+                clearScrollRequest.addScrollId(scrollId);
+                try {
+                    client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+                } catch (IOException ioe) {
+                    getLog().debug("Could not clear scroll, {}", ioe.toString());
+                }
+            }
+        }
+        return documents;
+    }
+
+    protected static class StoredDocument {
+        private final String id;
+        private final String reference;
+        private final String hash;
+        private final String version;
+
+        protected StoredDocument(String id, String reference, String hash, String version) {
+            this.id = id;
+            this.reference = reference;
+            this.hash = hash;
+            this.version = version;
+        }
+    }
+
+    private Map<String, Object> deleteDocumentParams(String id, String siteId) {
+        final Map<String, Object> params = Maps.newHashMap();
+        params.put(DELETE_RESOURCE_KEY_DOCUMENT_ID, id);
+        params.put(DELETE_RESOURCE_KEY_SITE_ID, siteId);
+        return params;
+    }
+
+    /**
+     * Checkpoints are kept in an index of their own so they survive a restart and are seen by every node
+     */
+    protected String getReconcileIndexName() {
+        return indexName + RECONCILE_INDEX_SUFFIX;
+    }
+
+    protected ReconcileCheckpoint loadReconcileCheckpoint() {
+        try {
+            GetResponse response = client.get(new GetRequest(getReconcileIndexName(), RECONCILE_CHECKPOINT_ID), RequestOptions.DEFAULT);
+            return response.isExists() ? ReconcileCheckpoint.fromMap(response.getSourceAsMap()) : null;
+        } catch (Exception e) {
+            // no reconcile has been run yet
+            getLog().debug("No reconcile checkpoint for index builder [{}], {}", getName(), e.toString());
+            return null;
+        }
+    }
+
+    protected void saveReconcileCheckpoint(ReconcileCheckpoint checkpoint) {
+        try {
+            client.index(new IndexRequest(getReconcileIndexName())
+                    .id(RECONCILE_CHECKPOINT_ID)
+                    .source(checkpoint.toMap()), RequestOptions.DEFAULT);
+        } catch (Exception e) {
+            getLog().warn("Could not save the reconcile checkpoint of index builder [{}], {}", getName(), e.toString());
+        }
+    }
+
+    /**
+     * Shows the progress of a reconcile running on this node as the current worker. It is read from the checkpoint
+     * kept in memory, the one saved to the index is only read when a reconcile starts.
+     */
+    @Override
+    public SearchStatus getSearchStatus() {
+        final SearchStatus status = super.getSearchStatus();
+        final ReconcileCheckpoint checkpoint = reconcileCheckpoint;
+        if (!reconciling.get() || checkpoint == null || !checkpoint.isRunning()) {
+            return status;
+        }
+        final String worker = "Reconcile " + checkpoint;
+        final Date estimatedEnd = checkpoint.getEstimatedEnd();
+        final String workerEtc = estimatedEnd != null ? estimatedEnd.toString() : null;
+
+        return new SearchStatus() {
+            public String getLastLoad() {
+                return status.getLastLoad();
+            }
+
+            public String getLoadTime() {
+                return status.getLoadTime();
+            }
+
+            public String getCurrentWorker() {
+                return worker;
+            }
+
+            public String getCurrentWorkerETC() {
+                return workerEtc;
+            }
+
+            public List getWorkerNodes() {
+                return status.getWorkerNodes();
+            }
+
+            public String getNDocuments() {
+                return status.getNDocuments();
+            }
+
+            public String getPDocuments() {
+                return status.getPDocuments();
+            }
+        };
+    }
+
     protected void deleteAllDocumentForSite(String siteId) {
         getLog().debug("removing all documents from search index for siteId: {}", siteId);
 
@@ -583,6 +977,14 @@ public class SiteElasticSearchIndexBuilder extends BaseElasticSearchIndexBuilder
         this.ignoredSitesList = ignoredSitesList;
     }
 
+    public void setReconcileCheckpointInterval(int reconcileCheckpointInterval) {
+        this.reconcileCheckpointInterval = Math.max(reconcileCheckpointInterval, 1);
+    }
+
+    public void setReconcileStaleTimeout(int reconcileStaleTimeout) {
+        this.reconcileStaleTimeout = reconcileStaleTimeout;
+    }
+
     public void setUserDirectoryService(UserDirectoryService userDirectoryService) {
         this.userDirectoryService = userDirectoryService;
     }
@@ -221,6 +221,18 @@ public interface EntityContentProducer
 		return null;
 	}
 
+	/**
+	 * A stamp that changes whenever the content of the entity does, such as its modification
+	 * time, and that is cheap to get. Reconciling an index skips digesting entities whose stamp
+	 * hasn't changed since they were indexed.
+	 *
+	 * @param ref
+	 * @return the stamp, or null if the producer can't tell without digesting the content
+	 */
+	default String getContentVersion(String ref) {
+		return null;
+	}
+
 	/**
 	 * At the moment this is a placeholder, but eventually
 	 * It will return a block of Custom RDF, that the EntityContentProducer wants
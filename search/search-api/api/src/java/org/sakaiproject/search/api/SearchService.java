@@ -265,6 +265,14 @@ public interface SearchService extends Diagnosable
      */
 	void rebuildIndex(String indexBuilderName);
 
+    /**
+     * Bring the named index up to date with the entities without rebuilding it, only the entities
+     * that changed are digested again. An interrupted reconcile carries on from where it got to.
+     * @param indexBuilderName the name of the index to reconcile
+     */
+	default void reconcileIndex(String indexBuilderName) {
+	}
+
 	/**
 	 * Refresh the current site only
 	 * 
@@ -39,6 +39,13 @@ public interface SiteSearchIndexBuilder extends SearchIndexBuilder {
      */
     void refreshIndex(String currentSiteId);
 
+    /**
+     * Bring the index of every indexable site up to date with its entities, digesting only the
+     * entities that changed since they were indexed. Progress is checkpointed so an interrupted
+     * reconcile resumes where it stopped.
+     */
+    void reconcileIndex();
+
     /**
      * get a list of Master Search Items that control the search operation for the
      * Site (current site)
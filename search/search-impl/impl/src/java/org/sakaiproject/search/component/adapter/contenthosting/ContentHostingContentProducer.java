@@ -692,6 +692,25 @@ public class ContentHostingContentProducer implements EntityContentProducer, Sto
 		return null;
 	}
 
+	/**
+	 * The modification time and length of the resource, any edit of a resource changes its modification time
+	 */
+	public String getContentVersion(String ref)
+	{
+		try
+		{
+			Reference reference = entityManager.newReference(ref);
+			ContentResource contentResource = contentHostingService.getResource(reference.getId());
+			String modified = contentResource.getProperties().getProperty(ResourceProperties.PROP_MODIFIED_DATE);
+			return modified == null ? null : modified + "/" + contentResource.getContentLength();
+		}
+		catch (PermissionException | IdUnusedException | TypeException e)
+		{
+			log.debug(e.getMessage());
+		}
+		return null;
+	}
+
 	/**
 	 * @return Returns the digesterSizeLimit.
 	 */
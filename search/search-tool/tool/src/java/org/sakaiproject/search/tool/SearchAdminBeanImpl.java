@@ -74,6 +74,11 @@ public class SearchAdminBeanImpl implements SearchAdminBean
 	private static final String COMMAND_REBUILDINSTANCE = "?" + COMMAND + "="
 			+ REBUILDINSTANCE;
 
+	private static final String RECONCILEINSTANCE = "reconcileinstance";
+
+	private static final String COMMAND_RECONCILEINSTANCE = "?" + COMMAND + "="
+			+ RECONCILEINSTANCE;
+
 	private static final String REFRESHINSTANCE = "refreshinstance";
 
 	private static final String COMMAND_REFRESHINSTANCE = "?" + COMMAND + "="
@@ -189,6 +194,11 @@ public class SearchAdminBeanImpl implements SearchAdminBean
 			doRebuildInstance(indexBuilderName);
 			redirect = true;
 		}
+		else if (internCommand == RECONCILEINSTANCE)
+		{
+			doReconcileInstance(indexBuilderName);
+			redirect = true;
+		}
 		else if (internCommand == REFRESHINSTANCE)
 		{
 			doRefreshInstance(indexBuilderName);
@@ -278,6 +288,22 @@ public class SearchAdminBeanImpl implements SearchAdminBean
 
 	}
 
+	/**
+	 * Reconcile the index with the entities, only reindexing what has changed since it was indexed. The
+	 * progress shows in the status of the index.
+	 * @throws PermissionException 
+	 */
+	private void doReconcileInstance(String indexBuilderName) throws PermissionException
+	{
+		if (!superUser)
+		{
+			throw new PermissionException(userName, "site.update", siteCheck);
+		}
+		searchService.reconcileIndex(indexBuilderName);
+		commandFeedback = Messages.getString("searchadmin_statok");
+
+	}
+
 	/**
 	 * Refresh just this suite
 	 */
@@ -417,6 +443,8 @@ public class SearchAdminBeanImpl implements SearchAdminBean
 		{
 			sb.append(MessageFormat.format(adminOptionsFormat, new Object[] {
 				COMMAND_REBUILDINSTANCE, Messages.getString("searchadmin_cmd_rebuildind"),"" }));
+			sb.append(MessageFormat.format(adminOptionsFormat, new Object[] {
+				COMMAND_RECONCILEINSTANCE, Messages.getString("searchadmin_cmd_reconcileind"),"" }));
 			sb.append(MessageFormat.format(adminOptionsFormat, new Object[] {
 				COMMAND_REFRESHINSTANCE, Messages.getString("searchadmin_cmd_refreshind"),"" }));
 			sb.append(MessageFormat.format(adminOptionsFormat, new Object[] {
@@ -510,6 +538,7 @@ public class SearchAdminBeanImpl implements SearchAdminBean
 		List<AdminOption> o  = new ArrayList<AdminOption>();
 		if (superUser) {
 			o.add(new AdminOptionImpl(REBUILDINSTANCE, Messages.getString("searchadmin_cmd_rebuildind"),"" ));
+			o.add(new AdminOptionImpl(RECONCILEINSTANCE, Messages.getString("searchadmin_cmd_reconcileind"),"" ));
 			o.add(new AdminOptionImpl(REFRESHINSTANCE, Messages.getString("searchadmin_cmd_refreshind"),"" ));
 		}
 		return o;
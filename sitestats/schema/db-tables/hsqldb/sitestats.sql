@@ -24,3 +24,8 @@ create index SST_SITEACTIVITY_DATE_IX on SST_SITEACTIVITY (ACTIVITY_DATE);
 create index SST_SITEACTIVITY_SITE_ID_IX on SST_SITEACTIVITY (SITE_ID);
 create index SST_SITEVISITS_DATE_IX on SST_SITEVISITS (VISITS_DATE);
 create index SST_SITEVISITS_SITE_ID_IX on SST_SITEVISITS (SITE_ID);
+create table SST_EVENTS_ROLLUP (ID bigint generated by default as identity (start with 1), SITE_ID varchar(99) not null, USER_ID varchar(99) not null, EVENT_ID varchar(32) not null, PERIOD varchar(1) not null, BUCKET_DATE date not null, EVENT_COUNT bigint not null, primary key (ID));
+create table SST_RESOURCES_ROLLUP (ID bigint generated by default as identity (start with 1), SITE_ID varchar(99) not null, USER_ID varchar(99) not null, RESOURCE_REF varchar(255) not null, RESOURCE_ACTION varchar(12) not null, PERIOD varchar(1) not null, BUCKET_DATE date not null, RESOURCE_COUNT bigint not null, primary key (ID));
+create table SST_ROLLUP_STATE (ID bigint generated by default as identity (start with 1), SOURCE varchar(32) not null, PERIOD varchar(1) not null, ROLLED_UP_TO date, primary key (ID), unique (SOURCE, PERIOD));
+create index SST_EVENTS_ROLLUP_SITE_IX on SST_EVENTS_ROLLUP (SITE_ID, PERIOD, BUCKET_DATE);
+create index SST_RESOURCES_ROLLUP_SITE_IX on SST_RESOURCES_ROLLUP (SITE_ID, PERIOD, BUCKET_DATE);
@@ -32,3 +32,11 @@ create sequence SST_REPORTS_ID;
 create sequence SST_RESOURCES_ID;
 create sequence SST_SITEACTIVITY_ID;
 create sequence SST_SITEVISITS_ID;
+create table SST_EVENTS_ROLLUP (ID number(19,0) not null, SITE_ID varchar2(99 char) not null, USER_ID varchar2(99 char) not null, EVENT_ID varchar2(32 char) not null, PERIOD varchar2(1 char) not null, BUCKET_DATE date not null, EVENT_COUNT number(19,0) not null, primary key (ID));
+create table SST_RESOURCES_ROLLUP (ID number(19,0) not null, SITE_ID varchar2(99 char) not null, USER_ID varchar2(99 char) not null, RESOURCE_REF varchar2(255 char) not null, RESOURCE_ACTION varchar2(12 char) not null, PERIOD varchar2(1 char) not null, BUCKET_DATE date not null, RESOURCE_COUNT number(19,0) not null, primary key (ID));
+create table SST_ROLLUP_STATE (ID number(19,0) not null, SOURCE varchar2(32 char) not null, PERIOD varchar2(1 char) not null, ROLLED_UP_TO date, primary key (ID), constraint sst_rollup_source_period_key unique (SOURCE, PERIOD));
+create index SST_EVENTS_ROLLUP_SITE_IX on SST_EVENTS_ROLLUP (SITE_ID, PERIOD, BUCKET_DATE);
+create index SST_RESOURCES_ROLLUP_SITE_IX on SST_RESOURCES_ROLLUP (SITE_ID, PERIOD, BUCKET_DATE);
+create sequence SST_EVENTS_ROLLUP_ID;
+create sequence SST_RESOURCES_ROLLUP_ID;
+create sequence SST_ROLLUP_STATE_ID;
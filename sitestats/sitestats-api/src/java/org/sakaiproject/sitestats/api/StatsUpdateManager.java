@@ -121,6 +121,17 @@ public interface StatsUpdateManager {
 	 */
 	public Event buildEvent(Date date, String event, String ref, String context, String sessionUser, String sessionId);
 	
+	/**
+	 * Build the weekly and monthly rollups of SST_EVENTS and SST_RESOURCES for the weeks and months that are over,
+	 * have all their events aggregated, and have not been rolled up yet, oldest first. Without the collect thread a week
+	 * or month is only rolled up once the aggregate job has processed events past its end. Report queries read the
+	 * rollups instead of the daily rows for the whole weeks and months they span.
+	 * This method is called by the default quartz job implementation after the events are collected.
+	 * @param maxBuckets The maximum number of weeks or months to roll up in this call, 0 for no limit.
+	 * @return The number of weeks or months rolled up.
+	 */
+	public int updateRollups(int maxBuckets);
+	
 	
 	// -----------------------------------------------------------------------
 	// --- QuartzJob runs methods --------------------------------------------
@@ -33,4 +33,14 @@ public interface StatsUpdateManagerMXBean {
     double getNumberOfEventsGeneratedPerSec();
 
     long getAverageTimeInEventProcessingPerEvent();
+
+    int getQueueSize();
+
+    double getEventsDrainedPerSec();
+
+    long getLastFlushDuration();
+
+    long getAverageFlushDuration();
+
+    long getMaxFlushDuration();
 }
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2006-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * The SST_EVENTS counts of a site, user and event summed over a week or a month.
+ * @see EventStatImpl
+ */
+@Data
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@NoArgsConstructor
+public class EventStatRollupImpl implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @EqualsAndHashCode.Include
+    private long id;
+    private String siteId;
+    private String userId;
+    private String eventId;
+    /** W for a week, M for a month */
+    private String period;
+    /** The first day of the week or month */
+    private Date date;
+    private long count;
+
+    public EventStatRollupImpl(String siteId, String userId, String eventId, String period, Date date, long count) {
+        this.siteId = siteId;
+        this.userId = userId;
+        this.eventId = eventId;
+        this.period = period;
+        this.date = date;
+        this.count = count;
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2006-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * How far the weekly or monthly rollups of a stats table have been built.
+ */
+@Data
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@NoArgsConstructor
+public class RollupStateImpl implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @EqualsAndHashCode.Include
+    private long id;
+    /** The rolled up table, SST_EVENTS or SST_RESOURCES */
+    private String source;
+    /** W for weeks, M for months */
+    private String period;
+    /** All the weeks or months before this day have been rolled up */
+    private Date rolledUpTo;
+
+    public RollupStateImpl(String source, String period) {
+        this.source = source;
+        this.period = period;
+    }
+}
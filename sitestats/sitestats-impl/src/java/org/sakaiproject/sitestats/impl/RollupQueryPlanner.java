@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2006-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Splits the date range of a stats query into the monthly and weekly rollups that can answer it, using the
+ * coarsest buckets first, and the days left over at both ends which are read from the daily tables.
+ * Rollups are only used up to the day they have been built to.
+ */
+public class RollupQueryPlanner {
+
+	/** The daily tables rolled up, used as the SOURCE of the rollup state */
+	public static final String	SOURCE_EVENTS		= "SST_EVENTS";
+	public static final String	SOURCE_RESOURCES	= "SST_RESOURCES";
+
+	/** The size of a rollup bucket */
+	public enum Period {
+		WEEK("W") {
+			public LocalDate start(LocalDate day) {
+				return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+			}
+
+			public LocalDate next(LocalDate start) {
+				return start.plusWeeks(1);
+			}
+		},
+		MONTH("M") {
+			public LocalDate start(LocalDate day) {
+				return day.withDayOfMonth(1);
+			}
+
+			public LocalDate next(LocalDate start) {
+				return start.plusMonths(1);
+			}
+		};
+
+		private final String code;
+
+		Period(String code) {
+			this.code = code;
+		}
+
+		/** The value stored in the PERIOD column */
+		public String getCode() {
+			return code;
+		}
+
+		/** The first day of the bucket holding the day */
+		public abstract LocalDate start(LocalDate day);
+
+		/** The first day of the bucket after the one starting on the day */
+		public abstract LocalDate next(LocalDate start);
+
+		/** The first day of the first bucket starting on or after the day */
+		public LocalDate ceiling(LocalDate day) {
+			LocalDate start = start(day);
+			return start.equals(day) ? start : next(start);
+		}
+	}
+
+	/** A part of the queried date range, read from the rollups of a period or from the daily tables when the period is null */
+	public static class Segment {
+		private final Period	period;
+		private final Date		firstDay;
+		private final Date		lastDay;
+
+		public Segment(Period period, Date firstDay, Date lastDay) {
+			this.period = period;
+			this.firstDay = firstDay;
+			this.lastDay = lastDay;
+		}
+
+		/** The rollups to read, null for the daily tables */
+		public Period getPeriod() {
+			return period;
+		}
+
+		/** The PERIOD column value of the rollups to read, null for the daily tables */
+		public String getPeriodCode() {
+			return period != null ? period.getCode() : null;
+		}
+
+		/** The first day of the segment, null if unbounded */
+		public Date getFirstDay() {
+			return firstDay;
+		}
+
+		/** The last day of the segment (inclusive), null if unbounded */
+		public Date getLastDay() {
+			return lastDay;
+		}
+
+		public String toString() {
+			return (period != null ? period : "DAY") + " " + firstDay + " - " + lastDay;
+		}
+	}
+
+	private RollupQueryPlanner() {
+	}
+
+	/**
+	 * Plan a query.
+	 * @param iDate The first day queried (inclusive), null for no lower bound.
+	 * @param fDate The last day queried (inclusive), null for no upper bound.
+	 * @param weeksTo All the weeks before this day have been rolled up, null if none.
+	 * @param monthsTo All the months before this day have been rolled up, null if none.
+	 * @param useWeeks Whether weeks may be used, they can't when the results are grouped by month or year as a
+	 * week may span two of them.
+	 * @return The segments of the query in date order. A single segment on the daily tables with the given dates
+	 * when no rollup can be used.
+	 */
+	public static List<Segment> plan(Date iDate, Date fDate, LocalDate weeksTo, LocalDate monthsTo, boolean useWeeks) {
+		LocalDate from = toLocalDate(iDate);
+		LocalDate to = fDate != null ? toLocalDate(fDate).plusDays(1) : null;
+		if (from != null && to != null && !from.isBefore(to)) {
+			return Collections.singletonList(new Segment(null, iDate, fDate));
+		}
+
+		List<Range> ranges = fill(new Range(null, from, to), Period.MONTH, monthsTo);
+		if (useWeeks) {
+			List<Range> withWeeks = new ArrayList<>();
+			for (Range range : ranges) {
+				if (range.period == null) {
+					withWeeks.addAll(fill(range, Period.WEEK, weeksTo));
+				} else {
+					withWeeks.add(range);
+				}
+			}
+			ranges = withWeeks;
+		}
+		if (ranges.size() == 1 && ranges.get(0).period == null) {
+			return Collections.singletonList(new Segment(null, iDate, fDate));
+		}
+
+		List<Segment> segments = new ArrayList<>(ranges.size());
+		for (Range range : ranges) {
+			segments.add(new Segment(range.period, toDate(range.from), range.to != null ? toDate(range.to.minusDays(1)) : null));
+		}
+		return segments;
+	}
+
+	/** Use the buckets of the period that fit in a range of days, returns the range itself if none fit */
+	private static List<Range> fill(Range days, Period period, LocalDate rolledUpTo) {
+		if (rolledUpTo == null) {
+			return Collections.singletonList(days);
+		}
+		LocalDate start = days.from != null ? period.ceiling(days.from) : null;
+		LocalDate end = days.to != null ? period.start(days.to) : rolledUpTo;
+		if (end.isAfter(rolledUpTo)) {
+			end = rolledUpTo;
+		}
+		if (start != null && !start.isBefore(end)) {
+			return Collections.singletonList(days);
+		}
+
+		List<Range> ranges = new ArrayList<>(3);
+		if (start != null && days.from.isBefore(start)) {
+			ranges.add(new Range(null, days.from, start));
+		}
+		ranges.add(new Range(period, start, end));
+		if (days.to == null || end.isBefore(days.to)) {
+			ranges.add(new Range(null, end, days.to));
+		}
+		return ranges;
+	}
+
+	/** A range of days, from inclusive and to exclusive */
+	private static class Range {
+		private final Period	period;
+		private final LocalDate	from;
+		private final LocalDate	to;
+
+		private Range(Period period, LocalDate from, LocalDate to) {
+			this.period = period;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	/** The day of a date in the server time zone, which is how the daily tables store them */
+	public static LocalDate toLocalDate(Date date) {
+		// java.sql.Date does not support toInstant()
+		return date != null ? Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate() : null;
+	}
+
+	/** The start of a day in the server time zone */
+	public static Date toDate(LocalDate day) {
+		return day != null ? Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant()) : null;
+	}
+}
@@ -108,7 +108,10 @@ public class SiteStatsPersistenceConfig {
                 "org/sakaiproject/sitestats/impl/hbm/JobRunImpl.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/ReportDef.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/ServerStat.hbm.xml",
-                "org/sakaiproject/sitestats/impl/hbm/UserStat.hbm.xml"
+                "org/sakaiproject/sitestats/impl/hbm/UserStat.hbm.xml",
+                "org/sakaiproject/sitestats/impl/hbm/EventStatRollupImpl.hbm.xml",
+                "org/sakaiproject/sitestats/impl/hbm/ResourceStatRollupImpl.hbm.xml",
+                "org/sakaiproject/sitestats/impl/hbm/RollupStateImpl.hbm.xml"
         };
     }
 
@@ -48,6 +48,7 @@ public class StatsAggregateJobImpl implements StatefulJob {
 	// Spring fields
 	private int					maxEventsPerRun		= 0;
 	private int					sqlBlockSize		= 1000;
+	private int					maxRollupBucketsPerRun	= 12;
 	private long				startEventId		= -1;
 	private long 				lastEventIdInTable	= -1;
 	private String				sakaiEventTimeZone	= "";
@@ -192,6 +193,12 @@ public class StatsAggregateJobImpl implements StatefulJob {
 			log.error("Summary: job run failed", e);
 		}
 
+		// roll up the weeks and months that are over
+		if(maxRollupBucketsPerRun >= 0) {
+			int buckets = statsUpdateManager.updateRollups(maxRollupBucketsPerRun);
+			log.info("Rolled up " + buckets + " weeks/months");
+		}
+
 		// finish		
 		log.info("Finishing job: " + jobName);
 	}
@@ -630,6 +637,14 @@ public class StatsAggregateJobImpl implements StatefulJob {
 		this.maxEventsPerRun = maxEventsPerRun;
 	}
 
+	public int getMaxRollupBucketsPerRun() {
+		return maxRollupBucketsPerRun;
+	}
+
+	public void setMaxRollupBucketsPerRun(int maxRollupBucketsPerRun) {
+		this.maxRollupBucketsPerRun = maxRollupBucketsPerRun;
+	}
+
 	public int getSqlBlockSize() {
 		return sqlBlockSize;
 	}
@@ -24,15 +24,19 @@ import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
+import java.util.function.Function;
 
 import org.apache.commons.digester.Digester;
 import org.apache.commons.lang3.BooleanUtils;
@@ -124,6 +128,7 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 	@Getter @Setter private boolean	enableReportExport		= true;
 	@Getter @Setter private boolean	sortUsersByDisplayName	= false;
 	@Getter @Setter private boolean	displayDetailedEvents	= false;
+	@Getter @Setter private boolean	enableRollups			= true;
 
 	/** Controller fields */
 	@Getter @Setter private boolean	showAnonymousAccessEvents = true;
@@ -1116,12 +1121,39 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 			final String sortBy, 
 			boolean sortAscending,
 			final int maxResults) {
+
+		boolean distinctUsers = totalsBy != null && (totalsBy.contains(T_VISITS) || totalsBy.contains(T_UNIQUEVISITS));
+		List<RollupQueryPlanner.Segment> plan = planQuery(RollupQueryPlanner.SOURCE_EVENTS, iDate, fDate, totalsBy, inverseUserSelection, distinctUsers);
+		if(plan.size() == 1) {
+			RollupQueryPlanner.Segment segment = plan.get(0);
+			return getEventStats(segment.getPeriodCode(), siteId, events, segment.getFirstDay(), segment.getLastDay(), userIds, inverseUserSelection, page, totalsBy, sortBy, sortAscending, maxResults);
+		}
+		List<List<Stat>> results = new ArrayList<>();
+		for(RollupQueryPlanner.Segment segment : plan) {
+			results.add(getEventStats(segment.getPeriodCode(), siteId, events, segment.getFirstDay(), segment.getLastDay(), userIds, inverseUserSelection, null, totalsBy, null, true, 0));
+		}
+		return mergeSegments(results, totalsBy, sortBy, sortAscending, page, maxResults);
+	}
+
+	private List<Stat> getEventStats(
+			final String rollupPeriod,
+			final String siteId,
+			final List<String> events,
+			final Date iDate, final Date fDate,
+			final List<String> userIds,
+			final boolean inverseUserSelection,
+			final PagingPosition page, 
+			final List<String> totalsBy, 
+			final String sortBy, 
+			boolean sortAscending,
+			final int maxResults) {
 		
 		final Set<String> anonymousEvents = eventRegistryService.getAnonymousEventIds();
 		StatsSqlBuilder sqlBuilder = new StatsSqlBuilder(getDbVendor(),
 				Q_TYPE_EVENT, totalsBy, siteId, 
 				events, anonymousEvents, showAnonymousAccessEvents, null, null, 
 				iDate, fDate, userIds, inverseUserSelection, sortBy, sortAscending);
+		sqlBuilder.setRollupPeriod(rollupPeriod);
 		final String hql = sqlBuilder.getHQL();
 		final Map<Integer,Integer> columnMap = sqlBuilder.getHQLColumnMap();
 		
@@ -1339,12 +1371,31 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 			final List<String> userIds,
 			final boolean inverseUserSelection,
 			final List<String> totalsBy) {
+
+		boolean distinctUsers = totalsBy != null && (totalsBy.contains(T_VISITS) || totalsBy.contains(T_UNIQUEVISITS));
+		List<RollupQueryPlanner.Segment> plan = planQuery(RollupQueryPlanner.SOURCE_EVENTS, iDate, fDate, totalsBy, inverseUserSelection, distinctUsers);
+		if(plan.size() > 1) {
+			return getEventStats(siteId, events, iDate, fDate, userIds, inverseUserSelection, null, totalsBy, null, true, 0).size();
+		}
+		RollupQueryPlanner.Segment segment = plan.get(0);
+		return getEventStatsRowCount(segment.getPeriodCode(), siteId, events, segment.getFirstDay(), segment.getLastDay(), userIds, inverseUserSelection, totalsBy);
+	}
+
+	private int getEventStatsRowCount(
+			final String rollupPeriod,
+			final String siteId,
+			final List<String> events,
+			final Date iDate, final Date fDate,
+			final List<String> userIds,
+			final boolean inverseUserSelection,
+			final List<String> totalsBy) {
 		
 		final Set<String> anonymousEvents = eventRegistryService.getAnonymousEventIds();
 		StatsSqlBuilder sqlBuilder = new StatsSqlBuilder(getDbVendor(),
 				Q_TYPE_EVENT, totalsBy,
 				siteId, events, anonymousEvents, showAnonymousAccessEvents, null, null, 
 				iDate, fDate, userIds, inverseUserSelection, null, true);
+		sqlBuilder.setRollupPeriod(rollupPeriod);
 		final String hql = sqlBuilder.getHQL();
 		final Map<Integer,Integer> columnMap = sqlBuilder.getHQLColumnMap();
 
@@ -1673,11 +1724,37 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 			final String sortBy, 
 			final boolean sortAscending,
 			final int maxResults) {
+
+		List<RollupQueryPlanner.Segment> plan = planQuery(RollupQueryPlanner.SOURCE_RESOURCES, iDate, fDate, totalsBy, inverseUserSelection, false);
+		if(plan.size() == 1) {
+			RollupQueryPlanner.Segment segment = plan.get(0);
+			return getResourceStats(segment.getPeriodCode(), siteId, resourceAction, resourceIds, segment.getFirstDay(), segment.getLastDay(), userIds, inverseUserSelection, page, totalsBy, sortBy, sortAscending, maxResults);
+		}
+		List<List<Stat>> results = new ArrayList<>();
+		for(RollupQueryPlanner.Segment segment : plan) {
+			results.add(getResourceStats(segment.getPeriodCode(), siteId, resourceAction, resourceIds, segment.getFirstDay(), segment.getLastDay(), userIds, inverseUserSelection, null, totalsBy, null, true, 0));
+		}
+		return mergeSegments(results, totalsBy, sortBy, sortAscending, page, maxResults);
+	}
+
+	private List<Stat> getResourceStats(
+			final String rollupPeriod,
+			final String siteId,
+			final String resourceAction, final List<String> resourceIds,
+			final Date iDate, final Date fDate,
+			final List<String> userIds,
+			final boolean inverseUserSelection,
+			final PagingPosition page, 
+			final List<String> totalsBy,
+			final String sortBy, 
+			final boolean sortAscending,
+			final int maxResults) {
 		
 		StatsSqlBuilder sqlBuilder = new StatsSqlBuilder(getDbVendor(),
 				Q_TYPE_RESOURCE, totalsBy, 
 				siteId, (Set<String>)null, null, showAnonymousAccessEvents, resourceAction, resourceIds, 
 				iDate, fDate, userIds, inverseUserSelection, sortBy, sortAscending);
+		sqlBuilder.setRollupPeriod(rollupPeriod);
 		final String hql = sqlBuilder.getHQL();
 		final Map<Integer,Integer> columnMap = sqlBuilder.getHQLColumnMap();
 
@@ -2024,10 +2101,28 @@ if (log.isDebugEnabled()) {
 			final boolean inverseUserSelection,
 			final List<String> totalsBy) {
 
+		List<RollupQueryPlanner.Segment> plan = planQuery(RollupQueryPlanner.SOURCE_RESOURCES, iDate, fDate, totalsBy, inverseUserSelection, false);
+		if(plan.size() > 1) {
+			return getResourceStats(siteId, resourceAction, resourceIds, iDate, fDate, userIds, inverseUserSelection, null, totalsBy, null, true, 0).size();
+		}
+		RollupQueryPlanner.Segment segment = plan.get(0);
+		return getResourceStatsRowCount(segment.getPeriodCode(), siteId, resourceAction, resourceIds, segment.getFirstDay(), segment.getLastDay(), userIds, inverseUserSelection, totalsBy);
+	}
+
+	private int getResourceStatsRowCount(
+			final String rollupPeriod,
+			final String siteId,
+			final String resourceAction, final List<String> resourceIds,
+			final Date iDate, final Date fDate,
+			final List<String> userIds,
+			final boolean inverseUserSelection,
+			final List<String> totalsBy) {
+
 		StatsSqlBuilder sqlBuilder = new StatsSqlBuilder(getDbVendor(),
 				Q_TYPE_RESOURCE, totalsBy, 
 				siteId, (Set<String>)null, null, showAnonymousAccessEvents, resourceAction, resourceIds, 
 				iDate, fDate, userIds, inverseUserSelection, null, true);
+		sqlBuilder.setRollupPeriod(rollupPeriod);
 		final String hql = sqlBuilder.getHQL();
 
 		HibernateCallback<Integer> hcb = session -> {
@@ -2087,11 +2182,37 @@ if (log.isDebugEnabled()) {
 			final String sortBy, 
 			final boolean sortAscending, 
 			final int maxResults) {
+
+		// only the visits by month or year are read from SST_EVENTS
+		List<RollupQueryPlanner.Segment> plan = totalsBy != null && totalsBy.contains(T_DATEMONTH)
+				? planQuery(RollupQueryPlanner.SOURCE_EVENTS, iDate, fDate, totalsBy, false, true)
+				: Collections.singletonList(new RollupQueryPlanner.Segment(null, iDate, fDate));
+		if(plan.size() == 1) {
+			RollupQueryPlanner.Segment segment = plan.get(0);
+			return getVisitsTotalsStats(segment.getPeriodCode(), siteId, segment.getFirstDay(), segment.getLastDay(), page, totalsBy, sortBy, sortAscending, maxResults);
+		}
+		List<List<Stat>> results = new ArrayList<>();
+		for(RollupQueryPlanner.Segment segment : plan) {
+			results.add(getVisitsTotalsStats(segment.getPeriodCode(), siteId, segment.getFirstDay(), segment.getLastDay(), null, totalsBy, null, true, 0));
+		}
+		return mergeSegments(results, totalsBy, sortBy, sortAscending, page, maxResults);
+	}
+
+	private List<Stat> getVisitsTotalsStats(
+			final String rollupPeriod,
+			final String siteId, 
+			final Date iDate, final Date fDate, 
+			final PagingPosition page, 
+			final List<String> totalsBy, 
+			final String sortBy, 
+			final boolean sortAscending, 
+			final int maxResults) {
 		
 		StatsSqlBuilder sqlBuilder = new StatsSqlBuilder(getDbVendor(),
 				Q_TYPE_VISITSTOTALS, totalsBy, siteId, 
 				(Set<String>)null, null, showAnonymousAccessEvents, null, null, 
 				iDate, fDate, null, false, sortBy, sortAscending);
+		sqlBuilder.setRollupPeriod(rollupPeriod);
 		final String hql = sqlBuilder.getHQL();
 		final Map<Integer,Integer> columnMap = sqlBuilder.getHQLColumnMap();
 		
@@ -2323,6 +2444,136 @@ if (log.isDebugEnabled()) {
 	}
 	
 	
+	// ################################################################
+	//  Rollups
+	// ################################################################
+	/**
+	 * Split a query on SST_EVENTS or SST_RESOURCES into the parts that can be read from the weekly and monthly
+	 * rollups and the ones that must be read from the daily table. Rollups are not used when the results are
+	 * grouped by day, when selecting the users without activity, or when counting distinct users for groups
+	 * that may span more than one part.
+	 * @return The parts of the query, a single part on the daily table if rollups can't be used.
+	 */
+	private List<RollupQueryPlanner.Segment> planQuery(String source, Date iDate, Date fDate, List<String> totalsBy,
+			boolean inverseUserSelection, boolean distinctUsers) {
+		boolean byMonth = totalsBy != null && totalsBy.contains(T_DATEMONTH);
+		boolean byYear = totalsBy != null && totalsBy.contains(T_DATEYEAR);
+		if(!enableRollups || inverseUserSelection || totalsBy == null
+				|| totalsBy.contains(T_DATE) || totalsBy.contains(T_LASTDATE)
+				|| (distinctUsers && !byMonth)) {
+			return Collections.singletonList(new RollupQueryPlanner.Segment(null, iDate, fDate));
+		}
+		Map<String, Date> state = getRollupState(source);
+		List<RollupQueryPlanner.Segment> plan = RollupQueryPlanner.plan(iDate, fDate,
+				RollupQueryPlanner.toLocalDate(state.get(RollupQueryPlanner.Period.WEEK.getCode())),
+				RollupQueryPlanner.toLocalDate(state.get(RollupQueryPlanner.Period.MONTH.getCode())),
+				!byMonth && !byYear);
+		log.debug("Query plan on {}: {}", source, plan);
+		return plan;
+	}
+
+	/** How far the rollups of a daily table have been built, by period */
+	private Map<String, Date> getRollupState(final String source) {
+		HibernateCallback<List<RollupStateImpl>> hcb = session -> {
+			Query q = session.createQuery("from RollupStateImpl where source = :source");
+			q.setParameter("source", source);
+			return q.list();
+		};
+		Map<String, Date> state = new HashMap<>();
+		try{
+			for(RollupStateImpl s : getHibernateTemplate().execute(hcb)) {
+				if(s.getRolledUpTo() != null) {
+					state.put(s.getPeriod(), s.getRolledUpTo());
+				}
+			}
+		}catch(DataAccessException e) {
+			log.warn("Unable to read the rollup state of {}, using the daily table: {}", source, e.toString());
+		}
+		return state;
+	}
+
+	/**
+	 * Merge the results of the parts of a query, adding up the counts of the rows that are in more than one part,
+	 * then sort and page them like the query would have.
+	 */
+	private List<Stat> mergeSegments(List<List<Stat>> segments, List<String> totalsBy, final String sortBy,
+			final boolean sortAscending, PagingPosition page, int maxResults) {
+		boolean byMonth = totalsBy.contains(T_DATEMONTH);
+		Calendar cal = Calendar.getInstance();
+		Map<String, Stat> merged = new LinkedHashMap<>();
+		for(List<Stat> segment : segments) {
+			for(Stat stat : segment) {
+				StringBuilder key = new StringBuilder();
+				key.append(stat.getSiteId()).append('|').append(stat.getUserId());
+				if(stat instanceof EventStat) {
+					key.append('|').append(((EventStat) stat).getEventId()).append('|').append(((EventStat) stat).getToolId());
+				}
+				if(stat instanceof ResourceStat) {
+					key.append('|').append(((ResourceStat) stat).getResourceRef()).append('|').append(((ResourceStat) stat).getResourceAction());
+				}
+				if(stat.getDate() != null) {
+					cal.setTime(stat.getDate());
+					key.append('|').append(cal.get(Calendar.YEAR));
+					if(byMonth) {
+						key.append('-').append(cal.get(Calendar.MONTH));
+					}
+				}
+				Stat existing = merged.putIfAbsent(key.toString(), stat);
+				if(existing != null) {
+					existing.setCount(existing.getCount() + stat.getCount());
+					if(existing instanceof SiteVisits) {
+						SiteVisits visits = (SiteVisits) existing;
+						visits.setTotalVisits(visits.getTotalVisits() + ((SiteVisits) stat).getTotalVisits());
+						visits.setTotalUnique(visits.getTotalUnique() + ((SiteVisits) stat).getTotalUnique());
+					}
+				}
+			}
+		}
+
+		List<Stat> results = new ArrayList<>(merged.values());
+		Comparator<Stat> comparator = getStatComparator(sortBy);
+		if(comparator != null) {
+			results.sort(sortAscending ? comparator : comparator.reversed());
+		}
+		int first = page != null ? page.getFirst() - 1 : 0;
+		int count = maxResults > 0 ? maxResults : (page != null ? page.getLast() - page.getFirst() + 1 : results.size());
+		if(first >= results.size()) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(results.subList(first, Math.min(results.size(), first + count)));
+	}
+
+	/** The in memory equivalent of the order by clause of a query */
+	private Comparator<Stat> getStatComparator(String sortBy) {
+		if(sortBy == null) {
+			return null;
+		}
+		Function<Stat, Comparable> field;
+		if(sortBy.equals(T_SITE)) {
+			field = Stat::getSiteId;
+		}else if(sortBy.equals(T_USER)) {
+			field = Stat::getUserId;
+		}else if(sortBy.equals(T_EVENT) || sortBy.equals(T_TOOL)) {
+			field = s -> s instanceof EventStat ? ((EventStat) s).getEventId() : null;
+		}else if(sortBy.equals(T_RESOURCE)) {
+			field = s -> s instanceof ResourceStat ? ((ResourceStat) s).getResourceRef() : null;
+		}else if(sortBy.equals(T_RESOURCE_ACTION)) {
+			field = s -> s instanceof ResourceStat ? ((ResourceStat) s).getResourceAction() : null;
+		}else if(sortBy.equals(T_DATE) || sortBy.equals(T_LASTDATE)) {
+			field = Stat::getDate;
+		}else if(sortBy.equals(T_TOTAL)) {
+			field = Stat::getCount;
+		}else if(sortBy.equals(T_VISITS)) {
+			field = s -> s instanceof SiteVisits ? ((SiteVisits) s).getTotalVisits() : s.getCount();
+		}else if(sortBy.equals(T_UNIQUEVISITS)) {
+			field = s -> s instanceof SiteVisits ? ((SiteVisits) s).getTotalUnique() : s.getCount();
+		}else{
+			return null;
+		}
+		return Comparator.comparing(field, Comparator.nullsFirst(Comparator.naturalOrder()));
+	}
+	
+	
 	// ################################################################
 	//  Statistics SQL builder class
 	// ################################################################
@@ -2362,6 +2613,7 @@ if (log.isDebugEnabled()) {
 		private boolean					inverseUserSelection;
 		private String					sortBy;
 		private boolean					sortAscending;	
+		private String					rollupPeriod;
 		
 		public StatsSqlBuilder(
 				final String dbVendor,
@@ -2436,6 +2688,11 @@ if (log.isDebugEnabled()) {
 					sortAscending);
 		}
 		
+		/** Query the weekly or monthly rollups instead of the daily table, only for events and resources */
+		public void setRollupPeriod(String rollupPeriod) {
+			this.rollupPeriod = rollupPeriod;
+		}
+
 		public String getHQL() {
 			StringBuilder hql = new StringBuilder();
 			hql.append(getSelectClause());
@@ -2581,14 +2838,15 @@ if (log.isDebugEnabled()) {
 		}
 		
 		private String getFromClause() {
+			// the rollups have the same columns as the daily tables, with the first day of the bucket as date
 			if(queryType == Q_TYPE_EVENT) {
-				return "from EventStatImpl as s ";
+				return rollupPeriod == null ? "from EventStatImpl as s " : "from EventStatRollupImpl as s ";
 			}else if(queryType == Q_TYPE_RESOURCE){
-				return "from ResourceStatImpl as s ";
+				return rollupPeriod == null ? "from ResourceStatImpl as s " : "from ResourceStatRollupImpl as s ";
 			}else if(queryType == Q_TYPE_VISITSTOTALS){
 				if(totalsBy.contains(T_DATEMONTH) || totalsBy.contains(T_DATEYEAR)) {
 					// unique visits by month or year must come from SST_EVENTS instead!
-					return "from EventStatImpl as s ";
+					return rollupPeriod == null ? "from EventStatImpl as s " : "from EventStatRollupImpl as s ";
 				}else{
 					return "from SiteVisitsImpl as s ";
 				}
@@ -2609,6 +2867,9 @@ if (log.isDebugEnabled()) {
 			if(siteId != null) {
 				whereFields.add("s.siteId = :siteid");
 			}
+			if(rollupPeriod != null) {
+				whereFields.add("s.period = '"+rollupPeriod+"'");
+			}
 			if((queryType == Q_TYPE_EVENT || queryType == Q_TYPE_ACTIVITYTOTALS)
 				&& events != null /*&& !events.isEmpty()*/) {
 				whereFields.add("s.eventId in (:events)");
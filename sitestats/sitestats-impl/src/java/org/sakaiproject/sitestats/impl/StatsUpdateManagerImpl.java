@@ -15,6 +15,7 @@
  */
 package org.sakaiproject.sitestats.impl;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -24,17 +25,30 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.query.Query;
+import org.hibernate.type.DateType;
 import org.hibernate.type.StringType;
 import org.sakaiproject.alias.api.AliasService;
 import org.sakaiproject.component.cover.ComponentManager;
@@ -87,6 +101,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	@Getter @Setter private boolean		collectAdminEvents					= false;
 	@Getter @Setter private boolean		collectEventsForSiteWithToolOnly	= true;
 	@Getter @Setter private boolean		collectDetailedEvents				= false;
+	@Getter @Setter private int			aggregationThreads					= 4;
+	@Getter @Setter private int			flushBatchSize						= 500;
 	@Setter private TransactionTemplate	transactionTemplate;
 
 	/** Sakai services */
@@ -98,33 +114,51 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	@Setter private UsageSessionService		usageSessionService;
 	@Setter private EventTrackingService	eventTrackingService;
 
-	/** Collect Thread and Semaphore */
-	private List<Event>	collectThreadQueue		= new ArrayList<>();
-	private Object		collectThreadSemaphore	= new Object();
-	private boolean		collectThreadRunning	= false;
+	/** Collect (db update) Thread and Semaphore */
+	private Object				collectThreadSemaphore	= new Object();
+	private volatile boolean	collectThreadRunning	= false;
+
+	/**
+	 * Aggregation shards: events are queued on the shard for their site (lock-free, many producers and one consumer)
+	 * and aggregated by its worker, so the events of a site are always aggregated in order.
+	 */
+	private AggregationShard[]	shards				= new AggregationShard[0];
+	private final AtomicInteger	queueDepth			= new AtomicInteger();
+	private final AtomicLong	unflushedEvents		= new AtomicLong();
+
+	/** Held for reading while an event is aggregated and for writing while the maps are swapped for a db update */
+	private final ReentrantReadWriteLock	aggregationLock	= new ReentrantReadWriteLock();
 
 	/** Collect thread queue maps */
-	private Map<String, EventStat>					eventStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, ResourceStat>				resourceStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, LessonBuilderStat>			lessonBuilderStatMap	= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SiteActivity>				activityMap				= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SiteVisits>					visitsMap				= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SitePresenceConsolidation>	presencesMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<UniqueVisitsKey, Integer>			uniqueVisitsMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, ServerStat>					serverStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, UserStat>					userStatMap				= Collections.synchronizedMap(new HashMap<>());
-
-	private Map<String, String>	lessonPageCreateEventMap	= new HashMap<>();
+	private Map<String, EventStat>					eventStatMap			= new ConcurrentHashMap<>();
+	private Map<String, ResourceStat>				resourceStatMap			= new ConcurrentHashMap<>();
+	private Map<String, LessonBuilderStat>			lessonBuilderStatMap	= new ConcurrentHashMap<>();
+	private Map<String, SiteActivity>				activityMap				= new ConcurrentHashMap<>();
+	private Map<String, SiteVisits>					visitsMap				= new ConcurrentHashMap<>();
+	private Map<String, SitePresenceConsolidation>	presencesMap			= new ConcurrentHashMap<>();
+	private Map<UniqueVisitsKey, Integer>			uniqueVisitsMap			= new ConcurrentHashMap<>();
+	private Map<String, ServerStat>					serverStatMap			= new ConcurrentHashMap<>();
+	private Map<String, UserStat>					userStatMap				= new ConcurrentHashMap<>();
+
+	private Map<String, String>	lessonPageCreateEventMap	= new ConcurrentHashMap<>();
 	private List<DetailedEvent>	detailedEvents				= Collections.synchronizedList(new ArrayList<>());
 
 	private boolean				initialized	= false;
 	private final ReentrantLock	lock		= new ReentrantLock();
 
 	/** Metrics */
-	private boolean			isIdle						= true;
-	@Getter private long	totalEventsProcessed		= 0;
-	@Getter private long	totalTimeInEventProcessing	= 0;
-	@Getter private long	resetTime					= System.currentTimeMillis();
+	private volatile boolean	isIdle						= true;
+	private volatile boolean	flushing					= false;
+	private final LongAdder		totalEventsProcessed		= new LongAdder();
+	private final LongAdder		totalTimeInEventProcessing	= new LongAdder();
+	@Getter private volatile long	resetTime				= System.currentTimeMillis();
+	@Getter private volatile long	lastFlushDuration		= 0;
+	@Getter private volatile long	maxFlushDuration		= 0;
+	@Getter private volatile double	eventsDrainedPerSec		= 0;
+	private volatile long		flushCount					= 0;
+	private volatile long		totalFlushDuration			= 0;
+	private long				lastFlushTime				= System.currentTimeMillis();
+	private int					writesInFlush				= 0;
 
 	// ################################################################
 	// Spring related methods
@@ -160,8 +194,16 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		buff.append(", collect administrator events: ").append(collectAdminEvents);
 		buff.append(", collect events only for sites with SiteStats: ").append(collectEventsForSiteWithToolOnly);
 		buff.append(", collect detailed events: ").append(collectDetailedEvents);
+		buff.append(", aggregation threads: ").append(aggregationThreads);
+		buff.append(", db update batch size: ").append(flushBatchSize);
 		logger.info(buff.toString());
-		
+
+		AggregationShard[] newShards = new AggregationShard[Math.max(1, aggregationThreads)];
+		for(int i=0; i<newShards.length; i++) {
+			newShards[i] = new AggregationShard(i);
+		}
+		shards = newShards;
+
 		initialized = true;
 		setCollectThreadEnabled(collectThreadEnabled);
 	}
@@ -195,12 +237,12 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		if(e != null) {
 			long startTime = System.currentTimeMillis();
 			isIdle = false;
-			preProcessEvent(e);
+			aggregateEvent(e);
 			//long endTime = System.currentTimeMillis();
 			//log.debug("Time spent pre-processing 1 event: " + (endTime-startTime) + " ms");
 			boolean success = doUpdateConsolidatedEvents();
 			isIdle = true;
-			totalTimeInEventProcessing += (System.currentTimeMillis() - startTime);
+			totalTimeInEventProcessing.add(System.currentTimeMillis() - startTime);
 			return success;
 		}
 		return true;
@@ -230,14 +272,14 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				isIdle = false;
 				for(int i=0; i<events.length; i++){
 					if(events[i] != null) {
-						preProcessEvent(events[i]);
+						aggregateEvent(events[i]);
 					}
 				}
 				//long endTime = System.currentTimeMillis();
 				//log.debug("Time spent pre-processing " + eventCount + " event(s): " + (endTime-startTime) + " ms");
 				boolean success = doUpdateConsolidatedEvents();
 				isIdle = true;
-				totalTimeInEventProcessing += (System.currentTimeMillis() - startTime);
+				totalTimeInEventProcessing.add(System.currentTimeMillis() - startTime);
 				return success;
 			}
 		}
@@ -249,7 +291,12 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	 */
 	public long collectPastSiteEvents(String siteId, Date initialDate, Date finalDate) {
 		StatsAggregateJobImpl statsAggregateJob = (StatsAggregateJobImpl) ComponentManager.get("org.sakaiproject.sitestats.api.StatsAggregateJob");
-		return statsAggregateJob.collectPastSiteEvents(siteId, initialDate, finalDate);
+		long collected = statsAggregateJob.collectPastSiteEvents(siteId, initialDate, finalDate);
+		if(collected > 0) {
+			// the rollups from the initial date on no longer match the daily tables
+			rewindRollups(initialDate);
+		}
+		return collected;
 	}
 	
 	/* (non-Javadoc)
@@ -313,18 +360,40 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	// ################################################################
 	// Metrics related methods
 	// ################################################################	
+	@Override
 	public int getQueueSize() {
-		return collectThreadQueue.size();
+		return queueDepth.get();
 	}
 	
 	public boolean isIdle() {
-		return this.isIdle && getQueueSize() == 0;
+		// read in the order an event passes through them
+		return getQueueSize() == 0 && unflushedEvents.get() == 0 && !flushing && this.isIdle;
 	}
 	
 	public void resetMetrics() {
-		totalEventsProcessed = 0;
-		totalTimeInEventProcessing = 0;
+		totalEventsProcessed.reset();
+		totalTimeInEventProcessing.reset();
 		resetTime = System.currentTimeMillis();
+		lastFlushDuration = 0;
+		maxFlushDuration = 0;
+		eventsDrainedPerSec = 0;
+		flushCount = 0;
+		totalFlushDuration = 0;
+	}
+
+	@Override
+	public long getTotalEventsProcessed() {
+		return totalEventsProcessed.sum();
+	}
+
+	@Override
+	public long getTotalTimeInEventProcessing() {
+		return totalTimeInEventProcessing.sum();
+	}
+
+	@Override
+	public long getAverageFlushDuration() {
+		return flushCount > 0 ? totalFlushDuration / flushCount : 0;
 	}
 
 	@Override
@@ -334,6 +403,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	
 	@Override
 	public double getNumberOfEventsProcessedPerSec() {
+		long totalEventsProcessed = getTotalEventsProcessed();
+		long totalTimeInEventProcessing = getTotalTimeInEventProcessing();
 		if(totalTimeInEventProcessing > 0) {
 			return Util.round((double)totalEventsProcessed / ((double)totalTimeInEventProcessing/1000), 3);
 		}else{
@@ -344,6 +415,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	@Override
 	public double getNumberOfEventsGeneratedPerSec() {
 		double ellapsed = (double) getTotalTimeElapsedSinceReset();
+		long totalEventsProcessed = getTotalEventsProcessed();
 		if(ellapsed > 0) {
 			return Util.round((double)totalEventsProcessed / (ellapsed/1000), 3);
 		}else{
@@ -353,8 +425,9 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	
 	@Override
 	public long getAverageTimeInEventProcessingPerEvent() {
+		long totalEventsProcessed = getTotalEventsProcessed();
 		if(totalEventsProcessed > 0) {
-			return totalTimeInEventProcessing / totalEventsProcessed;
+			return getTotalTimeInEventProcessing() / totalEventsProcessed;
 		}else{
 			return 0;
 		}
@@ -372,6 +445,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			sb.append("\t\tNumber of events genereated in Sakai per sec: ").append(getNumberOfEventsGeneratedPerSec()).append("\n");
 			sb.append("\t\tAverage time spent in event processing per event: ").append(getAverageTimeInEventProcessingPerEvent()).append(" ms\n");
 			sb.append("\t\tEvent queue size: ").append(getQueueSize()).append("\n");
+			sb.append("\t\tNumber of events drained from the queue per sec: ").append(getEventsDrainedPerSec()).append("\n");
+			sb.append("\t\tLast/average/max db update time: ").append(getLastFlushDuration()).append("/").append(getAverageFlushDuration()).append("/").append(getMaxFlushDuration()).append(" ms\n");
 			sb.append("\t\tIdle: ").append(isIdle());
 		}else{
 			sb.append("#Events processed: ").append(getTotalEventsProcessed()).append(", ");
@@ -380,6 +455,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			sb.append("#Events processed/sec: ").append(getNumberOfEventsProcessedPerSec()).append(", ");
 			sb.append("Avg. Time/event: ").append(getAverageTimeInEventProcessingPerEvent()).append(" ms, ");
 			sb.append("Event queue size: ").append(getQueueSize()).append(", ");
+			sb.append("#Events drained/sec: ").append(getEventsDrainedPerSec()).append(", ");
+			sb.append("Last db update: ").append(getLastFlushDuration()).append(" ms, ");
 			sb.append("Idle: ").append(isIdle());
 		}
 		return sb.toString();
@@ -391,12 +468,17 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	// ################################################################	
 	/** Method called whenever an new event is generated from EventTrackingService: do not call this method! */
 	public void update(Observable obs, Object o) {
-		// At the moment this isn't threadsafe, but as sakai event handling is single threaded this shoudn't be a problem,
-		// but it's not a formal contract.
+		// Observers may be called from several threads, the shard queues are safe for any number of producers.
 		if(o instanceof Event){
 			Event e = (Event) o;
 			Event eventWithPreciseDate = buildEvent(getToday(), e.getEvent(), e.getResource(), e.getContext(), e.getUserId(), e.getSessionId());
-			collectThreadQueue.add(eventWithPreciseDate);
+			// route by context, or by reference when there is none (e.g. site visits, /presence/SITE_ID-presence)
+			String routingKey = e.getContext() != null ? e.getContext() : e.getResource();
+			AggregationShard[] current = shards;
+			AggregationShard shard = current[Math.floorMod(Objects.hashCode(routingKey), current.length)];
+			queueDepth.incrementAndGet();
+			shard.queue.offer(eventWithPreciseDate);
+			shard.wakeUp();
 		}
 	}
 	
@@ -406,20 +488,9 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			log.debug("Started statistics update thread");
 			while(collectThreadRunning){
 				// do update job
-				isIdle = false;
 				long startTime = System.currentTimeMillis();
-				int eventCount = collectThreadQueue.size();
-				if(eventCount > 0) {
-					//long startTime2 = System.currentTimeMillis();
-					while(collectThreadQueue.size() > 0){
-						preProcessEvent(collectThreadQueue.remove(0));
-					}
-					//long endTime2 = System.currentTimeMillis();
-					//log.debug("Time spent pre-processing " + eventCount + " event(s): " + (endTime2-startTime2) + " ms");
-				}
 				transactionTemplate.execute(status -> doUpdateConsolidatedEvents());
-				isIdle = true;
-				totalTimeInEventProcessing += (System.currentTimeMillis() - startTime);
+				totalTimeInEventProcessing.add(System.currentTimeMillis() - startTime);
 
 				// sleep if no work to do
 				if(!collectThreadRunning) break;
@@ -446,6 +517,9 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	/** Start the update thread */
 	private void startUpdateThread(){
 		collectThreadRunning = true;
+		for(AggregationShard shard : shards) {
+			shard.start();
+		}
 		Thread collectThread = new Thread(this, "org.sakaiproject.sitestats.impl.StatsUpdateManagerImpl");
 		collectThread.start();
 	}
@@ -453,11 +527,72 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	/** Stop the update thread */
 	private void stopUpdateThread(){
 		collectThreadRunning = false;
+		for(AggregationShard shard : shards) {
+			shard.wakeUp();
+		}
 		synchronized (collectThreadSemaphore){
 			collectThreadSemaphore.notifyAll();
 		}
 	}
 
+	/** Aggregate an event into the maps that are written on the next db update */
+	private void aggregateEvent(Event event) {
+		aggregationLock.readLock().lock();
+		try{
+			preProcessEvent(event);
+			unflushedEvents.incrementAndGet();
+		}finally{
+			aggregationLock.readLock().unlock();
+		}
+	}
+
+	/** A queue of events and the worker that aggregates them */
+	private class AggregationShard implements Runnable {
+		private final Queue<Event>	queue	= new ConcurrentLinkedQueue<>();
+		private final int			index;
+		private volatile Thread		worker;
+
+		AggregationShard(int index) {
+			this.index = index;
+		}
+
+		void start() {
+			Thread t = new Thread(this, "org.sakaiproject.sitestats.impl.StatsUpdateManagerImpl-aggregation-" + index);
+			t.setDaemon(true);
+			worker = t;
+			t.start();
+		}
+
+		void wakeUp() {
+			Thread t = worker;
+			if(t != null) {
+				LockSupport.unpark(t);
+			}
+		}
+
+		public void run() {
+			Thread self = Thread.currentThread();
+			while(collectThreadRunning && worker == self) {
+				Event e = queue.poll();
+				if(e == null) {
+					// woken up by the next event, the timeout only guards against a lost wake up
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(collectThreadUpdateInterval));
+					continue;
+				}
+				long startTime = System.currentTimeMillis();
+				try{
+					aggregateEvent(e);
+				}catch(Exception ex){
+					log.warn("Failed to aggregate event: {}", e, ex);
+				}finally{
+					queueDepth.decrementAndGet();
+				}
+				totalTimeInEventProcessing.add(System.currentTimeMillis() - startTime);
+			}
+			log.debug("Finished statistics aggregation thread {}", index);
+		}
+	}
+
 	// ################################################################
 	// Event process methods
 	// ################################################################	
@@ -468,7 +603,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			return;
 		}
 
-		totalEventsProcessed++;
+		totalEventsProcessed.increment();
 		String userId = event.getUserId();
 		Event e = fixMalFormedEvents(event);
 		if (e == null) {
@@ -577,8 +712,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 
 			// add to eventStatMap
 			String key = userId+siteId+eventId+date;
-			synchronized(eventStatMap){
-				EventStat e1 = eventStatMap.get(key);
+			eventStatMap.compute(key, (k, e1) -> {
 				if(e1 == null){
 					e1 = new EventStatImpl();
 					e1.setUserId(userId);
@@ -587,8 +721,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 					e1.setDate(date);
 				}
 				e1.setCount(e1.getCount() + 1);
-				eventStatMap.put(key, e1);
-			}
+				return e1;
+			});
 
 			if (collectDetailedEvents) {
 				DetailedEvent de = new DetailedEventImpl();
@@ -603,8 +737,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			if(!StatsManager.SITEVISIT_EVENTID.equals(eventId)){
 				// add to activityMap
 				String key2 = siteId+date+eventId;
-				synchronized(activityMap){
-					SiteActivity e2 = activityMap.get(key2);
+				activityMap.compute(key2, (k, e2) -> {
 					if(e2 == null){
 						e2 = new SiteActivityImpl();
 						e2.setSiteId(siteId);
@@ -612,22 +745,17 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 						e2.setEventId(eventId);
 					}
 					e2.setCount(e2.getCount() + 1);
-					activityMap.put(key2, e2);
-				}
+					return e2;
+				});
 			}
 		}	
 
 		if(eventId.startsWith(StatsManager.RESOURCE_EVENTID_PREFIX)){
 			// add to resourceStatMap
-			String resourceAction = null;
-			try{
-				resourceAction = eventId.split("\\.")[1];
-			}catch(ArrayIndexOutOfBoundsException ex){
-				resourceAction = eventId;
-			}
+			String[] eventParts = eventId.split("\\.");
+			String resourceAction = eventParts.length > 1 ? eventParts[1] : eventId;
 			String key = userId+siteId+resourceRef+resourceAction+date;
-			synchronized(resourceStatMap){
-				ResourceStat e1 = resourceStatMap.get(key);
+			resourceStatMap.compute(key, (k, e1) -> {
 				if(e1 == null){
 					e1 = new ResourceStatImpl();
 					e1.setUserId(userId);
@@ -637,8 +765,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 					e1.setDate(date);
 				}
 				e1.setCount(e1.getCount() + 1);
-				resourceStatMap.put(key, e1);
-			}
+				return e1;
+			});
 		} else if (eventId.startsWith(StatsManager.LESSONS_EVENTID_PREFIX)) {
 			String[] resourceParts = resourceRef.split("/");
 			if (resourceParts.length > 3) {
@@ -783,8 +911,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 
 	private void addToLessonBuilderStatMap(String key, String userId, String siteId, String pageRef, long pageId, String action, Date date) {
 
-		synchronized (lessonBuilderStatMap) {
-			LessonBuilderStat e1 = lessonBuilderStatMap.get(key);
+		lessonBuilderStatMap.compute(key, (k, e1) -> {
 			if (e1 == null) {
 				e1 = new LessonBuilderStatImpl();
 				e1.setUserId(userId);
@@ -795,8 +922,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				e1.setDate(date);
 			}
 			e1.setCount(e1.getCount() + 1);
-			lessonBuilderStatMap.put(key, e1);
-		}
+			return e1;
+		});
 	}
 
 	protected boolean isRegisteredEvent(String eventId) {
@@ -810,16 +937,15 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				
 		// add to serverStatMap
 		String key = eventId+date;
-		synchronized(serverStatMap){
-			ServerStat s = serverStatMap.get(key);
+		serverStatMap.compute(key, (k, s) -> {
 			if(s == null){
 				s = new ServerStatImpl();
 				s.setEventId(eventId);
 				s.setDate(date);
 			}
 			s.setCount(s.getCount() + 1);
-			serverStatMap.put(key, s);
-		}
+			return s;
+		});
 		
 	}
 	
@@ -830,16 +956,15 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				
 		// add to userStatMap
 		String key = userId+date;
-		synchronized(userStatMap){
-			UserStat s = userStatMap.get(key);
+		userStatMap.compute(key, (k, s) -> {
 			if(s == null){
 				s = new UserStatImpl();
 				s.setUserId(userId);
 				s.setDate(date);
 			}
 			s.setCount(s.getCount() + 1);
-			userStatMap.put(key, s);
-		}
+			return s;
+		});
 		
 	}
 	
@@ -850,122 +975,146 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	@SuppressWarnings("unchecked")
 	private synchronized boolean doUpdateConsolidatedEvents() {
 		long startTime = System.currentTimeMillis();
-		if(eventStatMap.size() > 0 || resourceStatMap.size() > 0
-				|| activityMap.size() > 0 || uniqueVisitsMap.size() > 0 
-				|| visitsMap.size() > 0 || presencesMap.size() > 0
-				|| serverStatMap.size() > 0 || userStatMap.size() > 0 || detailedEvents.size() > 0) {
-
-		    try {
-				getHibernateTemplate().execute(session -> {
-                    // do: EventStat
-                    if(eventStatMap.size() > 0) {
-                        Collection<EventStat> tmp1 = null;
-                        synchronized(eventStatMap){
-                            tmp1 = eventStatMap.values();
-                            eventStatMap = Collections.synchronizedMap(new HashMap<String, EventStat>());
-                        }
-                        doUpdateEventStatObjects(session, tmp1);
-                    }
-
-                    // do: DetailedEvents
-                    if (detailedEvents.size() > 0) {
-                        List<DetailedEvent> detailedEventsCopy;
-                        synchronized(detailedEvents) {
-                            detailedEventsCopy = detailedEvents;
-                            detailedEvents = Collections.synchronizedList(new ArrayList<>());
-                        }
-                        doSaveDetailedEvents(session, detailedEventsCopy);
-                    }
-
-                    // do: ResourceStat
-                    if(resourceStatMap.size() > 0) {
-                        Collection<ResourceStat> tmp2 = null;
-                        synchronized(resourceStatMap){
-                            tmp2 = resourceStatMap.values();
-                            resourceStatMap = Collections.synchronizedMap(new HashMap<String, ResourceStat>());
-                        }
-                        doUpdateResourceStatObjects(session, tmp2);
-                    }
-
-                    // do: Lessons ResourceStat
-                    if (lessonBuilderStatMap.size() > 0) {
-                        Collection<LessonBuilderStat> tmp3 = null;
-                        synchronized (lessonBuilderStatMap) {
-                            tmp3 = lessonBuilderStatMap.values();
-                            lessonBuilderStatMap = Collections.synchronizedMap(new HashMap<String, LessonBuilderStat>());
-                        }
-                        doUpdateLessonBuilderStatObjects(session, tmp3);
-                    }
-
-                    // do: SiteActivity
-                    if(activityMap.size() > 0) {
-                        Collection<SiteActivity> tmp3 = null;
-                        synchronized(activityMap){
-                            tmp3 = activityMap.values();
-                            activityMap = Collections.synchronizedMap(new HashMap<String, SiteActivity>());
-                        }
-                        doUpdateSiteActivityObjects(session, tmp3);
-                    }
-
-                    // do: SiteVisits
-                    if(uniqueVisitsMap.size() > 0 || visitsMap.size() > 0) {
-                        // determine unique visits for event related sites
-                        Map<UniqueVisitsKey, Integer> tmp4;
-                        synchronized(uniqueVisitsMap){
-                            tmp4 = uniqueVisitsMap;
-                            uniqueVisitsMap = Collections.synchronizedMap(new HashMap<UniqueVisitsKey, Integer>());
-                        }
-                        tmp4 = doGetSiteUniqueVisits(session, tmp4);
-
-                        // do: SiteVisits
-                        if(visitsMap.size() > 0) {
-                            Collection<SiteVisits> tmp5 = null;
-                            synchronized(visitsMap){
-                                tmp5 = visitsMap.values();
-                                visitsMap = Collections.synchronizedMap(new HashMap<String, SiteVisits>());
-                            }
-                            doUpdateSiteVisitsObjects(session, tmp5, tmp4);
-                        }
-                    }
-
-                    // do: SitePresences
-                    if(presencesMap.size() > 0) {
-                        Collection<SitePresenceConsolidation> tmp6 = null;
-                        synchronized(presencesMap){
-                            tmp6 = presencesMap.values();
-                            presencesMap = Collections.synchronizedMap(new HashMap<String, SitePresenceConsolidation>());
-                        }
-                        doUpdateSitePresencesObjects(session, tmp6);
-                    }
-
-                    // do: ServerStats
-                    if(serverStatMap.size() > 0) {
-                        Collection<ServerStat> tmp7 = null;
-                        synchronized(serverStatMap){
-                            tmp7 = serverStatMap.values();
-                            serverStatMap = Collections.synchronizedMap(new HashMap<String, ServerStat>());
-                        }
-                        doUpdateServerStatObjects(session, tmp7);
-                    }
-
-                    // do: UserStats
-                    if(userStatMap.size() > 0) {
-                        Collection<UserStat> tmp8 = null;
-                        synchronized(userStatMap){
-                            tmp8 = userStatMap.values();
-                            userStatMap = Collections.synchronizedMap(new HashMap<String, UserStat>());
-                        }
-                        doUpdateUserStatObjects(session, tmp8);
-                    }
-                    return null;
-            	});
-			} catch(DataAccessException dae) {
-				return false;
+		flushing = true;
+		try{
+			// take what has been aggregated so far, the aggregation threads carry on with new maps
+			Map<String, EventStat> eventStats;
+			List<DetailedEvent> detailedEventsCopy;
+			Map<String, ResourceStat> resourceStats;
+			Map<String, LessonBuilderStat> lessonBuilderStats;
+			Map<String, SiteActivity> activities;
+			Map<UniqueVisitsKey, Integer> uniqueVisits;
+			Map<String, SiteVisits> visits;
+			Map<String, SitePresenceConsolidation> presences;
+			Map<String, ServerStat> serverStats;
+			Map<String, UserStat> userStats;
+			long drained;
+			aggregationLock.writeLock().lock();
+			try{
+				eventStats = eventStatMap;
+				detailedEventsCopy = detailedEvents;
+				resourceStats = resourceStatMap;
+				lessonBuilderStats = lessonBuilderStatMap;
+				activities = activityMap;
+				uniqueVisits = uniqueVisitsMap;
+				visits = visitsMap;
+				presences = presencesMap;
+				serverStats = serverStatMap;
+				userStats = userStatMap;
+				// always swap, even an empty map would be filled by the aggregation threads while it is written
+				eventStatMap = new ConcurrentHashMap<>();
+				detailedEvents = Collections.synchronizedList(new ArrayList<>());
+				resourceStatMap = new ConcurrentHashMap<>();
+				lessonBuilderStatMap = new ConcurrentHashMap<>();
+				activityMap = new ConcurrentHashMap<>();
+				uniqueVisitsMap = new ConcurrentHashMap<>();
+				visitsMap = new ConcurrentHashMap<>();
+				presencesMap = new ConcurrentHashMap<>();
+				serverStatMap = new ConcurrentHashMap<>();
+				userStatMap = new ConcurrentHashMap<>();
+				drained = unflushedEvents.getAndSet(0);
+			}finally{
+				aggregationLock.writeLock().unlock();
+			}
+
+			if(eventStats.size() > 0 || resourceStats.size() > 0
+					|| activities.size() > 0 || uniqueVisits.size() > 0
+					|| visits.size() > 0 || presences.size() > 0
+					|| serverStats.size() > 0 || userStats.size() > 0 || detailedEventsCopy.size() > 0
+					|| lessonBuilderStats.size() > 0) {
+
+				writesInFlush = 0;
+				try {
+					getHibernateTemplate().execute(session -> {
+						// do: EventStat
+						if(eventStats.size() > 0) {
+							doUpdateEventStatObjects(session, eventStats.values());
+						}
+
+						// do: DetailedEvents
+						if (detailedEventsCopy.size() > 0) {
+							doSaveDetailedEvents(session, detailedEventsCopy);
+						}
+
+						// do: ResourceStat
+						if(resourceStats.size() > 0) {
+							doUpdateResourceStatObjects(session, resourceStats.values());
+						}
+
+						// do: Lessons ResourceStat
+						if (lessonBuilderStats.size() > 0) {
+							doUpdateLessonBuilderStatObjects(session, lessonBuilderStats.values());
+						}
+
+						// do: SiteActivity
+						if(activities.size() > 0) {
+							doUpdateSiteActivityObjects(session, activities.values());
+						}
+
+						// do: SiteVisits
+						if(uniqueVisits.size() > 0 || visits.size() > 0) {
+							// determine unique visits for event related sites
+							Map<UniqueVisitsKey, Integer> tmp4 = doGetSiteUniqueVisits(session, new HashMap<>(uniqueVisits));
+
+							// do: SiteVisits
+							if(visits.size() > 0) {
+								doUpdateSiteVisitsObjects(session, visits.values(), tmp4);
+							}
+						}
+
+						// do: SitePresences
+						if(presences.size() > 0) {
+							doUpdateSitePresencesObjects(session, presences.values());
+						}
+
+						// do: ServerStats
+						if(serverStats.size() > 0) {
+							doUpdateServerStatObjects(session, serverStats.values());
+						}
+
+						// do: UserStats
+						if(userStats.size() > 0) {
+							doUpdateUserStatObjects(session, userStats.values());
+						}
+						return null;
+					});
+				} catch(DataAccessException dae) {
+					return false;
+				}
 			}
+
 			long endTime = System.currentTimeMillis();
+			recordFlush(startTime, endTime, drained);
 			log.debug("Time spent in doUpdateConsolidatedEvents(): " + (endTime-startTime) + " ms");
+			return true;
+		}finally{
+			flushing = false;
+		}
+	}
+
+	/** Update the db update metrics */
+	private void recordFlush(long startTime, long endTime, long drained) {
+		long duration = endTime - startTime;
+		lastFlushDuration = duration;
+		if(duration > maxFlushDuration) {
+			maxFlushDuration = duration;
+		}
+		flushCount++;
+		totalFlushDuration += duration;
+		long window = endTime - lastFlushTime;
+		eventsDrainedPerSec = Util.round((double) drained / ((double) Math.max(window, 1) / 1000), 3);
+		lastFlushTime = endTime;
+	}
+
+	/**
+	 * Called after each object is written: flush and clear the session every flushBatchSize objects, so that a large
+	 * backlog is written in bounded batches instead of piling up in the session until the transaction ends.
+	 */
+	private void written(Session session) {
+		if(flushBatchSize > 0 && ++writesInFlush % flushBatchSize == 0) {
+			session.flush();
+			session.clear();
 		}
-		return true;
 	}
 	
 	private void doUpdateEventStatObjects(Session session, Collection<EventStat> o) {
@@ -1014,6 +1163,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			}
 			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0))
 					session.saveOrUpdate(eExisting);
+			written(session);
 		}
 	}
 
@@ -1022,6 +1172,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			if (StringUtils.isNotBlank(de.getSiteId())) {
 				session.save(de);
 			}
+			written(session);
 		}
 	}
 
@@ -1070,6 +1221,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			}
 			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0))
 					session.saveOrUpdate(eExisting);
+			written(session);
 		}
 	}
 
@@ -1120,6 +1272,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			}
 			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0))
 				session.saveOrUpdate(eExisting);
+			written(session);
 		}
 	}
 	
@@ -1167,6 +1320,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			
 			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0))
 					session.saveOrUpdate(eExisting);
+			written(session);
 		}
 	}
 	
@@ -1215,6 +1369,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			}
 			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0))
 					session.saveOrUpdate(eExisting);
+			written(session);
 		}
 	}
 
@@ -1258,6 +1413,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				log.warn("Failed to event:"+ eUpdate.getEventId(), ex);
 			}
 			session.saveOrUpdate(eExisting);
+			written(session);
 		}
 	}
 	
@@ -1307,6 +1463,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			if(StringUtils.isNotBlank(eExistingUserId)) {
 				session.saveOrUpdate(eExisting);
 			}
+			written(session);
 			
 		}
 	}
@@ -1356,6 +1513,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		Collections.sort(objects);
 		Iterator<SitePresenceConsolidation> i = objects.iterator();
 		while(i.hasNext()){
+			written(session);
 			try{
 				SitePresenceConsolidation spc = i.next();
 				SitePresence sp = spc.sitePresence;
@@ -1474,10 +1632,158 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	}
 	
 
+	// ################################################################
+	// Rollup methods
+	// ################################################################
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.sitestats.api.StatsUpdateManager#updateRollups(int)
+	 */
+	public int updateRollups(int maxBuckets) {
+		int limit = maxBuckets > 0 ? maxBuckets : Integer.MAX_VALUE;
+		LocalDate aggregatedTo = getAggregatedTo();
+		if(aggregatedTo == null) {
+			log.debug("No events aggregated yet, nothing to roll up");
+			return 0;
+		}
+		int built = 0;
+		for(String source : new String[] {RollupQueryPlanner.SOURCE_EVENTS, RollupQueryPlanner.SOURCE_RESOURCES}) {
+			for(RollupQueryPlanner.Period period : RollupQueryPlanner.Period.values()) {
+				if(built >= limit) {
+					return built;
+				}
+				try{
+					built += updateRollups(source, period, limit - built, aggregatedTo);
+				}catch(DataAccessException e) {
+					log.error("Unable to update the {} rollups of {}: {}", period, source, e.getMessage(), e);
+				}
+			}
+		}
+		return built;
+	}
+
+	/**
+	 * The day up to which the daily tables have all their events: events are aggregated as they happen when the collect
+	 * thread is enabled, otherwise the aggregate job may lag behind and has only got as far as the last event it processed.
+	 * @return The first day that may still be missing events, null if the job has not processed any
+	 */
+	private LocalDate getAggregatedTo() {
+		if(collectThreadEnabled) {
+			return LocalDate.now();
+		}
+		try{
+			Date lastEventDate = getEventDateFromLatestJobRun();
+			return lastEventDate != null ? RollupQueryPlanner.toLocalDate(lastEventDate) : null;
+		}catch(Exception e) {
+			log.warn("Unable to get the date of the last event aggregated, not rolling up: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	/** Roll up the weeks or months of a daily table that are over and aggregated, up to a maximum number of them */
+	private int updateRollups(final String source, final RollupQueryPlanner.Period period, int maxBuckets, final LocalDate aggregatedTo) {
+		final String sourceClass = RollupQueryPlanner.SOURCE_EVENTS.equals(source) ? "EventStatImpl" : "ResourceStatImpl";
+		RollupStateImpl state = getHibernateTemplate().execute(session -> (RollupStateImpl) session
+				.createQuery("from RollupStateImpl where source = :source and period = :period")
+				.setParameter("source", source)
+				.setParameter("period", period.getCode())
+				.uniqueResult());
+		LocalDate start;
+		if(state != null && state.getRolledUpTo() != null) {
+			start = RollupQueryPlanner.toLocalDate(state.getRolledUpTo());
+		}else{
+			Date first = getHibernateTemplate().execute(session -> (Date) session
+					.createQuery("select min(s.date) from " + sourceClass + " s")
+					.uniqueResult());
+			if(first == null) {
+				return 0;
+			}
+			start = period.start(RollupQueryPlanner.toLocalDate(first));
+			if(state == null) {
+				state = new RollupStateImpl(source, period.getCode());
+			}
+		}
+
+		final RollupStateImpl rollupState = state;
+		int built = 0;
+		while(built < maxBuckets && !period.next(start).isAfter(aggregatedTo)) {
+			final LocalDate bucket = start;
+			long time = System.currentTimeMillis();
+			Integer rows = transactionTemplate.execute(status -> buildRollup(sourceClass, period, bucket, rollupState));
+			log.debug("Rolled up {} {} of {} into {} rows in {} ms", period, bucket, source, rows, System.currentTimeMillis() - time);
+			start = period.next(start);
+			built++;
+		}
+		if(built > 0) {
+			log.info("Rolled up {} {} buckets of {}, up to {}", built, period, source, start);
+		}
+		return built;
+	}
+
+	/** Replace the rollup of a week or month of a daily table, and move the rollup state past it */
+	private int buildRollup(final String sourceClass, final RollupQueryPlanner.Period period, final LocalDate bucket, final RollupStateImpl state) {
+		final boolean events = "EventStatImpl".equals(sourceClass);
+		final Date from = RollupQueryPlanner.toDate(bucket);
+		final Date to = RollupQueryPlanner.toDate(period.next(bucket));
+		return getHibernateTemplate().execute(session -> {
+			session.createQuery("delete from " + (events ? "EventStatRollupImpl" : "ResourceStatRollupImpl") + " where period = :period and date = :date")
+				.setParameter("period", period.getCode())
+				.setParameter("date", from, DateType.INSTANCE)
+				.executeUpdate();
+			String fields = events ? "s.siteId, s.userId, s.eventId" : "s.siteId, s.userId, s.resourceRef, s.resourceAction";
+			Query q = session.createQuery("select " + fields + ", sum(s.count) from " + sourceClass + " s"
+					+ " where s.date >= :from and s.date < :to group by " + fields);
+			q.setParameter("from", from, DateType.INSTANCE);
+			q.setParameter("to", to, DateType.INSTANCE);
+			int rows = 0;
+			try(ScrollableResults results = q.scroll(ScrollMode.FORWARD_ONLY)) {
+				while(results.next()) {
+					Object[] r = results.get();
+					if(events) {
+						session.save(new EventStatRollupImpl((String) r[0], (String) r[1], (String) r[2], period.getCode(), from, ((Number) r[3]).longValue()));
+					}else{
+						session.save(new ResourceStatRollupImpl((String) r[0], (String) r[1], (String) r[2], (String) r[3], period.getCode(), from, ((Number) r[4]).longValue()));
+					}
+					if(++rows % Math.max(flushBatchSize, 1) == 0) {
+						session.flush();
+						session.clear();
+					}
+				}
+			}
+			state.setRolledUpTo(to);
+			session.saveOrUpdate(state);
+			return rows;
+		});
+	}
+
+	/** Move the rollup state of all the tables back, so that the weeks and months from a day on are rolled up again */
+	private void rewindRollups(Date day) {
+		if(day == null) {
+			return;
+		}
+		try{
+			getHibernateTemplate().execute(session -> {
+				List<RollupStateImpl> states = session.createQuery("from RollupStateImpl").list();
+				for(RollupStateImpl state : states) {
+					LocalDate start = RollupQueryPlanner.Period.WEEK.getCode().equals(state.getPeriod())
+							? RollupQueryPlanner.Period.WEEK.start(RollupQueryPlanner.toLocalDate(day))
+							: RollupQueryPlanner.Period.MONTH.start(RollupQueryPlanner.toLocalDate(day));
+					if(state.getRolledUpTo() != null && RollupQueryPlanner.toLocalDate(state.getRolledUpTo()).isAfter(start)) {
+						state.setRolledUpTo(RollupQueryPlanner.toDate(start));
+						session.update(state);
+					}
+				}
+				return null;
+			});
+		}catch(DataAccessException e) {
+			log.error("Unable to rewind the rollups to {}: {}", day, e.getMessage(), e);
+		}
+	}
+
+
 	// ################################################################
 	// Utility methods
 	// ################################################################	
-	private synchronized boolean isValidEvent(Event e) {
+	private boolean isValidEvent(Event e) {
 		if(e.getEvent().startsWith(StatsManager.RESOURCE_EVENTID_PREFIX)){
 			String ref = e.getResource();	
 			if(ref.trim().equals("")) return false;			
@@ -26,8 +26,11 @@ import javax.persistence.criteria.Root;
 
 import org.sakaiproject.sitestats.impl.DetailedEventImpl;
 import org.sakaiproject.sitestats.impl.EventStatImpl;
+import org.sakaiproject.sitestats.impl.EventStatRollupImpl;
 import org.sakaiproject.sitestats.impl.LessonBuilderStatImpl;
 import org.sakaiproject.sitestats.impl.ResourceStatImpl;
+import org.sakaiproject.sitestats.impl.ResourceStatRollupImpl;
+import org.sakaiproject.sitestats.impl.RollupStateImpl;
 import org.sakaiproject.sitestats.impl.ServerStatImpl;
 import org.sakaiproject.sitestats.impl.SiteActivityImpl;
 import org.sakaiproject.sitestats.impl.SitePresenceImpl;
@@ -99,6 +102,9 @@ public class DB extends HibernateDaoSupport {
                 session.createCriteria(LessonBuilderStatImpl.class).list().forEach(session::delete);
                 session.createCriteria(UserStatImpl.class).list().forEach(session::delete);
                 session.createCriteria(ServerStatImpl.class).list().forEach(session::delete);
+                session.createCriteria(EventStatRollupImpl.class).list().forEach(session::delete);
+                session.createCriteria(ResourceStatRollupImpl.class).list().forEach(session::delete);
+                session.createCriteria(RollupStateImpl.class).list().forEach(session::delete);
                 session.flush();
                 return null;
             });
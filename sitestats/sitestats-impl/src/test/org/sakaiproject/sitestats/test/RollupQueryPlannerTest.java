@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2006-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sakaiproject.sitestats.impl.RollupQueryPlanner;
+import org.sakaiproject.sitestats.impl.RollupQueryPlanner.Period;
+import org.sakaiproject.sitestats.impl.RollupQueryPlanner.Segment;
+
+public class RollupQueryPlannerTest {
+
+    @Test
+    public void testNoRollups() {
+        List<Segment> plan = RollupQueryPlanner.plan(date(2024, 1, 10), date(2024, 6, 20), null, null, true);
+        Assert.assertEquals(1, plan.size());
+        Assert.assertNull(plan.get(0).getPeriod());
+        Assert.assertEquals(date(2024, 1, 10), plan.get(0).getFirstDay());
+        Assert.assertEquals(date(2024, 6, 20), plan.get(0).getLastDay());
+    }
+
+    @Test
+    public void testMonthsThenWeeksThenDays() {
+        // Wed 2024-01-10 to Thu 2024-06-20, rolled up to 2024-07-01
+        List<Segment> plan = RollupQueryPlanner.plan(date(2024, 1, 10), date(2024, 6, 20),
+                LocalDate.of(2024, 7, 1), LocalDate.of(2024, 7, 1), true);
+        assertSegment(plan.get(0), null, date(2024, 1, 10), date(2024, 1, 14));
+        assertSegment(plan.get(1), Period.WEEK, date(2024, 1, 15), date(2024, 1, 28));
+        assertSegment(plan.get(2), null, date(2024, 1, 29), date(2024, 1, 31));
+        assertSegment(plan.get(3), Period.MONTH, date(2024, 2, 1), date(2024, 5, 31));
+        assertSegment(plan.get(4), null, date(2024, 6, 1), date(2024, 6, 2));
+        assertSegment(plan.get(5), Period.WEEK, date(2024, 6, 3), date(2024, 6, 16));
+        assertSegment(plan.get(6), null, date(2024, 6, 17), date(2024, 6, 20));
+        Assert.assertEquals(7, plan.size());
+    }
+
+    @Test
+    public void testWithoutWeeks() {
+        List<Segment> plan = RollupQueryPlanner.plan(date(2024, 1, 10), date(2024, 6, 20),
+                LocalDate.of(2024, 7, 1), LocalDate.of(2024, 7, 1), false);
+        Assert.assertEquals(3, plan.size());
+        assertSegment(plan.get(0), null, date(2024, 1, 10), date(2024, 1, 31));
+        assertSegment(plan.get(1), Period.MONTH, date(2024, 2, 1), date(2024, 5, 31));
+        assertSegment(plan.get(2), null, date(2024, 6, 1), date(2024, 6, 20));
+    }
+
+    @Test
+    public void testRolledUpTo() {
+        // only March is rolled up, the rest comes from the daily rows
+        List<Segment> plan = RollupQueryPlanner.plan(date(2024, 3, 1), null, null, LocalDate.of(2024, 4, 1), false);
+        Assert.assertEquals(2, plan.size());
+        assertSegment(plan.get(0), Period.MONTH, date(2024, 3, 1), date(2024, 3, 31));
+        assertSegment(plan.get(1), null, date(2024, 4, 1), null);
+
+        // nothing is rolled up in the range
+        plan = RollupQueryPlanner.plan(date(2024, 5, 1), date(2024, 8, 31), null, LocalDate.of(2024, 4, 1), false);
+        Assert.assertEquals(1, plan.size());
+        Assert.assertNull(plan.get(0).getPeriod());
+    }
+
+    private void assertSegment(Segment segment, Period period, java.util.Date firstDay, java.util.Date lastDay) {
+        Assert.assertEquals(segment.toString(), period, segment.getPeriod());
+        Assert.assertEquals(segment.toString(), firstDay, segment.getFirstDay());
+        Assert.assertEquals(segment.toString(), lastDay, segment.getLastDay());
+    }
+
+    private java.util.Date date(int year, int month, int day) {
+        return RollupQueryPlanner.toDate(LocalDate.of(year, month, day));
+    }
+}
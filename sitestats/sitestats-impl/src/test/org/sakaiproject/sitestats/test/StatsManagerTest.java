@@ -31,6 +31,7 @@ import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
@@ -49,6 +50,7 @@ import org.sakaiproject.javax.PagingPosition;
 import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.site.api.SiteService;
 import org.sakaiproject.sitestats.api.EventStat;
+import org.sakaiproject.sitestats.api.JobRun;
 import org.sakaiproject.sitestats.api.PrefsData;
 import org.sakaiproject.sitestats.api.ResourceStat;
 import org.sakaiproject.sitestats.api.SiteActivityByTool;
@@ -62,6 +64,9 @@ import org.sakaiproject.sitestats.api.SummaryVisitsChartData;
 import org.sakaiproject.sitestats.api.SummaryVisitsTotals;
 import org.sakaiproject.sitestats.api.event.ToolInfo;
 import org.sakaiproject.sitestats.api.report.ReportManager;
+import org.sakaiproject.sitestats.impl.EventStatImpl;
+import org.sakaiproject.sitestats.impl.JobRunImpl;
+import org.sakaiproject.sitestats.impl.ResourceStatImpl;
 import org.sakaiproject.sitestats.impl.StatsManagerImpl;
 import org.sakaiproject.sitestats.test.data.FakeData;
 import org.sakaiproject.sitestats.test.mocks.FakeSite;
@@ -518,6 +523,111 @@ public class StatsManagerTest extends AbstractTransactionalJUnit4SpringContextTe
 		assertEquals(2, totalFilesAndFolders);
 	}
 	
+	@Test
+	public void testRollups() throws Exception {
+		StatsManagerImpl smi = (StatsManagerImpl) ((Advised) statsManager).getTargetSource().getTarget();
+		// one row per day and user for the last 150 days
+		Calendar c = Calendar.getInstance();
+		c.set(Calendar.HOUR_OF_DAY, 0);
+		c.set(Calendar.MINUTE, 0);
+		c.set(Calendar.SECOND, 0);
+		c.set(Calendar.MILLISECOND, 0);
+		Date today = c.getTime();
+		c.add(Calendar.DAY_OF_YEAR, -150);
+		Date first = c.getTime();
+		for(int day=0; day<150; day++) {
+			for(String userId : Arrays.asList(FakeData.USER_A_ID, FakeData.USER_B_ID)) {
+				EventStatImpl e = new EventStatImpl();
+				e.setSiteId(FakeData.SITE_A_ID);
+				e.setUserId(userId);
+				e.setEventId(day % 2 == 0 ? FakeData.EVENT_CHATNEW : FakeData.EVENT_CONTENTNEW);
+				e.setDate(c.getTime());
+				e.setCount(day % 5 + 1);
+				db.insertObject(e);
+				ResourceStatImpl r = new ResourceStatImpl();
+				r.setSiteId(FakeData.SITE_A_ID);
+				r.setUserId(userId);
+				r.setResourceRef(FakeData.RES_FILE_SITE_A);
+				r.setResourceAction(day % 2 == 0 ? "new" : "read");
+				r.setDate(c.getTime());
+				r.setCount(day % 3 + 1);
+				db.insertObject(r);
+			}
+			c.add(Calendar.DAY_OF_YEAR, 1);
+		}
+		Date from = new Date(first.getTime() + 10*24*60*60*1000L);
+		Date to = new Date(today.getTime() - 3*24*60*60*1000L);
+		List<List<String>> groupings = Arrays.asList(
+				Arrays.asList(StatsManager.T_SITE, StatsManager.T_EVENT),
+				Arrays.asList(StatsManager.T_SITE, StatsManager.T_USER, StatsManager.T_DATEMONTH),
+				Arrays.asList(StatsManager.T_USER, StatsManager.T_VISITS, StatsManager.T_DATEMONTH));
+		List<String> sorts = Arrays.asList(StatsManager.T_TOTAL, StatsManager.T_TOTAL, StatsManager.T_VISITS);
+
+		smi.setEnableRollups(false);
+		List<List<Stat>> expected = new ArrayList<>();
+		for(int i=0; i<groupings.size(); i++) {
+			expected.add(statsManager.getEventStats(FakeData.SITE_A_ID, null, from, to, null, false, null, groupings.get(i), sorts.get(i), false, 0));
+		}
+		List<Stat> expectedResources = statsManager.getResourceStats(FakeData.SITE_A_ID, null, null, from, to, null, false, null,
+				Arrays.asList(StatsManager.T_RESOURCE, StatsManager.T_RESOURCE_ACTION), StatsManager.T_TOTAL, false, 0);
+
+		// nothing is rolled up before the aggregate job has processed any event
+		assertEquals(0, statsUpdateManager.updateRollups(0));
+
+		// only the weeks and months the aggregate job has got past are rolled up
+		JobRun jobRun = new JobRunImpl();
+		jobRun.setStartEventId(1);
+		jobRun.setEndEventId(10);
+		jobRun.setJobStartDate(new Date());
+		jobRun.setJobEndDate(new Date());
+		jobRun.setLastEventDate(new Date(first.getTime() + 40*24*60*60*1000L));
+		assertTrue(statsUpdateManager.saveJobRun(jobRun));
+		int buckets = statsUpdateManager.updateRollups(0);
+		assertTrue(buckets > 0 && buckets <= 2 * (6 + 1));
+
+		// all the complete weeks and months are rolled up once the job has caught up
+		JobRun lastJobRun = new JobRunImpl();
+		lastJobRun.setStartEventId(11);
+		lastJobRun.setEndEventId(20);
+		lastJobRun.setJobStartDate(new Date());
+		lastJobRun.setJobEndDate(new Date());
+		lastJobRun.setLastEventDate(new Date());
+		assertTrue(statsUpdateManager.saveJobRun(lastJobRun));
+		buckets += statsUpdateManager.updateRollups(0);
+		assertTrue(buckets >= 2 * (20 + 4));
+		assertEquals(0, statsUpdateManager.updateRollups(0));
+
+		smi.setEnableRollups(true);
+		try {
+			for(int i=0; i<groupings.size(); i++) {
+				List<String> totalsBy = groupings.get(i);
+				assertSameStats(expected.get(i), statsManager.getEventStats(FakeData.SITE_A_ID, null, from, to, null, false, null, totalsBy, sorts.get(i), false, 0));
+				assertEquals(expected.get(i).size(), statsManager.getEventStatsRowCount(FakeData.SITE_A_ID, null, from, to, null, false, totalsBy));
+			}
+			assertSameStats(expectedResources, statsManager.getResourceStats(FakeData.SITE_A_ID, null, null, from, to, null, false, null,
+					Arrays.asList(StatsManager.T_RESOURCE, StatsManager.T_RESOURCE_ACTION), StatsManager.T_TOTAL, false, 0));
+
+			// paging is applied to the merged results
+			List<Stat> page = statsManager.getEventStats(FakeData.SITE_A_ID, null, from, to, null, false, new PagingPosition(2, 2),
+					groupings.get(1), StatsManager.T_TOTAL, false, 0);
+			assertEquals(1, page.size());
+			assertEquals(expected.get(1).get(1).getCount(), page.get(0).getCount());
+		} finally {
+			smi.setEnableRollups(true);
+		}
+	}
+
+	private void assertSameStats(List<Stat> expected, List<Stat> actual) {
+		assertEquals(expected.size(), actual.size());
+		for(int i=0; i<expected.size(); i++) {
+			assertEquals(expected.get(i).getCount(), actual.get(i).getCount());
+			if(expected.get(i) instanceof SiteVisits) {
+				assertEquals(((SiteVisits) expected.get(i)).getTotalVisits(), ((SiteVisits) actual.get(i)).getTotalVisits());
+				assertEquals(((SiteVisits) expected.get(i)).getTotalUnique(), ((SiteVisits) actual.get(i)).getTotalUnique());
+			}
+		}
+	}
+	
 	private List<Event> getSampleData() {
 		List<Event> samples = new ArrayList<Event>();
 		Date today = new Date();
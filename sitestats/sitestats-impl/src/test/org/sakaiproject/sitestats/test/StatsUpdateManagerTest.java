@@ -672,7 +672,41 @@ public class StatsUpdateManagerTest extends AbstractTransactionalJUnit4SpringCon
 		results = db.getResultsForClass(EventStatImpl.class);
 		assertEquals(2, results.size());
 	}
-	
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testConcurrentEventsAreAllAggregated() throws Exception {
+		StatsUpdateManagerImpl sumi = (StatsUpdateManagerImpl) ((Advised) statsUpdateManager).getTargetSource().getTarget();
+		statsUpdateManager.setCollectThreadUpdateInterval(50);
+		statsUpdateManager.setCollectThreadEnabled(true);
+
+		// several producers posting events of the same site and user
+		List<Thread> producers = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Thread producer = new Thread(() -> {
+				for (int j = 0; j < 25; j++) {
+					sumi.update(null, statsUpdateManager.buildEvent(new Date(), FakeData.EVENT_CHATNEW, "/chat/msg/"+FakeData.SITE_A_ID, FakeData.SITE_A_ID, FakeData.USER_A_ID, "session-id-a"));
+				}
+			});
+			producers.add(producer);
+			producer.start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!statsUpdateManager.isIdle() && System.currentTimeMillis() < deadline) {
+			// give it time to process events
+			Thread.sleep(100);
+		}
+		statsUpdateManager.setCollectThreadEnabled(false);
+
+		assertEquals(0, sumi.getQueueSize());
+		List<EventStatImpl> results = db.getResultsForClass(EventStatImpl.class);
+		assertEquals(1, results.size());
+		assertEquals(100, results.get(0).getCount());
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testConfigIsCollectAdminEvents() {
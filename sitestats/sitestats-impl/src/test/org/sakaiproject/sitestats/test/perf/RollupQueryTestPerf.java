@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2006-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.test.perf;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.sitestats.api.JobRun;
+import org.sakaiproject.sitestats.api.Stat;
+import org.sakaiproject.sitestats.api.StatsManager;
+import org.sakaiproject.sitestats.api.StatsUpdateManager;
+import org.sakaiproject.sitestats.impl.EventStatImpl;
+import org.sakaiproject.sitestats.impl.JobRunImpl;
+import org.sakaiproject.sitestats.impl.StatsManagerImpl;
+import org.sakaiproject.sitestats.test.DB;
+import org.sakaiproject.sitestats.test.SiteStatsTestConfiguration;
+import org.sakaiproject.sitestats.test.data.FakeData;
+import org.springframework.aop.framework.Advised;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.AbstractTransactionalJUnit4SpringContextTests;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ *  Compares the latency of report queries over several years of SST_EVENTS rows when they are
+ *  answered from the daily rows and from the weekly and monthly rollups.
+ *
+ *  As with the other performance tests the numbers from hsqldb don't mean much, configure a
+ *  more suitable database in hibernate.properties and raise the sizes below to get real ones.
+ */
+@ContextConfiguration(classes = {SiteStatsTestConfiguration.class})
+@RunWith(SpringJUnit4ClassRunner.class)
+@Slf4j
+@Transactional(transactionManager = "org.sakaiproject.sitestats.SiteStatsTransactionManager")
+public class RollupQueryTestPerf extends AbstractTransactionalJUnit4SpringContextTests {
+    private static final int YEARS = 3;
+    private static final int USERS = 40;
+    private static final String[] EVENTS = {FakeData.EVENT_CHATNEW, FakeData.EVENT_CONTENTNEW, FakeData.EVENT_CONTENTREAD};
+    private static final int RUNS = 5;
+
+    @Resource(name = "org.sakaiproject.sitestats.test.DB")
+    private DB db;
+    @Resource(name = "org.sakaiproject.memory.api.MemoryService")
+    private MemoryService memoryService;
+    @Resource(name = "org.sakaiproject.sitestats.api.StatsManager")
+    private StatsManager statsManager;
+    @Resource(name = "org.sakaiproject.sitestats.api.StatsUpdateManager")
+    private StatsUpdateManager statsUpdateManager;
+
+    private StatsManagerImpl statsManagerImpl;
+    private Date from;
+    private Date to;
+
+    @Before
+    public void onSetUp() throws Exception {
+        db.deleteAll();
+        memoryService.resetCachers();
+        statsUpdateManager.setCollectThreadEnabled(false);
+        statsManagerImpl = (StatsManagerImpl) ((Advised) statsManager).getTargetSource().getTarget();
+
+        // one row per user and event every other day, for several years
+        Calendar c = Calendar.getInstance();
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        to = c.getTime();
+        c.add(Calendar.YEAR, -YEARS);
+        from = c.getTime();
+        long rows = 0;
+        for (int day = 0; c.getTime().before(to); day++, c.add(Calendar.DAY_OF_YEAR, 1)) {
+            for (int u = 0; u < USERS; u++) {
+                if ((day + u) % 2 != 0) continue;
+                for (String event : EVENTS) {
+                    EventStatImpl e = new EventStatImpl();
+                    e.setSiteId(FakeData.SITE_A_ID);
+                    e.setUserId("user-" + u);
+                    e.setEventId(event);
+                    e.setDate(c.getTime());
+                    e.setCount((day + u) % 7 + 1);
+                    db.insertObject(e);
+                    rows++;
+                }
+            }
+        }
+        JobRun jobRun = new JobRunImpl();
+        jobRun.setStartEventId(1);
+        jobRun.setEndEventId(rows);
+        jobRun.setJobStartDate(new Date());
+        jobRun.setJobEndDate(new Date());
+        jobRun.setLastEventDate(new Date());
+        statsUpdateManager.saveJobRun(jobRun);
+        long start = System.currentTimeMillis();
+        int buckets = statsUpdateManager.updateRollups(0);
+        log.info("Inserted {} daily rows, rolled up {} buckets in {} ms", rows, buckets, System.currentTimeMillis() - start);
+    }
+
+    @Test
+    public void testReportLatency() {
+        List<List<String>> reports = Arrays.asList(
+                Arrays.asList(StatsManager.T_SITE, StatsManager.T_EVENT),
+                Arrays.asList(StatsManager.T_SITE, StatsManager.T_USER),
+                Arrays.asList(StatsManager.T_SITE, StatsManager.T_EVENT, StatsManager.T_DATEMONTH),
+                Arrays.asList(StatsManager.T_USER, StatsManager.T_VISITS, StatsManager.T_DATEMONTH));
+        for (List<String> totalsBy : reports) {
+            statsManagerImpl.setEnableRollups(false);
+            long daily = time(totalsBy);
+            List<Stat> expected = query(totalsBy);
+            statsManagerImpl.setEnableRollups(true);
+            long rollups = time(totalsBy);
+            List<Stat> actual = query(totalsBy);
+            log.info("Report {} over {} years: {} ms from the daily rows, {} ms with rollups", totalsBy, YEARS, daily, rollups);
+            Assert.assertEquals(expected.size(), actual.size());
+        }
+    }
+
+    private long time(List<String> totalsBy) {
+        // warm up
+        query(totalsBy);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < RUNS; i++) {
+            query(totalsBy);
+        }
+        return (System.currentTimeMillis() - start) / RUNS;
+    }
+
+    private List<Stat> query(List<String> totalsBy) {
+        return statsManager.getEventStats(FakeData.SITE_A_ID, null, from, to, null, false, null, totalsBy, StatsManager.T_TOTAL, false, 0);
+    }
+}